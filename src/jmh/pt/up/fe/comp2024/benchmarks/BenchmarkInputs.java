@@ -0,0 +1,84 @@
+package pt.up.fe.comp2024.benchmarks;
+
+import pt.up.fe.comp2024.Launcher;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Java-- programs used as inputs of the benchmarks.
+ * <p>
+ * An input is given by name:
+ * <ul>
+ * <li>{@code cpf}: every program of the checkpoint tests that compiles without errors;</li>
+ * <li>{@code synthetic-N}: a generated class with N methods, see {@link SyntheticProgram};</li>
+ * <li>any other name is a '.jmm' file, or a folder of '.jmm' files, relative to the project folder.</li>
+ * </ul>
+ */
+public class BenchmarkInputs {
+
+    private static final String CPF = "test/pt/up/fe/comp/cpf";
+    private static final String SYNTHETIC = "synthetic-";
+
+    private BenchmarkInputs() {
+    }
+
+    /**
+     * @param input name of the input
+     * @return the code of each program of the input
+     */
+    public static List<String> load(String input) {
+        var programs = readPrograms(input).stream()
+                .filter(BenchmarkInputs::compiles)
+                .toList();
+
+        if (programs.isEmpty()) {
+            throw new RuntimeException("Input '" + input + "' has no program that compiles");
+        }
+
+        return programs;
+    }
+
+    private static List<String> readPrograms(String input) {
+        if (input.startsWith(SYNTHETIC)) {
+            return List.of(SyntheticProgram.generate(Integer.parseInt(input.substring(SYNTHETIC.length()))));
+        }
+
+        var file = new File(input.equals("cpf") ? CPF : input);
+        if (file.isFile()) {
+            return List.of(SpecsIo.read(file));
+        }
+
+        if (!file.isDirectory()) {
+            throw new RuntimeException("Could not find benchmark input '" + file + "'");
+        }
+
+        try (Stream<Path> paths = Files.walk(file.toPath())) {
+            return paths.filter(path -> path.toString().endsWith(".jmm"))
+                    .sorted()
+                    .map(path -> SpecsIo.read(path.toFile()))
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list benchmark input '" + file + "'", e);
+        }
+    }
+
+    /**
+     * Some of the checkpoint programs test that errors are reported, and are left out.
+     */
+    private static boolean compiles(String code) {
+        try {
+            Launcher.compile(code, new HashMap<>());
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
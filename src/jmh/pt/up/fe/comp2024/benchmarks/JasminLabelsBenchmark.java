@@ -0,0 +1,67 @@
+package pt.up.fe.comp2024.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.backend.JasminGenerator;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jasmin generation of a single method with many branches, each one with its own label. The cost of placing the
+ * labels should grow linearly with the number of branches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JasminLabelsBenchmark {
+
+    @Param({"1000", "2000", "4000", "8000"})
+    public int branches;
+
+    private OllirResult ollirResult;
+
+    @Setup
+    public void setup() {
+        var body = new StringBuilder();
+        body.append("i.i32 :=.i32 0.i32;\n");
+
+        for (int branch = 0; branch < branches; branch++) {
+            body.append("if (a.bool) goto L").append(branch).append(";\n");
+            body.append("i.i32 :=.i32 i.i32 +.i32 1.i32;\n");
+            body.append("L").append(branch).append(":\n");
+        }
+
+        body.append("ret.i32 i.i32;\n");
+
+        ollirResult = new OllirResult("""
+                Branches {
+                    .construct Branches().V {
+                        invokespecial(this, "<init>").V;
+                    }
+
+                    .method public count(a.bool).i32 {
+                %s
+                    }
+                }
+                """.formatted(body), Collections.emptyMap());
+    }
+
+    @Benchmark
+    public String build() {
+        return new JasminGenerator(ollirResult).build();
+    }
+}
@@ -0,0 +1,143 @@
+package pt.up.fe.comp2024.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pt.up.fe.comp2024.Launcher;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running time of the code the compiler generates for a quicksort, on an array of pseudo-random values.
+ * <p>
+ * The program is not 'libs-jmm/java/Quicksort.java' itself but a version of it rewritten for this benchmark. Its
+ * 'quicksort' and 'partition' methods are copied from that file, while 'main', 'printL' and the overloaded
+ * 'quicksort(int[])' are replaced by 'run', which fills an array of the given size with a linear congruential
+ * generator, sorts it and returns its first element. Its loops are the kind loop rotation and the other optimizations
+ * are meant for, so comparing the values of 'rotate' and 'optimize' shows what each changes in the running time of the
+ * generated code, within a single build of the compiler.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuicksortBenchmark {
+
+    private static final String QUICKSORT = """
+            class Quicksort {
+                public int run(int n) {
+                    int[] L;
+                    int i;
+                    int x;
+
+                    L = new int[n];
+
+                    i = 0;
+                    x = 12345;
+                    while (i < L.length) {
+                        x = x * 1103515245 + 12345;
+                        L[i] = x;
+
+                        i = i + 1;
+                    }
+
+                    this.quicksort(L, 0, L.length - 1);
+
+                    return L[0];
+                }
+
+                public boolean quicksort(int[] L, int lo, int hi) {
+                    int p;
+
+                    if (lo < hi) {
+                        p = this.partition(L, lo, hi);
+
+                        this.quicksort(L, lo, p - 1);
+                        this.quicksort(L, p + 1, hi);
+                    } else {}
+
+                    return true;
+                }
+
+                public int partition(int[] L, int lo, int hi) {
+                    int p;
+                    int i;
+                    int j;
+                    int tmp;
+
+                    p = L[hi];
+                    i = lo;
+                    j = lo;
+
+                    while (j < hi) {
+                        if (L[j] < p) {
+                            tmp = L[i];
+                            L[i] = L[j];
+                            L[j] = tmp;
+
+                            i = i + 1;
+                        } else {}
+
+                        j = j + 1;
+                    }
+
+                    tmp = L[i];
+                    L[i] = L[hi];
+                    L[hi] = tmp;
+
+                    return i;
+                }
+            }
+            """;
+
+    @Param({"10000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public String optimize;
+
+    @Param({"false", "true"})
+    public String rotate;
+
+    private Object quicksort;
+    private MethodHandle run;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        var config = new HashMap<String, String>();
+        config.put("directLowering", "true");
+        config.put("optimize", optimize);
+        config.put("rotateLoops", rotate);
+
+        var bytes = Launcher.compileToClassFile(QUICKSORT, config).getBytes();
+        var loader = new ClassLoader(QuicksortBenchmark.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) {
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+
+        var quicksortClass = loader.loadClass("Quicksort");
+        quicksort = quicksortClass.getConstructor().newInstance();
+        run = MethodHandles.lookup().findVirtual(quicksortClass, "run", MethodType.methodType(int.class, int.class));
+    }
+
+    @Benchmark
+    public int sort() throws Throwable {
+        return (int) run.invoke(quicksort, size);
+    }
+}
@@ -0,0 +1,77 @@
+package pt.up.fe.comp2024.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.optimization.RegisterAllocator;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Register allocation of a single method with many temporaries, inside a loop, as in machine-generated code. Linear
+ * scan should grow close to linearly with the number of temporaries, graph colouring faster than that.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegisterAllocationBenchmark {
+
+    @Param({"1000", "4000", "16000"})
+    public int temporaries;
+
+    @Param({"coloring", "linear"})
+    public String allocator;
+
+    private Method method;
+
+    @Setup
+    public void setup() {
+        var body = new StringBuilder();
+        body.append("i.i32 :=.i32 0.i32;\n");
+        body.append("Loop:\n");
+        body.append("t0.i32 :=.i32 i.i32 +.i32 n.i32;\n");
+
+        for (int temporary = 1; temporary < temporaries; temporary++) {
+            body.append("t").append(temporary).append(".i32 :=.i32 t").append(temporary - 1)
+                    .append(".i32 +.i32 i.i32;\n");
+        }
+
+        body.append("i.i32 :=.i32 i.i32 +.i32 1.i32;\n");
+        body.append("if (i.i32 <.bool n.i32) goto Loop;\n");
+        body.append("ret.i32 i.i32;\n");
+
+        var ollirResult = new OllirResult("""
+                Temporaries {
+                    .construct Temporaries().V {
+                        invokespecial(this, "<init>").V;
+                    }
+
+                    .method public run(n.i32).i32 {
+                %s
+                    }
+                }
+                """.formatted(body), Collections.emptyMap());
+
+        method = ollirResult.getOllirClass().getMethod(1);
+    }
+
+    @Benchmark
+    public int allocate() {
+        var registerAllocator = RegisterAllocator.of(method, allocator);
+        return registerAllocator.allocate(registerAllocator.getMinimumRegisters()).orElseThrow().length;
+    }
+}
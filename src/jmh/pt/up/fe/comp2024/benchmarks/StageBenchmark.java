@@ -0,0 +1,128 @@
+package pt.up.fe.comp2024.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.backend.JasminGenerator;
+import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of each stage of the compiler, over every program of the input. Each stage starts from the results of
+ * the previous stages, computed once in the setup, so only the work of the stage itself is measured.
+ * <p>
+ * Run with {@code gradle jmh}, which also enables the GC profiler to report the allocation rate of each stage.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Inputs {
+
+        @Param({"cpf", "synthetic-10", "synthetic-100", "synthetic-1000"})
+        public String input;
+
+        public Map<String, String> config;
+
+        public List<String> programs;
+        public List<JmmParserResult> parserResults;
+        public List<JmmSemanticsResult> semanticsResults;
+        public List<OllirResult> ollirResults;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            config = new HashMap<>();
+            programs = BenchmarkInputs.load(input);
+
+            parserResults = programs.stream().map(code -> new JmmParserImpl().parse(code, config)).toList();
+            semanticsResults = parserResults.stream()
+                    .map(parserResult -> new JmmAnalysisImpl().semanticAnalysis(parserResult))
+                    .toList();
+            ollirResults = semanticsResults.stream()
+                    .map(semanticsResult -> new JmmOptimizationImpl().toOllir(semanticsResult))
+                    .toList();
+        }
+    }
+
+    /**
+     * Optimizations may change the OLLIR classes they receive, so each invocation gets new ones.
+     */
+    @State(Scope.Thread)
+    public static class Unoptimized {
+
+        public List<OllirResult> ollirResults;
+
+        @Setup(Level.Invocation)
+        public void setup(Inputs inputs) {
+            ollirResults = inputs.semanticsResults.stream()
+                    .map(semanticsResult -> new JmmOptimizationImpl().toOllir(semanticsResult))
+                    .toList();
+        }
+    }
+
+    @Benchmark
+    public void parse(Inputs inputs, Blackhole blackhole) {
+        for (var code : inputs.programs) {
+            blackhole.consume(new JmmParserImpl().parse(code, inputs.config));
+        }
+    }
+
+    @Benchmark
+    public void symbolTable(Inputs inputs, Blackhole blackhole) {
+        for (var parserResult : inputs.parserResults) {
+            blackhole.consume(JmmSymbolTableBuilder.build(parserResult.getRootNode()));
+        }
+    }
+
+    @Benchmark
+    public void semanticAnalysis(Inputs inputs, Blackhole blackhole) {
+        for (var parserResult : inputs.parserResults) {
+            blackhole.consume(new JmmAnalysisImpl().semanticAnalysis(parserResult));
+        }
+    }
+
+    @Benchmark
+    public void toOllir(Inputs inputs, Blackhole blackhole) {
+        for (var semanticsResult : inputs.semanticsResults) {
+            blackhole.consume(new JmmOptimizationImpl().toOllir(semanticsResult));
+        }
+    }
+
+    @Benchmark
+    public void optimize(Unoptimized unoptimized, Blackhole blackhole) {
+        for (var ollirResult : unoptimized.ollirResults) {
+            blackhole.consume(new JmmOptimizationImpl().optimize(ollirResult));
+        }
+    }
+
+    @Benchmark
+    public void jasmin(Inputs inputs, Blackhole blackhole) {
+        for (var ollirResult : inputs.ollirResults) {
+            blackhole.consume(new JasminGenerator(ollirResult).build());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package pt.up.fe.comp2024.benchmarks;
+
+/**
+ * Generates valid Java-- classes whose size grows linearly with the number of methods.
+ * <p>
+ * Every method has a few locals, a loop with a conditional, arithmetic and a call to the previous method, so that each
+ * stage of the compiler has work proportional to the size of the program.
+ */
+public class SyntheticProgram {
+
+    private SyntheticProgram() {
+    }
+
+    /**
+     * @param methods number of methods of the class, besides main
+     * @return the code of the class
+     */
+    public static String generate(int methods) {
+        var className = "Synthetic" + methods;
+        var code = new StringBuilder();
+
+        code.append("import io;\n\n");
+        code.append("class ").append(className).append(" {\n");
+        code.append("    int field;\n\n");
+
+        for (int i = 0; i < methods; i++) {
+            code.append("    public int m").append(i).append("(int p) {\n");
+            code.append("        int a;\n");
+            code.append("        int b;\n");
+            code.append("        int i;\n");
+            code.append("        boolean c;\n");
+            code.append("        int[] values;\n");
+            code.append("        a = ").append(i).append(";\n");
+            code.append("        b = 2;\n");
+            code.append("        i = 0;\n");
+            code.append("        values = new int[10];\n");
+            code.append("        while (i < p) {\n");
+            code.append("            if (a < b) {\n");
+            code.append("                a = a + b * 2;\n");
+            code.append("            } else {\n");
+            code.append("                b = b - 1;\n");
+            code.append("            }\n");
+            code.append("            values[i] = a;\n");
+            code.append("            i = i + 1;\n");
+            code.append("        }\n");
+            code.append("        c = a < b && true;\n");
+
+            if (i > 0) {
+                code.append("        b = this.m").append(i - 1).append("(a);\n");
+            }
+
+            code.append("        io.println(b);\n");
+            code.append("        return a;\n");
+            code.append("    }\n\n");
+        }
+
+        code.append("    public static void main(String[] args) {\n");
+        code.append("    }\n");
+        code.append("}\n");
+
+        return code.toString();
+    }
+}
@@ -0,0 +1,168 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compiles several Java-- files in the same JVM, running each file through the whole pipeline on a pool of worker
+ * threads.
+ * <p>
+ * Every file is compiled independently, with its own parser, analysis, optimization and backend instances, so a
+ * failure in one file does not stop the others.
+ */
+public class BatchCompiler {
+
+    private final Map<String, String> config;
+    private final int threads;
+
+    public BatchCompiler(Map<String, String> config) {
+        this.config = config;
+        this.threads = CompilerConfig.getThreads(config);
+    }
+
+    /**
+     * Compiles the given files, returning once all of them have been processed.
+     *
+     * @param inputFiles the files to compile
+     * @return the outcome of each file, in the same order as the input
+     */
+    public BatchResult compile(List<File> inputFiles) {
+        long start = System.nanoTime();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, inputFiles.size())));
+
+        try {
+            var futures = new ArrayList<Future<FileOutcome>>();
+            for (var inputFile : inputFiles) {
+                futures.add(pool.submit(() -> compileFile(inputFile)));
+            }
+
+            var outcomes = new ArrayList<FileOutcome>();
+            for (int i = 0; i < futures.size(); i++) {
+                outcomes.add(getOutcome(inputFiles.get(i), futures.get(i)));
+            }
+
+            return new BatchResult(outcomes, threads, System.nanoTime() - start);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private FileOutcome compileFile(File inputFile) {
+        long start = System.nanoTime();
+        var stats = CompilerStats.fromConfig(config);
+
+        try {
+            String code = SpecsIo.read(inputFile);
+            Launcher.compile(code, CompilerConfig.forInputFile(config, inputFile), stats);
+
+            return new FileOutcome(inputFile, null, System.nanoTime() - start, stats);
+        } catch (Exception e) {
+            return new FileOutcome(inputFile, getMessage(e), System.nanoTime() - start, stats);
+        }
+    }
+
+    private FileOutcome getOutcome(File inputFile, Future<FileOutcome> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new FileOutcome(inputFile, "Interrupted while waiting for compilation", 0, CompilerStats.NONE);
+        } catch (ExecutionException e) {
+            return new FileOutcome(inputFile, getMessage(e.getCause()), 0, CompilerStats.NONE);
+        }
+    }
+
+    private static String getMessage(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    /**
+     * The result of compiling a single file of the batch.
+     *
+     * @param file        the compiled file
+     * @param failure     the reason the compilation failed, or null if it succeeded
+     * @param elapsedNano time spent compiling the file
+     * @param stats       resources used by each stage, recorded when '-s' is given
+     */
+    public record FileOutcome(File file, String failure, long elapsedNano, CompilerStats stats) {
+
+        public boolean isSuccess() {
+            return failure == null;
+        }
+    }
+
+    /**
+     * Aggregated result of a batch compilation.
+     */
+    public static class BatchResult {
+
+        private final List<FileOutcome> outcomes;
+        private final int threads;
+        private final long elapsedNano;
+
+        public BatchResult(List<FileOutcome> outcomes, int threads, long elapsedNano) {
+            this.outcomes = outcomes;
+            this.threads = threads;
+            this.elapsedNano = elapsedNano;
+        }
+
+        public List<FileOutcome> getOutcomes() {
+            return outcomes;
+        }
+
+        public int getNumFailed() {
+            return (int) outcomes.stream().filter(outcome -> !outcome.isSuccess()).count();
+        }
+
+        public String getSummary() {
+            var summary = new StringBuilder();
+
+            long elapsedMs = elapsedNano / 1_000_000;
+            int failed = getNumFailed();
+
+            summary.append("Compiled ").append(outcomes.size()).append(" file(s) in ").append(elapsedMs)
+                    .append(" ms using ").append(threads).append(" thread(s): ")
+                    .append(outcomes.size() - failed).append(" succeeded, ")
+                    .append(failed).append(" failed");
+
+            if (elapsedMs > 0) {
+                summary.append(String.format(" (%.1f files/s)", outcomes.size() * 1000.0 / elapsedMs));
+            }
+
+            for (var outcome : outcomes) {
+                if (outcome.isSuccess()) {
+                    continue;
+                }
+
+                summary.append("\n  FAILED ").append(outcome.file().getPath()).append(": ")
+                        .append(outcome.failure().lines().findFirst().orElse(""));
+            }
+
+            return summary.toString();
+        }
+
+        /**
+         * Statistics of the stages over the files that were compiled successfully.
+         *
+         * @param json true for JSON, false for a table
+         * @return the median, 95th percentile and maximum of each stage
+         */
+        public String getStats(boolean json) {
+            var stats = outcomes.stream()
+                    .filter(FileOutcome::isSuccess)
+                    .map(FileOutcome::stats)
+                    .toList();
+
+            return CompilerStats.formatAggregate(stats, json);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package pt.up.fe.comp2024;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of compilation results, addressed by the contents of what was compiled.
+ * <p>
+ * The key of an entry is a SHA-256 hash of the source code, of the options that change the generated code (see
+ * {@link CompilerConfig#getCodegenOptions(Map)}) and of a stamp of the compiler itself, so rebuilding the compiler
+ * invalidates every entry. Each entry keeps the AST, the OLLIR code and the Jasmin code of a successful compilation.
+ * <p>
+ * Entries are written to a temporary file and then moved into place, so several compilers, in this or in other
+ * processes, can share the same folder. When the folder grows over its maximum size, the least recently used entries
+ * are removed.
+ */
+public class CompilationCache {
+
+    private static final String ENTRY_EXTENSION = ".json";
+
+    /**
+     * After an eviction, the cache is left at this fraction of its maximum size, so that evictions do not happen on
+     * every new entry.
+     */
+    private static final double EVICTION_TARGET = 0.9;
+
+    private static final Gson GSON = new Gson();
+
+    // One instance per folder, so that every compilation of this process shares the same counters
+    private static final Map<Path, CompilationCache> CACHES = new ConcurrentHashMap<>();
+
+    private static volatile String compilerStamp;
+
+    /**
+     * A cached compilation.
+     *
+     * @param className  name of the compiled class
+     * @param ast        the AST of the source code, as JSON
+     * @param ollirCode  the generated OLLIR code
+     * @param jasminCode the generated Jasmin code
+     */
+    public record Entry(String className, String ast, String ollirCode, String jasminCode) {
+    }
+
+    private final Path folder;
+    private final long maxSize;
+
+    private final AtomicLong size;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private CompilationCache(Path folder, long maxSize) {
+        this.folder = folder;
+        this.maxSize = maxSize;
+
+        try {
+            Files.createDirectories(folder);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create cache folder '" + folder + "'", e);
+        }
+
+        this.size = new AtomicLong(listEntries().stream().mapToLong(CompilationCache::sizeOf).sum());
+    }
+
+    /**
+     * @param config
+     * @return the cache selected with '-k', if any
+     */
+    public static Optional<CompilationCache> fromConfig(Map<String, String> config) {
+        var maxSize = CompilerConfig.getCacheSize(config);
+
+        return CompilerConfig.getCacheDir(config)
+                .map(dir -> CACHES.computeIfAbsent(dir.toPath(), folder -> new CompilationCache(folder, maxSize)));
+    }
+
+    /**
+     * Computes the key of the compilation of the given code with the given options.
+     *
+     * @param code
+     * @param config
+     * @return
+     */
+    public String getKey(String code, Map<String, String> config) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+
+        digest.update(getCompilerStamp().getBytes(StandardCharsets.UTF_8));
+        for (var option : CompilerConfig.getCodegenOptions(config).entrySet()) {
+            digest.update((byte) 0);
+            digest.update((option.getKey() + "=" + option.getValue()).getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+        digest.update(code.getBytes(StandardCharsets.UTF_8));
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @param key
+     * @return the entry with the given key, if it is in the cache
+     */
+    public Optional<Entry> get(String key) {
+        var file = getFile(key);
+
+        try {
+            var entry = GSON.fromJson(Files.readString(file), Entry.class);
+
+            if (entry == null || entry.jasminCode() == null) {
+                throw new JsonParseException("Incomplete cache entry");
+            }
+
+            // The modification time orders the entries for eviction
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+
+            hits.incrementAndGet();
+            return Optional.of(entry);
+        } catch (IOException | JsonParseException e) {
+            // Missing or unreadable entries are treated as absent, and will be written again
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores an entry in the cache, replacing any entry with the same key.
+     *
+     * @param key
+     * @param entry
+     * @return the number of entries evicted to make room for this one
+     */
+    public int put(String key, Entry entry) {
+        var file = getFile(key);
+
+        try {
+            Files.createDirectories(file.getParent());
+
+            // Readers must never see a partially written entry
+            var tempFile = Files.createTempFile(file.getParent(), key, ".tmp");
+            try {
+                Files.writeString(tempFile, GSON.toJson(entry));
+                move(tempFile, file);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            // Failing to cache a result does not fail the compilation
+            return 0;
+        }
+
+        if (size.addAndGet(sizeOf(file)) > maxSize) {
+            return evict();
+        }
+
+        return 0;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public String getStatistics() {
+        return "Cache " + folder + ": " + getHits() + " hit(s), " + getMisses() + " miss(es), " + getEvictions()
+                + " eviction(s)";
+    }
+
+    /**
+     * Removes the least recently used entries, until the cache is below its target size.
+     *
+     * @return the number of entries removed
+     */
+    private synchronized int evict() {
+        // Other processes may also have added entries, so the actual contents of the folder are used
+        var entries = listEntries();
+        long currentSize = entries.stream().mapToLong(CompilationCache::sizeOf).sum();
+        long targetSize = (long) (maxSize * EVICTION_TARGET);
+
+        // Times are read once, since other processes may touch the entries while sorting
+        var lastUsed = new HashMap<Path, Long>();
+        entries.forEach(entry -> lastUsed.put(entry, lastModified(entry)));
+        entries.sort(Comparator.comparingLong(lastUsed::get));
+
+        int evicted = 0;
+        for (var entry : entries) {
+            if (currentSize <= targetSize) {
+                break;
+            }
+
+            long entrySize = sizeOf(entry);
+            try {
+                if (Files.deleteIfExists(entry)) {
+                    evictions.incrementAndGet();
+                    evicted++;
+                }
+            } catch (IOException e) {
+                // Entry is in use or was already removed, try the next one
+                continue;
+            }
+
+            currentSize -= entrySize;
+        }
+
+        size.set(currentSize);
+
+        return evicted;
+    }
+
+    private Path getFile(String key) {
+        // Entries are spread over sub-folders, so that no folder gets too many files
+        return folder.resolve(key.substring(0, 2)).resolve(key + ENTRY_EXTENSION);
+    }
+
+    private List<Path> listEntries() {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> path.toString().endsWith(ENTRY_EXTENSION))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException | UncheckedIOException e) {
+            // Files may disappear while walking the folder when it is shared by several processes
+            return new ArrayList<>();
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Identifies the build of the compiler, using the size and modification time of its class files (or of its jar).
+     * Any change to the compiler produces a different stamp, and therefore different keys.
+     *
+     * @return
+     */
+    private static String getCompilerStamp() {
+        var stamp = compilerStamp;
+
+        if (stamp == null) {
+            stamp = computeCompilerStamp();
+            compilerStamp = stamp;
+        }
+
+        return stamp;
+    }
+
+    private static String computeCompilerStamp() {
+        Path location;
+        try {
+            location = Path.of(CompilationCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException | SecurityException | NullPointerException e) {
+            return "unknown";
+        }
+
+        if (!Files.isDirectory(location)) {
+            var file = new File(location.toString());
+            return file.getName() + ":" + file.length() + ":" + file.lastModified();
+        }
+
+        try (Stream<Path> paths = Files.walk(location)) {
+            var stamp = new StringBuilder();
+
+            paths.filter(path -> path.toString().endsWith(".class"))
+                    .sorted()
+                    .forEach(path -> stamp.append(location.relativize(path)).append(':')
+                            .append(sizeOf(path)).append(':').append(lastModified(path)).append('\n'));
+
+            return stamp.toString();
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+}
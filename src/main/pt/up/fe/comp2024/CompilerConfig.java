@@ -1,15 +1,42 @@
 package pt.up.fe.comp2024;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class CompilerConfig {
 
     private static final String INPUT_FILE = "inputFile";
+    private static final String INPUT_FILES = "inputFiles";
     private static final String OPTIMIZE = "optimize";
     private static final String REGISTER = "registerAllocation";
+    private static final String ALLOCATOR = "allocator";
+    private static final String THREADS = "threads";
+    private static final String DAEMON = "daemon";
+    private static final String CLIENT = "client";
+    private static final String TIMEOUT = "timeout";
+    private static final String CACHE = "cache";
+    private static final String CACHE_SIZE = "cacheSize";
+    private static final String PARALLEL_ANALYSIS = "parallelAnalysis";
+    private static final String DIRECT_LOWERING = "directLowering";
+    private static final String ROTATE_LOOPS = "rotateLoops";
+    private static final String CLASS_FILE = "classFile";
+    private static final String STATS = "stats";
+
+    public static final int DEFAULT_DAEMON_PORT = 7461;
+
+    private static final String JMM_EXTENSION = ".jmm";
 
 
     static Map<String, String> shortToLong = new HashMap<>();
@@ -18,6 +45,18 @@ public class CompilerConfig {
         shortToLong.put("i", CompilerConfig.INPUT_FILE);
         shortToLong.put("o", CompilerConfig.OPTIMIZE);
         shortToLong.put("r", CompilerConfig.REGISTER);
+        shortToLong.put("a", CompilerConfig.ALLOCATOR);
+        shortToLong.put("j", CompilerConfig.THREADS);
+        shortToLong.put("d", CompilerConfig.DAEMON);
+        shortToLong.put("c", CompilerConfig.CLIENT);
+        shortToLong.put("t", CompilerConfig.TIMEOUT);
+        shortToLong.put("k", CompilerConfig.CACHE);
+        shortToLong.put("z", CompilerConfig.CACHE_SIZE);
+        shortToLong.put("p", CompilerConfig.PARALLEL_ANALYSIS);
+        shortToLong.put("l", CompilerConfig.DIRECT_LOWERING);
+        shortToLong.put("w", CompilerConfig.ROTATE_LOOPS);
+        shortToLong.put("f", CompilerConfig.CLASS_FILE);
+        shortToLong.put("s", CompilerConfig.STATS);
     }
 
 
@@ -32,12 +71,275 @@ public class CompilerConfig {
         return Optional.of(new File(inputFile));
     }
 
+    /**
+     * Returns every input file of the compilation, in the order they were given. Directories passed with '-i' have
+     * already been expanded to the '.jmm' files they contain.
+     *
+     * @param config
+     * @return
+     */
+    public static List<File> getInputFiles(Map<String, String> config) {
+        var inputFiles = config.get(INPUT_FILES);
+
+        if (inputFiles == null) {
+            return getInputFile(config).map(List::of).orElse(List.of());
+        }
+
+        return Arrays.stream(inputFiles.split(File.pathSeparator))
+                .map(File::new)
+                .toList();
+    }
+
+    /**
+     * @param config
+     * @return true if more than one file, or a directory, was given as input
+     */
+    public static boolean isBatch(Map<String, String> config) {
+        return config.containsKey(INPUT_FILES);
+    }
+
+    /**
+     * Number of worker threads used when compiling several files. '-j' without a value uses every available core.
+     *
+     * @param config
+     * @return
+     */
+    public static int getThreads(Map<String, String> config) {
+        var threads = config.getOrDefault(THREADS, "1");
+
+        if (threads.equals("true")) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        int value = Integer.parseInt(threads);
+        if (value < 1) {
+            throw new RuntimeException("Option '-j' expects a positive number of threads, got '" + threads + "'");
+        }
+
+        return value;
+    }
+
+    /**
+     * @param config
+     * @return true if '-d' was given, i.e. the launcher should start a compiler daemon instead of compiling
+     */
+    public static boolean isDaemon(Map<String, String> config) {
+        return config.containsKey(DAEMON);
+    }
+
+    /**
+     * @param config
+     * @return true if '-c' was given, i.e. the input should be compiled by an already running daemon
+     */
+    public static boolean isClient(Map<String, String> config) {
+        return config.containsKey(CLIENT);
+    }
+
+    /**
+     * Port of the compiler daemon, given as '-d=PORT' or '-c=PORT'. Without a value, the default port is used.
+     *
+     * @param config
+     * @return
+     */
+    public static int getDaemonPort(Map<String, String> config) {
+        var port = config.containsKey(DAEMON) ? config.get(DAEMON) : config.getOrDefault(CLIENT, "true");
+
+        if (port.equals("true")) {
+            return DEFAULT_DAEMON_PORT;
+        }
+
+        int value = Integer.parseInt(port);
+        if (value < 0 || value > 65535) {
+            throw new RuntimeException("Daemon port must be between 0 and 65535, got '" + port + "'");
+        }
+
+        return value;
+    }
+
+    /**
+     * Maximum time, in seconds, a single compilation may take in the daemon.
+     *
+     * @param config
+     * @return
+     */
+    public static int getTimeout(Map<String, String> config) {
+        var timeout = config.getOrDefault(TIMEOUT, "30");
+
+        int value = Integer.parseInt(timeout);
+        if (value < 1) {
+            throw new RuntimeException("Option '-t' expects a positive number of seconds, got '" + timeout + "'");
+        }
+
+        return value;
+    }
+
+    /**
+     * Folder of the compilation cache, given with '-k=DIR'. Without '-k' nothing is cached.
+     *
+     * @param config
+     * @return
+     */
+    public static Optional<File> getCacheDir(Map<String, String> config) {
+        var cacheDir = config.get(CACHE);
+
+        if (cacheDir == null) {
+            return Optional.empty();
+        }
+
+        if (cacheDir.equals("true")) {
+            throw new RuntimeException("Option '-k' expects the path to the cache folder, use '-k=<PATH_TO_FOLDER>'");
+        }
+
+        return Optional.of(new File(cacheDir).getAbsoluteFile());
+    }
+
+    /**
+     * Maximum size of the compilation cache, given in megabytes with '-z=SIZE'.
+     *
+     * @param config
+     * @return the maximum size in bytes
+     */
+    public static long getCacheSize(Map<String, String> config) {
+        var cacheSize = config.getOrDefault(CACHE_SIZE, "256");
+
+        long value = Long.parseLong(cacheSize);
+        if (value < 1) {
+            throw new RuntimeException("Option '-z' expects a positive size in megabytes, got '" + cacheSize + "'");
+        }
+
+        return value * 1024 * 1024;
+    }
+
+    /**
+     * Folder where class files are written, given with '-f=DIR'. With '-f' the class files are generated directly from
+     * OLLIR, without Jasmin.
+     *
+     * @param config
+     * @return
+     */
+    public static Optional<File> getClassFileDir(Map<String, String> config) {
+        var classFileDir = config.get(CLASS_FILE);
+
+        if (classFileDir == null) {
+            return Optional.empty();
+        }
+
+        if (classFileDir.equals("true")) {
+            throw new RuntimeException("Option '-f' expects the path to the output folder, use '-f=<PATH_TO_FOLDER>'");
+        }
+
+        return Optional.of(new File(classFileDir).getAbsoluteFile());
+    }
+
+    /**
+     * @param config
+     * @return true if '-s' was given, i.e. the time and memory used by each stage should be printed
+     */
+    public static boolean getStats(Map<String, String> config) {
+        return config.containsKey(STATS);
+    }
+
+    /**
+     * Format of the statistics, '-s' prints a table and '-s=json' prints JSON.
+     *
+     * @param config
+     * @return true if the statistics should be printed as JSON
+     */
+    public static boolean getStatsJson(Map<String, String> config) {
+        var format = config.getOrDefault(STATS, "true");
+
+        if (!format.equals("true") && !format.equals("table") && !format.equals("json")) {
+            throw new RuntimeException("Option '-s' expects 'table' or 'json', got '" + format + "'");
+        }
+
+        return format.equals("json");
+    }
+
+    /**
+     * Options that change the generated code. Two compilations of the same source with the same values for these
+     * options produce the same output.
+     *
+     * @param config
+     * @return the options, sorted by name
+     */
+    public static Map<String, String> getCodegenOptions(Map<String, String> config) {
+        var options = new TreeMap<String, String>();
+
+        options.put(OPTIMIZE, String.valueOf(getOptimize(config)));
+        options.put(REGISTER, String.valueOf(getRegisterAllocation(config)));
+        options.put(ALLOCATOR, getAllocator(config));
+        options.put(DIRECT_LOWERING, String.valueOf(getDirectLowering(config)));
+        options.put(ROTATE_LOOPS, String.valueOf(getRotateLoops(config)));
+
+        return options;
+    }
+
+    /**
+     * @param config
+     * @return true if '-p' was given, i.e. semantic analysis should split the work of each class by method, over
+     * several threads
+     */
+    public static boolean getParallelAnalysis(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(PARALLEL_ANALYSIS, "false"));
+    }
+
+    /**
+     * @param config
+     * @return true if '-l' was given, i.e. the AST should be lowered directly into OLLIR classes, without generating
+     * and parsing OLLIR code
+     */
+    public static boolean getDirectLowering(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(DIRECT_LOWERING, "false"));
+    }
+
+    /**
+     * Whether while loops test their condition at the bottom, both in the direct lowering and in the OLLIR text.
+     * '-w=false' keeps the condition at the top, with a goto back to it at the end of the body.
+     *
+     * @param config
+     * @return
+     */
+    public static boolean getRotateLoops(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(ROTATE_LOOPS, "true"));
+    }
+
     public static boolean getOptimize(Map<String, String> config) {
         return Boolean.parseBoolean(config.getOrDefault(OPTIMIZE, "false"));
     }
 
+    /**
+     * Number of JVM local variable slots each method may use. '-r=0' uses as few slots as possible, and the default,
+     * -1, keeps one slot per OLLIR variable.
+     *
+     * @param config
+     * @return
+     */
     public static int getRegisterAllocation(Map<String, String> config) {
-        return Integer.parseInt(config.getOrDefault(REGISTER, "-1"));
+        var registers = config.getOrDefault(REGISTER, "-1");
+
+        int value = Integer.parseInt(registers);
+        if (value < -1) {
+            throw new RuntimeException("Option '-r' expects a number of registers of at least -1, got '" + registers + "'");
+        }
+
+        return value;
+    }
+
+    /**
+     * Register allocator used with '-r': 'coloring', 'linear' (linear scan), or 'auto', the default, which uses linear
+     * scan only for methods too large for graph colouring.
+     *
+     * @param config
+     * @return
+     */
+    public static String getAllocator(Map<String, String> config) {
+        var allocator = config.getOrDefault(ALLOCATOR, "auto");
+
+        if (!allocator.equals("auto") && !allocator.equals("coloring") && !allocator.equals("linear")) {
+            throw new RuntimeException("Option '-a' expects 'auto', 'coloring' or 'linear', got '" + allocator + "'");
+        }
+
+        return allocator;
     }
 
 
@@ -47,6 +349,7 @@ public class CompilerConfig {
 
         config.put(CompilerConfig.OPTIMIZE, "false");
         config.put(CompilerConfig.REGISTER, "-1");
+        config.put(CompilerConfig.THREADS, "1");
 
         return config;
     }
@@ -66,6 +369,9 @@ public class CompilerConfig {
         // default options for config
         var config = getDefault();
 
+        // '-i' can be given several times, each value being a file or a directory
+        var inputs = new ArrayList<String>();
+
         for (String arg : args) {
 
             if (!arg.startsWith("-")) {
@@ -86,29 +392,103 @@ public class CompilerConfig {
                 }
             }
 
+            if (getLongOpt(shortOption).equals(INPUT_FILE)) {
+                inputs.add(value);
+                continue;
+            }
+
             config.put(getLongOpt(shortOption), value);
         }
 
-        if (!config.containsKey(INPUT_FILE)) {
+        // the daemon receives its input files from the clients
+        if (isDaemon(config)) {
+            getDaemonPort(config);
+            getThreads(config);
+            getTimeout(config);
+
+            return config;
+        }
+
+        if (inputs.isEmpty()) {
 
             throw new RuntimeException("Expected an input file, use '-i=<PATH_TO_FILE>'");
         }
 
-        // make sure we save the absolute path of the input file
-        var inputFile = new File(config.get(INPUT_FILE));
-        if (!inputFile.isFile()) {
-            throw new RuntimeException("Could not find input file '" + inputFile + "'");
+        // make sure we save the absolute path of the input files
+        var inputFiles = new ArrayList<File>();
+        for (var input : inputs) {
+            var inputFile = new File(input);
+
+            if (inputFile.isDirectory()) {
+                inputFiles.addAll(collectJmmFiles(inputFile));
+                continue;
+            }
+
+            if (!inputFile.isFile()) {
+                throw new RuntimeException("Could not find input file '" + inputFile + "'");
+            }
+
+            inputFiles.add(inputFile.getAbsoluteFile());
+        }
+
+        if (inputFiles.isEmpty()) {
+            throw new RuntimeException("Could not find any '" + JMM_EXTENSION + "' file in " + inputs);
         }
 
-        var absolutePath = inputFile.getAbsolutePath();
-        config.put(INPUT_FILE, absolutePath);
+        config.put(INPUT_FILE, inputFiles.get(0).getPath());
+
+        // several inputs (or a directory) switch the launcher to batch mode
+        boolean hasDirectory = inputs.stream().anyMatch(input -> new File(input).isDirectory());
+        if (inputFiles.size() > 1 || hasDirectory) {
+            config.put(INPUT_FILES, inputFiles.stream()
+                    .map(File::getPath)
+                    .collect(Collectors.joining(File.pathSeparator)));
+        }
 
         // Verify if values are valid
         getOptimize(config);
         getRegisterAllocation(config);
+        getAllocator(config);
+        getThreads(config);
+        getCacheDir(config);
+        getCacheSize(config);
+        getClassFileDir(config);
+        getStatsJson(config);
+
+        if (isClient(config)) {
+            getDaemonPort(config);
+        }
 
         return config;
     }
 
+    /**
+     * Returns a copy of the given configuration that compiles only the given file.
+     *
+     * @param config
+     * @param inputFile
+     * @return
+     */
+    public static Map<String, String> forInputFile(Map<String, String> config, File inputFile) {
+        var fileConfig = new HashMap<>(config);
+
+        fileConfig.remove(INPUT_FILES);
+        fileConfig.put(INPUT_FILE, inputFile.getAbsolutePath());
+
+        return fileConfig;
+    }
+
+    private static List<File> collectJmmFiles(File folder) {
+        try (Stream<Path> paths = Files.walk(folder.toPath())) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> path.toString().endsWith(JMM_EXTENSION))
+                    .sorted()
+                    .map(path -> path.toFile().getAbsoluteFile())
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list input folder '" + folder + "'", e);
+        }
+    }
+
 
 }
@@ -0,0 +1,332 @@
+package pt.up.fe.comp2024;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-lived compiler process that accepts compilation requests on a loopback socket.
+ * <p>
+ * Keeping the JVM alive between compilations avoids paying, on every file, for class loading, the deserialization of
+ * the ANTLR ATN and the warm-up of the JIT. Each connection carries a single request, encoded as one line of JSON, and
+ * receives a single line of JSON as answer (see {@link Request} and {@link Response}).
+ * <p>
+ * Compilations run on a fixed number of workers with a bounded queue. When the queue is full the request is answered
+ * immediately with {@link Status#BUSY}, and a request that takes longer than the configured timeout is answered with
+ * {@link Status#TIMEOUT}. Its worker is interrupted, and the compilation stops at the end of the stage it is in, so
+ * that the worker can take the next request.
+ */
+public class CompilerDaemon implements AutoCloseable {
+
+    /**
+     * Number of requests that may wait in the queue for each worker.
+     */
+    private static final int QUEUE_PER_WORKER = 4;
+
+    /**
+     * Number of times the warm-up program is compiled when the daemon starts.
+     */
+    private static final int WARM_UP_ROUNDS = 20;
+
+    // Uses every stage of the compiler, so that the classes they need are loaded before the first request arrives
+    private static final String WARM_UP_CODE = """
+            import io;
+
+            class WarmUp {
+                int count;
+
+                public int sum(int a, int b) {
+                    int total;
+                    int step;
+                    total = a;
+                    step = 2;
+                    total = total * step;
+                    while (total < step) {
+                        total = total + 1;
+                    }
+                    return total;
+                }
+
+                public static void main(String[] args) {
+                    WarmUp w;
+                    int[] values;
+                    boolean small;
+                    w = new WarmUp();
+                    values = new int[3];
+                    small = 1 < 2;
+                    if (small) {
+                        io.println(w.sum(2, 3));
+                    } else {
+                        io.println(0);
+                    }
+                }
+            }
+            """;
+
+    private static final Gson GSON = new Gson();
+
+    public enum Status {
+        OK,
+        ERROR,
+        BUSY,
+        TIMEOUT
+    }
+
+    /**
+     * A compilation request sent by a client.
+     */
+    public static class Request {
+        String code;
+        Map<String, String> config;
+
+        public Request(String code, Map<String, String> config) {
+            this.code = code;
+            this.config = config;
+        }
+    }
+
+    /**
+     * The answer of the daemon to a {@link Request}. When the status is {@link Status#OK} the generated Jasmin code is
+     * included, otherwise the message describes what went wrong. When the request asked for statistics with '-s', they
+     * are included already formatted.
+     */
+    public static class Response {
+        Status status;
+        String message;
+        String jasminCode;
+        long elapsedMs;
+        String stats;
+
+        public Response(Status status, String message, String jasminCode, long elapsedMs) {
+            this(status, message, jasminCode, elapsedMs, null);
+        }
+
+        public Response(Status status, String message, String jasminCode, long elapsedMs, String stats) {
+            this.status = status;
+            this.message = message;
+            this.jasminCode = jasminCode;
+            this.elapsedMs = elapsedMs;
+            this.stats = stats;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getJasminCode() {
+            return jasminCode;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        public String getStats() {
+            return stats;
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService connections;
+    private final int timeoutSeconds;
+
+    public CompilerDaemon(Map<String, String> config) throws IOException {
+        int threads = CompilerConfig.getThreads(config);
+
+        this.timeoutSeconds = CompilerConfig.getTimeout(config);
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUE_PER_WORKER), daemonThreads("jmm-worker"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.connections = Executors.newCachedThreadPool(daemonThreads("jmm-connection"));
+
+        // Only local clients may connect
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), CompilerConfig.getDaemonPort(config)));
+    }
+
+    /**
+     * @return the port the daemon is listening on, useful when it was started on port 0
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Compiles a small program several times, so that the first real request already finds a warm compiler.
+     */
+    public void warmUp() {
+        var config = CompilerConfig.getDefault();
+
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            try {
+                Launcher.compile(WARM_UP_CODE, config);
+            } catch (RuntimeException e) {
+                // Warm-up is best effort, a failure here only means a slower first request
+                return;
+            }
+        }
+    }
+
+    /**
+     * Accepts connections until the daemon is closed.
+     */
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                // Socket was closed while waiting for a connection
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+
+                throw e;
+            }
+
+            connections.submit(() -> handle(socket));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             var in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             var out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+
+            // A client that never sends its request must not hold the connection forever
+            socket.setSoTimeout(timeoutSeconds * 1000);
+
+            var response = process(in.readLine());
+
+            out.println(GSON.toJson(response));
+            out.flush();
+        } catch (IOException e) {
+            // The client went away, there is no one left to answer to
+        }
+    }
+
+    private Response process(String line) {
+        long start = System.nanoTime();
+
+        Request request;
+        try {
+            request = line == null ? null : GSON.fromJson(line, Request.class);
+        } catch (JsonParseException e) {
+            request = null;
+        }
+
+        if (request == null || request.code == null) {
+            return new Response(Status.ERROR, "Malformed request", null, elapsedMs(start));
+        }
+
+        // Options of the client replace the defaults, the daemon options themselves do not apply to the compilation
+        var config = CompilerConfig.getDefault();
+        if (request.config != null) {
+            config.putAll(request.config);
+        }
+
+        var code = request.code;
+        var stats = CompilerStats.fromConfig(config);
+
+        Future<String> compilation;
+        try {
+            compilation = workers.submit(() -> Launcher.compile(code, config, stats).getJasminCode());
+        } catch (RejectedExecutionException e) {
+            return new Response(Status.BUSY, "Compiler daemon is busy, try again later", null, elapsedMs(start));
+        }
+
+        try {
+            var jasminCode = compilation.get(timeoutSeconds, TimeUnit.SECONDS);
+            var formattedStats = stats.isEnabled() ? stats.format(CompilerConfig.getStatsJson(config)) : null;
+            return new Response(Status.OK, null, jasminCode, elapsedMs(start), formattedStats);
+        } catch (TimeoutException e) {
+            // Launcher checks for the interrupt between stages
+            compilation.cancel(true);
+            return new Response(Status.TIMEOUT, "Compilation took more than " + timeoutSeconds + " seconds", null,
+                    elapsedMs(start));
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            var message = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+            return new Response(Status.ERROR, message, null, elapsedMs(start));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            compilation.cancel(true);
+            return new Response(Status.ERROR, "Compiler daemon is shutting down", null, elapsedMs(start));
+        }
+    }
+
+    /**
+     * Sends a compilation request to a daemon running on this machine.
+     *
+     * @param port   the port of the daemon
+     * @param code   the Java-- code to compile
+     * @param config the options of the compilation
+     * @return the answer of the daemon
+     */
+    public static Response request(int port, String code, Map<String, String> config) throws IOException {
+        try (var socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             var in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             var out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+
+            out.println(GSON.toJson(new Request(code, new HashMap<>(config))));
+            out.flush();
+
+            var line = in.readLine();
+            if (line == null) {
+                throw new IOException("Compiler daemon closed the connection without answering");
+            }
+
+            return GSON.fromJson(line, Response.class);
+        }
+    }
+
+    private static long elapsedMs(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        var counter = new AtomicInteger();
+
+        return runnable -> {
+            var thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
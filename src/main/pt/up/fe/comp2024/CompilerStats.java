@@ -0,0 +1,289 @@
+package pt.up.fe.comp2024;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Time and memory spent in each stage of a compilation, enabled with '-s'.
+ * <p>
+ * Each stage records the elapsed wall time, the CPU time and the bytes allocated by the thread that ran it, together
+ * with counts of what the stage produced (nodes, instructions, bytes, cache hits). Stages recorded more than once with
+ * the same name, such as an analysis pass that runs on several threads, are added together.
+ * <p>
+ * {@link #NONE} records nothing, and is used when '-s' is not given.
+ */
+public class CompilerStats {
+
+    public static final CompilerStats NONE = new CompilerStats(false);
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final boolean enabled;
+    private final Map<String, Stage> stages;
+
+    public CompilerStats() {
+        this(true);
+    }
+
+    private CompilerStats(boolean enabled) {
+        this.enabled = enabled;
+        this.stages = new LinkedHashMap<>();
+    }
+
+    /**
+     * @param config
+     * @return new statistics if '-s' was given, or {@link #NONE}
+     */
+    public static CompilerStats fromConfig(Map<String, String> config) {
+        return CompilerConfig.getStats(config) ? new CompilerStats() : NONE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the recorded stages, in the order they were first recorded
+     */
+    public List<Stage> getStages() {
+        return new ArrayList<>(stages.values());
+    }
+
+    /**
+     * Runs a stage of the compilation, recording the resources it used.
+     *
+     * @param name   name of the stage
+     * @param stage  the work of the stage
+     * @param counts what the stage produced, computed from its result after the measurement
+     * @return the result of the stage
+     */
+    public <T> T measure(String name, Supplier<T> stage, Function<T, Map<String, Long>> counts) {
+        if (!enabled) {
+            return stage.get();
+        }
+
+        var start = Usage.now();
+        var result = stage.get();
+        var usage = Usage.now().minus(start);
+
+        add(name, usage, counts.apply(result));
+
+        return result;
+    }
+
+    /**
+     * Adds the resources used by a stage. If the stage was already recorded, the usage and counts are added to it.
+     *
+     * @param name
+     * @param usage
+     * @param counts
+     */
+    public void add(String name, Usage usage, Map<String, Long> counts) {
+        if (!enabled) {
+            return;
+        }
+
+        var previous = stages.get(name);
+        if (previous == null) {
+            stages.put(name, new Stage(name, usage, new LinkedHashMap<>(counts)));
+            return;
+        }
+
+        var mergedCounts = new LinkedHashMap<>(previous.counts());
+        counts.forEach((key, value) -> mergedCounts.merge(key, value, Long::sum));
+
+        stages.put(name, new Stage(name, previous.usage().plus(usage), mergedCounts));
+    }
+
+    /**
+     * @param json true for JSON, false for a table
+     * @return the recorded stages
+     */
+    public String format(boolean json) {
+        if (json) {
+            var root = new JsonObject();
+            var array = new JsonArray();
+
+            for (var stage : stages.values()) {
+                var object = new JsonObject();
+                object.addProperty("stage", stage.name());
+                object.addProperty("wallNanos", stage.usage().wallNanos());
+                object.addProperty("cpuNanos", stage.usage().cpuNanos());
+                object.addProperty("allocatedBytes", stage.usage().allocatedBytes());
+
+                var counts = new JsonObject();
+                stage.counts().forEach(counts::addProperty);
+                object.add("counts", counts);
+
+                array.add(object);
+            }
+
+            root.add("stages", array);
+
+            return new GsonBuilder().setPrettyPrinting().create().toJson(root);
+        }
+
+        var table = new StringBuilder();
+        table.append(String.format("%-32s %10s %10s %12s  %s%n", "stage", "wall ms", "cpu ms", "alloc KB", "counts"));
+
+        for (var stage : stages.values()) {
+            var counts = new StringBuilder();
+            stage.counts().forEach((key, value) -> counts.append(key).append('=').append(value).append(' '));
+
+            table.append(String.format("%-32s %10.3f %10.3f %12s  %s%n", stage.name(),
+                    stage.usage().wallNanos() / 1e6, stage.usage().cpuNanos() / 1e6,
+                    formatKb(stage.usage().allocatedBytes()), counts.toString().trim()));
+        }
+
+        return table.toString();
+    }
+
+    /**
+     * Aggregates the statistics of several compilations, giving the median, 95th percentile and maximum of each stage,
+     * and the total of its counts (e.g. the hits and misses of the compilation cache over every file).
+     *
+     * @param compilations statistics of each compilation
+     * @param json         true for JSON, false for a table
+     * @return
+     */
+    public static String formatAggregate(List<CompilerStats> compilations, boolean json) {
+        // Stages in the order they first appear, with the usage of each compilation that ran them
+        var usages = new LinkedHashMap<String, List<Usage>>();
+        var totals = new LinkedHashMap<String, Map<String, Long>>();
+        for (var compilation : compilations) {
+            for (var stage : compilation.stages.values()) {
+                usages.computeIfAbsent(stage.name(), key -> new ArrayList<>()).add(stage.usage());
+
+                var stageTotals = totals.computeIfAbsent(stage.name(), key -> new LinkedHashMap<>());
+                stage.counts().forEach((key, value) -> stageTotals.merge(key, value, Long::sum));
+            }
+        }
+
+        if (json) {
+            var root = new JsonObject();
+            root.addProperty("files", compilations.size());
+
+            var array = new JsonArray();
+            usages.forEach((name, stageUsages) -> {
+                var object = new JsonObject();
+                object.addProperty("stage", name);
+                object.addProperty("runs", stageUsages.size());
+                object.add("wallNanos", toJson(percentiles(stageUsages, Usage::wallNanos)));
+                object.add("cpuNanos", toJson(percentiles(stageUsages, Usage::cpuNanos)));
+                object.add("allocatedBytes", toJson(percentiles(stageUsages, Usage::allocatedBytes)));
+
+                var counts = new JsonObject();
+                totals.get(name).forEach(counts::addProperty);
+                object.add("counts", counts);
+                array.add(object);
+            });
+            root.add("stages", array);
+
+            return new GsonBuilder().setPrettyPrinting().create().toJson(root);
+        }
+
+        var table = new StringBuilder();
+        table.append("Statistics of ").append(compilations.size()).append(" file(s), p50 / p95 / max")
+                .append(System.lineSeparator());
+        table.append(String.format("%-32s %6s %26s %26s %32s  %s%n", "stage", "runs", "wall ms", "cpu ms", "alloc KB",
+                "counts"));
+
+        usages.forEach((name, stageUsages) -> {
+            var wall = percentiles(stageUsages, Usage::wallNanos);
+            var cpu = percentiles(stageUsages, Usage::cpuNanos);
+            var alloc = percentiles(stageUsages, Usage::allocatedBytes);
+
+            var counts = new StringBuilder();
+            totals.get(name).forEach((key, value) -> counts.append(key).append('=').append(value).append(' '));
+
+            table.append(String.format("%-32s %6d %8.3f %8.3f %8.3f %8.3f %8.3f %8.3f %10s %10s %10s  %s%n", name,
+                    stageUsages.size(),
+                    wall[0] / 1e6, wall[1] / 1e6, wall[2] / 1e6,
+                    cpu[0] / 1e6, cpu[1] / 1e6, cpu[2] / 1e6,
+                    formatKb(alloc[0]), formatKb(alloc[1]), formatKb(alloc[2]), counts.toString().trim()));
+        });
+
+        return table.toString();
+    }
+
+    /**
+     * @return the 50th and 95th percentiles, using the nearest rank, and the maximum of the given values
+     */
+    static long[] percentiles(List<Usage> usages, Function<Usage, Long> value) {
+        var values = usages.stream().mapToLong(value::apply).sorted().toArray();
+
+        return new long[]{percentile(values, 50), percentile(values, 95), values[values.length - 1]};
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static JsonObject toJson(long[] percentiles) {
+        var object = new JsonObject();
+        object.addProperty("p50", percentiles[0]);
+        object.addProperty("p95", percentiles[1]);
+        object.addProperty("max", percentiles[2]);
+
+        return object;
+    }
+
+    private static String formatKb(long bytes) {
+        return bytes < 0 ? "-" : String.format("%.1f", bytes / 1024.0);
+    }
+
+    /**
+     * Resources used by a stage. Allocated bytes are -1 when the JVM cannot measure them.
+     */
+    public record Usage(long wallNanos, long cpuNanos, long allocatedBytes) {
+
+        public static final Usage ZERO = new Usage(0, 0, 0);
+
+        /**
+         * @return the resources used so far by the current thread, and the current time
+         */
+        public static Usage now() {
+            long cpu = THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+            long allocated = THREADS instanceof com.sun.management.ThreadMXBean sunThreads
+                    && sunThreads.isThreadAllocatedMemoryEnabled() ? sunThreads.getCurrentThreadAllocatedBytes() : -1;
+
+            return new Usage(System.nanoTime(), cpu, allocated);
+        }
+
+        public Usage plus(Usage other) {
+            return new Usage(wallNanos + other.wallNanos, cpuNanos + other.cpuNanos,
+                    allocatedBytes < 0 || other.allocatedBytes < 0 ? -1 : allocatedBytes + other.allocatedBytes);
+        }
+
+        public Usage minus(Usage other) {
+            return new Usage(wallNanos - other.wallNanos, cpuNanos - other.cpuNanos,
+                    allocatedBytes < 0 || other.allocatedBytes < 0 ? -1 : allocatedBytes - other.allocatedBytes);
+        }
+    }
+
+    /**
+     * A recorded stage.
+     *
+     * @param name   name of the stage
+     * @param usage  resources used by the stage
+     * @param counts what the stage produced
+     */
+    public record Stage(String name, Usage usage, Map<String, Long> counts) {
+
+        public Stage {
+            counts = Collections.unmodifiableMap(counts);
+        }
+    }
+}
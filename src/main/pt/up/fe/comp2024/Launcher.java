@@ -1,61 +1,288 @@
 package pt.up.fe.comp2024;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmSerializer;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.backend.ClassFileBackend;
+import pt.up.fe.comp2024.backend.ClassFileResult;
 import pt.up.fe.comp2024.backend.JasminBackendImpl;
 import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
+import pt.up.fe.comp2024.optimization.OllirPrinter;
 import pt.up.fe.comp2024.parser.JmmParserImpl;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsSystem;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 public class Launcher {
 
+    private static final Gson AST_GSON = new GsonBuilder()
+            .registerTypeAdapter(JmmNode.class, new JmmSerializer())
+            .create();
+
     public static void main(String[] args) {
         SpecsSystem.programStandardInit();
 
         Map<String, String> config = CompilerConfig.parseArgs(args);
 
+        // Long-lived process that compiles the files sent by clients
+        if (CompilerConfig.isDaemon(config)) {
+            runDaemon(config);
+            return;
+        }
+
+        // The files are compiled by an already running daemon
+        if (CompilerConfig.isClient(config)) {
+            for (var inputFile : CompilerConfig.getInputFiles(config)) {
+                compileWithDaemon(inputFile, config);
+            }
+
+            return;
+        }
+
+        // Several inputs, or a directory, are compiled on a worker pool
+        if (CompilerConfig.isBatch(config)) {
+            var batch = new BatchCompiler(config);
+            var result = batch.compile(CompilerConfig.getInputFiles(config));
+
+            System.out.println(result.getSummary());
+            if (CompilerConfig.getStats(config)) {
+                System.out.println(result.getStats(CompilerConfig.getStatsJson(config)));
+            }
+
+            if (result.getNumFailed() > 0) {
+                throw new RuntimeException("Batch compilation failed for " + result.getNumFailed() + " file(s)");
+            }
+
+            return;
+        }
+
         var inputFile = CompilerConfig.getInputFile(config).orElseThrow();
         if (!inputFile.isFile()) {
             throw new RuntimeException("Option '-i' expects a path to an existing input file, got '" + args[0] + "'.");
         }
         String code = SpecsIo.read(inputFile);
 
+        var stats = CompilerStats.fromConfig(config);
+        compile(code, config, stats);
+
+        if (stats.isEnabled()) {
+            System.out.println(stats.format(CompilerConfig.getStatsJson(config)));
+        }
+    }
+
+    private static void runDaemon(Map<String, String> config) {
+        try (var daemon = new CompilerDaemon(config)) {
+            daemon.warmUp();
+            System.out.println("Compiler daemon listening on port " + daemon.getPort());
+            daemon.serve();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not run the compiler daemon", e);
+        }
+    }
+
+    private static void compileWithDaemon(File inputFile, Map<String, String> config) {
+        String code = SpecsIo.read(inputFile);
+
+        CompilerDaemon.Response response;
+        try {
+            response = CompilerDaemon.request(CompilerConfig.getDaemonPort(config), code,
+                    CompilerConfig.forInputFile(config, inputFile));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not reach the compiler daemon, start it with '-d'", e);
+        }
+
+        if (response.getStatus() != CompilerDaemon.Status.OK) {
+            throw new RuntimeException(response.getStatus() + " while compiling '" + inputFile + "': "
+                    + response.getMessage());
+        }
+
+        // The statistics were recorded by the daemon, when asked for with '-s'
+        if (response.getStats() != null) {
+            System.out.println(response.getStats());
+        }
+    }
+
+    /**
+     * Runs every stage of the compiler over the given code, throwing if any stage reports an error.
+     *
+     * @param code   the Java-- code to compile
+     * @param config the compiler options
+     * @return the result of the last stage
+     */
+    public static JasminResult compile(String code, Map<String, String> config) {
+        return compile(code, config, CompilerStats.NONE);
+    }
+
+    /**
+     * Runs every stage of the compiler over the given code, recording the resources used by each stage.
+     *
+     * @param code   the Java-- code to compile
+     * @param config the compiler options
+     * @param stats  where the statistics of each stage are recorded
+     * @return the result of the last stage
+     */
+    public static JasminResult compile(String code, Map<String, String> config, CompilerStats stats) {
+
+        // Class files are written directly, the cache only holds Jasmin code
+        if (CompilerConfig.getClassFileDir(config).isPresent()) {
+            var classFile = compileToClassFile(code, config, stats);
+            return new JasminResult(classFile.getClassName(), "", classFile.getReports(), config);
+        }
+
+        // Identical sources compiled with the same options are served from the cache
+        var cache = CompilationCache.fromConfig(config);
+        var cacheKey = cache.map(c -> c.getKey(code, config));
+
+        if (cache.isPresent()) {
+            var entry = stats.measure("cache lookup", () -> cache.get().get(cacheKey.get()),
+                    result -> Map.of("hits", result.isPresent() ? 1L : 0L, "misses", result.isPresent() ? 0L : 1L));
+            if (entry.isPresent()) {
+                return new JasminResult(entry.get().className(), entry.get().jasminCode(), new ArrayList<>(), config);
+            }
+        }
+
         // Parsing stage
         JmmParserImpl parser = new JmmParserImpl();
-        JmmParserResult parserResult = parser.parse(code, config);
+        JmmParserResult parserResult = stats.measure("parse", () -> parser.parse(code, config),
+                result -> Map.of("nodes", countNodes(result.getRootNode())));
         TestUtils.noErrors(parserResult.getReports());
+        checkInterrupted();
 
         // Print AST
         //System.out.println(parserResult.getRootNode().toTree());
 
+        OllirResult ollirResult = toOllir(parserResult, stats);
+
+        // Print OLLIR code
+        //System.out.println(ollirResult.getOllirCode());
+
+        // Code generation stage
+        JasminBackendImpl jasminGen = new JasminBackendImpl();
+        JasminResult jasminResult = stats.measure("jasmin", () -> jasminGen.toJasmin(ollirResult),
+                result -> Map.of("bytes", (long) result.getJasminCode().getBytes(StandardCharsets.UTF_8).length));
+        TestUtils.noErrors(jasminResult.getReports());
+
+        // Print Jasmin code
+        //System.out.println(jasminResult.getJasminCode());
+
+        if (cache.isPresent()) {
+            stats.measure("cache store", () -> {
+                var ast = AST_GSON.toJson(parserResult.getRootNode(), JmmNode.class);
+                return cache.get().put(cacheKey.get(), new CompilationCache.Entry(jasminResult.getClassName(), ast,
+                        OllirPrinter.getOllirCode(ollirResult), jasminResult.getJasminCode()));
+            }, evicted -> Map.of("evictions", (long) evicted));
+        }
+
+        return jasminResult;
+    }
+
+    /**
+     * Compiles the given code into a class file, written to the folder given with '-f'. Jasmin is not used, the Jasmin
+     * code of the class is still available from the result.
+     *
+     * @param code   the Java-- code to compile
+     * @param config the compiler options
+     * @return the generated class file
+     */
+    public static ClassFileResult compileToClassFile(String code, Map<String, String> config) {
+        return compileToClassFile(code, config, CompilerStats.NONE);
+    }
+
+    /**
+     * Compiles the given code into a class file, recording the resources used by each stage.
+     *
+     * @param code   the Java-- code to compile
+     * @param config the compiler options
+     * @param stats  where the statistics of each stage are recorded
+     * @return the generated class file
+     */
+    public static ClassFileResult compileToClassFile(String code, Map<String, String> config, CompilerStats stats) {
+
+        // Parsing stage
+        JmmParserImpl parser = new JmmParserImpl();
+        JmmParserResult parserResult = stats.measure("parse", () -> parser.parse(code, config),
+                result -> Map.of("nodes", countNodes(result.getRootNode())));
+        TestUtils.noErrors(parserResult.getReports());
+        checkInterrupted();
+
+        OllirResult ollirResult = toOllir(parserResult, stats);
+
+        // Code generation stage
+        ClassFileBackend classFileGen = new ClassFileBackend();
+        ClassFileResult classFileResult = stats.measure("class file", () -> classFileGen.toClassFile(ollirResult),
+                result -> Map.of("bytes", (long) result.getBytes().length));
+        TestUtils.noErrors(classFileResult.getReports());
+
+        CompilerConfig.getClassFileDir(config).ifPresent(classFileResult::write);
+
+        return classFileResult;
+    }
+
+    /**
+     * Runs the semantic analysis and optimization stages.
+     */
+    private static OllirResult toOllir(JmmParserResult parserResult, CompilerStats stats) {
+
         // Semantic Analysis stage
-        JmmAnalysisImpl sema = new JmmAnalysisImpl();
+        JmmAnalysisImpl sema = new JmmAnalysisImpl(stats);
         JmmSemanticsResult semanticsResult = sema.semanticAnalysis(parserResult);
         TestUtils.noErrors(semanticsResult.getReports());
+        checkInterrupted();
 
 
         // Optimization stage
         JmmOptimizationImpl ollirGen = new JmmOptimizationImpl();
-        OllirResult ollirResult = ollirGen.toOllir(semanticsResult);
+        JmmSemanticsResult optimizedSemantics = stats.measure("optimizeAst", () -> ollirGen.optimize(semanticsResult),
+                result -> Map.of("nodes", countNodes(result.getRootNode())));
+        checkInterrupted();
+
+        OllirResult ollirResult = stats.measure("ollir", () -> ollirGen.toOllir(optimizedSemantics),
+                result -> Map.of("instructions", countInstructions(result)));
         TestUtils.noErrors(ollirResult.getReports());
+        checkInterrupted();
 
-        // Print OLLIR code
-        //System.out.println(ollirResult.getOllirCode());
+        OllirResult optimizedResult = stats.measure("optimize", () -> ollirGen.optimize(ollirResult),
+                result -> Map.of("instructions", countInstructions(result)));
+        TestUtils.noErrors(optimizedResult.getReports());
+        checkInterrupted();
 
-        // Code generation stage
-        JasminBackendImpl jasminGen = new JasminBackendImpl();
-        JasminResult jasminResult = jasminGen.toJasmin(ollirResult);
-        TestUtils.noErrors(jasminResult.getReports());
+        return optimizedResult;
+    }
 
-        // Print Jasmin code
-        //System.out.println(jasminResult.getJasminCode());
+    /**
+     * Stops the compilation between two stages when the thread running it was interrupted, for example by the daemon
+     * when the compilation took longer than its timeout. The stages themselves do not stop midway.
+     *
+     * @throws CancellationException if the thread was interrupted, whose interrupted status is then cleared
+     */
+    private static void checkInterrupted() {
+        if (Thread.interrupted()) {
+            throw new CancellationException("Compilation was interrupted");
+        }
+    }
+
+    private static long countNodes(JmmNode root) {
+        return root == null ? 0 : root.getDescendantsAndSelfStream().count();
+    }
+
+    private static long countInstructions(OllirResult ollirResult) {
+        return ollirResult.getOllirClass().getMethods().stream()
+                .mapToLong(method -> method.getInstructions().size())
+                .sum();
     }
 
 }
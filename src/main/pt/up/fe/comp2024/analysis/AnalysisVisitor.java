@@ -6,7 +6,10 @@ import pt.up.fe.comp.jmm.ast.PreorderJmmVisitor;
 import pt.up.fe.comp.jmm.report.Report;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
 
 /**
  *
@@ -15,6 +18,10 @@ public abstract class AnalysisVisitor extends PreorderJmmVisitor<SymbolTable, Vo
 
     private List<Report> reports;
 
+    // Filled by addVisit, which runs from the constructor of the super class, before the fields of this class are
+    // initialized. For that reason it has no initializer and is created on first use.
+    private Set<String> visitedKinds;
+
     public AnalysisVisitor() {
         reports = new ArrayList<>();
         setDefaultValue(() -> null);
@@ -28,6 +35,33 @@ public abstract class AnalysisVisitor extends PreorderJmmVisitor<SymbolTable, Vo
         return reports;
     }
 
+    @Override
+    public void addVisit(String kind, BiFunction<JmmNode, SymbolTable, Void> method) {
+        if (visitedKinds == null) {
+            visitedKinds = new HashSet<>();
+        }
+
+        visitedKinds.add(kind);
+        super.addVisit(kind, method);
+    }
+
+    /**
+     * @return the kinds of node this pass has a visit for, every other node is ignored by the pass
+     */
+    public Set<String> getVisitedKinds() {
+        return visitedKinds == null ? Set.of() : visitedKinds;
+    }
+
+    /**
+     * Applies the visit of this pass to the given node only, without visiting its children.
+     *
+     * @param node
+     * @param table
+     */
+    public void visitNode(JmmNode node, SymbolTable table) {
+        getVisit(node).apply(node, table);
+    }
+
 
     @Override
     public List<Report> analyze(JmmNode root, SymbolTable table) {
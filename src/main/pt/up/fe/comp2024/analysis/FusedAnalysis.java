@@ -0,0 +1,239 @@
+package pt.up.fe.comp2024.analysis;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerStats;
+import pt.up.fe.comp2024.CompilerStats.Usage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Runs several analysis passes over a single traversal of the AST.
+ * <p>
+ * Each {@link AnalysisVisitor} only has visits for a few kinds of node. The AST is walked once, in preorder, and each
+ * node is handed, in order, to the passes that have a visit for its kind. Each pass therefore sees the same nodes, in
+ * the same order, as if it walked the tree on its own, and the reports are the same as running the passes one after
+ * the other.
+ * <p>
+ * Passes that are not an {@link AnalysisVisitor} cannot be fused, and run on their own.
+ * <p>
+ * With statistics enabled, the resources used by each pass are measured around every node it visits.
+ */
+public class FusedAnalysis {
+
+    private final List<AnalysisPass> passes;
+
+    // Index of each pass in the list of fused passes, or -1 if the pass is not fused
+    private final int[] visitorIndexes;
+    private final List<AnalysisVisitor> visitors;
+
+    // Fused passes interested in each kind of node
+    private final Map<String, BitSet> interested;
+
+    // A pass that throws stops receiving nodes, like a pass that runs on its own
+    private final Exception[] failures;
+
+    private final CompilerStats stats;
+
+    // Resources used by each pass, and the number of nodes it visited, only measured when statistics are enabled
+    private final Usage[] usages;
+    private final long[] visits;
+
+    public FusedAnalysis(List<AnalysisPass> passes) {
+        this(passes, CompilerStats.NONE);
+    }
+
+    public FusedAnalysis(List<AnalysisPass> passes, CompilerStats stats) {
+        this.passes = passes;
+        this.stats = stats;
+        this.visitorIndexes = new int[passes.size()];
+        this.visitors = new ArrayList<>();
+        this.interested = new HashMap<>();
+
+        for (int i = 0; i < passes.size(); i++) {
+            if (!(passes.get(i) instanceof AnalysisVisitor visitor)) {
+                visitorIndexes[i] = -1;
+                continue;
+            }
+
+            int index = visitors.size();
+            visitorIndexes[i] = index;
+            visitors.add(visitor);
+
+            for (var kind : visitor.getVisitedKinds()) {
+                interested.computeIfAbsent(kind, key -> new BitSet()).set(index);
+            }
+        }
+
+        this.failures = new Exception[visitors.size()];
+        this.usages = new Usage[visitors.size()];
+        this.visits = new long[visitors.size()];
+        Arrays.fill(usages, Usage.ZERO);
+    }
+
+    /**
+     * Analyses the given AST with every pass.
+     *
+     * @param root  the root node of the AST
+     * @param table the symbol table
+     * @return the reports of every pass, in the order of the passes
+     */
+    public List<Report> analyze(JmmNode root, SymbolTable table) {
+        walk(root, table, node -> false, node -> {
+        });
+
+        List<Report> reports = new ArrayList<>();
+
+        for (int i = 0; i < passes.size(); i++) {
+            if (isFused(i)) {
+                reports.addAll(getReports(i));
+                addStats(i, stats);
+                continue;
+            }
+
+            reports.addAll(analyzeUnfused(i, root, table));
+        }
+
+        return reports;
+    }
+
+    /**
+     * Visits the subtree of the given node in preorder, handing each node to the fused passes.
+     *
+     * @param root   the first node to visit
+     * @param table  the symbol table
+     * @param skip   nodes for which this returns true are not visited, and neither are their descendants
+     * @param onSkip called for each node that is skipped, when the walk reaches it
+     */
+    void walk(JmmNode root, SymbolTable table, Predicate<JmmNode> skip, Consumer<JmmNode> onSkip) {
+        var pending = new ArrayDeque<JmmNode>();
+        pending.push(root);
+
+        var nodePasses = new BitSet(visitors.size());
+        boolean measured = stats.isEnabled();
+
+        while (!pending.isEmpty()) {
+            var node = pending.pop();
+
+            if (skip.test(node)) {
+                onSkip.accept(node);
+                continue;
+            }
+
+            nodePasses.clear();
+            for (var kind : node.getHierarchy()) {
+                var kindPasses = interested.get(kind);
+                if (kindPasses != null) {
+                    nodePasses.or(kindPasses);
+                }
+            }
+
+            for (int i = nodePasses.nextSetBit(0); i >= 0; i = nodePasses.nextSetBit(i + 1)) {
+                if (failures[i] != null) {
+                    continue;
+                }
+
+                var start = measured ? Usage.now() : null;
+
+                try {
+                    visitors.get(i).visitNode(node, table);
+                } catch (Exception e) {
+                    failures[i] = e;
+                }
+
+                if (measured) {
+                    usages[i] = usages[i].plus(Usage.now().minus(start));
+                    visits[i]++;
+                }
+            }
+
+            // Children are pushed in reverse, so that the first child is the next node to be visited
+            var children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                pending.push(children.get(i));
+            }
+        }
+    }
+
+    /**
+     * @param pass index of a pass
+     * @return true if the pass is applied during the walk
+     */
+    boolean isFused(int pass) {
+        return visitorIndexes[pass] != -1;
+    }
+
+    /**
+     * @param pass index of a fused pass
+     * @return the exception thrown by the pass during the walk, or null if there was none
+     */
+    Exception getFailure(int pass) {
+        return failures[visitorIndexes[pass]];
+    }
+
+    /**
+     * @param pass index of a fused pass
+     * @return the reports of the pass so far, or an error report if the pass threw an exception
+     */
+    List<Report> getReports(int pass) {
+        var failure = getFailure(pass);
+
+        if (failure != null) {
+            return List.of(newPassError(passes.get(pass), failure));
+        }
+
+        return visitors.get(visitorIndexes[pass]).getReports();
+    }
+
+    /**
+     * Adds the resources used by a fused pass during the walk to the given statistics.
+     *
+     * @param pass  index of a fused pass
+     * @param stats
+     */
+    void addStats(int pass, CompilerStats stats) {
+        int visitor = visitorIndexes[pass];
+        stats.add(getStageName(pass), usages[visitor], Map.of("nodes", visits[visitor],
+                "reports", (long) getReports(pass).size()));
+    }
+
+    /**
+     * Runs a pass that is not fused over the whole AST.
+     *
+     * @param pass  index of the pass
+     * @param root
+     * @param table
+     * @return the reports of the pass, or an error report if it threw an exception
+     */
+    List<Report> analyzeUnfused(int pass, JmmNode root, SymbolTable table) {
+        return stats.measure(getStageName(pass), () -> {
+            try {
+                return passes.get(pass).analyze(root, table);
+            } catch (Exception e) {
+                return List.of(newPassError(passes.get(pass), e));
+            }
+        }, reports -> Map.of("reports", (long) reports.size()));
+    }
+
+    private String getStageName(int pass) {
+        return "analysis: " + passes.get(pass).getClass().getSimpleName();
+    }
+
+    static Report newPassError(AnalysisPass pass, Exception e) {
+        return Report.newError(Stage.SEMANTIC,
+                -1,
+                -1,
+                "Problem while executing analysis pass '" + pass.getClass() + "'",
+                e);
+    }
+}
@@ -6,25 +6,37 @@ import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
-import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.CompilerStats;
 import pt.up.fe.comp2024.analysis.passes.*;
+import pt.up.fe.comp2024.ast.TypeAttribution;
 import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 public class JmmAnalysisImpl implements JmmAnalysis {
 
 
-    private final List<AnalysisPass> analysisPasses;
+    // Factories instead of instances, since the parallel analysis needs several instances of each pass
+    private static final List<Supplier<AnalysisPass>> ANALYSIS_PASSES = List.of(UndeclaredVariable::new,
+            BoolTimesInt::new, ArrayInitWrong::new, ArrayIndexNotInt::new, IntInIfCondition::new,
+            AssignIntToBool::new, ObjectAssignmentFail::new, ArrayInWhileCondition::new, CallToUndeclaredMethod::new,
+            IncompatibleArguments::new, Varargs::new, Duplicates::new, Returns::new, ThisInMain::new,
+            CheckFieldInStatic::new);
 
-    public JmmAnalysisImpl() {
+    private final CompilerStats stats;
 
-        this.analysisPasses = List.of(new UndeclaredVariable(), new BoolTimesInt(),
-                new ArrayInitWrong(), new ArrayIndexNotInt(), new IntInIfCondition(), new AssignIntToBool(),
-                new ObjectAssignmentFail(), new ArrayInWhileCondition(), new CallToUndeclaredMethod(),
-                new Varargs(), new Duplicates(), new Returns(), new ThisInMain(), new CheckFieldInStatic());
+    public JmmAnalysisImpl() {
+        this(CompilerStats.NONE);
+    }
 
+    /**
+     * @param stats where the resources used by the symbol table and by each pass are recorded
+     */
+    public JmmAnalysisImpl(CompilerStats stats) {
+        this.stats = stats;
     }
 
     @Override
@@ -32,28 +44,26 @@ public class JmmAnalysisImpl implements JmmAnalysis {
 
         JmmNode rootNode = parserResult.getRootNode();
 
-        SymbolTable table = JmmSymbolTableBuilder.build(rootNode);
-
-        List<Report> reports = new ArrayList<>();
-
-        // Visit all nodes in the AST
-        for (var analysisPass : analysisPasses) {
-            try {
-                var passReports = analysisPass.analyze(rootNode, table);
-                reports.addAll(passReports);
-            } catch (Exception e) {
-                reports.add(Report.newError(Stage.SEMANTIC,
-                        -1,
-                        -1,
-                        "Problem while executing analysis pass '" + analysisPass.getClass() + "'",
-                        e)
-                );
-            }
-
+        SymbolTable table = stats.measure("symbol table", () -> JmmSymbolTableBuilder.build(rootNode),
+                symbolTable -> Map.of("methods", (long) symbolTable.getMethods().size(),
+                        "fields", (long) symbolTable.getFields().size()));
+
+        // The passes read the types stored in the expressions
+        stats.measure("type attribution", () -> TypeAttribution.annotate(rootNode, table),
+                untyped -> Map.of("untyped", (long) untyped));
+
+        List<Report> reports;
+        var config = parserResult.getConfig();
+        if (config != null && CompilerConfig.getParallelAnalysis(config)) {
+            // Methods, and groups of passes, are analysed in parallel
+            reports = new ParallelAnalysis(ANALYSIS_PASSES, stats).analyze(rootNode, table);
+        } else {
+            // Every pass is applied during a single visit of the AST
+            var analysisPasses = ANALYSIS_PASSES.stream().map(Supplier::get).toList();
+            reports = new FusedAnalysis(analysisPasses, stats).analyze(rootNode, table);
         }
 
-
-        System.out.println(reports);
+        //System.out.println(reports);
         return new JmmSemanticsResult(parserResult, table, reports);
     }
 }
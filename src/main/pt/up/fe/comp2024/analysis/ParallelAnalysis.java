@@ -0,0 +1,203 @@
+package pt.up.fe.comp2024.analysis;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.CompilerStats;
+import pt.up.fe.comp2024.ast.Kind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/**
+ * Runs the analysis passes on several threads, splitting the AST by method, and the passes in groups.
+ * <p>
+ * The tree is split in parts: one for everything outside the methods (imports, the class declaration, fields), and one
+ * for each method declaration. When there are fewer parts than threads in the pool, the passes are also split in
+ * groups, so that small classes use every thread as well. There is one task for each group of passes in each part, and
+ * each task uses its own instances of the passes, created by the given factories, and a {@link FusedAnalysis} over its
+ * part of the tree. Passes must therefore not rely on state collected in other methods.
+ * <p>
+ * The reports of the tasks are merged in the order of a sequential preorder walk: for each pass, the reports found
+ * outside the methods are interleaved with the reports of each method at the position of that method in the tree.
+ * The result is therefore the same as running {@link FusedAnalysis} on the whole tree, whatever the split.
+ * <p>
+ * The statistics of each pass add up the resources used by every task, so the wall time of a pass is the time spent in
+ * it on all threads, not the elapsed time.
+ */
+public class ParallelAnalysis {
+
+    private final List<Supplier<AnalysisPass>> passFactories;
+    private final ForkJoinPool pool;
+    private final CompilerStats stats;
+
+    public ParallelAnalysis(List<Supplier<AnalysisPass>> passFactories, ForkJoinPool pool, CompilerStats stats) {
+        this.passFactories = passFactories;
+        this.pool = pool;
+        this.stats = stats;
+    }
+
+    public ParallelAnalysis(List<Supplier<AnalysisPass>> passFactories, ForkJoinPool pool) {
+        this(passFactories, pool, CompilerStats.NONE);
+    }
+
+    public ParallelAnalysis(List<Supplier<AnalysisPass>> passFactories, CompilerStats stats) {
+        this(passFactories, ForkJoinPool.commonPool(), stats);
+    }
+
+    public ParallelAnalysis(List<Supplier<AnalysisPass>> passFactories) {
+        this(passFactories, ForkJoinPool.commonPool(), CompilerStats.NONE);
+    }
+
+    /**
+     * Analyses the given AST with every pass.
+     *
+     * @param root  the root node of the AST
+     * @param table the symbol table
+     * @return the reports of every pass, in the order of the passes
+     */
+    public List<Report> analyze(JmmNode root, SymbolTable table) {
+        var methods = root.getDescendants(Kind.METHOD_DECL.toString());
+        int groupSize = getGroupSize(methods.size() + 1);
+        int groups = (passFactories.size() + groupSize - 1) / groupSize;
+
+        // For each part of the tree and each group of passes, the analysis of those passes over that part
+        var classAnalyses = new FusedAnalysis[groups];
+        var methodAnalyses = new FusedAnalysis[methods.size()][groups];
+        // For each method, and each pass, the number of reports the pass had found outside methods before it
+        var boundaries = new int[methods.size()][passFactories.size()];
+
+        var tasks = new ArrayList<ForkJoinTask<?>>();
+
+        for (int group = 0; group < groups; group++) {
+            int firstPass = group * groupSize;
+            var classAnalysis = new FusedAnalysis(newPasses(firstPass, groupSize), stats);
+            classAnalyses[group] = classAnalysis;
+
+            tasks.add(ForkJoinTask.adapt(() -> {
+                var skipped = new int[]{0};
+
+                classAnalysis.walk(root, table, Kind.METHOD_DECL::check, method -> {
+                    countReports(classAnalysis, firstPass, groupSize, boundaries[skipped[0]++]);
+                });
+            }));
+
+            for (int i = 0; i < methods.size(); i++) {
+                var method = methods.get(i);
+                var methodAnalysis = new FusedAnalysis(newPasses(firstPass, groupSize), stats);
+                methodAnalyses[i][group] = methodAnalysis;
+
+                tasks.add(ForkJoinTask.adapt(() -> methodAnalysis.walk(method, table, node -> false, node -> {
+                })));
+            }
+        }
+
+        pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+
+        List<Report> reports = new ArrayList<>();
+
+        for (int pass = 0; pass < passFactories.size(); pass++) {
+            int group = pass / groupSize;
+            var groupMethodAnalyses = Arrays.stream(methodAnalyses).map(analyses -> analyses[group]).toList();
+
+            reports.addAll(merge(pass, pass - group * groupSize, root, table, classAnalyses[group],
+                    groupMethodAnalyses, boundaries));
+        }
+
+        return reports;
+    }
+
+    /**
+     * @param parts number of parts the tree is split in
+     * @return the number of passes in each group, all of them when there are enough parts to use every thread
+     */
+    private int getGroupSize(int parts) {
+        int groups = Math.min(passFactories.size(), (pool.getParallelism() + parts - 1) / parts);
+
+        return Math.max(1, (passFactories.size() + groups - 1) / Math.max(1, groups));
+    }
+
+    /**
+     * @param pass  index of the pass among every pass
+     * @param local index of the pass among the passes of its group
+     * @return the reports of the pass
+     */
+    private List<Report> merge(int pass, int local, JmmNode root, SymbolTable table, FusedAnalysis classAnalysis,
+                               List<FusedAnalysis> methodAnalyses, int[][] boundaries) {
+
+        // Passes that are not fused see the whole tree, and do not take part in the split
+        if (!classAnalysis.isFused(local)) {
+            return classAnalysis.analyzeUnfused(local, root, table);
+        }
+
+        var reports = mergePass(pass, local, classAnalysis, methodAnalyses, boundaries);
+
+        classAnalysis.addStats(local, stats);
+        for (var methodAnalysis : methodAnalyses) {
+            methodAnalysis.addStats(local, stats);
+        }
+
+        return reports;
+    }
+
+    private List<Report> mergePass(int pass, int local, FusedAnalysis classAnalysis,
+                                   List<FusedAnalysis> methodAnalyses, int[][] boundaries) {
+
+        // A failing pass only produces the error report, as it would when analysing the whole tree
+        if (classAnalysis.getFailure(local) != null) {
+            return classAnalysis.getReports(local);
+        }
+
+        for (var methodAnalysis : methodAnalyses) {
+            if (methodAnalysis.getFailure(local) != null) {
+                return methodAnalysis.getReports(local);
+            }
+        }
+
+        var classReports = classAnalysis.getReports(local);
+        List<Report> passReports = new ArrayList<>();
+
+        int classIndex = 0;
+        for (int method = 0; method < methodAnalyses.size(); method++) {
+            passReports.addAll(classReports.subList(classIndex, boundaries[method][pass]));
+            classIndex = boundaries[method][pass];
+
+            passReports.addAll(methodAnalyses.get(method).getReports(local));
+        }
+
+        passReports.addAll(classReports.subList(classIndex, classReports.size()));
+
+        return passReports;
+    }
+
+    /**
+     * @return new instances of the passes of a group
+     */
+    private List<AnalysisPass> newPasses(int firstPass, int groupSize) {
+        return passFactories.subList(firstPass, Math.min(firstPass + groupSize, passFactories.size())).stream()
+                .map(Supplier::get)
+                .toList();
+    }
+
+    /**
+     * Stores the number of reports each pass of a group has found so far.
+     *
+     * @param analysis  the analysis of the group
+     * @param firstPass index of the first pass of the group among every pass
+     * @param groupSize
+     * @param counts    the number of reports of each pass, indexed among every pass
+     */
+    private void countReports(FusedAnalysis analysis, int firstPass, int groupSize, int[] counts) {
+        int passes = Math.min(groupSize, passFactories.size() - firstPass);
+
+        for (int local = 0; local < passes; local++) {
+            if (analysis.isFused(local) && analysis.getFailure(local) == null) {
+                counts[firstPass + local] = analysis.getReports(local).size();
+            }
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package pt.up.fe.comp2024.analysis.passes;
 
-import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.report.Report;
@@ -8,6 +7,7 @@ import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
 
 import java.sql.SQLOutput;
 import java.util.ArrayList;
@@ -22,21 +22,11 @@ public class ArrayInWhileCondition extends AnalysisVisitor {
        addVisit(Kind.WHILE_STMT, this::visitWhileStmt);
     }
     private Void visitWhileStmt(JmmNode WhileStmt, SymbolTable table) {
-        // Prepare a map to store variable names and their array status
-        Map<String, Boolean> variables = new HashMap<>();
-
-        // Populate the map with local variables and their array status
-        for (String method : table.getMethods()) {
-            for (Symbol variable : table.getLocalVariables(method)) {
-                variables.put(variable.getName(), variable.getType().isArray());
-            }
-        }
-
         // Traverse the condition of the while statement to check for arrays
         JmmNode condition = WhileStmt.getChildren().get(0);
-        List<String> varNames = getVariableNames(condition, variables);
+        List<String> varNames = getVariableNames(condition);
         for (String varName : varNames) {
-            if (variables.containsKey(varName) && variables.get(varName)) {
+            if (isLocalArray(varName, table)) {
                 var message = "Cannot have an array in a while loop.";
                 addReport(Report.newError(
                         Stage.SEMANTIC,
@@ -52,7 +42,7 @@ public class ArrayInWhileCondition extends AnalysisVisitor {
     }
 
     // Helper method to find variable names in expressions
-    private List<String> getVariableNames(JmmNode node, Map<String, Boolean> variables) {
+    private List<String> getVariableNames(JmmNode node) {
         List<String> varNames = new ArrayList<>();
         if (node.getKind().equals("VarRefExpr") && node.hasAttribute("name")) {
             varNames.add(node.get("name"));
@@ -61,11 +51,17 @@ public class ArrayInWhileCondition extends AnalysisVisitor {
             return varNames;
         } else {
             for (JmmNode child : node.getChildren()) {
-                varNames.addAll(getVariableNames(child, variables));
+                varNames.addAll(getVariableNames(child));
             }
         }
         return varNames;
     }
 
+    // Helper method to check if a local variable is an array, using the last method that declares it
+    private boolean isLocalArray(String varName, SymbolTable table) {
+        var locals = JmmSymbolTable.of(table).getLocalVariablesInAnyMethod(varName);
+        return !locals.isEmpty() && locals.get(locals.size() - 1).getType().isArray();
+    }
+
 
 }
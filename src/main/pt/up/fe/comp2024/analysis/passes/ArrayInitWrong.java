@@ -1,6 +1,6 @@
 package pt.up.fe.comp2024.analysis.passes;
 
-import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
@@ -68,14 +68,8 @@ public class ArrayInitWrong extends AnalysisVisitor {
     // Helper method to check if a variable is declared as an array
     private boolean isDeclaredAsArray(JmmNode varRef, SymbolTable table) {
         String varName = varRef.get("name");
-        for (String method : table.getMethods()) {
-            for (Symbol variable : table.getLocalVariables(method)) {
-                if (variable.getName().equals(varName) && variable.getType().isArray()) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return JmmSymbolTable.of(table).getLocalVariablesInAnyMethod(varName).stream()
+                .anyMatch(variable -> variable.getType().isArray());
     }
 
 }
\ No newline at end of file
@@ -7,11 +7,9 @@ import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
-
-import java.util.HashMap;
+import pt.up.fe.comp2024.ast.TypeUtils;
 
 public class AssignIntToBool extends AnalysisVisitor {
-    private HashMap<String, String> localVariables = new HashMap<>();
     @Override
     public void buildVisitor() {
         addVisit(Kind.ASSIGNMENT_EXPR, this::visitAssignStmt);
@@ -19,36 +17,23 @@ public class AssignIntToBool extends AnalysisVisitor {
 
     private Void visitAssignStmt(JmmNode assignStmt, SymbolTable table) {
 
-        // get all methods
-        var methods = table.getMethods();
-
-        // place all local variables in the hashmap
-        for (var method : methods){
-            for (var localVariable : table.getLocalVariables(method)){
-                localVariables.put(localVariable.getName(), localVariable.getType().getName());
-            }
-        }
-
         // get the left and right side of the assignment
         var firstChild = assignStmt.getChildren().get(0);
         var secondChild = assignStmt.getChildren().get(1);
-        var name = "";
-
 
-        // check if the left side is an array access, if so get the name of the array, otherwise get the name of the variable
-        if (firstChild.getKind().equals("ArrayAccessExpr")) {
-            name = firstChild.getChildren().get(0).get("name");
-        }
-        else {
-            name = firstChild.get("name");
+        // the types are only compared when both are known
+        var type = TypeUtils.getStoredType(firstChild);
+        var valueType = TypeUtils.getStoredType(secondChild);
+        if (type.isEmpty() || valueType.isEmpty()) {
+            return null;
         }
 
-        // get the kind of the right side of the assignment
-        var value = secondChild.getKind();
+        var typeName = type.get().getName();
+        var valueTypeName = valueType.get().getName();
 
-        // check if the variable is in the hashmap and if the types are incompatible
-        if((localVariables.containsKey(name) && localVariables.get(name).equals("boolean") && value.equals("IntegerLiteralExpr")) ||
-                localVariables.containsKey(name) && localVariables.get(name).equals("int") && value.equals("BooleanLiteralExpr")) {
+        // check if an int is assigned to a boolean, or the other way around
+        if((TypeUtils.getBooleanTypeName().equals(typeName) && TypeUtils.getIntTypeName().equals(valueTypeName)) ||
+                TypeUtils.getIntTypeName().equals(typeName) && TypeUtils.getBooleanTypeName().equals(valueTypeName)) {
             var message = "Incompatible assignment Types";
             addReport(Report.newError(Stage.SEMANTIC,
                     NodeUtils.getLine(assignStmt),
@@ -1,6 +1,5 @@
 package pt.up.fe.comp2024.analysis.passes;
 
-import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp2024.ast.Kind;
@@ -8,6 +7,7 @@ import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.ast.NodeUtils;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -26,21 +26,17 @@ public class CallToUndeclaredMethod extends AnalysisVisitor {
     private Void visitMethodCall(JmmNode methodCall, SymbolTable table) {
         AtomicBoolean flag = new AtomicBoolean(false);
 
-        // get the name of the class and the imports
-        var methodName = methodCall.getAncestor(Kind.CLASS_DECL).get();
-        var importNames = table.getImports();
+        var jmmTable = JmmSymbolTable.of(table);
 
-        for (String s : table.getMethods()) {
-            for (Symbol localVariable : table.getLocalVariables(s)) {
-                importNames.forEach(importName -> {
-                    // if type of local variable is the same as the import
-                    if (localVariable.getType().getName().equals(importName) ||
-                            // or if type of local variable is the same as the name of the class and class is extended from the import, set flag to true
-                            (localVariable.getType().getName().equals(methodName.get("name")) && (methodName.hasAttribute("extendedClass") && methodName.get("extendedClass").equals(importName)))) {
-                        flag.set(true);
-                    }
-                });
-            }
+        // if the type of a local variable is an import, set flag to true
+        if (table.getImports().stream().anyMatch(jmmTable::hasLocalOfType)) {
+            flag.set(true);
+        }
+
+        // or if the type of a local variable is the class and the class is extended from an import, set flag to true
+        if (table.getSuper() != null && jmmTable.hasImport(table.getSuper())
+                && jmmTable.hasLocalOfType(table.getClassName())) {
+            flag.set(true);
         }
 
 
@@ -53,35 +49,21 @@ public class CallToUndeclaredMethod extends AnalysisVisitor {
             }
             else {
                 // check if the name of the method call is the same as the name of the import, if it is, set flag to true
-                table.getImports().forEach(importName -> {
-                    if ( method.hasAttribute("name") && method.get("name").equals(importName)) {
-                        flag.set(true);
-                    }
-                });
-            }
-        });
-
-        table.getMethods().forEach(method -> {
-            table.getLocalVariables(method).forEach(localVariable -> {
-                table.getImports().forEach(importName -> {
-                    // if type of local variable is the same as the import, set flag to true
-                    if (localVariable.getType().getName().equals(importName)) {
-                        flag.set(true);
-                    }
-                });
-            });
-        });
-
-        methodName.getChildren().forEach(method -> {
-            // if the name of the method call is the same as the name of the class, set flag to true
-                if (method.get("name").equals(methodCall.get("name"))) {
+                if (method.hasAttribute("name") && jmmTable.hasImport(method.get("name"))) {
                     flag.set(true);
+                }
             }
         });
 
+        // if the name of the method call is the name of a method or field of the class, set flag to true
+        var calledName = methodCall.get("name");
+        if (jmmTable.hasMethod(calledName) || jmmTable.getField(calledName).isPresent()) {
+            flag.set(true);
+        }
+
         // after all the checks, if flag is still false, add a report
         if (!flag.get()) {
-            var message = "Call to undeclared method '" + methodCall + "'.";
+            var message = "Call to undeclared method '" + calledName + "'.";
             addReport(Report.newError(Stage.SEMANTIC,
                     NodeUtils.getLine(methodCall),
                     NodeUtils.getColumn(methodCall),
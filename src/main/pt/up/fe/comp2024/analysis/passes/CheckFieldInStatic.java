@@ -1,6 +1,5 @@
 package pt.up.fe.comp2024.analysis.passes;
 
-import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.report.Report;
@@ -8,8 +7,7 @@ import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
-
-import java.util.List;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
 
 public class CheckFieldInStatic extends AnalysisVisitor {
     @Override
@@ -24,7 +22,7 @@ public class CheckFieldInStatic extends AnalysisVisitor {
      * @return null
      */
     private Void visitFieldDecl(JmmNode classDecl, SymbolTable table) {
-        var fields = table.getFields();
+        var jmmTable = JmmSymbolTable.of(table);
         var methods = table.getMethods();
 
         for (var method : methods) {
@@ -34,7 +32,7 @@ public class CheckFieldInStatic extends AnalysisVisitor {
                 if (mainMethodNode != null && mainMethodNode.getNumChildren() > 0) {
                     // Traverse the body of the main method to check for field usage
                     JmmNode mainMethodBody = mainMethodNode.getChildren().get(0);
-                    checkFieldUsageInMethod(mainMethodBody, fields, classDecl);
+                    checkFieldUsageInMethod(mainMethodBody, jmmTable, classDecl);
                 }
                 break; // Only process the main method
             }
@@ -61,12 +59,12 @@ public class CheckFieldInStatic extends AnalysisVisitor {
     /**
      * Check field usage in a method
      * @param node node
-     * @param fields list of fields
+     * @param table symbol table
      * @param classDecl node
      */
-    private void checkFieldUsageInMethod(JmmNode node, List<Symbol> fields, JmmNode classDecl) {
+    private void checkFieldUsageInMethod(JmmNode node, JmmSymbolTable table, JmmNode classDecl) {
         // Check if the node is a field reference, and if it is, report an error
-        if (isFieldReference(node, fields)) {
+        if (isFieldReference(node, table)) {
             var message = "Cannot access field in static method";
             addReport(Report.newError(
                     Stage.SEMANTIC,
@@ -79,29 +77,23 @@ public class CheckFieldInStatic extends AnalysisVisitor {
 
         // Recursively check all children nodes
         for (JmmNode child : node.getChildren()) {
-            checkFieldUsageInMethod(child, fields, classDecl);
+            checkFieldUsageInMethod(child, table, classDecl);
         }
     }
 
     /**
      * Check if a node is a field reference
      * @param node node
-     * @param fields list of fields
+     * @param table symbol table
      * @return true if the node is a field reference, false otherwise
      */
-    private boolean isFieldReference(JmmNode node, List<Symbol> fields) {
+    private boolean isFieldReference(JmmNode node, JmmSymbolTable table) {
         if (node.getKind().equals("VarRefExpr")) {
             String varName = node.get("name");
-            System.out.println("VarRef found: " + varName);
-            for (var field : fields) {
-                if (field.getName().equals(varName)) {
-                    System.out.println("Field reference matches: " + varName);
-                    return true;
-                }
-            }
+            return table.getField(varName).isPresent();
         } else if (node.getKind().equals("AssignmentExpr") || node.getKind().equals("ExprStmt")) {
             for (JmmNode child : node.getChildren()) {
-                if (isFieldReference(child, fields)) {
+                if (isFieldReference(child, table)) {
                     return true;
                 }
             }
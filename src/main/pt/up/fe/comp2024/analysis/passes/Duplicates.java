@@ -13,11 +13,9 @@ import java.util.Set;
 
 public class Duplicates extends AnalysisVisitor {
     // Data structures to store unique elements
+    // Parameters and locals are checked per method, so that methods can be analysed independently
     private final Set<String> uniqueImports = new HashSet<>();
-    private final Set<String> uniqueMethods = new HashSet<>();
     private final Set<String> uniqueFields = new HashSet<>();
-    private final Set<String> uniqueParams = new HashSet<>();
-    private final Set<String> uniqueLocals = new HashSet<>();
 
     @Override
     public void buildVisitor() {
@@ -56,17 +54,8 @@ public class Duplicates extends AnalysisVisitor {
      */
     private Void visitMethodDecl(JmmNode methodDecl, SymbolTable table) {
         var methodName = methodDecl.get("name");
-
-        // Check for duplicate method declarations
-        if(!uniqueMethods.add(methodName)){
-            var message = "Duplicate method declaration.";
-            addReport(Report.newError(Stage.SEMANTIC,
-                    NodeUtils.getLine(methodDecl),
-                    NodeUtils.getColumn(methodDecl),
-                    message,
-                    null)
-            );
-        }
+        var uniqueParams = new HashSet<String>();
+        var uniqueLocals = new HashSet<String>();
 
         // Check for duplicate parameters
         for (var param : table.getParameters(methodName)) {
@@ -81,9 +70,9 @@ public class Duplicates extends AnalysisVisitor {
             }
         }
 
-        // Check for duplicate local variables using a pair of variable and method name
+        // Check for duplicate local variables
         for (var local : table.getLocalVariables(methodName)) {
-            if(!uniqueLocals.add(local.getName() + methodName)){
+            if(!uniqueLocals.add(local.getName())){
                 var message = "Duplicate local variable declaration.";
                 addReport(Report.newError(Stage.SEMANTIC,
                         NodeUtils.getLine(methodDecl),
@@ -104,6 +93,20 @@ public class Duplicates extends AnalysisVisitor {
      * @return null
      */
     private Void visitClassDecl(JmmNode classDecl, SymbolTable table) {
+        // Check for duplicate method declarations, which needs every method of the class
+        var uniqueMethods = new HashSet<String>();
+        for (var methodDecl : classDecl.getChildren(Kind.METHOD_DECL)) {
+            if(!uniqueMethods.add(methodDecl.get("name"))){
+                var message = "Duplicate method declaration.";
+                addReport(Report.newError(Stage.SEMANTIC,
+                        NodeUtils.getLine(methodDecl),
+                        NodeUtils.getColumn(methodDecl),
+                        message,
+                        null)
+                );
+            }
+        }
+
         // Check for duplicate field declarations
         for (var field : table.getFields()) {
             if(!uniqueFields.add(field.getName())){
@@ -0,0 +1,58 @@
+package pt.up.fe.comp2024.analysis.passes;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.analysis.AnalysisVisitor;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.NodeUtils;
+import pt.up.fe.comp2024.ast.TypeUtils;
+
+public class IncompatibleArguments extends AnalysisVisitor {
+
+    @Override
+    public void buildVisitor() {
+        addVisit(Kind.METHOD_CALL_EXPR, this::visitMethodCall);
+    }
+
+    /**
+     * Visit a method call and check if its arguments have the types of the parameters. Only calls to methods of this
+     * class have a type, the parameters of other classes are not known.
+     * @param methodCall The method call node
+     * @param table The symbol table
+     * @return null
+     */
+    private Void visitMethodCall(JmmNode methodCall, SymbolTable table) {
+        if (TypeUtils.getStoredType(methodCall).isEmpty()) {
+            return null;
+        }
+
+        var arguments = methodCall.hasAttribute("obj")
+                ? methodCall.getChildren().subList(1, methodCall.getNumChildren())
+                : methodCall.getChildren();
+        var params = table.getParameters(methodCall.get("name"));
+
+        // the arguments of a vararg parameter are not checked
+        var fixedParams = params.size();
+        if (fixedParams > 0 && params.get(fixedParams - 1).getType().hasAttribute("vararg")) {
+            fixedParams--;
+        }
+
+        for (int i = 0; i < Math.min(fixedParams, arguments.size()); i++) {
+            var argumentType = TypeUtils.getStoredType(arguments.get(i));
+            if (argumentType.isPresent()
+                    && TypeUtils.arePrimitivesIncompatible(argumentType.get(), params.get(i).getType())) {
+                var message = "Incompatible argument type for parameter '" + params.get(i).getName() + "'.";
+                addReport(Report.newError(Stage.SEMANTIC,
+                        NodeUtils.getLine(arguments.get(i)),
+                        NodeUtils.getColumn(arguments.get(i)),
+                        message,
+                        null)
+                );
+            }
+        }
+
+        return null;
+    }
+}
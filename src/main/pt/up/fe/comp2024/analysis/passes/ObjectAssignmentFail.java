@@ -1,6 +1,5 @@
 package pt.up.fe.comp2024.analysis.passes;
 
-import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.report.Report;
@@ -8,12 +7,9 @@ import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
-
-import java.util.HashMap;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
 
 public class ObjectAssignmentFail extends AnalysisVisitor {
-    // This hashmap will store the local variables of the method
-    private HashMap<String, String> localVariables = new HashMap<>();
     @Override
     public void buildVisitor() {
         addVisit(Kind.ASSIGNMENT_EXPR, this::visitAssignStmt);
@@ -28,14 +24,6 @@ public class ObjectAssignmentFail extends AnalysisVisitor {
     private Void visitAssignStmt(JmmNode assignStmt, SymbolTable table) {
 
         var imports = table.getImports();
-        // get the ClassDecl node
-        var classInfo = assignStmt.getAncestor(Kind.CLASS_DECL).get();
-        table.getMethods().forEach(method -> {
-            // get the local variables of the method, and store them in the hashmap
-            table.getLocalVariables(method).forEach(localVariable -> {
-                localVariables.put(localVariable.getName(), localVariable.getType().getName());
-            });
-        });
         // check if the assignment is valid
         if (assignStmt.get("op").equals("=")) {
             var children = assignStmt.getChildren();
@@ -43,17 +31,18 @@ public class ObjectAssignmentFail extends AnalysisVisitor {
             if(children.get(0).getKind().equals(children.get(1).getKind())){
                 // if the assignment is an array access, check if the array is a local variable
                 if(children.get(0).getKind().equals(Kind.ARRAY_ACCESS_EXPR.toString())){
-                    if(localVariables.containsKey(children.get(0).getChildren().get(0).get("name"))){
+                    if(getLocalTypeName(children.get(0).getChildren().get(0).get("name"), table) != null){
                         return null;
                     }
                 }
 
                 // checks if the right-hand side of the assignment is a local variable.
-                if(localVariables.containsKey(children.get(1).get("name"))){
+                var rightTypeName = getLocalTypeName(children.get(1).get("name"), table);
+                if(rightTypeName != null){
                     // checks if  the name of the class is the same as the type of the local variable
-                   if(classInfo.get("name").equals(localVariables.get(children.get(1).get("name")))){
+                   if(table.getClassName().equals(rightTypeName)){
                        // if the class extends another class, check if the right-hand side of the assignment is an instance of the extended class
-                       if(classInfo.hasAttribute("extendedClass") && classInfo.get("extendedClass").equals(localVariables.get(children.get(0).get("name")))){
+                       if(table.getSuper() != null && table.getSuper().equals(getLocalTypeName(children.get(0).get("name"), table))){
                            return null;
                        }
                        else {
@@ -71,5 +60,17 @@ public class ObjectAssignmentFail extends AnalysisVisitor {
         }
             return null;
         }
+
+    /**
+     * Gets the type of a local variable, looking at every method. When several methods declare a variable with the
+     * same name, the one declared last is used.
+     * @param name The name of the variable
+     * @param table The symbol table
+     * @return The name of the type of the variable, or null if there is no local variable with that name
+     */
+    private String getLocalTypeName(String name, SymbolTable table) {
+        var locals = JmmSymbolTable.of(table).getLocalVariablesInAnyMethod(name);
+        return locals.isEmpty() ? null : locals.get(locals.size() - 1).getType().getName();
+    }
     }
 
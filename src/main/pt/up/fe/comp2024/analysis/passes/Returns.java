@@ -5,6 +5,7 @@ import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
+import pt.up.fe.comp2024.ast.TypeUtils;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 
@@ -44,6 +45,21 @@ public class Returns extends AnalysisVisitor {
             }
         }
 
+        // check if the returned value has the declared return type, when the type of the value is known
+        for (var stmt : methodDecl.getChildren(Kind.RETURN_STMT)) {
+            var returnType = table.getReturnType(methodName);
+            var valueType = TypeUtils.getStoredType(stmt.getJmmChild(0));
+            if (valueType.isPresent() && TypeUtils.arePrimitivesIncompatible(valueType.get(), returnType)) {
+                var message = "Incompatible return type.";
+                addReport(Report.newError(Stage.SEMANTIC,
+                        NodeUtils.getLine(stmt),
+                        NodeUtils.getColumn(stmt),
+                        message,
+                        null)
+                );
+            }
+        }
+
         //check for more than one return statement
         var returnCount = 0;
         for (var stmt : methodDecl.getChildren()) {
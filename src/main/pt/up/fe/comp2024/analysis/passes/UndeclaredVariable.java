@@ -7,6 +7,7 @@ import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
 import pt.up.fe.specs.util.SpecsCheck;
 
 /**
@@ -16,6 +17,7 @@ import pt.up.fe.specs.util.SpecsCheck;
  */
 public class UndeclaredVariable extends AnalysisVisitor {
 
+    // The method being visited, every variable reference is visited after the declaration of its method
     private String currentMethod;
 
     @Override
@@ -75,26 +77,15 @@ public class UndeclaredVariable extends AnalysisVisitor {
             return null;
         }
 
-        // Var is a field, return
-        if (table.getFields().stream()
-                .anyMatch(param -> param.getName().equals(varRefName))) {
-            return null;
-        }
-
-        // Var is a parameter, return
-        if (table.getParameters(currentMethod).stream()
-                .anyMatch(param -> param.getName().equals(varRefName))) {
-            return null;
-        }
+        var jmmTable = JmmSymbolTable.of(table);
 
-        // Var is a declared variable, return
-        if (table.getLocalVariables(currentMethod).stream()
-                .anyMatch(varDecl -> varDecl.getName().equals(varRefName))) {
+        // Var is a local, a parameter or a field, return
+        if (jmmTable.resolve(currentMethod, varRefName).isPresent()) {
             return null;
         }
 
-        // Var is a declared variable, return
-        if (table.getImports().stream().anyMatch(imported -> imported.equals(varRefName))){
+        // Var is an imported class, return
+        if (jmmTable.hasImport(varRefName)) {
             return null;
         }
 
@@ -48,7 +48,6 @@ public class Varargs extends AnalysisVisitor {
 
             // Check if any parameter in the method is a vararg
             for (Symbol param : params) {
-                System.out.println(param.getType().toString());
                 if (param.getType().isArray() && varargs.getParent().get("name").equals(param.getName())) {
                     hasVarArg = true;
                     varargName = param.getName();
@@ -4,6 +4,8 @@ import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.specs.util.SpecsStrings;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 public enum Kind {
@@ -43,12 +45,22 @@ public enum Kind {
     UNARY_EXPR,
     SCOPE_STMT,
     SHORT_C_AND_EXPR,
+    SHORT_C_OR_EXPR,
     PAREN_EXPR;
 
 
     private static final Set<Kind> STATEMENTS = Set.of(ASSIGN_STMT, RETURN_STMT, WHILE_STMT, IF_ELSE_STMT);
     private static final Set<Kind> EXPRESSIONS = Set.of(BINARY_EXPR, INTEGER_LITERAL, VAR_REF_EXPR, MULTIPLICATIVE_EXPR, ADDITIVE_EXPR, ARRAY_INIT_EXPR, ARRAY_ACCESS_EXPR, METHOD_CALL_EXPR, LENGTH_EXPR, INTEGER_LITERAL_EXPR);
 
+    // Kinds by the name of their nodes, to find the kind of a node without going through every kind
+    private static final Map<String, Kind> BY_NODE_NAME = new HashMap<>();
+
+    static {
+        for (Kind kind : values()) {
+            BY_NODE_NAME.put(kind.getNodeName(), kind);
+        }
+    }
+
     private final String name;
 
     private Kind(String name) {
@@ -60,13 +72,20 @@ public enum Kind {
     }
 
     public static Kind fromString(String kind) {
-
-        for (Kind k : Kind.values()) {
-            if (k.getNodeName().equals(kind)) {
-                return k;
-            }
+        var k = BY_NODE_NAME.get(kind);
+        if (k == null) {
+            throw new RuntimeException("Could not convert string '" + kind + "' to a Kind");
         }
-        throw new RuntimeException("Could not convert string '" + kind + "' to a Kind");
+
+        return k;
+    }
+
+    /**
+     * @param node
+     * @return the kind of the node, or null if it is not of any of these kinds
+     */
+    public static Kind of(JmmNode node) {
+        return BY_NODE_NAME.get(node.getKind());
     }
 
     public String getNodeName() {
@@ -0,0 +1,89 @@
+package pt.up.fe.comp2024.ast;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Annotates every expression of the AST with its {@link pt.up.fe.comp.jmm.analysis.table.Type}.
+ * <p>
+ * Nodes are visited in reverse preorder, so the operands of an expression are typed before the expression itself and
+ * each type is computed only once. Afterwards, {@link TypeUtils#getExprType(JmmNode, SymbolTable)} returns the stored
+ * type instead of typing the whole subtree again.
+ * <p>
+ * Attribution runs before the semantic analysis, so it does not report errors: an expression whose type is not known,
+ * e.g. a call to a method of an imported class or an undeclared variable, is left without a type, and the passes
+ * report the errors they find.
+ */
+public class TypeAttribution {
+
+    /**
+     * Stores the type of each expression in the subtree of the given node, in the attribute
+     * {@link TypeUtils#TYPE_ATTRIBUTE}.
+     * <p>
+     * Each method is annotated on its own walk, so variables are looked up in the method of the walk without searching
+     * the ancestors of each one. Variables outside of methods are left without a type.
+     *
+     * @param root
+     * @param table
+     * @return the number of expressions left without a type
+     */
+    public static int annotate(JmmNode root, SymbolTable table) {
+        var methodName = Kind.METHOD_DECL.check(root) ? root.get("name")
+                : root.getAncestor(Kind.METHOD_DECL).map(method -> method.get("name")).orElse(null);
+
+        return annotate(root, methodName, table);
+    }
+
+    private static int annotate(JmmNode root, String methodName, SymbolTable table) {
+        // Iterative preorder, so that long chains of expressions do not overflow the stack. The methods in the subtree
+        // are left for their own walks.
+        var preorder = new ArrayList<JmmNode>();
+        var methods = new ArrayList<JmmNode>();
+        var pending = new ArrayDeque<JmmNode>();
+
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            var node = pending.pop();
+            if (node != root && Kind.METHOD_DECL.check(node)) {
+                methods.add(node);
+                continue;
+            }
+
+            preorder.add(node);
+
+            // getChildren copies the list, which is not needed for the leaves, about half of the nodes
+            if (node.getNumChildren() > 0) {
+                for (var child : node.getChildren()) {
+                    pending.push(child);
+                }
+            }
+        }
+
+        int untyped = 0;
+        for (var method : methods) {
+            untyped += annotate(method, method.get("name"), table);
+        }
+
+        // Reversed, the preorder has the operands of each expression before the expression itself
+        boolean inMethod = methodName != null;
+        for (int i = preorder.size() - 1; i >= 0; i--) {
+            var node = preorder.get(i);
+
+            if (!TypeUtils.isTypedKind(node) || (!inMethod && Kind.VAR_REF_EXPR.check(node))) {
+                continue;
+            }
+
+            try {
+                node.putObject(TypeUtils.TYPE_ATTRIBUTE, TypeUtils.computeExprType(node, table, methodName));
+            } catch (RuntimeException e) {
+                // getExprType computes the type again when it is asked for one
+                untyped++;
+            }
+        }
+
+        return untyped;
+    }
+}
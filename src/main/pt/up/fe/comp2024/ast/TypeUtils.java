@@ -3,8 +3,14 @@ package pt.up.fe.comp2024.ast;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+
+import static pt.up.fe.comp2024.ast.Kind.*;
 
-import java.util.List;
 
 public class TypeUtils {
 
@@ -13,6 +19,21 @@ public class TypeUtils {
     private static final String VOID_TYPE_NAME = "void";
     private static final String STRING_TYPE_NAME = "String";
 
+    // Most expressions are int or boolean, they share these types instead of allocating one each
+    private static final Type INT_TYPE = new Type(INT_TYPE_NAME, false);
+    private static final Type BOOLEAN_TYPE = new Type(BOOLEAN_TYPE_NAME, false);
+
+    /**
+     * Attribute where {@link TypeAttribution} stores the type of an expression.
+     */
+    public static final String TYPE_ATTRIBUTE = "type";
+
+    // Kinds of node that have a type, see computeExprType
+    private static final Set<Kind> TYPED_KINDS = EnumSet.of(BINARY_EXPR, ADDITIVE_EXPR, MULTIPLICATIVE_EXPR,
+            RELATIONAL_EXPR, UNARY_EXPR, SHORT_C_AND_EXPR, SHORT_C_OR_EXPR, PAREN_EXPR, VAR_REF_EXPR, INTEGER_LITERAL,
+            INTEGER_LITERAL_EXPR, BOOLEAN_LITERAL, BOOLEAN_LITERAL_EXPR, LENGTH_EXPR, ARRAY_ACCESS_EXPR, ARRAY_TYPE, NEW_ARRAY_EXPR, ARRAY_INIT_EXPR,
+            METHOD_CALL_EXPR, NEW_CLASS_EXPR, THIS_LITERAL_EXPR);
+
     public static String getTypeName() {
         return INT_TYPE_NAME;
     }
@@ -27,29 +48,96 @@ public class TypeUtils {
 
     /**
      * Gets the {@link Type} of an arbitrary expression.
+     * <p>
+     * If the expression was annotated by {@link TypeAttribution}, the stored type is returned, otherwise it is computed.
      *
      * @param expr
      * @param table
      * @return
      */
     public static Type getExprType(JmmNode expr, SymbolTable table) {
-        // TODO: Simple implementation that needs to be expanded
+        if (expr.hasAttribute(TYPE_ATTRIBUTE)) {
+            return expr.getObject(TYPE_ATTRIBUTE, Type.class);
+        }
+
+        return computeExprType(expr, table);
+    }
+
+    /**
+     * @param expr
+     * @return the type {@link TypeAttribution} stored in the expression, or empty if its type is not known
+     */
+    public static Optional<Type> getStoredType(JmmNode expr) {
+        if (!expr.hasAttribute(TYPE_ATTRIBUTE)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(expr.getObject(TYPE_ATTRIBUTE, Type.class));
+    }
+
+    /**
+     * @param type
+     * @param expectedType
+     * @return true if both types are int or boolean, or arrays of them, and they are different
+     */
+    public static boolean arePrimitivesIncompatible(Type type, Type expectedType) {
+        return isPrimitive(type) && isPrimitive(expectedType) && !type.equals(expectedType);
+    }
+
+    private static boolean isPrimitive(Type type) {
+        return type.getName().equals(INT_TYPE_NAME) || type.getName().equals(BOOLEAN_TYPE_NAME);
+    }
+
+    /**
+     * @param node
+     * @return true if the node is of a kind that has a type
+     */
+    public static boolean isTypedKind(JmmNode node) {
+        var kind = Kind.of(node);
+        return kind != null && TYPED_KINDS.contains(kind);
+    }
+
+    /**
+     * Computes the {@link Type} of an expression. The types of its operands are taken from the nodes, when they are
+     * annotated.
+     *
+     * @param expr
+     * @param table
+     * @return
+     */
+    static Type computeExprType(JmmNode expr, SymbolTable table) {
+        return computeExprType(expr, table, null);
+    }
 
+    /**
+     * Computes the {@link Type} of an expression in the given method, so that variables are looked up without searching
+     * the AST for the method.
+     *
+     * @param expr
+     * @param table
+     * @param methodName the method the expression is in, or null to find it from the ancestors of the expression
+     * @return
+     * @throws IllegalStateException if the type of the expression is not known, e.g. a call to a method of an imported
+     *                               class or an undeclared variable
+     */
+    static Type computeExprType(JmmNode expr, SymbolTable table, String methodName) {
         var kind = Kind.fromString(expr.getKind());
 
         Type type = switch (kind) {
             case BINARY_EXPR, ADDITIVE_EXPR, MULTIPLICATIVE_EXPR, RELATIONAL_EXPR -> getBinExprType(expr);
-            case UNARY_EXPR -> new Type(BOOLEAN_TYPE_NAME, false);
-            case VAR_REF_EXPR -> getVarExprType(expr, table);
-            case INTEGER_LITERAL,  INTEGER_LITERAL_EXPR-> new Type(INT_TYPE_NAME, false);
-            case BOOLEAN_LITERAL, BOOLEAN_LITERAL_EXPR -> new Type(BOOLEAN_TYPE_NAME, false);
-            case LENGTH_EXPR -> new Type(INT_TYPE_NAME, false);
-            case ARRAY_ACCESS_EXPR -> getArrayAccessExprType(expr, table);
-            case ARRAY_TYPE -> getArrayExpType(expr, table);
-            case NEW_ARRAY_EXPR, ARRAY_INIT_EXPR -> getNewArrayExprType(expr, table);
-            case METHOD_CALL_EXPR -> getMethodCallExprType(expr, table);
+            case UNARY_EXPR, SHORT_C_AND_EXPR, SHORT_C_OR_EXPR -> BOOLEAN_TYPE;
+            case PAREN_EXPR -> getParenExprType(expr, table, methodName);
+            case VAR_REF_EXPR -> getVarExprType(expr, table, methodName);
+            case INTEGER_LITERAL,  INTEGER_LITERAL_EXPR-> INT_TYPE;
+            case BOOLEAN_LITERAL, BOOLEAN_LITERAL_EXPR -> BOOLEAN_TYPE;
+            case LENGTH_EXPR -> getLengthExprType(expr);
+            case ARRAY_ACCESS_EXPR -> getArrayAccessExprType(expr, table, methodName);
+            case ARRAY_TYPE -> getArrayType(expr);
+            case NEW_ARRAY_EXPR -> getNewArrayExprType(expr);
+            case ARRAY_INIT_EXPR -> getArrayInitExprType(expr, table, methodName);
+            case METHOD_CALL_EXPR -> getMethodCallExprType(expr, table, methodName);
             case NEW_CLASS_EXPR -> getNewClassExprType(expr, table);
-            case THIS_LITERAL_EXPR -> new Type("this", false);
+            case THIS_LITERAL_EXPR -> new Type(table.getClassName(), false);
 
             default -> throw new UnsupportedOperationException("Can't compute type for expression kind '" + kind + "'");
         };
@@ -57,6 +145,17 @@ public class TypeUtils {
         return type;
     }
 
+    /**
+     * The type of an operand: the stored one, or else computed in the same method as the expression that uses it.
+     */
+    private static Type getOperandType(JmmNode operand, SymbolTable table, String methodName) {
+        if (operand.hasAttribute(TYPE_ATTRIBUTE)) {
+            return operand.getObject(TYPE_ATTRIBUTE, Type.class);
+        }
+
+        return computeExprType(operand, table, methodName);
+    }
+
     private static Type getNewClassExprType(JmmNode newClassExpr, SymbolTable table) {
         var className =  newClassExpr.get("name");
         if(table.getClassName().equals(className)){
@@ -69,65 +168,121 @@ public class TypeUtils {
         return type;
     }
 
-    private static Type getMethodCallExprType(JmmNode methodCallExpr, SymbolTable table) {
-        return new Type(INT_TYPE_NAME, false);
+    /**
+     * Calls to methods of this class have the declared return type. The methods of other classes are not known, so
+     * their calls have no type.
+     */
+    private static Type getMethodCallExprType(JmmNode methodCallExpr, SymbolTable table, String methodName) {
+        var calledName = methodCallExpr.get("name");
+
+        if (isCallOnThisClass(methodCallExpr, table, methodName) && JmmSymbolTable.of(table).hasMethod(calledName)) {
+            return table.getReturnType(calledName);
+        }
+
+        throw new IllegalStateException("The return type of method '" + calledName + "' is not known");
     }
 
-    private static Type getArrayExpType(JmmNode arrayType, SymbolTable table) {
-        /*
-        var name = "";
-        for (var child : arrayType.getChildren()) {
-            if (child.getKind().equals("TTYPE")) {
-                name = child.get("name");
-            }
+    private static boolean isCallOnThisClass(JmmNode methodCallExpr, SymbolTable table, String methodName) {
+        if (!methodCallExpr.hasAttribute("obj")) {
+            return true;
+        }
+
+        var receiver = methodCallExpr.getJmmChild(0);
+        if (THIS_LITERAL_EXPR.check(receiver)) {
+            return true;
         }
-        */
-        return new Type(INT_TYPE_NAME, true);
+
+        return getOperandType(receiver, table, methodName).getName().equals(table.getClassName());
     }
 
-    private static Type getNewArrayExprType(JmmNode newArrayExpr, SymbolTable table) {
-        return new Type(INT_TYPE_NAME, true);
+    private static Type getLengthExprType(JmmNode lengthExpr) {
+        var fieldName = lengthExpr.get("name");
+        if (!fieldName.equals("length")) {
+            throw new IllegalStateException("Field '" + fieldName + "' of expression is not known");
+        }
+
+        return INT_TYPE;
     }
 
-    private static Type getArrayAccessExprType(JmmNode arrayAccessExpr, SymbolTable table) {
-        return new Type(INT_TYPE_NAME, false);
+    private static Type getArrayType(JmmNode arrayType) {
+        return new Type(arrayType.getObject("nameType", JmmNode.class).get("name"), true);
     }
 
-    private static Type getBinExprType(JmmNode binaryExpr) {
-        // TODO: Simple implementation that needs to be expanded
+    private static Type getNewArrayExprType(JmmNode newArrayExpr) {
+        // The first child is the type of the elements, the second one the size
+        return new Type(newArrayExpr.getJmmChild(0).get("name"), true);
+    }
+
+    private static Type getArrayInitExprType(JmmNode arrayInitExpr, SymbolTable table, String methodName) {
+        // Java-- only has arrays of int, which is also the type of an empty initializer
+        if (arrayInitExpr.getNumChildren() == 0) {
+            return new Type(INT_TYPE_NAME, true);
+        }
+
+        return new Type(getOperandType(arrayInitExpr.getJmmChild(0), table, methodName).getName(), true);
+    }
 
+    private static Type getArrayAccessExprType(JmmNode arrayAccessExpr, SymbolTable table, String methodName) {
+        var arrayType = getOperandType(arrayAccessExpr.getJmmChild(0), table, methodName);
+        if (!arrayType.isArray()) {
+            throw new IllegalStateException("Expression of type '" + arrayType.getName() + "' is not an array");
+        }
+
+        return new Type(arrayType.getName(), false);
+    }
+
+    private static Type getParenExprType(JmmNode parenExpr, SymbolTable table, String methodName) {
+        if (parenExpr.getNumChildren() != 1) {
+            throw new IllegalStateException("Parenthesized expression has " + parenExpr.getNumChildren() + " elements");
+        }
+
+        return getOperandType(parenExpr.getJmmChild(0), table, methodName);
+    }
+
+    private static Type getBinExprType(JmmNode binaryExpr) {
         String operator = binaryExpr.get("op");
 
         return switch (operator) {
-            case "+", "*", "-", "/" -> new Type(INT_TYPE_NAME, false);
-            case "<"  -> {
-                JmmNode left = binaryExpr.getChildren().get(0);
-                JmmNode right = binaryExpr.getChildren().get(1);
-                Type leftType = getExprType(left, null);
-                Type rightType = getExprType(right, null);
-                if(leftType.getName().equals(INT_TYPE_NAME) && rightType.getName().equals(INT_TYPE_NAME)){
-                    yield new Type(BOOLEAN_TYPE_NAME, false);
-                }
-                else{
-                    throw new RuntimeException("Invalid types for operator '<' of expression '" + binaryExpr + "'");
-                }
-            }
+            case "+", "*", "-", "/" -> INT_TYPE;
+            case "<", ">", "<=", ">=" -> BOOLEAN_TYPE;
             default ->
                     throw new RuntimeException("Unknown operator '" + operator + "' of expression '" + binaryExpr + "'");
         };
     }
 
-
-    private static Type getVarExprType(JmmNode varRefExpr, SymbolTable table) {
+    /**
+     * Variables are looked up in the method: locals, then parameters, then fields. A name that is not a variable but
+     * an imported class, or this class, has the type of that class.
+     */
+    private static Type getVarExprType(JmmNode varRefExpr, SymbolTable table, String methodName) {
         var varName = varRefExpr.get("name");
-        var methodName = varRefExpr.getAncestor(Kind.METHOD_DECL).get().get("name");
+        if (methodName == null) {
+            methodName = varRefExpr.getAncestor(Kind.METHOD_DECL).orElseThrow().get("name");
+        }
 
-        for(var symbol : table.getLocalVariables(methodName)){
-            if(symbol.getName().equals(varName)){
-                return symbol.getType();
-            }
+        var jmmTable = JmmSymbolTable.of(table);
+        var symbol = jmmTable.resolve(methodName, varName);
+        if (symbol.isPresent()) {
+            return symbol.get().getType();
+        }
+
+        // The parameter of main is not in the symbol table
+        if (isMainParameter(varRefExpr, varName)) {
+            return new Type(STRING_TYPE_NAME, true);
         }
-        return new Type(INT_TYPE_NAME, false);
+
+        if (jmmTable.hasImport(varName) || varName.equals(table.getClassName())) {
+            return new Type(varName, false);
+        }
+
+        throw new IllegalStateException("Variable '" + varName + "' is not declared");
+    }
+
+    private static boolean isMainParameter(JmmNode varRefExpr, String varName) {
+        return varRefExpr.getAncestor(Kind.METHOD_DECL)
+                .filter(methodDecl -> methodDecl.hasAttribute("atribute"))
+                .map(methodDecl -> methodDecl.get("atribute").equals(varName))
+                .orElse(false);
     }
 
 
@@ -152,8 +307,8 @@ public class TypeUtils {
         }
 
         // Check if the types are imported
-        List<String> imports = table.getImports();
-        if (imports.contains(sourceType.getName()) && imports.contains(destinationType.getName())) {
+        var jmmTable = JmmSymbolTable.of(table);
+        if (jmmTable.hasImport(sourceType.getName()) && jmmTable.hasImport(destinationType.getName())) {
             return true;
         }
 
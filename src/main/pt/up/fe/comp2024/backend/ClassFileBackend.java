@@ -0,0 +1,19 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+
+import java.util.ArrayList;
+
+/**
+ * Backend that generates class files directly from OLLIR, instead of Jasmin code that still has to be assembled.
+ */
+public class ClassFileBackend {
+
+    public ClassFileResult toClassFile(OllirResult ollirResult) {
+
+        var bytes = new ClassFileWriter(ollirResult.getOllirClass()).build();
+
+        return new ClassFileResult(ollirResult, bytes, new ArrayList<>(ollirResult.getReports()));
+    }
+
+}
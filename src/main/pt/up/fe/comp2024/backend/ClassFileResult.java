@@ -0,0 +1,119 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.StageResult;
+import pt.up.fe.specs.util.SpecsIo;
+import pt.up.fe.specs.util.SpecsSystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The class file generated from an OLLIR class by {@link ClassFileBackend}.
+ */
+public class ClassFileResult implements StageResult {
+
+    private static final long TIMEOUT_NS = 5_000_000_000L;
+
+    private final OllirResult ollirResult;
+    private final byte[] bytes;
+    private final List<Report> reports;
+
+    /**
+     * Jasmin code of the same class, only generated when asked for.
+     */
+    private String jasminCode;
+
+    public ClassFileResult(OllirResult ollirResult, byte[] bytes, List<Report> reports) {
+        this.ollirResult = ollirResult;
+        this.bytes = bytes;
+        this.reports = reports;
+    }
+
+    public String getClassName() {
+        return ollirResult.getOllirClass().getClassName();
+    }
+
+    /**
+     * @return the contents of the class file
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * The Jasmin code of the class, for debugging. It is not used to build the class file.
+     *
+     * @return
+     */
+    public String getJasminCode() {
+        if (jasminCode == null) {
+            jasminCode = new JasminGenerator(ollirResult).build();
+        }
+
+        return jasminCode;
+    }
+
+    @Override
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    @Override
+    public Map<String, String> getConfig() {
+        return ollirResult.getConfig();
+    }
+
+    /**
+     * Writes the class file to the given folder.
+     *
+     * @param outputDir
+     * @return the class file
+     */
+    public File write(File outputDir) {
+        var classFile = new File(outputDir, getClassName() + ".class");
+
+        try {
+            Files.createDirectories(outputDir.toPath());
+            Files.write(classFile.toPath(), bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write class file '" + classFile + "'", e);
+        }
+
+        return classFile;
+    }
+
+    /**
+     * Runs the class, with the libraries of the tests in the classpath.
+     *
+     * @return the output that is printed by the program
+     */
+    public String run() {
+        return run(Collections.emptyList());
+    }
+
+    public String run(List<String> args) {
+        var outputDir = SpecsIo.getTempFolder("classfile");
+        SpecsIo.deleteFolderContents(outputDir);
+        write(outputDir);
+
+        var classpath = outputDir.getAbsolutePath() + File.pathSeparator + TestUtils.getLibsClasspath();
+
+        var command = new ArrayList<String>();
+        command.add("java");
+        command.add("-cp");
+        command.add(classpath);
+        command.add(getClassName());
+        command.addAll(args);
+
+        return SpecsSystem.runProcess(command, SpecsIo.getWorkingDir(), true, false, TIMEOUT_NS).getOutput();
+    }
+}
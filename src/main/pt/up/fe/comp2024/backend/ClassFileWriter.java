@@ -0,0 +1,871 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.backend.CodeBuffer.Frame;
+import pt.up.fe.comp2024.backend.CodeBuffer.Label;
+import pt.up.fe.comp2024.backend.CodeBuffer.VerificationType;
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static pt.up.fe.comp2024.backend.CodeBuffer.*;
+
+/**
+ * Generates the bytes of a JVM class file from an OLLIR class, without going through Jasmin.
+ * <p>
+ * The class files use version 61 (Java 17), so every method that has branches gets a StackMapTable attribute and is
+ * checked by the type-checking verifier.
+ */
+public class ClassFileWriter {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int MAJOR_VERSION = 61;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int ACC_VARARGS = 0x0080;
+
+    private static final String OBJECT_CLASS = "java/lang/Object";
+
+    private final ClassUnit classUnit;
+    private final ConstantPool pool = new ConstantPool();
+
+    /**
+     * A map of imported classes, with class names as keys and import paths as values.
+     */
+    private final Map<String, String> imports = new HashMap<>();
+
+    /**
+     * The method being generated, and its code.
+     */
+    private Method currentMethod;
+    private CodeBuffer code;
+    private Map<String, Label> labels;
+
+    public ClassFileWriter(ClassUnit classUnit) {
+        this.classUnit = classUnit;
+
+        for (String importUnit : classUnit.getImports()) {
+            String importedClassName = importUnit.substring(importUnit.lastIndexOf(".") + 1);
+            imports.put(importedClassName, importUnit.replace(".", "/"));
+        }
+    }
+
+    /**
+     * @return the contents of the class file
+     */
+    public byte[] build() {
+        try {
+            // members are written first, since they add the constants they use to the pool
+            var members = new ByteArrayOutputStream();
+            var membersOut = new DataOutputStream(members);
+
+            int thisClass = pool.classRef(classUnit.getClassName());
+            int superClass = pool.classRef(getSuperClass());
+
+            membersOut.writeShort(classUnit.getFields().size());
+            for (var field : classUnit.getFields()) {
+                writeField(membersOut, field);
+            }
+
+            var methods = classUnit.getMethods();
+            boolean hasConstructor = methods.stream().anyMatch(Method::isConstructMethod);
+
+            membersOut.writeShort(methods.size() + (hasConstructor ? 0 : 1));
+            if (!hasConstructor) {
+                writeDefaultConstructor(membersOut);
+            }
+            for (var method : methods) {
+                writeMethod(membersOut, method);
+            }
+
+            var bytes = new ByteArrayOutputStream();
+            var out = new DataOutputStream(bytes);
+
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            pool.write(out);
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            // interfaces
+            out.writeShort(0);
+            members.writeTo(out);
+            // class attributes
+            out.writeShort(0);
+
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String getSuperClass() {
+        var superClass = classUnit.getSuperClass();
+        return superClass == null ? OBJECT_CLASS : getImportedClass(superClass);
+    }
+
+    /**
+     * @param className
+     * @return the imported path of the class with '/' as separator, or the class name itself if it was not imported
+     */
+    private String getImportedClass(String className) {
+        return imports.getOrDefault(className, className);
+    }
+
+    private void writeField(DataOutputStream out, Field field) throws IOException {
+        int access = getAccessFlags(field.getFieldAccessModifier());
+        if (field.isStaticField()) {
+            access |= ACC_STATIC;
+        }
+        if (field.isFinalField()) {
+            access |= ACC_FINAL;
+        }
+
+        out.writeShort(access);
+        out.writeShort(pool.utf8(field.getFieldName()));
+        out.writeShort(pool.utf8(getDescriptor(field.getFieldType())));
+
+        // only static fields can have their value in the class file
+        if (field.isStaticField() && field.isInitialized()) {
+            out.writeShort(1);
+            out.writeShort(pool.utf8("ConstantValue"));
+            out.writeInt(2);
+            out.writeShort(pool.integer(field.getInitialValue()));
+        } else {
+            out.writeShort(0);
+        }
+    }
+
+    private void writeDefaultConstructor(DataOutputStream out) throws IOException {
+        var constructor = new CodeBuffer(pool, 1, List.of(VerificationType.object(classUnit.getClassName())));
+        constructor.load(0, VerificationType.object(classUnit.getClassName()));
+        constructor.poolInstruction(INVOKESPECIAL, pool.methodRef(getSuperClass(), "<init>", "()V"), 1, null);
+        constructor.instruction(RETURN, 0, null);
+
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(pool.utf8("<init>"));
+        out.writeShort(pool.utf8("()V"));
+        writeCode(out, constructor);
+    }
+
+    private void writeMethod(DataOutputStream out, Method method) throws IOException {
+        int access = getAccessFlags(method.getMethodAccessModifier());
+        if (method.isConstructMethod()) {
+            access = ACC_PUBLIC;
+        }
+        if (method.isStaticMethod()) {
+            access |= ACC_STATIC;
+        }
+        if (method.isFinalMethod()) {
+            access |= ACC_FINAL;
+        }
+        if (method.isVarargs()) {
+            access |= ACC_VARARGS;
+        }
+
+        var name = method.isConstructMethod() ? "<init>" : method.getMethodName();
+        var returnType = method.isConstructMethod() ? "V" : getDescriptor(method.getReturnType());
+        var params = method.getParams().stream()
+                .map(param -> getDescriptor(param.getType()))
+                .collect(Collectors.joining("", "(", ")"));
+
+        out.writeShort(access);
+        out.writeShort(pool.utf8(name));
+        out.writeShort(pool.utf8(params + returnType));
+        writeCode(out, generateCode(method));
+    }
+
+    /**
+     * Writes the methods attributes, which are only the Code attribute, with the StackMapTable inside if needed.
+     */
+    private void writeCode(DataOutputStream out, CodeBuffer methodCode) throws IOException {
+        var bytecode = methodCode.getCode();
+
+        var stackMap = new ByteArrayOutputStream();
+        if (methodCode.hasFrames()) {
+            methodCode.writeStackMapTable(new DataOutputStream(stackMap));
+        }
+
+        // Code attribute without its name and length: max_stack, max_locals, code, exception table, attributes
+        int codeLength = 2 + 2 + 4 + bytecode.length + 2 + 2;
+        if (methodCode.hasFrames()) {
+            codeLength += 2 + 4 + stackMap.size();
+        }
+
+        // method attributes
+        out.writeShort(1);
+        out.writeShort(pool.utf8("Code"));
+        out.writeInt(codeLength);
+        out.writeShort(methodCode.getMaxStack());
+        out.writeShort(methodCode.getMaxLocals());
+        out.writeInt(bytecode.length);
+        out.write(bytecode);
+        // exception table
+        out.writeShort(0);
+
+        if (methodCode.hasFrames()) {
+            out.writeShort(1);
+            out.writeShort(pool.utf8("StackMapTable"));
+            out.writeInt(stackMap.size());
+            stackMap.writeTo(out);
+        } else {
+            out.writeShort(0);
+        }
+    }
+
+    private static int getAccessFlags(AccessModifier accessModifier) {
+        return switch (accessModifier) {
+            case PUBLIC -> ACC_PUBLIC;
+            case PRIVATE -> ACC_PRIVATE;
+            case PROTECTED -> ACC_PROTECTED;
+            case DEFAULT -> 0;
+        };
+    }
+
+    /**
+     * Generates the bytecode of a method.
+     * <p>
+     * Instructions that cannot be reached are not generated. The state of the locals at each label comes from a
+     * data-flow analysis over the OLLIR instructions, so frames are also right for backward jumps.
+     */
+    private CodeBuffer generateCode(Method method) {
+        currentMethod = method;
+
+        var instructions = method.getInstructions();
+        var initialLocals = getInitialLocals(method);
+        int maxLocals = Math.max(initialLocals.size(), method.getVarTable().values().stream()
+                .mapToInt(Descriptor::getVirtualReg)
+                .max().orElse(0) + 1);
+
+        var localsIn = computeLocals(method, initialLocals, maxLocals);
+
+        labels = new HashMap<>();
+        for (var entry : method.getLabels().entrySet()) {
+            var label = new Label();
+
+            int target = instructions.indexOf(entry.getValue());
+            if (localsIn[target] != null) {
+                label.setFrame(Frame.ofLocals(Arrays.asList(localsIn[target])));
+            }
+
+            labels.put(entry.getKey(), label);
+        }
+
+        code = new CodeBuffer(pool, maxLocals, initialLocals);
+
+        for (int i = 0; i < instructions.size(); i++) {
+            if (localsIn[i] == null) {
+                continue;
+            }
+
+            var instruction = instructions.get(i);
+            for (var labelName : method.getLabels(instruction)) {
+                code.place(labels.get(labelName));
+            }
+
+            generateInstruction(instruction);
+
+            // values that are not used by the instruction, e.g. the result of a call
+            while (code.isReachable() && code.getStackSize() > 0) {
+                code.instruction(POP, 1, null);
+            }
+        }
+
+        // methods may end without a return
+        if (code.isReachable()) {
+            generateDefaultReturn(method);
+        }
+
+        var methodCode = code;
+        currentMethod = null;
+        code = null;
+        labels = null;
+
+        return methodCode;
+    }
+
+    private List<VerificationType> getInitialLocals(Method method) {
+        var initialLocals = new ArrayList<VerificationType>();
+
+        if (!method.isStaticMethod()) {
+            initialLocals.add(VerificationType.object(classUnit.getClassName()));
+        }
+        for (var param : method.getParams()) {
+            initialLocals.add(getVerificationType(param.getType()));
+        }
+
+        return initialLocals;
+    }
+
+    /**
+     * Data-flow analysis of the types of the locals at the start of each instruction. A local that is not assigned in
+     * every path, or that holds values of different types, is TOP.
+     *
+     * @return the types at the start of each instruction, or null for instructions that cannot be reached
+     */
+    private VerificationType[][] computeLocals(Method method, List<VerificationType> initialLocals, int maxLocals) {
+        var instructions = method.getInstructions();
+        var localsIn = new VerificationType[instructions.size()][];
+
+        if (instructions.isEmpty()) {
+            return localsIn;
+        }
+
+        var indexes = new IdentityHashMap<Instruction, Integer>();
+        for (int i = 0; i < instructions.size(); i++) {
+            indexes.put(instructions.get(i), i);
+        }
+
+        var entry = new VerificationType[maxLocals];
+        Arrays.fill(entry, VerificationType.TOP);
+        for (int i = 0; i < initialLocals.size(); i++) {
+            entry[i] = initialLocals.get(i);
+        }
+        localsIn[0] = entry;
+
+        var worklist = new ArrayDeque<Integer>();
+        worklist.add(0);
+
+        while (!worklist.isEmpty()) {
+            int index = worklist.poll();
+            var instruction = instructions.get(index);
+
+            var out = localsIn[index].clone();
+            if (instruction instanceof AssignInstruction assign && storesLocal(assign)) {
+                var dest = (Operand) assign.getDest();
+                out[getRegister(dest)] = getVerificationType(getVariableType(dest));
+            }
+
+            for (int successor : getSuccessors(instruction, index, instructions.size(), indexes)) {
+                var current = localsIn[successor];
+
+                if (current == null) {
+                    localsIn[successor] = out.clone();
+                    worklist.add(successor);
+                    continue;
+                }
+
+                boolean changed = false;
+                for (int reg = 0; reg < maxLocals; reg++) {
+                    if (!current[reg].equals(out[reg]) && !current[reg].equals(VerificationType.TOP)) {
+                        current[reg] = VerificationType.TOP;
+                        changed = true;
+                    }
+                }
+
+                if (changed) {
+                    worklist.add(successor);
+                }
+            }
+        }
+
+        return localsIn;
+    }
+
+    /**
+     * @return true if the assignment stores a value in a local variable
+     */
+    private static boolean storesLocal(AssignInstruction assign) {
+        if (assign.getDest() instanceof ArrayOperand) {
+            return false;
+        }
+
+        return !(assign.getRhs() instanceof CallInstruction call)
+                || call.getReturnType().getTypeOfElement() != ElementType.VOID;
+    }
+
+    private List<Integer> getSuccessors(Instruction instruction, int index, int size,
+                                        Map<Instruction, Integer> indexes) {
+        var successors = new ArrayList<Integer>();
+
+        if (instruction instanceof GotoInstruction gotoInstruction) {
+            successors.add(indexes.get(currentMethod.getLabels().get(gotoInstruction.getLabel())));
+            return successors;
+        }
+
+        if (instruction instanceof ReturnInstruction) {
+            return successors;
+        }
+
+        if (instruction instanceof CondBranchInstruction branch) {
+            successors.add(indexes.get(currentMethod.getLabels().get(branch.getLabel())));
+        }
+
+        if (index + 1 < size) {
+            successors.add(index + 1);
+        }
+
+        return successors;
+    }
+
+    private void generateInstruction(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign) {
+            generateAssign(assign);
+        } else if (instruction instanceof GotoInstruction gotoInstruction) {
+            code.branch(GOTO, labels.get(gotoInstruction.getLabel()), 0);
+        } else if (instruction instanceof CondBranchInstruction condBranch) {
+            generateCondBranch(condBranch);
+        } else if (instruction instanceof ReturnInstruction returnInstruction) {
+            generateReturn(returnInstruction);
+        } else if (instruction instanceof PutFieldInstruction putField) {
+            generatePutField(putField);
+        } else {
+            generateValue(instruction);
+        }
+    }
+
+    private void generateAssign(AssignInstruction assign) {
+        var dest = (Operand) assign.getDest();
+
+        if (dest instanceof ArrayOperand arrayElement) {
+            code.load(getRegister(dest), getVerificationType(getVariableType(dest)));
+            loadElement(arrayElement.getIndexOperands().get(0));
+            generateValue(assign.getRhs());
+            code.arrayStore();
+            return;
+        }
+
+        // a := b, where a and b share a register after register allocation, does nothing
+        if (assign.getRhs() instanceof SingleOpInstruction singleOp && singleOp.getSingleOperand() instanceof Operand source
+                && !(source instanceof ArrayOperand) && getRegister(source) == getRegister(dest)) {
+            return;
+        }
+
+        // a := a + c and a := a - c, with a small constant, become iinc
+        if (assign.getRhs() instanceof BinaryOpInstruction binaryOp) {
+            var increment = getIncrement(dest, binaryOp);
+            if (increment.isPresent()) {
+                code.iinc(getRegister(dest), increment.get());
+                return;
+            }
+        }
+
+        generateValue(assign.getRhs());
+
+        if (code.getStackSize() > 0) {
+            code.store(getRegister(dest));
+        }
+    }
+
+    private Optional<Integer> getIncrement(Operand dest, BinaryOpInstruction binaryOp) {
+        var opType = binaryOp.getOperation().getOpType();
+        if (opType != OperationType.ADD && opType != OperationType.SUB) {
+            return Optional.empty();
+        }
+
+        if (!(binaryOp.getLeftOperand() instanceof Operand left) || left instanceof ArrayOperand
+                || !left.getName().equals(dest.getName())
+                || !(binaryOp.getRightOperand() instanceof LiteralElement right)) {
+            return Optional.empty();
+        }
+
+        int constant = getIntValue(right);
+        if (opType == OperationType.SUB) {
+            constant = -constant;
+        }
+
+        if (constant < Byte.MIN_VALUE || constant > Byte.MAX_VALUE) {
+            return Optional.empty();
+        }
+
+        return Optional.of(constant);
+    }
+
+    private void generateCondBranch(CondBranchInstruction condBranch) {
+        var label = labels.get(condBranch.getLabel());
+        var condition = condBranch.getCondition();
+
+        // comparisons jump directly, instead of computing a boolean first
+        if (condition instanceof BinaryOpInstruction binaryOp
+                && getComparisonOpcode(binaryOp.getOperation().getOpType()).isPresent()) {
+            branchOnComparison(binaryOp, label);
+            return;
+        }
+
+        if (condition instanceof UnaryOpInstruction unaryOp && isNot(unaryOp)) {
+            loadElement(unaryOp.getOperand());
+            code.branch(IFEQ, label, 1);
+            return;
+        }
+
+        generateValue(condition);
+        code.branch(IFNE, label, 1);
+    }
+
+    private void generateReturn(ReturnInstruction returnInstruction) {
+        if (!returnInstruction.hasReturnValue() || currentMethod.getReturnType().getTypeOfElement() == ElementType.VOID) {
+            code.instruction(RETURN, 0, null);
+            return;
+        }
+
+        loadElement(returnInstruction.getOperand());
+        code.instruction(isReference(currentMethod.getReturnType()) ? ARETURN : IRETURN, 1, null);
+    }
+
+    private void generateDefaultReturn(Method method) {
+        var returnType = method.isConstructMethod() ? new Type(ElementType.VOID) : method.getReturnType();
+
+        if (returnType.getTypeOfElement() == ElementType.VOID) {
+            code.instruction(RETURN, 0, null);
+        } else if (isReference(returnType)) {
+            code.instruction(ACONST_NULL, 0, VerificationType.NULL);
+            code.instruction(ARETURN, 1, null);
+        } else {
+            code.pushInt(0);
+            code.instruction(IRETURN, 1, null);
+        }
+    }
+
+    private void generatePutField(PutFieldInstruction putField) {
+        loadElement(putField.getObject());
+        loadElement(putField.getValue());
+
+        var field = putField.getField();
+        int fieldRef = pool.fieldRef(getFieldOwner(putField.getObject()), field.getName(),
+                getDescriptor(field.getType()));
+        code.poolInstruction(PUTFIELD, fieldRef, 2, null);
+    }
+
+    /**
+     * Generates an instruction that leaves its value, if it has one, on the stack.
+     */
+    private void generateValue(Instruction instruction) {
+        if (instruction instanceof SingleOpInstruction singleOp) {
+            loadElement(singleOp.getSingleOperand());
+        } else if (instruction instanceof BinaryOpInstruction binaryOp) {
+            generateBinaryOp(binaryOp);
+        } else if (instruction instanceof UnaryOpInstruction unaryOp) {
+            generateUnaryOp(unaryOp);
+        } else if (instruction instanceof CallInstruction call) {
+            generateCall(call);
+        } else if (instruction instanceof GetFieldInstruction getField) {
+            loadElement(getField.getObject());
+
+            var field = getField.getField();
+            int fieldRef = pool.fieldRef(getFieldOwner(getField.getObject()), field.getName(),
+                    getDescriptor(field.getType()));
+            code.poolInstruction(GETFIELD, fieldRef, 1, getVerificationType(field.getType()));
+        } else {
+            throw new NotImplementedException(instruction.getClass());
+        }
+    }
+
+    private void generateBinaryOp(BinaryOpInstruction binaryOp) {
+        var opType = binaryOp.getOperation().getOpType();
+
+        // comparisons push 1 when true and 0 otherwise
+        if (getComparisonOpcode(opType).isPresent()) {
+            var isTrue = new Label();
+            var end = new Label();
+
+            branchOnComparison(binaryOp, isTrue);
+            code.pushInt(0);
+            code.branch(GOTO, end, 0);
+            code.place(isTrue);
+            code.pushInt(1);
+            code.place(end);
+            return;
+        }
+
+        loadElement(binaryOp.getLeftOperand());
+        loadElement(binaryOp.getRightOperand());
+
+        int opcode = switch (opType) {
+            case ADD -> IADD;
+            case SUB -> ISUB;
+            case MUL -> IMUL;
+            case DIV -> IDIV;
+            case SHL -> ISHL;
+            case SHR -> ISHR;
+            case SHRR -> IUSHR;
+            case AND, ANDB -> IAND;
+            case OR, ORB -> IOR;
+            case XOR -> IXOR;
+            default -> throw new NotImplementedException(opType);
+        };
+
+        code.instruction(opcode, 2, VerificationType.INTEGER);
+    }
+
+    private void generateUnaryOp(UnaryOpInstruction unaryOp) {
+        if (!isNot(unaryOp)) {
+            throw new NotImplementedException(unaryOp.getOperation().getOpType());
+        }
+
+        // booleans are 0 or 1, XOR with 1 negates them
+        loadElement(unaryOp.getOperand());
+        code.pushInt(1);
+        code.instruction(IXOR, 2, VerificationType.INTEGER);
+    }
+
+    /**
+     * Jumps to the label when the comparison holds, comparing with 0 directly when one of the operands is 0.
+     */
+    private void branchOnComparison(BinaryOpInstruction comparison, Label label) {
+        var opType = comparison.getOperation().getOpType();
+        var left = comparison.getLeftOperand();
+        var right = comparison.getRightOperand();
+
+        if (isZero(right)) {
+            loadElement(left);
+            code.branch(getZeroComparisonOpcode(opType), label, 1);
+        } else if (isZero(left)) {
+            // 0 < x is the same as x > 0
+            loadElement(right);
+            code.branch(getZeroComparisonOpcode(switch (opType) {
+                case LTH -> OperationType.GTH;
+                case LTE -> OperationType.GTE;
+                case GTH -> OperationType.LTH;
+                case GTE -> OperationType.LTE;
+                default -> opType;
+            }), label, 1);
+        } else {
+            loadElement(left);
+            loadElement(right);
+            code.branch(getComparisonOpcode(opType).orElseThrow(), label, 2);
+        }
+    }
+
+    private static boolean isZero(Element element) {
+        return element instanceof LiteralElement literal
+                && literal.getType().getTypeOfElement() != ElementType.STRING
+                && literal.getLiteral().equals("0");
+    }
+
+    private static boolean isNot(UnaryOpInstruction unaryOp) {
+        var opType = unaryOp.getOperation().getOpType();
+        return opType == OperationType.NOT || opType == OperationType.NOTB;
+    }
+
+    private static Optional<Integer> getComparisonOpcode(OperationType opType) {
+        return Optional.ofNullable(switch (opType) {
+            case LTH -> IF_ICMPLT;
+            case LTE -> IF_ICMPLE;
+            case GTH -> IF_ICMPGT;
+            case GTE -> IF_ICMPGE;
+            case EQ -> IF_ICMPEQ;
+            case NEQ -> IF_ICMPNE;
+            default -> null;
+        });
+    }
+
+    private static int getZeroComparisonOpcode(OperationType opType) {
+        return switch (opType) {
+            case LTH -> IFLT;
+            case LTE -> IFLE;
+            case GTH -> IFGT;
+            case GTE -> IFGE;
+            case EQ -> IFEQ;
+            case NEQ -> IFNE;
+            default -> throw new NotImplementedException(opType);
+        };
+    }
+
+    private void generateCall(CallInstruction call) {
+        switch (call.getInvocationType()) {
+            case NEW -> generateNew(call);
+            case arraylength -> {
+                loadElement(call.getCaller());
+                code.instruction(ARRAYLENGTH, 1, VerificationType.INTEGER);
+            }
+            case invokestatic, invokevirtual, invokespecial -> generateInvoke(call);
+            default -> throw new NotImplementedException(call.getInvocationType());
+        }
+    }
+
+    private void generateNew(CallInstruction call) {
+        if (call.getReturnType() instanceof ArrayType arrayType) {
+            loadElement(call.getArguments().get(0));
+
+            var elementType = arrayType.getElementType();
+            switch (elementType.getTypeOfElement()) {
+                case INT32 -> code.newArray(T_INT);
+                case BOOLEAN -> code.newArray(T_BOOLEAN);
+                default -> code.newArray(getInternalName(elementType));
+            }
+            return;
+        }
+
+        // the object is created and initialized at once, the call to <init> that follows is skipped
+        code.newObject(getImportedClass(((ClassType) call.getReturnType()).getName()));
+    }
+
+    private void generateInvoke(CallInstruction call) {
+        var methodName = getMethodName(call);
+        var caller = call.getCaller();
+        var invocationType = call.getInvocationType();
+
+        if (invocationType == CallType.invokespecial && methodName.equals("<init>")) {
+            // objects are initialized when created, only the call to the super constructor is needed
+            if (!isThis(caller)) {
+                return;
+            }
+
+            code.load(0, VerificationType.object(classUnit.getClassName()));
+            code.poolInstruction(INVOKESPECIAL, pool.methodRef(getSuperClass(), "<init>", "()V"), 1, null);
+            return;
+        }
+
+        String owner;
+        if (invocationType == CallType.invokestatic) {
+            owner = getImportedClass(((Operand) caller).getName());
+        } else {
+            owner = getClassName(caller.getType());
+            loadElement(caller);
+        }
+
+        var descriptor = new StringBuilder("(");
+        for (var argument : call.getArguments()) {
+            loadElement(argument);
+            descriptor.append(getDescriptor(argument.getType()));
+        }
+        descriptor.append(")").append(getDescriptor(call.getReturnType()));
+
+        int opcode = switch (invocationType) {
+            case invokestatic -> INVOKESTATIC;
+            case invokespecial -> INVOKESPECIAL;
+            default -> INVOKEVIRTUAL;
+        };
+        int pops = call.getArguments().size() + (invocationType == CallType.invokestatic ? 0 : 1);
+
+        code.poolInstruction(opcode, pool.methodRef(owner, methodName, descriptor.toString()), pops,
+                getVerificationType(call.getReturnType()));
+    }
+
+    private static String getMethodName(CallInstruction call) {
+        var methodName = ((LiteralElement) call.getMethodName()).getLiteral();
+        return methodName.substring(1, methodName.length() - 1);
+    }
+
+    /**
+     * Pushes the value of an operand or literal.
+     */
+    private void loadElement(Element element) {
+        if (element instanceof LiteralElement literal) {
+            if (literal.getType().getTypeOfElement() == ElementType.STRING) {
+                var value = literal.getLiteral();
+                code.pushString(value.substring(1, value.length() - 1));
+            } else {
+                code.pushInt(getIntValue(literal));
+            }
+            return;
+        }
+
+        var operand = (Operand) element;
+
+        if (isThis(operand)) {
+            code.load(0, VerificationType.object(classUnit.getClassName()));
+            return;
+        }
+
+        code.load(getRegister(operand), getVerificationType(getVariableType(operand)));
+
+        if (operand instanceof ArrayOperand arrayElement) {
+            loadElement(arrayElement.getIndexOperands().get(0));
+            code.arrayLoad();
+        }
+    }
+
+    private static int getIntValue(LiteralElement literal) {
+        return switch (literal.getLiteral()) {
+            case "true" -> 1;
+            case "false" -> 0;
+            default -> Integer.parseInt(literal.getLiteral());
+        };
+    }
+
+    private static boolean isThis(Element element) {
+        return element.getType().getTypeOfElement() == ElementType.THIS
+                || (element instanceof Operand operand && operand.getName().equals("this"));
+    }
+
+    private int getRegister(Operand operand) {
+        var descriptor = currentMethod.getVarTable().get(operand.getName());
+        if (descriptor == null) {
+            throw new RuntimeException("Unknown variable '" + operand.getName() + "' in method "
+                    + currentMethod.getMethodName());
+        }
+
+        return descriptor.getVirtualReg();
+    }
+
+    /**
+     * The declared type of a variable. For array elements this is the type of the array.
+     */
+    private Type getVariableType(Operand operand) {
+        var descriptor = currentMethod.getVarTable().get(operand.getName());
+        if (descriptor == null || descriptor.getVarType() == null) {
+            return operand.getType();
+        }
+
+        return descriptor.getVarType();
+    }
+
+    private String getFieldOwner(Element object) {
+        return isThis(object) ? classUnit.getClassName() : getClassName(object.getType());
+    }
+
+    private String getClassName(Type type) {
+        if (type.getTypeOfElement() == ElementType.THIS) {
+            return classUnit.getClassName();
+        }
+
+        return getImportedClass(((ClassType) type).getName());
+    }
+
+    private static boolean isReference(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case INT32, BOOLEAN, VOID -> false;
+            default -> true;
+        };
+    }
+
+    /**
+     * @return the field descriptor of the type, e.g. I or [Ljava/lang/String;
+     */
+    private String getDescriptor(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case INT32 -> "I";
+            case BOOLEAN -> "Z";
+            case VOID -> "V";
+            case ARRAYREF -> "[" + getDescriptor(((ArrayType) type).getElementType());
+            default -> "L" + getInternalName(type) + ";";
+        };
+    }
+
+    /**
+     * @return the name of the class used in class references, e.g. java/lang/String or [I
+     */
+    private String getInternalName(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case STRING -> "java/lang/String";
+            case CLASS -> "java/lang/Class";
+            case THIS -> classUnit.getClassName();
+            case OBJECTREF -> getImportedClass(((ClassType) type).getName());
+            case ARRAYREF -> getDescriptor(type);
+            default -> throw new NotImplementedException(type);
+        };
+    }
+
+    /**
+     * @return the type of the verifier for values of the given type, or null for void
+     */
+    private VerificationType getVerificationType(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case INT32, BOOLEAN -> VerificationType.INTEGER;
+            case VOID -> null;
+            default -> VerificationType.object(getInternalName(type));
+        };
+    }
+}
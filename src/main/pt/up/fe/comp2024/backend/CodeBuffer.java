@@ -0,0 +1,597 @@
+package pt.up.fe.comp2024.backend;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Bytecode of a single method.
+ * <p>
+ * Keeps the verification types of the operand stack and of the local variables while instructions are added, which
+ * gives the exact maximum stack size and the frames of the StackMapTable attribute.
+ */
+public class CodeBuffer {
+
+    public static final int ACONST_NULL = 0x01;
+    public static final int ICONST_0 = 0x03;
+    public static final int BIPUSH = 0x10;
+    public static final int SIPUSH = 0x11;
+    public static final int LDC = 0x12;
+    public static final int LDC_W = 0x13;
+    public static final int ILOAD = 0x15;
+    public static final int ALOAD = 0x19;
+    public static final int ILOAD_0 = 0x1a;
+    public static final int ALOAD_0 = 0x2a;
+    public static final int IALOAD = 0x2e;
+    public static final int AALOAD = 0x32;
+    public static final int BALOAD = 0x33;
+    public static final int ISTORE = 0x36;
+    public static final int ASTORE = 0x3a;
+    public static final int ISTORE_0 = 0x3b;
+    public static final int ASTORE_0 = 0x4b;
+    public static final int IASTORE = 0x4f;
+    public static final int AASTORE = 0x53;
+    public static final int BASTORE = 0x54;
+    public static final int POP = 0x57;
+    public static final int DUP = 0x59;
+    public static final int IADD = 0x60;
+    public static final int ISUB = 0x64;
+    public static final int IMUL = 0x68;
+    public static final int IDIV = 0x6c;
+    public static final int ISHL = 0x78;
+    public static final int ISHR = 0x7a;
+    public static final int IUSHR = 0x7c;
+    public static final int IAND = 0x7e;
+    public static final int IOR = 0x80;
+    public static final int IXOR = 0x82;
+    public static final int IINC = 0x84;
+    public static final int IFEQ = 0x99;
+    public static final int IFNE = 0x9a;
+    public static final int IFLT = 0x9b;
+    public static final int IFGE = 0x9c;
+    public static final int IFGT = 0x9d;
+    public static final int IFLE = 0x9e;
+    public static final int IF_ICMPEQ = 0x9f;
+    public static final int IF_ICMPNE = 0xa0;
+    public static final int IF_ICMPLT = 0xa1;
+    public static final int IF_ICMPGE = 0xa2;
+    public static final int IF_ICMPGT = 0xa3;
+    public static final int IF_ICMPLE = 0xa4;
+    public static final int GOTO = 0xa7;
+    public static final int IRETURN = 0xac;
+    public static final int ARETURN = 0xb0;
+    public static final int RETURN = 0xb1;
+    public static final int GETFIELD = 0xb4;
+    public static final int PUTFIELD = 0xb5;
+    public static final int INVOKEVIRTUAL = 0xb6;
+    public static final int INVOKESPECIAL = 0xb7;
+    public static final int INVOKESTATIC = 0xb8;
+    public static final int NEW = 0xbb;
+    public static final int NEWARRAY = 0xbc;
+    public static final int ANEWARRAY = 0xbd;
+    public static final int ARRAYLENGTH = 0xbe;
+    public static final int WIDE = 0xc4;
+
+    public static final int T_BOOLEAN = 4;
+    public static final int T_INT = 10;
+
+    private static final int SAME_FRAME_MAX = 63;
+    private static final int SAME_LOCALS_1_STACK_ITEM = 64;
+    private static final int SAME_LOCALS_1_STACK_ITEM_EXTENDED = 247;
+    private static final int CHOP_FRAME = 251;
+    private static final int SAME_FRAME_EXTENDED = 251;
+    private static final int FULL_FRAME = 255;
+
+    /**
+     * A type of the verifier, for values in the operand stack and in local variables.
+     *
+     * @param tag       the tag of the verification_type_info structure
+     * @param className the internal name of the class, for object types
+     */
+    public record VerificationType(int tag, String className) {
+
+        public static final VerificationType TOP = new VerificationType(0, null);
+        public static final VerificationType INTEGER = new VerificationType(1, null);
+        public static final VerificationType NULL = new VerificationType(5, null);
+
+        private static final int OBJECT_TAG = 7;
+
+        public static VerificationType object(String className) {
+            return new VerificationType(OBJECT_TAG, className);
+        }
+
+        public boolean isObject() {
+            return tag == OBJECT_TAG;
+        }
+    }
+
+    /**
+     * State of the locals and of the operand stack at the start of an instruction.
+     */
+    public record Frame(List<VerificationType> locals, List<VerificationType> stack) {
+
+        /**
+         * @param locals the type of each local variable, TOP for the unused ones
+         * @return a frame with an empty stack
+         */
+        public static Frame ofLocals(List<VerificationType> locals) {
+            return new Frame(trim(locals), List.of());
+        }
+    }
+
+    /**
+     * A position in the code, which can be used before it is placed.
+     */
+    public static class Label {
+
+        private int offset = -1;
+        private Frame frame;
+
+        /**
+         * Positions of the branches to this label, placed before it.
+         */
+        private final List<Integer> branches = new ArrayList<>();
+
+        /**
+         * Sets the state at this label, instead of taking it from the first branch to it. Needed for labels that are
+         * the target of backward branches.
+         *
+         * @param frame
+         */
+        public void setFrame(Frame frame) {
+            this.frame = frame;
+        }
+    }
+
+    private final ConstantPool pool;
+
+    private byte[] code = new byte[64];
+    private int length = 0;
+
+    private final VerificationType[] locals;
+    private final List<VerificationType> initialLocals;
+    private final List<VerificationType> stack = new ArrayList<>();
+    private int maxStack = 0;
+
+    /**
+     * False after an unconditional jump, until the next label.
+     */
+    private boolean reachable = true;
+
+    private final Map<Integer, Frame> frames = new TreeMap<>();
+
+    /**
+     * @param pool          the constant pool of the class
+     * @param maxLocals     the number of local variables of the method
+     * @param initialLocals the types of 'this' and of the parameters
+     */
+    public CodeBuffer(ConstantPool pool, int maxLocals, List<VerificationType> initialLocals) {
+        this.pool = pool;
+        this.locals = new VerificationType[maxLocals];
+        Arrays.fill(locals, VerificationType.TOP);
+
+        for (int i = 0; i < initialLocals.size(); i++) {
+            locals[i] = initialLocals.get(i);
+        }
+        this.initialLocals = trim(Arrays.asList(locals));
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    public int getMaxLocals() {
+        return locals.length;
+    }
+
+    public int getStackSize() {
+        return stack.size();
+    }
+
+    public boolean isReachable() {
+        return reachable;
+    }
+
+    public byte[] getCode() {
+        return Arrays.copyOf(code, length);
+    }
+
+    public boolean hasFrames() {
+        return !frames.isEmpty();
+    }
+
+    public Frame getCurrentFrame() {
+        return new Frame(trim(Arrays.asList(locals)), List.copyOf(stack));
+    }
+
+    /**
+     * Pushes an integer constant, with the shortest instruction for its value.
+     *
+     * @param value
+     */
+    public void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            opcode(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            opcode(BIPUSH);
+            u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            opcode(SIPUSH);
+            u2(value);
+        } else {
+            ldc(pool.integer(value));
+        }
+
+        push(VerificationType.INTEGER);
+    }
+
+    public void pushString(String value) {
+        ldc(pool.string(value));
+        push(VerificationType.object("java/lang/String"));
+    }
+
+    public void load(int reg, VerificationType type) {
+        localInstruction(type.isObject() ? ALOAD : ILOAD, type.isObject() ? ALOAD_0 : ILOAD_0, reg);
+        push(type);
+    }
+
+    public void store(int reg) {
+        var type = pop();
+        localInstruction(type.isObject() ? ASTORE : ISTORE, type.isObject() ? ASTORE_0 : ISTORE_0, reg);
+        locals[reg] = type;
+    }
+
+    /**
+     * Adds a constant to an int local variable.
+     *
+     * @param reg
+     * @param value a value between -128 and 127
+     */
+    public void iinc(int reg, int value) {
+        if (reg > 255) {
+            opcode(WIDE);
+            opcode(IINC);
+            u2(reg);
+            u2(value);
+        } else {
+            opcode(IINC);
+            u1(reg);
+            u1(value);
+        }
+        locals[reg] = VerificationType.INTEGER;
+    }
+
+    /**
+     * Adds an instruction without operands.
+     *
+     * @param opcode
+     * @param pops   the number of values it takes from the stack
+     * @param result the type of the value it pushes, or null
+     */
+    public void instruction(int opcode, int pops, VerificationType result) {
+        opcode(opcode);
+        pop(pops);
+        if (result != null) {
+            push(result);
+        }
+
+        if (opcode == RETURN || opcode == IRETURN || opcode == ARETURN) {
+            reachable = false;
+        }
+    }
+
+    /**
+     * Adds an instruction whose operand is an index of the constant pool, e.g. a field access or a call.
+     *
+     * @param opcode
+     * @param index
+     * @param pops   the number of values it takes from the stack
+     * @param result the type of the value it pushes, or null
+     */
+    public void poolInstruction(int opcode, int index, int pops, VerificationType result) {
+        opcode(opcode);
+        u2(index);
+        pop(pops);
+        if (result != null) {
+            push(result);
+        }
+    }
+
+    /**
+     * Creates an instance of the given class with its constructor without arguments.
+     *
+     * @param className
+     */
+    public void newObject(String className) {
+        opcode(NEW);
+        u2(pool.classRef(className));
+        opcode(DUP);
+        opcode(INVOKESPECIAL);
+        u2(pool.methodRef(className, "<init>", "()V"));
+
+        // the uninitialized reference and its copy are on the stack until the constructor is called
+        push(VerificationType.object(className));
+        maxStack = Math.max(maxStack, stack.size() + 1);
+    }
+
+    /**
+     * Creates an array of ints or booleans, with the size on top of the stack.
+     *
+     * @param arrayType T_INT or T_BOOLEAN
+     */
+    public void newArray(int arrayType) {
+        opcode(NEWARRAY);
+        u1(arrayType);
+        pop(1);
+        push(VerificationType.object(arrayType == T_BOOLEAN ? "[Z" : "[I"));
+    }
+
+    public void newArray(String elementClass) {
+        opcode(ANEWARRAY);
+        u2(pool.classRef(elementClass));
+        pop(1);
+        push(VerificationType.object("[L" + elementClass + ";"));
+    }
+
+    /**
+     * Loads an element of the array below the index on the stack.
+     */
+    public void arrayLoad() {
+        var arrayType = stack.get(stack.size() - 2);
+        var descriptor = arrayType.className().substring(1);
+
+        switch (descriptor) {
+            case "I" -> instruction(IALOAD, 2, VerificationType.INTEGER);
+            case "Z" -> instruction(BALOAD, 2, VerificationType.INTEGER);
+            default -> instruction(AALOAD, 2, VerificationType.object(toInternalName(descriptor)));
+        }
+    }
+
+    /**
+     * Stores the value on top of the stack in the array below the index.
+     */
+    public void arrayStore() {
+        var arrayType = stack.get(stack.size() - 3);
+        var descriptor = arrayType.className().substring(1);
+
+        switch (descriptor) {
+            case "I" -> instruction(IASTORE, 3, null);
+            case "Z" -> instruction(BASTORE, 3, null);
+            default -> instruction(AASTORE, 3, null);
+        }
+    }
+
+    /**
+     * Adds a conditional branch, or a goto.
+     *
+     * @param opcode
+     * @param target
+     * @param pops   the number of values the branch takes from the stack
+     */
+    public void branch(int opcode, Label target, int pops) {
+        int position = length;
+
+        opcode(opcode);
+        pop(pops);
+
+        if (target.frame == null) {
+            target.frame = getCurrentFrame();
+        }
+
+        if (target.offset >= 0) {
+            u2(checkBranchOffset(target.offset - position));
+        } else {
+            target.branches.add(position);
+            u2(0);
+        }
+
+        if (opcode == GOTO) {
+            reachable = false;
+        }
+    }
+
+    /**
+     * Places the label at the current position. If the label is the target of a branch, the state at this position
+     * becomes the one of the label.
+     *
+     * @param label
+     */
+    public void place(Label label) {
+        label.offset = length;
+
+        for (var position : label.branches) {
+            int offset = checkBranchOffset(label.offset - position);
+            code[position + 1] = (byte) (offset >> 8);
+            code[position + 2] = (byte) offset;
+        }
+        label.branches.clear();
+
+        if (label.frame == null) {
+            if (!reachable) {
+                throw new IllegalStateException("Label without state placed after an unconditional jump");
+            }
+
+            // only reached by falling through, unless a backward branch with the same state is added later
+            label.frame = getCurrentFrame();
+            frames.put(length, label.frame);
+            return;
+        }
+
+        Arrays.fill(locals, VerificationType.TOP);
+        for (int i = 0; i < label.frame.locals().size(); i++) {
+            locals[i] = label.frame.locals().get(i);
+        }
+        stack.clear();
+        stack.addAll(label.frame.stack());
+
+        frames.put(length, label.frame);
+        reachable = true;
+    }
+
+    /**
+     * Writes the entries of the StackMapTable attribute, with the smallest encoding for each frame.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeStackMapTable(DataOutputStream out) throws IOException {
+        var previousLocals = initialLocals;
+        int previousOffset = -1;
+
+        out.writeShort(frames.size());
+        for (var entry : frames.entrySet()) {
+            int offsetDelta = entry.getKey() - previousOffset - 1;
+            var frame = entry.getValue();
+            var frameLocals = frame.locals();
+
+            if (frameLocals.equals(previousLocals) && frame.stack().isEmpty()) {
+                if (offsetDelta <= SAME_FRAME_MAX) {
+                    out.writeByte(offsetDelta);
+                } else {
+                    out.writeByte(SAME_FRAME_EXTENDED);
+                    out.writeShort(offsetDelta);
+                }
+            } else if (frameLocals.equals(previousLocals) && frame.stack().size() == 1) {
+                if (offsetDelta <= SAME_FRAME_MAX) {
+                    out.writeByte(SAME_LOCALS_1_STACK_ITEM + offsetDelta);
+                } else {
+                    out.writeByte(SAME_LOCALS_1_STACK_ITEM_EXTENDED);
+                    out.writeShort(offsetDelta);
+                }
+                writeType(out, frame.stack().get(0));
+            } else if (frame.stack().isEmpty() && isPrefix(frameLocals, previousLocals)
+                    && previousLocals.size() - frameLocals.size() <= 3) {
+                out.writeByte(CHOP_FRAME - (previousLocals.size() - frameLocals.size()));
+                out.writeShort(offsetDelta);
+            } else if (frame.stack().isEmpty() && isPrefix(previousLocals, frameLocals)
+                    && frameLocals.size() - previousLocals.size() <= 3) {
+                out.writeByte(SAME_FRAME_EXTENDED + (frameLocals.size() - previousLocals.size()));
+                out.writeShort(offsetDelta);
+                for (var type : frameLocals.subList(previousLocals.size(), frameLocals.size())) {
+                    writeType(out, type);
+                }
+            } else {
+                out.writeByte(FULL_FRAME);
+                out.writeShort(offsetDelta);
+                out.writeShort(frameLocals.size());
+                for (var type : frameLocals) {
+                    writeType(out, type);
+                }
+                out.writeShort(frame.stack().size());
+                for (var type : frame.stack()) {
+                    writeType(out, type);
+                }
+            }
+
+            previousLocals = frameLocals;
+            previousOffset = entry.getKey();
+        }
+    }
+
+    private void writeType(DataOutputStream out, VerificationType type) throws IOException {
+        out.writeByte(type.tag());
+        if (type.isObject()) {
+            out.writeShort(pool.classRef(type.className()));
+        }
+    }
+
+    private static boolean isPrefix(List<VerificationType> prefix, List<VerificationType> list) {
+        return prefix.size() < list.size() && list.subList(0, prefix.size()).equals(prefix);
+    }
+
+    /**
+     * Removes the trailing unused locals, which frames do not need to list.
+     */
+    private static List<VerificationType> trim(List<VerificationType> types) {
+        int size = types.size();
+        while (size > 0 && Objects.equals(types.get(size - 1), VerificationType.TOP)) {
+            size--;
+        }
+
+        return List.copyOf(types.subList(0, size));
+    }
+
+    /**
+     * @param descriptor a field descriptor of a class or array type
+     * @return the name used by class references
+     */
+    private static String toInternalName(String descriptor) {
+        if (descriptor.startsWith("L")) {
+            return descriptor.substring(1, descriptor.length() - 1);
+        }
+
+        return descriptor;
+    }
+
+    private static int checkBranchOffset(int offset) {
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+            throw new RuntimeException("Method is too large, branch offset " + offset + " does not fit in 16 bits");
+        }
+
+        return offset;
+    }
+
+    private void localInstruction(int opcode, int shortOpcode, int reg) {
+        if (reg <= 3) {
+            opcode(shortOpcode + reg);
+        } else if (reg <= 255) {
+            opcode(opcode);
+            u1(reg);
+        } else {
+            opcode(WIDE);
+            opcode(opcode);
+            u2(reg);
+        }
+    }
+
+    private void ldc(int index) {
+        if (index <= 255) {
+            opcode(LDC);
+            u1(index);
+        } else {
+            opcode(LDC_W);
+            u2(index);
+        }
+    }
+
+    private void push(VerificationType type) {
+        stack.add(type);
+        maxStack = Math.max(maxStack, stack.size());
+    }
+
+    private VerificationType pop() {
+        return stack.remove(stack.size() - 1);
+    }
+
+    private void pop(int count) {
+        for (int i = 0; i < count; i++) {
+            pop();
+        }
+    }
+
+    private void opcode(int opcode) {
+        if (!reachable) {
+            throw new IllegalStateException("Unreachable instruction after an unconditional jump");
+        }
+
+        u1(opcode);
+    }
+
+    private void u1(int value) {
+        if (length == code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+
+        code[length++] = (byte) value;
+    }
+
+    private void u2(int value) {
+        u1(value >> 8);
+        u1(value);
+    }
+}
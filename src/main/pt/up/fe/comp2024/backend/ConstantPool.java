@@ -0,0 +1,138 @@
+package pt.up.fe.comp2024.backend;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Constant pool of a class file. Each constant is added only once, adding it again returns the index of the existing
+ * entry.
+ */
+public class ConstantPool {
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int NAME_AND_TYPE = 12;
+
+    /**
+     * Maximum number of entries, the count is written as an unsigned 16-bit value.
+     */
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    /**
+     * Index of each constant, keyed by its tag and value.
+     */
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    /**
+     * The encoded entries, in order.
+     */
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream entries = new DataOutputStream(bytes);
+
+    /**
+     * Index of the next entry. Index 0 is not used.
+     */
+    private int nextIndex = 1;
+
+    public int utf8(String value) {
+        return add(UTF8, value, out -> out.writeUTF(value));
+    }
+
+    public int integer(int value) {
+        return add(INTEGER, String.valueOf(value), out -> out.writeInt(value));
+    }
+
+    /**
+     * @param internalName the name of the class with '/' as separator, or the descriptor of an array type
+     * @return
+     */
+    public int classRef(String internalName) {
+        int name = utf8(internalName);
+        return add(CLASS, internalName, out -> out.writeShort(name));
+    }
+
+    public int string(String value) {
+        int utf8 = utf8(value);
+        return add(STRING, value, out -> out.writeShort(utf8));
+    }
+
+    public int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        return add(NAME_AND_TYPE, name + ":" + descriptor, out -> {
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+    }
+
+    public int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(FIELD_REF, owner, name, descriptor);
+    }
+
+    public int methodRef(String owner, String name, String descriptor) {
+        return memberRef(METHOD_REF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int classIndex = classRef(owner);
+        int nameAndTypeIndex = nameAndType(name, descriptor);
+        return add(tag, owner + "." + name + ":" + descriptor, out -> {
+            out.writeShort(classIndex);
+            out.writeShort(nameAndTypeIndex);
+        });
+    }
+
+    /**
+     * @return the number of entries, plus one, as stored in the constant_pool_count of the class file
+     */
+    public int getCount() {
+        return nextIndex;
+    }
+
+    /**
+     * Writes the constant_pool_count followed by every entry.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeShort(getCount());
+        bytes.writeTo(out);
+    }
+
+    private int add(int tag, String value, EntryWriter contents) {
+        var key = tag + ":" + value;
+        var index = indexes.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        if (nextIndex >= MAX_ENTRIES) {
+            throw new RuntimeException("Too many constants for a single class file");
+        }
+
+        try {
+            entries.writeByte(tag);
+            contents.write(entries);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        index = nextIndex++;
+        indexes.put(key, index);
+
+        return index;
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
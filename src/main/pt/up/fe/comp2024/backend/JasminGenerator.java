@@ -4,9 +4,9 @@ import org.specs.comp.ollir.*;
 import org.specs.comp.ollir.tree.TreeNode;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.specs.util.classmap.FunctionClassMap;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
-import pt.up.fe.specs.util.utilities.StringLines;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -88,16 +88,6 @@ public class JasminGenerator {
      */
     private int notEqualBranchCounter = 0;
 
-    /**
-     * The current stack size during code generation.
-     */
-    int stackSize = 0;
-
-    /**
-     * The maximum stack size encountered during code generation.
-     */
-    int maxStackSize = 0;
-
     /**
      * Map containing generator functions for different types of OLLIR elements.
      */
@@ -169,16 +159,6 @@ public class JasminGenerator {
         return imports.getOrDefault(className, className);
     }
 
-    /**
-     * Checks the current stack size against the maximum stack size encountered so far.
-     * If the current stack size exceeds the maximum stack size, updates the maximum stack size.
-     */
-    public void checkStackSize(){
-        if(stackSize > maxStackSize){
-            maxStackSize = stackSize;
-        }
-    }
-
     /**
      * Builds the Jasmin assembly code for the OLLIR class.
      *
@@ -241,7 +221,7 @@ public class JasminGenerator {
             if (method.isConstructMethod()) {
                 continue;
             }
-            code.append(generators.apply(method));
+            appendMethod(method, code);
         }
 
         return code.toString();
@@ -254,12 +234,25 @@ public class JasminGenerator {
      * @return The generated Jasmin assembly code as a string.
      */
     private String generateMethod(Method method) {
+        var code = new StringBuilder();
+        appendMethod(method, code);
+
+        return code.toString();
+    }
+
+    /**
+     * Appends the Jasmin assembly code for a given method to the given buffer.
+     * <p>
+     * The instructions are generated in a single pass, each one followed by its labels, which are looked up in an
+     * index built once for the method.
+     *
+     * @param method The method for which to generate the code.
+     * @param code   The buffer where the code is appended.
+     */
+    private void appendMethod(Method method, StringBuilder code) {
         // Set the current method context
         currentMethod = method;
 
-        var code = new StringBuilder();
-        var ephemeralCode = new StringBuilder();
-
         // Calculate the method access modifier
         var modifier = method.getMethodAccessModifier() != AccessModifier.DEFAULT ?
                 method.getMethodAccessModifier().name().toLowerCase() + " " :
@@ -295,46 +288,83 @@ public class JasminGenerator {
                 .mapToInt(Descriptor::getVirtualReg)
                 .max().orElse(0) + 1;
 
-        // Process each instruction in the method
-        method.getInstructions().forEach(instruction -> {
-            var joiner = new StringJoiner(NL + TAB, TAB, NL);
+        // The .limit directives are inserted here once the instructions have been generated
+        var limitsPosition = code.length();
+
+        // Labels of each instruction, in the order of the label map of the method
+        var labels = getInstructionLabels(method);
 
+        // Process each instruction in the method
+        for (var instruction : method.getInstructions()) {
             // Add labels for the instruction
-            method.getLabels().forEach((key, value) -> {
-                if (value.equals(instruction)) {
-                    joiner.add(key + ":");
-                }
-            });
+            for (var label : labels.getOrDefault(instruction, Collections.emptyList())) {
+                code.append(TAB).append(label).append(":").append(NL);
+            }
 
             // Generate code for the instruction and add it
-            StringLines.getLines(generators.apply(instruction)).forEach(joiner::add);
-            ephemeralCode.append(joiner);
+            var instructionCode = generators.apply(instruction);
+            appendIndented(code, instructionCode);
 
-            // Adjust the stack by popping as necessary
-            for (int i = 0; i < stackSize; i++) {
-                ephemeralCode.append(TAB).append("pop").append(NL);
+            // Pop the values the instruction leaves on the stack, such as the result of a call that is not used
+            var leftover = StackAnalyzer.analyzeFragment(instructionCode).getExitDepth();
+            for (int i = 0; i < leftover; i++) {
+                code.append(TAB).append("pop").append(NL);
             }
-            stackSize = 0;
-        });
+        }
 
-        // Set the limit for the stack size
-        var limitStack = maxStackSize;
-        maxStackSize = 0;
+        // Set the limit for the stack size, and check that the stack is used consistently on every path
+        var stack = StackAnalyzer.analyzeMethod(code.substring(limitsPosition));
+        var limitStack = stack.getMaxStack();
 
-        // Append the .limit directives
-        code.append(TAB).append(".limit stack ").append(limitStack).append(NL);
-        code.append(TAB).append(".limit locals ").append(limitLocals).append(NL);
+        for (var error : stack.getErrors()) {
+            reports.add(Report.newError(Stage.GENERATION, -1, -1,
+                    "Invalid stack in method '" + methodName + "', " + error, null));
+        }
 
-        // Append the generated code for the method's instructions
-        code.append(ephemeralCode);
+        // Insert the .limit directives before the generated code for the method's instructions
+        code.insert(limitsPosition, TAB + ".limit stack " + limitStack + NL
+                + TAB + ".limit locals " + limitLocals + NL);
 
         // End the method definition
         code.append(".end method").append(NL);
 
         // Unset the current method context
         currentMethod = null;
+    }
 
-        return code.toString();
+    /**
+     * Builds an index from each instruction of the method to its labels.
+     *
+     * @param method The method whose labels are indexed.
+     * @return The labels of each instruction that has at least one label.
+     */
+    private static Map<Instruction, List<String>> getInstructionLabels(Method method) {
+        var labels = new IdentityHashMap<Instruction, List<String>>();
+
+        method.getLabels().forEach((label, instruction) ->
+                labels.computeIfAbsent(instruction, key -> new ArrayList<>()).add(label));
+
+        return labels;
+    }
+
+    /**
+     * Appends each line of the given code to the buffer, indented by one tab.
+     *
+     * @param code  The buffer where the lines are appended.
+     * @param lines The code to append, with lines separated by line breaks.
+     */
+    private static void appendIndented(StringBuilder code, String lines) {
+        int start = 0;
+
+        while (start < lines.length()) {
+            int end = lines.indexOf(NL, start);
+            if (end == -1) {
+                end = lines.length();
+            }
+
+            code.append(TAB).append(lines, start, end).append(NL);
+            start = end + NL.length();
+        }
     }
 
     /**
@@ -378,18 +408,30 @@ public class JasminGenerator {
                     constant = -constant;
                 }
 
-                // Get the register of the operand
-                int reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
+                // iinc only takes a signed byte, larger constants are added with iadd
+                if (constant >= Byte.MIN_VALUE && constant <= Byte.MAX_VALUE) {
+                    // Get the register of the operand
+                    int reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
 
-                // Generate the iinc instruction
-                code.append("iinc ").append(reg).append(" ").append(constant).append(NL);
-                return code.toString();
+                    // Generate the iinc instruction
+                    code.append("iinc ").append(reg).append(" ").append(constant).append(NL);
+                    return code.toString();
+                }
             }
         }
 
         // Get the register of the operand
         int reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
 
+        // A copy between variables that share a register, e.g. after register allocation, does nothing
+        if (!(operand instanceof ArrayOperand)
+                && assign.getRhs() instanceof SingleOpInstruction singleOp
+                && singleOp.getSingleOperand() instanceof Operand source
+                && !(source instanceof ArrayOperand)
+                && currentMethod.getVarTable().get(source.getName()).getVirtualReg() == reg) {
+            return code.toString();
+        }
+
         // Handle array operands
         if (operand instanceof ArrayOperand arrayElement) {
             // Load array
@@ -397,9 +439,6 @@ public class JasminGenerator {
 
             // Load index
             code.append(generators.apply(arrayElement.getIndexOperands().get(0)));
-
-            stackSize++;
-            checkStackSize();
         }
 
         // Generate code for the RHS
@@ -409,9 +448,6 @@ public class JasminGenerator {
         if (operand instanceof ArrayOperand) {
             code.append("iastore").append(NL);
 
-            stackSize -= 3;
-            checkStackSize();
-
             return code.toString();
         }
 
@@ -426,9 +462,6 @@ public class JasminGenerator {
             default -> throw new NotImplementedException(elementType);
         }
 
-        stackSize--;
-        checkStackSize();
-
         return code.toString();
     }
 
@@ -475,8 +508,6 @@ public class JasminGenerator {
             default -> throw new NotImplementedException(elementType);
         }
 
-        stackSize++;
-        checkStackSize();
         return code.toString();
     }
 
@@ -491,17 +522,11 @@ public class JasminGenerator {
         // Get the register associated with the operand
         var reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
 
-        stackSize++;
-        checkStackSize();
-
         if (operand instanceof ArrayOperand arrayElement) {
             appendArrayLoad(code, reg);
             code.append(generators.apply(arrayElement.getIndexOperands().get(0)))
                     .append("iaload")
                     .append(NL);
-            stackSize++;
-            checkStackSize();
-            stackSize -=2;
         } else {
             appendOperandLoad(code, operand, reg);
         }
@@ -563,50 +588,123 @@ public class JasminGenerator {
     private String generateBinaryOp(BinaryOpInstruction binaryOp) {
         var code = new StringBuilder();
 
-        // Load values of the left and right operands
-        code.append(generators.apply(binaryOp.getLeftOperand()));
-        code.append(generators.apply(binaryOp.getRightOperand()));
-
-        // Generate code for the binary operation
+        // Comparisons jump on their operands, and only push a boolean when their value is used
         switch (binaryOp.getOperation().getOpType()) {
-            case ADD -> code.append("iadd").append(NL);
-            case SUB -> code.append("isub").append(NL);
-            case MUL -> code.append("imul").append(NL);
-            case DIV -> code.append("idiv").append(NL);
-            case ANDB, AND -> code.append("iand").append(NL);
-            case LTH -> generateComparisonOp(code, "iflt", "lessThenBranch_", lessThenBranchCounter++);
-            case LTE -> generateComparisonOp(code, "ifle", "lessThenEqualBranch_", lessThenEqualBranchCounter++);
-            case GTH -> generateComparisonOp(code, "ifgt", "greaterThenBranch_", greaterThenBranchCounter++);
-            case GTE -> generateComparisonOp(code, "ifge", "greaterThenEqualBranch_", greaterThenEqualBranchCounter++);
-            case EQ -> generateComparisonOp(code, "ifeq", "equalBranch_", equalBranchCounter++);
-            case NEQ -> generateComparisonOp(code, "ifne", "notEqualBranch_", notEqualBranchCounter++);
-            default -> throw new NotImplementedException(binaryOp.getOperation().getOpType());
-        }
-
-        stackSize--;
-        checkStackSize();
+            case LTH -> generateComparisonOp(code, binaryOp, "lessThenBranch_", lessThenBranchCounter++);
+            case LTE -> generateComparisonOp(code, binaryOp, "lessThenEqualBranch_", lessThenEqualBranchCounter++);
+            case GTH -> generateComparisonOp(code, binaryOp, "greaterThenBranch_", greaterThenBranchCounter++);
+            case GTE -> generateComparisonOp(code, binaryOp, "greaterThenEqualBranch_", greaterThenEqualBranchCounter++);
+            case EQ -> generateComparisonOp(code, binaryOp, "equalBranch_", equalBranchCounter++);
+            case NEQ -> generateComparisonOp(code, binaryOp, "notEqualBranch_", notEqualBranchCounter++);
+            default -> {
+                // Load values of the left and right operands
+                code.append(generators.apply(binaryOp.getLeftOperand()));
+                code.append(generators.apply(binaryOp.getRightOperand()));
+
+                // Generate code for the binary operation
+                switch (binaryOp.getOperation().getOpType()) {
+                    case ADD -> code.append("iadd").append(NL);
+                    case SUB -> code.append("isub").append(NL);
+                    case MUL -> code.append("imul").append(NL);
+                    case DIV -> code.append("idiv").append(NL);
+                    case SHL -> code.append("ishl").append(NL);
+                    case SHR -> code.append("ishr").append(NL);
+                    case SHRR -> code.append("iushr").append(NL);
+                    case ANDB, AND -> code.append("iand").append(NL);
+                    case ORB, OR -> code.append("ior").append(NL);
+                    case XOR -> code.append("ixor").append(NL);
+                    default -> throw new NotImplementedException(binaryOp.getOperation().getOpType());
+                }
+            }
+        }
 
         return code.toString();
     }
 
     /**
-     * Generates the Jasmin assembly code for a comparison operation.
+     * Generates the Jasmin assembly code for a comparison whose value is used, which pushes 1 when it holds and 0
+     * otherwise.
      *
      * @param code The StringBuilder to append the code to.
-     * @param comparison The comparison instruction (e.g., "iflt").
+     * @param comparison The comparison instruction.
      * @param branchPrefix The prefix for the branch labels.
      * @param branchCounter The counter for the branch labels.
      */
-    private void generateComparisonOp(StringBuilder code, String comparison, String branchPrefix, int branchCounter) {
-        code.append("isub").append(NL)
-                .append(comparison).append(" ").append(branchPrefix).append(branchCounter).append(NL)
-                .append("iconst_0").append(NL)
+    private void generateComparisonOp(StringBuilder code, BinaryOpInstruction comparison, String branchPrefix,
+                                      int branchCounter) {
+        appendComparisonJump(code, comparison, branchPrefix + branchCounter);
+        code.append("iconst_0").append(NL)
                 .append("goto end").append(branchPrefix).append(branchCounter).append(NL)
                 .append(branchPrefix).append(branchCounter).append(":").append(NL)
                 .append("iconst_1").append(NL)
                 .append("end").append(branchPrefix).append(branchCounter).append(":").append(NL);
     }
 
+    /**
+     * Appends the Jasmin code that jumps to the label when the comparison holds. The operands are compared with if_icmp&lt;cond&gt;, and with if&lt;cond&gt; when one of them is 0,
+     * instead of subtracting them, which could overflow.
+     *
+     * @param code The StringBuilder to append the code to.
+     * @param comparison The comparison instruction, with a relational operation.
+     * @param label The label to jump to.
+     */
+    private void appendComparisonJump(StringBuilder code, BinaryOpInstruction comparison, String label) {
+        var opType = comparison.getOperation().getOpType();
+
+        var left = comparison.getLeftOperand();
+        var right = comparison.getRightOperand();
+
+        if (isZero(right)) {
+            code.append(generators.apply(left)).append("if");
+        } else if (isZero(left)) {
+            // 0 < x is the same as x > 0
+            code.append(generators.apply(right)).append("if");
+            opType = swapComparison(opType);
+        } else {
+            code.append(generators.apply(left)).append(generators.apply(right)).append("if_icmp");
+        }
+
+        code.append(getComparisonSuffix(opType)).append(" ").append(label).append(NL);
+    }
+
+    /**
+     * @return true if the element is the integer or boolean literal 0
+     */
+    private static boolean isZero(Element element) {
+        return element instanceof LiteralElement literal
+                && literal.getType().getTypeOfElement() != ElementType.STRING
+                && literal.getLiteral().equals("0");
+    }
+
+    /**
+     * @return the relational operation that compares the operands in the opposite order
+     */
+    private static OperationType swapComparison(OperationType opType) {
+        return switch (opType) {
+            case LTH -> OperationType.GTH;
+            case LTE -> OperationType.GTE;
+            case GTH -> OperationType.LTH;
+            case GTE -> OperationType.LTE;
+            case EQ, NEQ -> opType;
+            default -> throw new NotImplementedException(opType);
+        };
+    }
+
+    /**
+     * @return the condition of the Jasmin branch instructions for the relational operation, or null if it is not one
+     */
+    private static String getComparisonSuffix(OperationType opType) {
+        return switch (opType) {
+            case LTH -> "lt";
+            case LTE -> "le";
+            case GTH -> "gt";
+            case GTE -> "ge";
+            case EQ -> "eq";
+            case NEQ -> "ne";
+            default -> null;
+        };
+    }
+
     /**
      * Generates the Jasmin assembly code for a unary operation instruction.
      *
@@ -624,11 +722,7 @@ public class JasminGenerator {
             case NOT, NOTB -> {
                 // NOT operation (logical complement). XOR with 1.
                 code.append("iconst_1").append(NL);
-                stackSize++; // Increment stack size for the constant
-                checkStackSize(); // Check stack size immediately after pushing constant
                 code.append("ixor").append(NL);
-                stackSize--; // Decrement stack size after the XOR operation
-                checkStackSize(); // Ensure stack size is correct after operation
             }
             default -> throw new NotImplementedException(unaryOp.getOperation().getOpType());
         }
@@ -661,19 +755,15 @@ public class JasminGenerator {
             case INT32, BOOLEAN -> {
                 code.append(generators.apply(operand)); // Generate code to load integer or boolean
                 code.append("ireturn").append(NL); // Return integer from method
-                stackSize--; // Adjust the stack size for returning a value
             }
             case STRING, THIS, ARRAYREF, OBJECTREF -> {
                 code.append(generators.apply(operand)); // Generate code to load reference
                 code.append("areturn").append(NL); // Return reference from method
-                stackSize--; // Adjust the stack size for returning a reference
             }
             case VOID -> code.append("return").append(NL); // Return void (no stack size change)
             default -> throw new NotImplementedException(operand.getType().getTypeOfElement());
         }
 
-        checkStackSize();
-
         return code.toString();
     }
 
@@ -710,8 +800,6 @@ public class JasminGenerator {
         } else if (call.getReturnType() instanceof ArrayType) {
             code.append(generators.apply(call.getArguments().get(0)));
             code.append("newarray int").append(NL);
-            stackSize--;
-            checkStackSize();
         }
         return code.toString();
     }
@@ -726,8 +814,6 @@ public class JasminGenerator {
     private String handleArrayLength(StringBuilder code, CallInstruction call) {
         code.append(generators.apply(call.getCaller()));
         code.append("arraylength").append(NL);
-        stackSize--;
-        checkStackSize();
         return code.toString();
     }
 
@@ -752,8 +838,6 @@ public class JasminGenerator {
         code.append(call.getInvocationType()).append(" ").append(className)
                 .append("/").append(methodName).append(args).append(returnType).append(NL);
 
-        adjustStackSizeForMethodCall(returnType, call);
-
         return code.toString();
     }
 
@@ -813,29 +897,6 @@ public class JasminGenerator {
         }
     }
 
-    /**
-     * Adjusts the JVM stack size according to the type of method call (static or instance) and its return type.
-     * Updates the stack size accounting for the object reference, method arguments, and the method return type.
-     *
-     * @param returnType The return type of the method being invoked, which affects stack size adjustments.
-     * @param call The call instruction detailing the method call specifics.
-     */
-    private void adjustStackSizeForMethodCall(String returnType, CallInstruction call) {
-        // Adjust stack size based on return type
-        stackSize += returnType.equals("V") ? -1 : 1;
-
-        // Non-static methods decrement the stack for the object reference
-        if (call.getInvocationType() != CallType.invokestatic) {
-            stackSize--;
-        }
-
-        // Decrement stack for each argument passed
-        stackSize -= call.getArguments().size();
-
-        checkStackSize();
-    }
-
-
     /**
      * Generates the assembly code for accessing a field of an object.
      * The field is specified by the getField instruction which includes both the object
@@ -930,10 +991,6 @@ public class JasminGenerator {
                 .append(fieldType)
                 .append(NL);
 
-        // Update the stack size and check for stack overflow
-        stackSize -= 2;
-        checkStackSize();
-
         return code.toString();
     }
 
@@ -998,19 +1055,30 @@ public class JasminGenerator {
      */
     private String generateCondBranch(CondBranchInstruction condBranch) {
         StringBuilder code = new StringBuilder();
+        var condition = condBranch.getCondition();
+        var label = condBranch.getLabel();
 
-        // Append the condition code followed by the conditional branch instruction with the target label
-        code.append(generators.apply(condBranch.getCondition())).append("ifne ").append(condBranch.getLabel()).append(NL);
+        // Comparisons jump directly, instead of computing a boolean and testing it
+        if (condition instanceof BinaryOpInstruction binaryOp
+                && getComparisonSuffix(binaryOp.getOperation().getOpType()) != null) {
+            appendComparisonJump(code, binaryOp, label);
+            return code.toString();
+        }
 
-        // Decrease the stack size after generating the instruction
-        stackSize--;
-        checkStackSize();
+        // A negated condition jumps when its operand is false
+        if (condition instanceof UnaryOpInstruction unaryOp) {
+            var opType = unaryOp.getOperation().getOpType();
+            if (opType == OperationType.NOT || opType == OperationType.NOTB) {
+                code.append(generators.apply(unaryOp.getOperand())).append("ifeq ").append(label).append(NL);
+                return code.toString();
+            }
+        }
+
+        // Append the condition code followed by the conditional branch instruction with the target label
+        code.append(generators.apply(condition)).append("ifne ").append(label).append(NL);
 
         return code.toString();
     }
 
-
-
-
 }
 
@@ -0,0 +1,276 @@
+package pt.up.fe.comp2024.backend;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the operand stack depth of Jasmin code, by following the effect of each instruction on the stack.
+ * <p>
+ * The analysis starts with an empty stack, follows both sides of every branch, and checks that every path reaching a
+ * label arrives with the same depth. It gives the exact maximum depth, for '.limit stack', and reports stack underflows
+ * and inconsistent depths, which would otherwise only show up as a VerifyError when the class is loaded.
+ */
+public class StackAnalyzer {
+
+    private static final int UNKNOWN = -1;
+
+    private final List<String> opcodes;
+    private final List<String> operands;
+    private final List<Integer> lines;
+
+    // Index of the instruction that follows each label, and the other way around
+    private final Map<String, Integer> labels;
+    private final Map<Integer, String> labelNames;
+
+    private final boolean externalLabels;
+
+    private final List<String> errors;
+    private int maxStack;
+    private int exitDepth;
+
+    private StackAnalyzer(boolean externalLabels) {
+        this.opcodes = new ArrayList<>();
+        this.operands = new ArrayList<>();
+        this.lines = new ArrayList<>();
+        this.labels = new HashMap<>();
+        this.labelNames = new HashMap<>();
+        this.externalLabels = externalLabels;
+        this.errors = new ArrayList<>();
+        this.maxStack = 0;
+        this.exitDepth = UNKNOWN;
+    }
+
+    /**
+     * Analyses the body of a method. Every branch must target a label of the code.
+     *
+     * @param code the instructions and labels of the method, one per line
+     * @return the result of the analysis
+     */
+    public static StackAnalyzer analyzeMethod(String code) {
+        return analyze(code, false);
+    }
+
+    /**
+     * Analyses a fragment of a method, such as the code of a single instruction. Branches to labels that are not in the
+     * fragment leave it.
+     *
+     * @param code the instructions and labels of the fragment, one per line
+     * @return the result of the analysis
+     */
+    public static StackAnalyzer analyzeFragment(String code) {
+        return analyze(code, true);
+    }
+
+    private static StackAnalyzer analyze(String code, boolean externalLabels) {
+        var analyzer = new StackAnalyzer(externalLabels);
+        analyzer.parse(code);
+        analyzer.run();
+
+        return analyzer;
+    }
+
+    /**
+     * @return the maximum depth of the stack
+     */
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * @return the depth of the stack when the end of the code is reached, or -1 if the end cannot be reached
+     */
+    public int getExitDepth() {
+        return exitDepth;
+    }
+
+    /**
+     * @return a description of each problem found, such as a stack underflow
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    private void parse(String code) {
+        var codeLines = code.split("\n");
+
+        for (int line = 0; line < codeLines.length; line++) {
+            var text = codeLines[line].trim();
+
+            // Blank lines, comments and directives have no effect on the stack
+            if (text.isEmpty() || text.startsWith(";") || text.startsWith(".")) {
+                continue;
+            }
+
+            if (text.endsWith(":")) {
+                var label = text.substring(0, text.length() - 1);
+                labels.put(label, opcodes.size());
+                labelNames.putIfAbsent(opcodes.size(), label);
+                continue;
+            }
+
+            int space = text.indexOf(' ');
+            opcodes.add(space == -1 ? text : text.substring(0, space));
+            operands.add(space == -1 ? "" : text.substring(space + 1).trim());
+            lines.add(line + 1);
+        }
+    }
+
+    private void run() {
+        var depths = new int[opcodes.size() + 1];
+        Arrays.fill(depths, UNKNOWN);
+
+        var pending = new ArrayDeque<Integer>();
+        merge(0, 0, depths, pending);
+
+        while (!pending.isEmpty()) {
+            int index = pending.pop();
+
+            if (index == opcodes.size()) {
+                exitDepth = depths[index];
+                continue;
+            }
+
+            var opcode = opcodes.get(index);
+            var operand = operands.get(index);
+            int depth = depths[index];
+
+            int pops = getPops(opcode, operand);
+            int pushes = getPushes(opcode, operand);
+
+            if (pops < 0) {
+                errors.add("line " + lines.get(index) + ": unknown instruction '" + opcode + "'");
+                continue;
+            }
+
+            if (depth < pops) {
+                errors.add("line " + lines.get(index) + ": '" + opcode + "' needs " + pops
+                        + " value(s) on the stack, found " + depth);
+                continue;
+            }
+
+            int next = depth - pops + pushes;
+            maxStack = Math.max(maxStack, next);
+
+            if (isBranch(opcode)) {
+                var target = labels.get(operand);
+
+                if (target != null) {
+                    merge(target, next, depths, pending);
+                } else if (!externalLabels) {
+                    errors.add("line " + lines.get(index) + ": undefined label '" + operand + "'");
+                }
+            }
+
+            if (!endsFlow(opcode)) {
+                merge(index + 1, next, depths, pending);
+            }
+        }
+    }
+
+    private void merge(int index, int depth, int[] depths, ArrayDeque<Integer> pending) {
+        if (depths[index] == UNKNOWN) {
+            depths[index] = depth;
+            pending.push(index);
+            return;
+        }
+
+        if (depths[index] != depth) {
+            var location = labelNames.containsKey(index) ? "label '" + labelNames.get(index) + "'"
+                    : index < opcodes.size() ? "line " + lines.get(index) : "the end";
+            errors.add("inconsistent stack depth at " + location + ": " + depths[index] + " and " + depth);
+        }
+    }
+
+    private static boolean isBranch(String opcode) {
+        return opcode.startsWith("if") || opcode.equals("goto");
+    }
+
+    private static boolean endsFlow(String opcode) {
+        return opcode.equals("goto") || opcode.endsWith("return") || opcode.equals("athrow");
+    }
+
+    /**
+     * @return the number of values the instruction takes from the stack, or -1 if the instruction is unknown
+     */
+    private static int getPops(String opcode, String operand) {
+        if (opcode.startsWith("invoke")) {
+            int arguments = countArguments(operand);
+            return opcode.equals("invokestatic") ? arguments : arguments + 1;
+        }
+
+        if (opcode.startsWith("if_")) {
+            return 2;
+        }
+
+        if (opcode.startsWith("if")) {
+            return 1;
+        }
+
+        if (opcode.startsWith("istore") || opcode.startsWith("astore")) {
+            return 1;
+        }
+
+        return switch (opcode) {
+            case "iconst_m1", "iconst_0", "iconst_1", "iconst_2", "iconst_3", "iconst_4", "iconst_5", "bipush",
+                    "sipush", "ldc", "ldc_w", "aconst_null", "new", "getstatic", "iinc", "goto", "return", "nop" -> 0;
+            case "iload", "iload_0", "iload_1", "iload_2", "iload_3",
+                    "aload", "aload_0", "aload_1", "aload_2", "aload_3" -> 0;
+            case "iadd", "isub", "imul", "idiv", "irem", "iand", "ior", "ixor", "ishl", "ishr", "iushr", "iaload",
+                    "baload", "aaload", "putfield", "swap", "pop2" -> 2;
+            case "iastore", "bastore", "aastore" -> 3;
+            case "ineg", "newarray", "anewarray", "arraylength", "getfield", "putstatic", "ireturn", "areturn",
+                    "athrow", "pop", "dup", "checkcast", "instanceof" -> 1;
+            default -> -1;
+        };
+    }
+
+    private static int getPushes(String opcode, String operand) {
+        if (opcode.startsWith("invoke")) {
+            return operand.endsWith(")V") ? 0 : 1;
+        }
+
+        if (opcode.startsWith("if") || opcode.startsWith("istore") || opcode.startsWith("astore")) {
+            return 0;
+        }
+
+        return switch (opcode) {
+            case "iastore", "bastore", "aastore", "putfield", "putstatic", "iinc", "goto", "return", "ireturn",
+                    "areturn", "athrow", "pop", "pop2", "nop" -> 0;
+            case "dup", "swap" -> 2;
+            default -> 1;
+        };
+    }
+
+    /**
+     * Counts the arguments of a method descriptor such as 'Foo/bar(I[ILjava/lang/String;)V'.
+     */
+    private static int countArguments(String operand) {
+        int start = operand.indexOf('(');
+        int end = operand.indexOf(')', start);
+        if (start == -1 || end == -1) {
+            return 0;
+        }
+
+        int arguments = 0;
+        for (int i = start + 1; i < end; i++) {
+            char type = operand.charAt(i);
+
+            // Array dimensions are part of the type that follows them
+            if (type == '[') {
+                continue;
+            }
+
+            if (type == 'L') {
+                i = operand.indexOf(';', i);
+            }
+
+            arguments++;
+        }
+
+        return arguments;
+    }
+}
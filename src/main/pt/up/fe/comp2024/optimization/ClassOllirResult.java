@@ -0,0 +1,68 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.ClassUnit;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link OllirResult} for a class that was not parsed from OLLIR code, either because {@link OllirBuilder} built it
+ * or because the optimizations changed it after parsing.
+ * <p>
+ * The constructors of {@link OllirResult} always parse OLLIR code, so an empty class is given to them and every getter
+ * is overridden. The OLLIR code of the result is empty, use {@link OllirPrinter#getOllirCode(OllirResult)} to print
+ * the class.
+ */
+public class ClassOllirResult extends OllirResult {
+
+    private static final String EMPTY_CLASS = """
+            Empty {
+                .construct Empty().V {
+                    invokespecial(this, "<init>").V;
+                }
+            }
+            """;
+
+    private final ClassUnit ollirClass;
+    private final SymbolTable symbolTable;
+    private final List<Report> reports;
+    private final Map<String, String> config;
+
+    public ClassOllirResult(ClassUnit ollirClass, SymbolTable symbolTable, List<Report> reports,
+                            Map<String, String> config) {
+        super(EMPTY_CLASS, config);
+
+        this.ollirClass = ollirClass;
+        this.symbolTable = symbolTable;
+        this.reports = reports;
+        this.config = config;
+    }
+
+    @Override
+    public String getOllirCode() {
+        return "";
+    }
+
+    @Override
+    public ClassUnit getOllirClass() {
+        return ollirClass;
+    }
+
+    @Override
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    @Override
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    @Override
+    public Map<String, String> getConfig() {
+        return config;
+    }
+}
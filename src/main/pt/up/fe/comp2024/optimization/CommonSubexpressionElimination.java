@@ -0,0 +1,348 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reuses the values of expressions that were already computed into a variable, over the dominator tree of an OLLIR
+ * method.
+ * <p>
+ * An assignment such as 't2 := i * w' becomes the copy 't2 := t1' when 't1 := i * w' runs before it on every path,
+ * and neither 't1', 'i' nor 'w' were assigned in between. Array elements, array lengths and fields are reused as well,
+ * until an array store, a field store or a call, which may change them. Operands of commutative operators are
+ * ordered, so that 'a + b' and 'b + a' are the same expression, and copies are looked through.
+ * <p>
+ * Each block starts with the expressions available at the end of its immediate dominator, without those that depend
+ * on a variable assigned, or on memory written, by a block that can run between the two.
+ */
+public class CommonSubexpressionElimination {
+
+    private static final Set<OperationType> COMMUTATIVE = Set.of(OperationType.ADD, OperationType.MUL,
+            OperationType.AND, OperationType.OR, OperationType.ANDB, OperationType.ORB, OperationType.EQ,
+            OperationType.NEQ);
+
+    private final Method method;
+
+    private int reused;
+
+    /**
+     * An expression, with the variables it reads and whether it reads arrays or fields.
+     */
+    private record Expression(String key, Set<String> variables, boolean readsMemory) {
+    }
+
+    /**
+     * Expressions that were computed, each with the variable that holds its value, and variables that hold a copy of
+     * another one.
+     */
+    private static class Available {
+
+        private final Map<String, Operand> holders = new HashMap<>();
+        private final Map<String, List<String>> byVariable = new HashMap<>();
+        private final Set<String> readingMemory = new HashSet<>();
+
+        private final Map<String, String> copies = new HashMap<>();
+        private final Map<String, List<String>> copiesOf = new HashMap<>();
+
+        private Available copy() {
+            var copy = new Available();
+            copy.holders.putAll(holders);
+            byVariable.forEach((variable, keys) -> copy.byVariable.put(variable, new ArrayList<>(keys)));
+            copy.readingMemory.addAll(readingMemory);
+            copy.copies.putAll(copies);
+            copiesOf.forEach((variable, copied) -> copy.copiesOf.put(variable, new ArrayList<>(copied)));
+
+            return copy;
+        }
+
+        /**
+         * @return the variable whose value the given one holds a copy of, or the variable itself
+         */
+        private String resolve(String variable) {
+            return copies.getOrDefault(variable, variable);
+        }
+
+        private void copied(String variable, String source) {
+            copies.put(variable, source);
+            copiesOf.computeIfAbsent(source, name -> new ArrayList<>()).add(variable);
+        }
+
+        private void add(Expression expression, Operand holder) {
+            holders.put(expression.key(), holder);
+            byVariable.computeIfAbsent(holder.getName(), variable -> new ArrayList<>()).add(expression.key());
+
+            for (var variable : expression.variables()) {
+                byVariable.computeIfAbsent(variable, name -> new ArrayList<>()).add(expression.key());
+            }
+
+            if (expression.readsMemory()) {
+                readingMemory.add(expression.key());
+            }
+        }
+
+        private void assigned(String variable) {
+            var keys = byVariable.remove(variable);
+            if (keys != null) {
+                keys.forEach(holders::remove);
+            }
+
+            copies.remove(variable);
+            var copied = copiesOf.remove(variable);
+            if (copied != null) {
+                copied.forEach(copy -> copies.remove(copy, variable));
+            }
+        }
+
+        private void memoryWritten() {
+            readingMemory.forEach(holders::remove);
+            readingMemory.clear();
+        }
+    }
+
+    public CommonSubexpressionElimination(Method method) {
+        this.method = method;
+    }
+
+    /**
+     * @return the number of expressions replaced by a copy by {@link #run()}
+     */
+    public int getReused() {
+        return reused;
+    }
+
+    /**
+     * Replaces the expressions whose value is already in a variable.
+     *
+     * @return true if the method changed
+     */
+    public boolean run() {
+        var instructions = method.getInstructions();
+        if (instructions.isEmpty()) {
+            return false;
+        }
+
+        var graph = new ControlFlowGraph(method);
+        int blocks = graph.getBlocks();
+
+        // What each block assigns, and whether it writes arrays or fields
+        var assigned = new ArrayList<Set<String>>();
+        var writesMemory = new boolean[blocks];
+        for (int block = 0; block < blocks; block++) {
+            var variables = new HashSet<String>();
+            for (int i = graph.getStart(block); i < graph.getEnd(block); i++) {
+                var instruction = instructions.get(i);
+                if (instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)) {
+                    variables.add(((Operand) assign.getDest()).getName());
+                }
+                writesMemory[block] |= writesMemory(instruction);
+            }
+            assigned.add(variables);
+        }
+
+        var children = new ArrayList<List<Integer>>();
+        for (int block = 0; block < blocks; block++) {
+            children.add(new ArrayList<>());
+        }
+        for (int block = 1; block < blocks; block++) {
+            if (graph.getImmediateDominator(block) >= 0) {
+                children.get(graph.getImmediateDominator(block)).add(block);
+            }
+        }
+
+        int before = reused;
+
+        // Depth-first over the dominator tree, each block with a copy of what its dominator has available
+        var pendingBlocks = new ArrayDeque<Integer>();
+        var pendingAvailable = new ArrayDeque<Available>();
+        pendingBlocks.push(0);
+        pendingAvailable.push(new Available());
+
+        while (!pendingBlocks.isEmpty()) {
+            int block = pendingBlocks.pop();
+            var available = pendingAvailable.pop();
+
+            for (int i = graph.getStart(block); i < graph.getEnd(block); i++) {
+                visit(i, available);
+            }
+
+            for (int child : children.get(block)) {
+                var childAvailable = available.copy();
+
+                for (int between : getBlocksBetween(block, child, graph)) {
+                    assigned.get(between).forEach(childAvailable::assigned);
+                    if (writesMemory[between]) {
+                        childAvailable.memoryWritten();
+                    }
+                }
+
+                pendingBlocks.push(child);
+                pendingAvailable.push(childAvailable);
+            }
+        }
+
+        return reused > before;
+    }
+
+    /**
+     * @return the blocks on some path from the end of the dominator to the start of the block, including the block
+     * itself if it is in a loop that does not go through the dominator
+     */
+    private static Set<Integer> getBlocksBetween(int dominator, int block, ControlFlowGraph graph) {
+        var between = new HashSet<Integer>();
+        var pending = new ArrayDeque<Integer>();
+
+        for (int predecessor : graph.getPredecessors(block)) {
+            if (predecessor != dominator && between.add(predecessor)) {
+                pending.add(predecessor);
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            for (int predecessor : graph.getPredecessors(pending.poll())) {
+                if (predecessor != dominator && between.add(predecessor)) {
+                    pending.add(predecessor);
+                }
+            }
+        }
+
+        return between;
+    }
+
+    private void visit(int index, Available available) {
+        var instruction = method.getInstructions().get(index);
+
+        if (writesMemory(instruction)) {
+            available.memoryWritten();
+        }
+
+        if (!(instruction instanceof AssignInstruction assign) || assign.getDest() instanceof ArrayOperand) {
+            return;
+        }
+
+        var dest = (Operand) assign.getDest();
+        var expression = getExpression(assign, available);
+        var holder = expression != null ? available.holders.get(expression.key()) : null;
+
+        if (holder != null && !holder.getName().equals(dest.getName())) {
+            var copy = new AssignInstruction(dest, assign.getTypeOfAssign(),
+                    new SingleOpInstruction(new Operand(holder.getName(), holder.getType())));
+            method.getInstructions().set(index, copy);
+            method.getLabels().replaceAll((label, target) -> target == assign ? copy : target);
+            reused++;
+        }
+
+        // Read before the assignment, 'i := j' followed by 'j := i' copies 'j' to itself
+        var source = holder != null ? holder.getName() : getCopySource(assign, available);
+
+        available.assigned(dest.getName());
+
+        if (source != null && !source.equals(dest.getName())) {
+            available.copied(dest.getName(), source);
+        } else if (expression != null && !expression.variables().contains(dest.getName())) {
+            // After 'i := i + 1', 'i + 1' is no longer the value of 'i'
+            available.add(expression, dest);
+        }
+    }
+
+    /**
+     * @return the variable copied by an assignment such as 'a := b', or null
+     */
+    private static String getCopySource(AssignInstruction assign, Available available) {
+        if (assign.getRhs() instanceof SingleOpInstruction singleOp
+                && singleOp.getSingleOperand() instanceof Operand operand
+                && !(operand instanceof ArrayOperand)
+                && !operand.getName().equals("this")) {
+            return available.resolve(operand.getName());
+        }
+
+        return null;
+    }
+
+    /**
+     * Array stores, field stores and calls other than arraylength may change any array or field.
+     */
+    static boolean writesMemory(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign) {
+            return assign.getDest() instanceof ArrayOperand || writesMemory(assign.getRhs());
+        }
+
+        if (instruction instanceof CallInstruction call) {
+            return call.getInvocationType() != CallType.arraylength;
+        }
+
+        return instruction instanceof PutFieldInstruction;
+    }
+
+    /**
+     * @return the expression computed by the right-hand side of the assignment, or null if it is a copy or it cannot
+     * be reused
+     */
+    private static Expression getExpression(AssignInstruction assign, Available available) {
+        var rhs = assign.getRhs();
+        var variables = new HashSet<String>();
+        String key;
+
+        if (rhs instanceof BinaryOpInstruction binaryOp) {
+            var opType = binaryOp.getOperation().getOpType();
+            var left = getKey(binaryOp.getLeftOperand(), variables, available);
+            var right = getKey(binaryOp.getRightOperand(), variables, available);
+
+            if (COMMUTATIVE.contains(opType) && left.compareTo(right) > 0) {
+                var swap = left;
+                left = right;
+                right = swap;
+            }
+
+            key = opType + "(" + left + ", " + right + ")";
+        } else if (rhs instanceof UnaryOpInstruction unaryOp) {
+            key = unaryOp.getOperation().getOpType() + "(" + getKey(unaryOp.getOperand(), variables, available) + ")";
+        } else if (rhs instanceof SingleOpInstruction singleOp && singleOp.getSingleOperand() instanceof ArrayOperand) {
+            key = getKey(singleOp.getSingleOperand(), variables, available);
+        } else if (rhs instanceof CallInstruction call && call.getInvocationType() == CallType.arraylength) {
+            key = "arraylength(" + getKey(call.getCaller(), variables, available) + ")";
+        } else if (rhs instanceof GetFieldInstruction getField) {
+            key = "getfield(" + getField.getField().getName() + ")";
+        } else {
+            return null;
+        }
+
+        boolean readsMemory = rhs instanceof GetFieldInstruction || key.contains("[");
+
+        return new Expression(assign.getTypeOfAssign() + " " + key, variables, readsMemory);
+    }
+
+    /**
+     * Copies are replaced by the variable they copy, so that 'b := a' makes 'b + 1' the same expression as 'a + 1'.
+     */
+    private static String getKey(Element element, Set<String> variables, Available available) {
+        if (element instanceof LiteralElement literal) {
+            return literal.getLiteral() + "." + literal.getType();
+        }
+
+        var operand = (Operand) element;
+
+        if (operand instanceof ArrayOperand arrayOperand) {
+            var name = available.resolve(operand.getName());
+            variables.add(name);
+
+            var indexes = new StringBuilder();
+            for (var index : arrayOperand.getIndexOperands()) {
+                indexes.append("[").append(getKey(index, variables, available)).append("]");
+            }
+
+            return name + indexes;
+        }
+
+        var name = available.resolve(operand.getName());
+        variables.add(name);
+
+        return name;
+    }
+}
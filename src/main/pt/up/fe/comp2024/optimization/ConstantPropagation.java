@@ -0,0 +1,327 @@
+package pt.up.fe.comp2024.optimization;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static pt.up.fe.comp2024.ast.Kind.*;
+
+/**
+ * Propagates the constant values of local variables through the statements of each method, and folds the expressions
+ * whose operands are constant into literals.
+ * <p>
+ * The state before each statement maps the local variables known to hold a constant to their value, booleans as 0 or
+ * 1. Both branches of an if start from the state before it and their states are joined after it, keeping only the
+ * variables with the same value in both. The state at the condition of a while is iterated until it is the join of the
+ * state before the loop and the state at the end of its body, and only then is the loop rewritten.
+ * <p>
+ * Folding a variable can make the expressions around it constant, so each method is processed until nothing changes.
+ */
+public class ConstantPropagation {
+
+    private final JmmSymbolTable table;
+
+    private String methodName;
+
+    // While false, the state is computed but the AST is left as it is
+    private boolean rewrite;
+
+    private boolean changed;
+
+    public ConstantPropagation(SymbolTable table) {
+        this.table = JmmSymbolTable.of(table);
+    }
+
+    /**
+     * Optimizes every method in the given AST.
+     *
+     * @param root
+     * @return true if any expression was replaced
+     */
+    public boolean optimize(JmmNode root) {
+        boolean optimized = false;
+
+        for (var method : root.getDescendants(METHOD_DECL)) {
+            while (optimizeMethod(method)) {
+                optimized = true;
+            }
+        }
+
+        return optimized;
+    }
+
+    /**
+     * @return true if any expression of the method was replaced
+     */
+    private boolean optimizeMethod(JmmNode method) {
+        methodName = method.get("name");
+        rewrite = true;
+        changed = false;
+
+        // Nothing is known about the parameters, and the locals are assigned before they are read
+        var state = new HashMap<String, Integer>();
+        for (var child : method.getChildren()) {
+            statement(child, state);
+        }
+
+        return changed;
+    }
+
+    private void statement(JmmNode stmt, Map<String, Integer> state) {
+        if (EXPR_STMT.check(stmt) || RETURN_STMT.check(stmt)) {
+            for (var child : stmt.getChildren()) {
+                expression(child, state);
+            }
+        } else if (SCOPE_STMT.check(stmt)) {
+            for (var child : stmt.getChildren()) {
+                statement(child, state);
+            }
+        } else if (IF_ELSE_STMT.check(stmt)) {
+            ifElse(stmt, state);
+        } else if (WHILE_STMT.check(stmt)) {
+            whileLoop(stmt, state);
+        }
+    }
+
+    private void ifElse(JmmNode stmt, Map<String, Integer> state) {
+        expression(stmt.getJmmChild(0), state);
+
+        var thenState = new HashMap<>(state);
+        statement(stmt.getJmmChild(1), thenState);
+
+        var elseState = new HashMap<>(state);
+        statement(stmt.getJmmChild(2), elseState);
+
+        state.clear();
+        state.putAll(join(thenState, elseState));
+    }
+
+    private void whileLoop(JmmNode stmt, Map<String, Integer> state) {
+        var condition = stmt.getJmmChild(0);
+        var body = stmt.getJmmChild(1);
+
+        // Each iteration can only remove variables from the state, so this stops after as many iterations as there are
+        // variables
+        boolean rewriteLoop = rewrite;
+        rewrite = false;
+
+        Map<String, Integer> head = new HashMap<>(state);
+        while (true) {
+            var iteration = new HashMap<>(head);
+            expression(condition, iteration);
+            statement(body, iteration);
+
+            var next = join(head, iteration);
+            if (next.equals(head)) {
+                break;
+            }
+            head = next;
+        }
+
+        rewrite = rewriteLoop;
+
+        // The loop is left after evaluating the condition
+        expression(condition, head);
+        statement(body, new HashMap<>(head));
+
+        state.clear();
+        state.putAll(head);
+    }
+
+    private static Map<String, Integer> join(Map<String, Integer> first, Map<String, Integer> second) {
+        var joined = new HashMap<String, Integer>();
+
+        for (var entry : first.entrySet()) {
+            if (entry.getValue().equals(second.get(entry.getKey()))) {
+                joined.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return joined;
+    }
+
+    /**
+     * Updates the state with the assignments in the expression, and replaces it with a literal if it is constant.
+     *
+     * @return the value of the expression, or null if it is not constant or it has side effects
+     */
+    private Integer expression(JmmNode expr, Map<String, Integer> state) {
+        var value = evaluate(expr, state);
+
+        if (rewrite && value != null && isFoldable(expr)) {
+            expr.replace(newLiteral(expr, value));
+            changed = true;
+        }
+
+        return value;
+    }
+
+    private Integer evaluate(JmmNode expr, Map<String, Integer> state) {
+        if (INTEGER_LITERAL_EXPR.check(expr)) {
+            try {
+                return Integer.parseInt(expr.get("value"));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        if (BOOLEAN_LITERAL_EXPR.check(expr)) {
+            return expr.get("value").equals("true") ? 1 : 0;
+        }
+
+        if (VAR_REF_EXPR.check(expr)) {
+            return isLocal(expr.get("name")) ? state.get(expr.get("name")) : null;
+        }
+
+        if (PAREN_EXPR.check(expr) && expr.getNumChildren() == 1) {
+            return expression(expr.getJmmChild(0), state);
+        }
+
+        if (ADDITIVE_EXPR.check(expr) || MULTIPLICATIVE_EXPR.check(expr) || RELATIONAL_EXPR.check(expr)) {
+            var left = expression(expr.getJmmChild(0), state);
+            var right = expression(expr.getJmmChild(1), state);
+
+            return left == null || right == null ? null : fold(expr.get("op"), left, right);
+        }
+
+        if (UNARY_EXPR.check(expr)) {
+            var operand = expression(expr.getJmmChild(0), state);
+            return operand == null || !expr.get("op").equals("!") ? null : 1 - operand;
+        }
+
+        if (SHORT_C_AND_EXPR.check(expr)) {
+            return shortCircuit(expr, 0, state);
+        }
+
+        if (SHORT_C_OR_EXPR.check(expr)) {
+            return shortCircuit(expr, 1, state);
+        }
+
+        if (ASSIGNMENT_EXPR.check(expr)) {
+            assignment(expr, state);
+
+            // The assignment has to stay, so the expression is never replaced
+            return null;
+        }
+
+        for (var child : expr.getChildren()) {
+            expression(child, state);
+        }
+
+        return null;
+    }
+
+    /**
+     * @param shortValue the value of the left operand that decides the result, 0 for '&&' and 1 for '||'
+     */
+    private Integer shortCircuit(JmmNode expr, int shortValue, Map<String, Integer> state) {
+        var left = expression(expr.getJmmChild(0), state);
+
+        // The right operand is never evaluated
+        if (left != null && left == shortValue) {
+            return shortValue;
+        }
+
+        var rightState = new HashMap<>(state);
+        var right = expression(expr.getJmmChild(1), rightState);
+
+        if (left != null) {
+            state.clear();
+            state.putAll(rightState);
+            return right;
+        }
+
+        var joined = join(state, rightState);
+        state.clear();
+        state.putAll(joined);
+
+        return null;
+    }
+
+    private void assignment(JmmNode expr, Map<String, Integer> state) {
+        var target = expr.getJmmChild(0);
+
+        if (VAR_REF_EXPR.check(target) && isLocal(target.get("name"))) {
+            var value = expression(expr.getJmmChild(1), state);
+
+            if (value != null) {
+                state.put(target.get("name"), value);
+            } else {
+                state.remove(target.get("name"));
+            }
+
+            return;
+        }
+
+        // Array elements and fields are not tracked, but the array and the index are evaluated before the value
+        for (var child : target.getChildren()) {
+            expression(child, state);
+        }
+        expression(expr.getJmmChild(1), state);
+    }
+
+    private static Integer fold(String op, int left, int right) {
+        return switch (op) {
+            case "+" -> left + right;
+            case "-" -> left - right;
+            case "*" -> left * right;
+            // Division by zero is left to throw when the program runs
+            case "/" -> right == 0 ? null : left / right;
+            case "<" -> left < right ? 1 : 0;
+            case ">" -> left > right ? 1 : 0;
+            case "<=" -> left <= right ? 1 : 0;
+            case ">=" -> left >= right ? 1 : 0;
+            default -> null;
+        };
+    }
+
+    /**
+     * Fields are accessed through the object, so only parameters and local variables that do not share their name with
+     * a field are tracked.
+     */
+    private boolean isLocal(String name) {
+        return table.getField(name).isEmpty() && (table.getLocalVariable(methodName, name).isPresent()
+                || table.getParameter(methodName, name).isPresent());
+    }
+
+    private static boolean isFoldable(JmmNode expr) {
+        return VAR_REF_EXPR.check(expr) || PAREN_EXPR.check(expr) || ADDITIVE_EXPR.check(expr)
+                || MULTIPLICATIVE_EXPR.check(expr) || RELATIONAL_EXPR.check(expr) || UNARY_EXPR.check(expr)
+                || SHORT_C_AND_EXPR.check(expr) || SHORT_C_OR_EXPR.check(expr);
+    }
+
+    private JmmNode newLiteral(JmmNode expr, int value) {
+        JmmNode literal;
+        if (isBoolean(expr)) {
+            literal = new JmmNodeImpl(BOOLEAN_LITERAL_EXPR.getNodeName());
+            literal.put("value", value != 0 ? "true" : "false");
+        } else {
+            literal = new JmmNodeImpl(INTEGER_LITERAL_EXPR.getNodeName());
+            literal.put("value", String.valueOf(value));
+        }
+
+        for (var attribute : new String[]{"lineStart", "colStart", "lineEnd", "colEnd"}) {
+            expr.getOptional(attribute).ifPresent(position -> literal.put(attribute, position));
+        }
+
+        return literal;
+    }
+
+    private boolean isBoolean(JmmNode expr) {
+        if (PAREN_EXPR.check(expr)) {
+            return isBoolean(expr.getJmmChild(0));
+        }
+
+        if (VAR_REF_EXPR.check(expr)) {
+            return TypeUtils.getExprType(expr, table).getName().equals(TypeUtils.getBooleanTypeName());
+        }
+
+        return BOOLEAN_LITERAL_EXPR.check(expr) || RELATIONAL_EXPR.check(expr) || UNARY_EXPR.check(expr)
+                || SHORT_C_AND_EXPR.check(expr) || SHORT_C_OR_EXPR.check(expr);
+    }
+}
@@ -0,0 +1,228 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.CondBranchInstruction;
+import org.specs.comp.ollir.GotoInstruction;
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.ReturnInstruction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Basic blocks of an OLLIR method, with their successors, predecessors and immediate dominators.
+ * <p>
+ * Like {@link Liveness}, the graph is built from the instruction list and the labels of the method, and it is not
+ * updated when they change. Blocks are numbered in the order of their first instruction, so block 0 is the entry.
+ */
+public class ControlFlowGraph {
+
+    private final int size;
+    private final List<Integer> starts;
+    private final int[] blockOf;
+
+    private final List<List<Integer>> successors;
+    private final List<List<Integer>> predecessors;
+    private final int[] dominators;
+
+    public ControlFlowGraph(Method method) {
+        var instructions = method.getInstructions();
+        var instructionSuccessors = Liveness.getSuccessors(method);
+        this.size = instructions.size();
+
+        // Basic blocks start at the first instruction, at labels and after jumps
+        var leaders = new boolean[size];
+        if (size > 0) {
+            leaders[0] = true;
+        }
+        var positions = new IdentityHashMap<Instruction, Integer>();
+        for (int i = 0; i < size; i++) {
+            positions.put(instructions.get(i), i);
+        }
+        for (var target : method.getLabels().values()) {
+            var position = positions.get(target);
+            if (position != null) {
+                leaders[position] = true;
+            }
+        }
+        for (int i = 0; i + 1 < size; i++) {
+            var instruction = instructions.get(i);
+            if (instruction instanceof GotoInstruction || instruction instanceof CondBranchInstruction
+                    || instruction instanceof ReturnInstruction) {
+                leaders[i + 1] = true;
+            }
+        }
+
+        this.starts = new ArrayList<>();
+        this.blockOf = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (leaders[i]) {
+                starts.add(i);
+            }
+            blockOf[i] = starts.size() - 1;
+        }
+
+        int blocks = starts.size();
+        this.successors = new ArrayList<>();
+        this.predecessors = new ArrayList<>();
+        for (int block = 0; block < blocks; block++) {
+            successors.add(new ArrayList<>());
+            predecessors.add(new ArrayList<>());
+        }
+        for (int block = 0; block < blocks; block++) {
+            for (int successor : instructionSuccessors.get(getEnd(block) - 1)) {
+                successors.get(block).add(blockOf[successor]);
+                predecessors.get(blockOf[successor]).add(block);
+            }
+        }
+
+        this.dominators = blocks == 0 ? new int[0] : computeDominators();
+    }
+
+    /**
+     * @return the number of blocks
+     */
+    public int getBlocks() {
+        return starts.size();
+    }
+
+    /**
+     * @param block
+     * @return the index of the first instruction of the block
+     */
+    public int getStart(int block) {
+        return starts.get(block);
+    }
+
+    /**
+     * @param block
+     * @return the index after the last instruction of the block
+     */
+    public int getEnd(int block) {
+        return block + 1 < starts.size() ? starts.get(block + 1) : size;
+    }
+
+    /**
+     * @param instruction index of the instruction in the method
+     * @return the block of the instruction
+     */
+    public int getBlock(int instruction) {
+        return blockOf[instruction];
+    }
+
+    public List<Integer> getSuccessors(int block) {
+        return successors.get(block);
+    }
+
+    public List<Integer> getPredecessors(int block) {
+        return predecessors.get(block);
+    }
+
+    /**
+     * @param block
+     * @return the immediate dominator of the block, or -1 for the first block and the blocks that cannot be reached
+     */
+    public int getImmediateDominator(int block) {
+        return dominators[block];
+    }
+
+    /**
+     * @return true if every path from the first block to the second one goes through the first one, including when
+     * they are the same block
+     */
+    public boolean dominates(int dominator, int block) {
+        if (block != 0 && dominators[block] == -1) {
+            return false;
+        }
+
+        while (block != -1) {
+            if (block == dominator) {
+                return true;
+            }
+            block = dominators[block];
+        }
+
+        return false;
+    }
+
+    /**
+     * Immediate dominators by the iterative algorithm of Cooper, Harvey and Kennedy over the reverse postorder.
+     */
+    private int[] computeDominators() {
+        int blocks = starts.size();
+
+        // Reverse postorder from the first block, without recursion
+        var order = new ArrayList<Integer>();
+        var visited = new boolean[blocks];
+        var stack = new ArrayDeque<int[]>();
+        visited[0] = true;
+        stack.push(new int[]{0, 0});
+
+        while (!stack.isEmpty()) {
+            var top = stack.peek();
+            var next = successors.get(top[0]);
+
+            if (top[1] < next.size()) {
+                int successor = next.get(top[1]++);
+                if (!visited[successor]) {
+                    visited[successor] = true;
+                    stack.push(new int[]{successor, 0});
+                }
+            } else {
+                order.add(stack.pop()[0]);
+            }
+        }
+
+        var rank = new int[blocks];
+        Arrays.fill(rank, -1);
+        for (int i = 0; i < order.size(); i++) {
+            rank[order.get(i)] = order.size() - 1 - i;
+        }
+
+        var immediate = new int[blocks];
+        Arrays.fill(immediate, -1);
+        immediate[0] = 0;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (int i = order.size() - 2; i >= 0; i--) {
+                int block = order.get(i);
+                int dominator = -1;
+
+                for (int predecessor : predecessors.get(block)) {
+                    if (immediate[predecessor] == -1) {
+                        continue;
+                    }
+
+                    dominator = dominator == -1 ? predecessor : intersect(dominator, predecessor, immediate, rank);
+                }
+
+                if (dominator != immediate[block]) {
+                    immediate[block] = dominator;
+                    changed = true;
+                }
+            }
+        }
+
+        immediate[0] = -1;
+        return immediate;
+    }
+
+    private static int intersect(int first, int second, int[] dominators, int[] rank) {
+        while (first != second) {
+            while (rank[first] > rank[second]) {
+                first = dominators[first];
+            }
+            while (rank[second] > rank[first]) {
+                second = dominators[second];
+            }
+        }
+
+        return first;
+    }
+}
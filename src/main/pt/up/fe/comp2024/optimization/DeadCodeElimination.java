@@ -0,0 +1,407 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes the instructions of an OLLIR method that can never run or whose result is never used, and the local
+ * variables that are left without any access.
+ * <p>
+ * Branches on constant conditions become gotos, or are removed when they never jump, and the instructions that cannot
+ * be reached from the start of the method are removed. Then the assignments with no side effects whose variable is not
+ * live afterward are removed. Liveness only counts the reads of instructions that are kept, so a chain of temporaries
+ * that ends in an unused variable is removed at once. Calls, field and array stores, divisions and array reads, which
+ * can throw, are always kept.
+ * <p>
+ * The labels of a removed instruction move to the next instruction that is kept. The remaining locals are renumbered
+ * after 'this' and the parameters.
+ */
+public class DeadCodeElimination {
+
+    private final Method method;
+
+    private int removedInstructions;
+    private int removedLocals;
+
+    public DeadCodeElimination(Method method) {
+        this.method = method;
+    }
+
+    /**
+     * Removes the dead code of the method.
+     *
+     * @return true if the method changed
+     */
+    public boolean run() {
+        int instructions = method.getInstructions().size();
+        int locals = method.getVarTable().size();
+
+        foldConstantBranches();
+        removeUnreachable();
+        removeDeadStores();
+        removeJumpsToNext();
+        removeUnusedLocals();
+
+        removedInstructions = instructions - method.getInstructions().size();
+        removedLocals = locals - method.getVarTable().size();
+
+        return removedInstructions > 0 || removedLocals > 0;
+    }
+
+    /**
+     * @return the number of instructions removed by {@link #run()}
+     */
+    public int getRemovedInstructions() {
+        return removedInstructions;
+    }
+
+    /**
+     * @return the number of local variables removed by {@link #run()}
+     */
+    public int getRemovedLocals() {
+        return removedLocals;
+    }
+
+    private void foldConstantBranches() {
+        var instructions = method.getInstructions();
+        var removed = new boolean[instructions.size()];
+
+        for (int i = 0; i < instructions.size(); i++) {
+            if (!(instructions.get(i) instanceof CondBranchInstruction branch)) {
+                continue;
+            }
+
+            var condition = evaluate(branch.getCondition());
+            if (condition == null) {
+                continue;
+            }
+
+            if (condition != 0) {
+                var jump = new GotoInstruction(branch.getLabel());
+                instructions.set(i, jump);
+                moveLabels(branch, jump);
+            } else {
+                removed[i] = true;
+            }
+        }
+
+        remove(removed);
+    }
+
+    /**
+     * @return the value of a condition whose operands are all literals, or null
+     */
+    private static Integer evaluate(Instruction condition) {
+        if (condition instanceof SingleOpInstruction singleOp) {
+            return getValue(singleOp.getSingleOperand());
+        }
+
+        if (condition instanceof UnaryOpInstruction unaryOp) {
+            var operand = getValue(unaryOp.getOperand());
+            var opType = unaryOp.getOperation().getOpType();
+
+            return operand == null || (opType != OperationType.NOTB && opType != OperationType.NOT)
+                    ? null : (operand == 0 ? 1 : 0);
+        }
+
+        if (condition instanceof BinaryOpInstruction binaryOp) {
+            var left = getValue(binaryOp.getLeftOperand());
+            var right = getValue(binaryOp.getRightOperand());
+            if (left == null || right == null) {
+                return null;
+            }
+
+            return switch (binaryOp.getOperation().getOpType()) {
+                case LTH -> left < right ? 1 : 0;
+                case GTH -> left > right ? 1 : 0;
+                case LTE -> left <= right ? 1 : 0;
+                case GTE -> left >= right ? 1 : 0;
+                case EQ -> left.equals(right) ? 1 : 0;
+                case NEQ -> !left.equals(right) ? 1 : 0;
+                case ANDB, AND -> left != 0 && right != 0 ? 1 : 0;
+                case ORB, OR -> left != 0 || right != 0 ? 1 : 0;
+                default -> null;
+            };
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the value of a literal, booleans as 0 or 1, or null if the element is not a literal
+     */
+    static Integer getValue(Element element) {
+        if (!(element instanceof LiteralElement literal)) {
+            return null;
+        }
+
+        return switch (literal.getLiteral()) {
+            case "true" -> 1;
+            case "false" -> 0;
+            default -> {
+                try {
+                    yield Integer.parseInt(literal.getLiteral());
+                } catch (NumberFormatException e) {
+                    yield null;
+                }
+            }
+        };
+    }
+
+    private void removeUnreachable() {
+        var successors = Liveness.getSuccessors(method);
+        var reached = new boolean[successors.size()];
+        var pending = new ArrayDeque<Integer>();
+
+        if (!successors.isEmpty()) {
+            reached[0] = true;
+            pending.add(0);
+        }
+
+        while (!pending.isEmpty()) {
+            for (int successor : successors.get(pending.poll())) {
+                if (!reached[successor]) {
+                    reached[successor] = true;
+                    pending.add(successor);
+                }
+            }
+        }
+
+        var removed = new boolean[reached.length];
+        var instructions = method.getInstructions();
+        for (int i = 0; i < reached.length; i++) {
+            removed[i] = !reached[i];
+        }
+
+        // Nothing that runs jumps to the labels of unreachable instructions
+        Set<Instruction> unreachable = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < removed.length; i++) {
+            if (removed[i]) {
+                unreachable.add(instructions.get(i));
+            }
+        }
+        method.getLabels().values().removeIf(unreachable::contains);
+
+        remove(removed);
+    }
+
+    private void removeDeadStores() {
+        var instructions = method.getInstructions();
+        var liveness = new Liveness(method);
+        var successors = Liveness.getSuccessors(method);
+        int size = instructions.size();
+
+        var removable = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            removable[i] = liveness.getDef(i) != -1 && hasNoSideEffects((AssignInstruction) instructions.get(i));
+        }
+
+        // Live variables after each instruction, counting only the reads of instructions that are kept
+        var liveIn = new BitSet[size];
+        var liveOut = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            liveIn[i] = new BitSet();
+            liveOut[i] = new BitSet();
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (int i = size - 1; i >= 0; i--) {
+                var out = new BitSet();
+                for (int successor : successors.get(i)) {
+                    out.or(liveIn[successor]);
+                }
+
+                int def = liveness.getDef(i);
+                var in = (BitSet) out.clone();
+
+                if (!removable[i] || out.get(def)) {
+                    if (def != -1) {
+                        in.clear(def);
+                    }
+                    for (int variable : liveness.getUses(i)) {
+                        in.set(variable);
+                    }
+                }
+
+                if (!in.equals(liveIn[i]) || !out.equals(liveOut[i])) {
+                    liveIn[i] = in;
+                    liveOut[i] = out;
+                    changed = true;
+                }
+            }
+        }
+
+        var removed = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            removed[i] = removable[i] && !liveOut[i].get(liveness.getDef(i));
+        }
+
+        remove(removed);
+    }
+
+    /**
+     * Assignments to a variable, from a value that is computed without calls, and that cannot throw.
+     */
+    private static boolean hasNoSideEffects(AssignInstruction assign) {
+        var rhs = assign.getRhs();
+
+        if (rhs instanceof SingleOpInstruction singleOp) {
+            return !(singleOp.getSingleOperand() instanceof ArrayOperand);
+        }
+
+        if (rhs instanceof BinaryOpInstruction binaryOp) {
+            return binaryOp.getOperation().getOpType() != OperationType.DIV
+                    && !(binaryOp.getLeftOperand() instanceof ArrayOperand)
+                    && !(binaryOp.getRightOperand() instanceof ArrayOperand);
+        }
+
+        if (rhs instanceof UnaryOpInstruction unaryOp) {
+            return !(unaryOp.getOperand() instanceof ArrayOperand);
+        }
+
+        // Fields are read from 'this', which is never null
+        return rhs instanceof GetFieldInstruction;
+    }
+
+    private void removeJumpsToNext() {
+        var instructions = method.getInstructions();
+        var removed = new boolean[instructions.size()];
+
+        for (int i = 0; i + 1 < instructions.size(); i++) {
+            if (instructions.get(i) instanceof GotoInstruction jump
+                    && method.getLabels().get(jump.getLabel()) == instructions.get(i + 1)) {
+                removed[i] = true;
+            }
+        }
+
+        remove(removed);
+    }
+
+    /**
+     * Removes the given instructions, moving their labels to the next instruction that is kept. The last instruction
+     * is kept if it has labels, since they would have nowhere to go.
+     */
+    private void remove(boolean[] removed) {
+        var instructions = method.getInstructions();
+
+        Map<Instruction, Instruction> moved = new IdentityHashMap<>();
+        Instruction next = null;
+
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            var instruction = instructions.get(i);
+
+            if (!removed[i]) {
+                next = instruction;
+            } else if (next != null) {
+                moved.put(instruction, next);
+            } else if (method.getLabels().containsValue(instruction)) {
+                removed[i] = false;
+                next = instruction;
+            }
+        }
+
+        method.getLabels().replaceAll((label, instruction) -> moved.getOrDefault(instruction, instruction));
+
+        var kept = new ArrayList<Instruction>();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (!removed[i]) {
+                kept.add(instructions.get(i));
+            }
+        }
+
+        instructions.clear();
+        instructions.addAll(kept);
+    }
+
+    private void moveLabels(Instruction from, Instruction to) {
+        method.getLabels().replaceAll((label, instruction) -> instruction == from ? to : instruction);
+    }
+
+    private void removeUnusedLocals() {
+        var used = new HashSet<String>();
+        for (var instruction : method.getInstructions()) {
+            addNames(instruction, used);
+        }
+
+        var varTable = method.getVarTable();
+        boolean removed = varTable.entrySet().removeIf(entry -> entry.getValue().getScope() == VarScope.LOCAL
+                && !entry.getKey().equals("this") && !used.contains(entry.getKey()));
+
+        if (!removed) {
+            return;
+        }
+
+        // The remaining locals take the slots after 'this' and the parameters, in the same order
+        int nextSlot = varTable.entrySet().stream()
+                .filter(entry -> entry.getValue().getScope() == VarScope.PARAMETER || entry.getKey().equals("this"))
+                .mapToInt(entry -> entry.getValue().getVirtualReg())
+                .max().orElse(method.isStaticMethod() ? -1 : 0) + 1;
+
+        List<Descriptor> locals = varTable.entrySet().stream()
+                .filter(entry -> entry.getValue().getScope() == VarScope.LOCAL && !entry.getKey().equals("this"))
+                .map(Map.Entry::getValue)
+                .sorted(Comparator.comparingInt(Descriptor::getVirtualReg))
+                .toList();
+
+        for (var local : locals) {
+            local.setVirtualReg(nextSlot++);
+        }
+    }
+
+    /**
+     * Adds the names of every operand of the instruction, including the classes of static calls, which are also in
+     * the variable table.
+     */
+    private static void addNames(Instruction instruction, Set<String> names) {
+        if (instruction instanceof AssignInstruction assign) {
+            addNames(assign.getDest(), names);
+            addNames(assign.getRhs(), names);
+        } else if (instruction instanceof CallInstruction call) {
+            addNames(call.getCaller(), names);
+            call.getArguments().forEach(argument -> addNames(argument, names));
+        } else if (instruction instanceof CondBranchInstruction branch) {
+            addNames(branch.getCondition(), names);
+        } else if (instruction instanceof ReturnInstruction returnInstruction) {
+            if (returnInstruction.hasReturnValue()) {
+                addNames(returnInstruction.getOperand(), names);
+            }
+        } else if (instruction instanceof PutFieldInstruction putField) {
+            addNames(putField.getObject(), names);
+            addNames(putField.getValue(), names);
+        } else if (instruction instanceof GetFieldInstruction getField) {
+            addNames(getField.getObject(), names);
+        } else if (instruction instanceof UnaryOpInstruction unaryOp) {
+            addNames(unaryOp.getOperand(), names);
+        } else if (instruction instanceof BinaryOpInstruction binaryOp) {
+            addNames(binaryOp.getLeftOperand(), names);
+            addNames(binaryOp.getRightOperand(), names);
+        } else if (instruction instanceof SingleOpInstruction singleOp) {
+            addNames(singleOp.getSingleOperand(), names);
+        }
+    }
+
+    private static void addNames(Element element, Set<String> names) {
+        if (!(element instanceof Operand operand)) {
+            return;
+        }
+
+        names.add(operand.getName());
+
+        if (operand instanceof ArrayOperand arrayOperand) {
+            arrayOperand.getIndexOperands().forEach(index -> addNames(index, names));
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.VarScope;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Assigns the variables of an OLLIR method to JVM local variable slots, by colouring their interference graph.
+ * <p>
+ * Two variables interfere when one of them is written while the other is live. 'this' and the parameters keep the
+ * slots where the JVM places them, and copies between variables that do not interfere are coalesced into a single
+ * slot when that cannot make the graph harder to colour (the Briggs test). The remaining variables are coloured by
+ * simplify and select, with optimistic colouring of the nodes that have too many neighbours.
+ */
+public class GraphColoringAllocator implements RegisterAllocator {
+
+    private final Method method;
+    private final Liveness liveness;
+
+    // Slot of 'this' and of each parameter, -1 for the variables that can be placed anywhere
+    private final int[] fixed;
+
+    private final BitSet[] interference;
+
+    // Pairs of variables copied into one another
+    private final List<int[]> moves;
+
+    public GraphColoringAllocator(Method method) {
+        this.method = method;
+        this.liveness = new Liveness(method);
+
+        var variables = liveness.getVariables();
+        int size = variables.size();
+
+        this.fixed = new int[size];
+        for (int variable = 0; variable < size; variable++) {
+            var name = variables.get(variable);
+            var descriptor = method.getVarTable().get(name);
+            boolean isFixed = name.equals("this") || descriptor.getScope() == VarScope.PARAMETER;
+            fixed[variable] = isFixed ? descriptor.getVirtualReg() : -1;
+        }
+
+        this.interference = new BitSet[size];
+        for (int variable = 0; variable < size; variable++) {
+            interference[variable] = new BitSet();
+        }
+
+        this.moves = new ArrayList<>();
+        buildInterference();
+    }
+
+    private void buildInterference() {
+        int instructions = method.getInstructions().size();
+
+        for (int i = 0; i < instructions; i++) {
+            int def = liveness.getDef(i);
+            if (def == -1) {
+                continue;
+            }
+
+            // The source of a copy holds the same value, so it may share the slot of the destination
+            int source = liveness.getMoveSource(i);
+            if (source != -1 && source != def) {
+                moves.add(new int[]{def, source});
+            }
+
+            var live = liveness.getLiveOut(i);
+            for (int other = live.nextSetBit(0); other >= 0; other = live.nextSetBit(other + 1)) {
+                if (other != def && other != source) {
+                    addEdge(def, other);
+                }
+            }
+        }
+
+        // 'this' and the parameters are all written when the method starts
+        var entry = liveness.getLiveAtEntry();
+        for (int variable = 0; variable < fixed.length; variable++) {
+            if (fixed[variable] == -1) {
+                continue;
+            }
+
+            for (int other = entry.nextSetBit(0); other >= 0; other = entry.nextSetBit(other + 1)) {
+                if (other != variable) {
+                    addEdge(variable, other);
+                }
+            }
+        }
+    }
+
+    private void addEdge(int first, int second) {
+        interference[first].set(second);
+        interference[second].set(first);
+    }
+
+    @Override
+    public int getMinimumRegisters() {
+        int registers = Arrays.stream(fixed).max().orElse(-1) + 1;
+
+        // Every variable live at the same point needs its own slot
+        for (int i = 0; i < method.getInstructions().size(); i++) {
+            var live = (BitSet) liveness.getLiveOut(i).clone();
+            if (liveness.getDef(i) != -1) {
+                live.set(liveness.getDef(i));
+            }
+            registers = Math.max(registers, live.cardinality());
+        }
+
+        while (allocate(registers).isEmpty()) {
+            registers++;
+        }
+
+        return registers;
+    }
+
+    @Override
+    public Optional<int[]> allocate(int registers) {
+        int size = fixed.length;
+
+        if (Arrays.stream(fixed).anyMatch(slot -> slot >= registers)) {
+            return Optional.empty();
+        }
+
+        // Working copy of the graph, where coalesced variables are merged into their representative
+        var graph = new BitSet[size];
+        for (int variable = 0; variable < size; variable++) {
+            graph[variable] = (BitSet) interference[variable].clone();
+        }
+
+        var alias = new int[size];
+        for (int variable = 0; variable < size; variable++) {
+            alias[variable] = variable;
+        }
+
+        coalesce(graph, alias, registers);
+
+        // Simplify: remove the variables with fewer neighbours than slots first, the others optimistically
+        var removed = new BitSet(size);
+        var stack = new ArrayDeque<Integer>();
+
+        for (int variable = 0; variable < size; variable++) {
+            if (fixed[variable] != -1 || alias[variable] != variable) {
+                removed.set(variable);
+            }
+        }
+
+        while (removed.cardinality() < size) {
+            int next = -1;
+            int nextDegree = -1;
+
+            for (int variable = removed.nextClearBit(0); variable < size; variable = removed.nextClearBit(variable + 1)) {
+                int degree = getDegree(graph[variable], removed);
+
+                if (degree < registers) {
+                    next = variable;
+                    break;
+                }
+
+                if (degree > nextDegree) {
+                    next = variable;
+                    nextDegree = degree;
+                }
+            }
+
+            removed.set(next);
+            stack.push(next);
+        }
+
+        // Select: give each variable the lowest slot not taken by a neighbour
+        var slots = new int[size];
+        for (int variable = 0; variable < size; variable++) {
+            slots[variable] = fixed[variable];
+        }
+
+        while (!stack.isEmpty()) {
+            int variable = stack.pop();
+
+            var taken = new BitSet(registers);
+            var neighbours = graph[variable];
+            for (int other = neighbours.nextSetBit(0); other >= 0; other = neighbours.nextSetBit(other + 1)) {
+                if (slots[other] != -1) {
+                    taken.set(slots[other]);
+                }
+            }
+
+            int slot = taken.nextClearBit(0);
+            if (slot >= registers) {
+                return Optional.empty();
+            }
+
+            slots[variable] = slot;
+        }
+
+        for (int variable = 0; variable < size; variable++) {
+            slots[variable] = slots[find(alias, variable)];
+        }
+
+        return Optional.of(slots);
+    }
+
+    /**
+     * Merges the two sides of each copy that do not interfere, if the merged variable has fewer neighbours with
+     * at least as many neighbours as slots than there are slots.
+     */
+    private void coalesce(BitSet[] graph, int[] alias, int registers) {
+        for (var move : moves) {
+            int first = find(alias, move[0]);
+            int second = find(alias, move[1]);
+
+            if (first == second || graph[first].get(second)) {
+                continue;
+            }
+
+            if (fixed[first] != -1 && fixed[second] != -1) {
+                continue;
+            }
+
+            var neighbours = (BitSet) graph[first].clone();
+            neighbours.or(graph[second]);
+
+            int significant = 0;
+            for (int other = neighbours.nextSetBit(0); other >= 0; other = neighbours.nextSetBit(other + 1)) {
+                if (fixed[other] != -1 || graph[other].cardinality() >= registers) {
+                    significant++;
+                }
+            }
+
+            if (significant >= registers) {
+                continue;
+            }
+
+            // A variable with a fixed slot keeps it, so it becomes the representative
+            int kept = fixed[second] != -1 ? second : first;
+            int merged = kept == first ? second : first;
+
+            alias[merged] = kept;
+            graph[kept].or(graph[merged]);
+
+            var mergedNeighbours = graph[merged];
+            for (int other = mergedNeighbours.nextSetBit(0); other >= 0; other = mergedNeighbours.nextSetBit(other + 1)) {
+                graph[other].clear(merged);
+                graph[other].set(kept);
+            }
+            graph[merged].clear();
+        }
+    }
+
+    private static int find(int[] alias, int variable) {
+        while (alias[variable] != variable) {
+            variable = alias[variable];
+        }
+
+        return variable;
+    }
+
+    /**
+     * @return the number of neighbours that are still in the graph, where variables with a fixed slot always stay
+     */
+    private int getDegree(BitSet neighbours, BitSet removed) {
+        int degree = 0;
+
+        for (int other = neighbours.nextSetBit(0); other >= 0; other = neighbours.nextSetBit(other + 1)) {
+            if (fixed[other] != -1 || !removed.get(other)) {
+                degree++;
+            }
+        }
+
+        return degree;
+    }
+
+    @Override
+    public void apply(int[] slots) {
+        var variables = liveness.getVariables();
+
+        for (int variable = 0; variable < slots.length; variable++) {
+            method.getVarTable().get(variables.get(variable)).setVirtualReg(slots[variable]);
+        }
+    }
+}
@@ -1,25 +1,207 @@
 package pt.up.fe.comp2024.optimization;
 
+import org.specs.comp.ollir.ClassUnit;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.ollir.JmmOptimization;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 public class JmmOptimizationImpl implements JmmOptimization {
 
     @Override
     public OllirResult toOllir(JmmSemanticsResult semanticsResult) {
 
-        var visitor = new OllirGeneratorVisitor(semanticsResult.getSymbolTable());
+        // temporaries are numbered per compilation unit, which keeps the output deterministic
+        OptUtils.resetTemps();
+
+        List<Report> reports = Collections.emptyList();
+
+        var config = semanticsResult.getConfig();
+        var rotateLoops = config == null || CompilerConfig.getRotateLoops(config);
+        if (config != null && CompilerConfig.getDirectLowering(config)) {
+            var lowering = new OllirBuilder(semanticsResult.getSymbolTable(), rotateLoops)
+                    .build(semanticsResult.getRootNode());
+
+            if (lowering.isSupported()) {
+                return toOllirResult(semanticsResult, lowering.classUnit());
+            }
+
+            // the text generator covers more of the language
+            OptUtils.resetTemps();
+            reports = List.of(Report.newWarn(Stage.OPTIMIZATION, -1, -1,
+                    lowering.unsupported() + ", the class was generated through OLLIR text instead", null));
+        }
+
+        var visitor = new OllirGeneratorVisitor(semanticsResult.getSymbolTable(), rotateLoops);
         var ollirCode = visitor.visit(semanticsResult.getRootNode());
 
-        return new OllirResult(semanticsResult, ollirCode, Collections.emptyList());
+        return new OllirResult(semanticsResult, ollirCode, reports);
+    }
+
+    /**
+     * Wraps a class built straight from the AST. The OLLIR code of the result is empty, use
+     * {@link OllirPrinter#getOllirCode(OllirResult)} to print it.
+     *
+     * @param semanticsResult
+     * @param classUnit
+     * @return
+     */
+    private OllirResult toOllirResult(JmmSemanticsResult semanticsResult, ClassUnit classUnit) {
+        classUnit.buildVarTables();
+
+        return new ClassOllirResult(classUnit, semanticsResult.getSymbolTable(),
+                new ArrayList<>(semanticsResult.getReports()), semanticsResult.getConfig());
+    }
+
+    /**
+     * With '-o', propagates the constants assigned to local variables and folds constant expressions, in place.
+     */
+    @Override
+    public JmmSemanticsResult optimize(JmmSemanticsResult semanticsResult) {
+
+        var config = semanticsResult.getConfig();
+        if (config == null || !CompilerConfig.getOptimize(config)) {
+            return semanticsResult;
+        }
+
+        new ConstantPropagation(semanticsResult.getSymbolTable()).optimize(semanticsResult.getRootNode());
+
+        return semanticsResult;
     }
 
     @Override
     public OllirResult optimize(OllirResult ollirResult) {
 
-        return ollirResult;
+        var config = ollirResult.getConfig();
+        if (config == null) {
+            return ollirResult;
+        }
+
+        boolean optimize = CompilerConfig.getOptimize(config);
+        int registers = CompilerConfig.getRegisterAllocation(config);
+        if (!optimize && registers < 0) {
+            return ollirResult;
+        }
+
+        var reports = new ArrayList<>(ollirResult.getReports());
+
+        if (optimize) {
+            eliminateCommonSubexpressions(ollirResult.getOllirClass(), reports);
+            hoistLoopInvariants(ollirResult.getOllirClass(), reports);
+            reduceStrength(ollirResult.getOllirClass(), reports);
+            eliminateDeadCode(ollirResult.getOllirClass(), reports);
+        }
+
+        if (registers >= 0) {
+            allocateRegisters(ollirResult.getOllirClass(), registers, CompilerConfig.getAllocator(config), reports);
+        }
+
+        // The OLLIR code the class was parsed from no longer matches it, the code of the result is left empty as for
+        // the classes built directly, see OllirPrinter#getOllirCode(OllirResult)
+        return new ClassOllirResult(ollirResult.getOllirClass(), ollirResult.getSymbolTable(), reports, config);
+    }
+
+    /**
+     * Replaces the expressions of each method that were already computed into a variable by a copy of it.
+     *
+     * @param classUnit
+     * @param reports   where a log is added with the number of expressions reused in each method
+     */
+    private static void eliminateCommonSubexpressions(ClassUnit classUnit, List<Report> reports) {
+        for (var method : classUnit.getMethods()) {
+            var subexpressions = new CommonSubexpressionElimination(method);
+
+            if (subexpressions.run()) {
+                reports.add(Report.newLog(Stage.OPTIMIZATION, -1, -1, "Method '" + method.getMethodName()
+                        + "': reused " + subexpressions.getReused() + " computed values", null));
+            }
+        }
+    }
+
+    /**
+     * Moves the assignments of each method whose value is the same in every iteration of a loop to before the loop.
+     *
+     * @param classUnit
+     * @param reports   where a log is added with the number of assignments moved in each method
+     */
+    private static void hoistLoopInvariants(ClassUnit classUnit, List<Report> reports) {
+        for (var method : classUnit.getMethods()) {
+            var invariants = new LoopInvariantCodeMotion(method);
+
+            if (invariants.run()) {
+                reports.add(Report.newLog(Stage.OPTIMIZATION, -1, -1, "Method '" + method.getMethodName()
+                        + "': moved " + invariants.getHoisted() + " instructions out of loops", null));
+            }
+        }
+    }
+
+    /**
+     * Replaces the operations of each method by cheaper ones, such as shifts for multiplications by powers of two and
+     * additions for multiplications of induction variables.
+     *
+     * @param classUnit
+     * @param reports   where a log is added with the number of operations replaced in each method
+     */
+    private static void reduceStrength(ClassUnit classUnit, List<Report> reports) {
+        for (var method : classUnit.getMethods()) {
+            var strengthReduction = new StrengthReduction(method);
+
+            if (strengthReduction.run()) {
+                reports.add(Report.newLog(Stage.OPTIMIZATION, -1, -1, "Method '" + method.getMethodName()
+                        + "': simplified " + strengthReduction.getRewritten() + " operations", null));
+            }
+        }
+    }
+
+    /**
+     * Removes the unreachable instructions, the unused assignments and the unused locals of each method.
+     *
+     * @param classUnit
+     * @param reports   where a log is added with what was removed from each method
+     */
+    private static void eliminateDeadCode(ClassUnit classUnit, List<Report> reports) {
+        for (var method : classUnit.getMethods()) {
+            var deadCode = new DeadCodeElimination(method);
+
+            if (deadCode.run()) {
+                reports.add(Report.newLog(Stage.OPTIMIZATION, -1, -1, "Method '" + method.getMethodName()
+                        + "': removed " + deadCode.getRemovedInstructions() + " instructions and "
+                        + deadCode.getRemovedLocals() + " locals", null));
+            }
+        }
+    }
+
+    /**
+     * Places the variables of each method in as few JVM local variable slots as possible, or in at most the given
+     * number of slots.
+     *
+     * @param classUnit
+     * @param registers the maximum number of slots, or 0 to use as few as possible
+     * @param allocatorName the allocator to use, see {@link RegisterAllocator#of(org.specs.comp.ollir.Method, String)}
+     * @param reports   where an error is added for each method that does not fit in the given number of slots
+     */
+    private static void allocateRegisters(ClassUnit classUnit, int registers, String allocatorName,
+                                          List<Report> reports) {
+        for (var method : classUnit.getMethods()) {
+            var allocator = RegisterAllocator.of(method, allocatorName);
+            var slots = registers == 0
+                    ? allocator.allocate(allocator.getMinimumRegisters())
+                    : allocator.allocate(registers);
+
+            if (slots.isPresent()) {
+                allocator.apply(slots.get());
+                continue;
+            }
+
+            reports.add(Report.newError(Stage.OPTIMIZATION, -1, -1, "Method '" + method.getMethodName()
+                    + "' needs at least " + allocator.getMinimumRegisters() + " registers, but -r allows "
+                    + registers, null));
+        }
     }
 }
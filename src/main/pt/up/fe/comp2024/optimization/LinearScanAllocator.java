@@ -0,0 +1,251 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.VarScope;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Assigns the variables of an OLLIR method to JVM local variable slots by linear scan over their live intervals.
+ * <p>
+ * The instructions are numbered in the order of the method, reads at 2i and the write at 2i + 1, so that a variable
+ * read for the last time by an instruction can share its slot with the one the instruction writes. The interval of a
+ * variable goes from its first to its last access, and is extended to the end of every loop whose start it is live
+ * across, instead of solving liveness over the control-flow graph. Intervals are then scanned by start, each one
+ * taking the lowest free slot, or the slot of the variable it copies if that one has just become free.
+ * <p>
+ * Everything is linear in the size of the method, apart from sorting the intervals and the loops.
+ */
+public class LinearScanAllocator implements RegisterAllocator {
+
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final Method method;
+    private final Liveness liveness;
+
+    // Slot of 'this' and of each parameter, -1 for the variables that can be placed anywhere
+    private final int[] fixed;
+
+    private final int[] start;
+    private final int[] end;
+
+    // Variable copied into each variable by its first access, or -1
+    private final int[] hint;
+
+    // Variables that are accessed, by start of their interval
+    private final List<Integer> order;
+
+    public LinearScanAllocator(Method method) {
+        this.method = method;
+        this.liveness = new Liveness(method);
+
+        var variables = liveness.getVariables();
+        int size = variables.size();
+
+        this.fixed = new int[size];
+        this.start = new int[size];
+        this.end = new int[size];
+        this.hint = new int[size];
+
+        for (int variable = 0; variable < size; variable++) {
+            var name = variables.get(variable);
+            var descriptor = method.getVarTable().get(name);
+            boolean isFixed = name.equals("this") || descriptor.getScope() == VarScope.PARAMETER;
+
+            // 'this' and the parameters are written when the method starts
+            fixed[variable] = isFixed ? descriptor.getVirtualReg() : -1;
+            start[variable] = isFixed ? -1 : NONE;
+            end[variable] = -1;
+            hint[variable] = -1;
+        }
+
+        var readFirst = computeIntervals();
+        var loops = getLoops();
+        extendOverLoops(loops, readFirst);
+
+        this.order = new ArrayList<>();
+        for (int variable = 0; variable < size; variable++) {
+            if (start[variable] != NONE) {
+                order.add(variable);
+            }
+        }
+        order.sort(Comparator.comparingInt(variable -> start[variable]));
+
+        extendAcrossLoops(loops);
+    }
+
+    /**
+     * @return the variables that are read before they are written, in the order of the instructions
+     */
+    private boolean[] computeIntervals() {
+        var readFirst = new boolean[fixed.length];
+        int instructions = method.getInstructions().size();
+
+        for (int i = 0; i < instructions; i++) {
+            for (int variable : liveness.getUses(i)) {
+                if (start[variable] == NONE) {
+                    start[variable] = 2 * i;
+                    readFirst[variable] = true;
+                }
+                end[variable] = Math.max(end[variable], 2 * i);
+            }
+
+            int def = liveness.getDef(i);
+            if (def != -1) {
+                if (start[def] == NONE) {
+                    start[def] = 2 * i + 1;
+                    hint[def] = liveness.getMoveSource(i);
+                }
+                end[def] = Math.max(end[def], 2 * i + 1);
+            }
+        }
+
+        return readFirst;
+    }
+
+    /**
+     * @return the start and the end of each loop, i.e. the target and the source of each backward jump, outer loops
+     * first
+     */
+    private List<int[]> getLoops() {
+        var successors = Liveness.getSuccessors(method);
+        var loops = new ArrayList<int[]>();
+
+        for (int i = 0; i < successors.size(); i++) {
+            for (int successor : successors.get(i)) {
+                if (successor <= i) {
+                    loops.add(new int[]{2 * successor, 2 * i + 1});
+                }
+            }
+        }
+
+        loops.sort(Comparator.<int[]>comparingInt(loop -> loop[0]).thenComparingInt(loop -> -loop[1]));
+        return loops;
+    }
+
+    /**
+     * A variable read in a loop before it is written there may hold the value of the previous iteration, so it is
+     * live in the whole loop.
+     */
+    private void extendOverLoops(List<int[]> loops, boolean[] readFirst) {
+        for (int variable = 0; variable < fixed.length; variable++) {
+            if (!readFirst[variable]) {
+                continue;
+            }
+
+            int firstRead = start[variable];
+            for (var loop : loops) {
+                if (loop[0] <= firstRead && firstRead <= loop[1]) {
+                    start[variable] = Math.min(start[variable], loop[0]);
+                    end[variable] = Math.max(end[variable], loop[1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A variable that is live at the start of a loop is live until the loop ends. Only the intervals that cross the
+     * start of each loop are visited.
+     */
+    private void extendAcrossLoops(List<int[]> loops) {
+        var active = new ArrayList<Integer>();
+        int next = 0;
+
+        for (var loop : loops) {
+            while (next < order.size() && start[order.get(next)] < loop[0]) {
+                active.add(order.get(next++));
+            }
+
+            active.removeIf(variable -> end[variable] < loop[0]);
+
+            for (int variable : active) {
+                end[variable] = Math.max(end[variable], loop[1]);
+            }
+        }
+    }
+
+    @Override
+    public int getMinimumRegisters() {
+        var slots = scan(Integer.MAX_VALUE);
+        int registers = Arrays.stream(slots).max().orElse(-1) + 1;
+
+        // Variables that are never accessed are still placed in a slot
+        return Math.max(registers, order.size() < fixed.length ? 1 : 0);
+    }
+
+    @Override
+    public Optional<int[]> allocate(int registers) {
+        if (Arrays.stream(fixed).anyMatch(slot -> slot >= registers)) {
+            return Optional.empty();
+        }
+
+        return Optional.ofNullable(scan(registers));
+    }
+
+    /**
+     * @return the slot of each variable, or null if they do not fit in the given number of slots
+     */
+    private int[] scan(int registers) {
+        var slots = fixed.clone();
+        int maxFixed = Arrays.stream(fixed).max().orElse(-1);
+
+        // Slots of 'this' or of parameters that are not in the variable table are free from the start
+        var free = new TreeSet<Integer>();
+        for (int slot = 0; slot <= maxFixed; slot++) {
+            free.add(slot);
+        }
+        for (int slot : fixed) {
+            free.remove(slot);
+        }
+        int nextSlot = maxFixed + 1;
+
+        var active = new PriorityQueue<Integer>(Comparator.comparingInt(variable -> end[variable]));
+
+        for (int variable : order) {
+            while (!active.isEmpty() && end[active.peek()] < start[variable]) {
+                free.add(slots[active.poll()]);
+            }
+
+            if (fixed[variable] == -1) {
+                int copied = hint[variable];
+
+                if (copied != -1 && slots[copied] != -1 && free.remove(slots[copied])) {
+                    slots[variable] = slots[copied];
+                } else if (!free.isEmpty()) {
+                    slots[variable] = free.pollFirst();
+                } else {
+                    slots[variable] = nextSlot++;
+                }
+
+                if (slots[variable] >= registers) {
+                    return null;
+                }
+            }
+
+            active.add(variable);
+        }
+
+        for (int variable = 0; variable < slots.length; variable++) {
+            if (slots[variable] == -1) {
+                slots[variable] = 0;
+            }
+        }
+
+        return slots;
+    }
+
+    @Override
+    public void apply(int[] slots) {
+        var variables = liveness.getVariables();
+
+        for (int variable = 0; variable < slots.length; variable++) {
+            method.getVarTable().get(variables.get(variable)).setVirtualReg(slots[variable]);
+        }
+    }
+}
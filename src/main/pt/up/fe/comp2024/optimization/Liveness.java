@@ -0,0 +1,267 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live variables before and after each instruction of an OLLIR method.
+ * <p>
+ * The control-flow graph is built from the instruction list and the labels of the method, so that it stays correct
+ * after the instructions are changed. Variables are the locals and parameters of the variable table, numbered in the
+ * order of {@link #getVariables()}, and each set of variables is a bit set over those numbers. The uses and definitions
+ * of each instruction are found in a single pass, the live sets are only solved when they are first needed.
+ */
+public class Liveness {
+
+    private final List<Instruction> instructions;
+    private final List<List<Integer>> successors;
+
+    private final List<String> variables;
+    private final Map<String, Integer> indexes;
+
+    private final int[][] uses;
+    private final int[] defs;
+    private BitSet[] liveIn;
+    private BitSet[] liveOut;
+
+    public Liveness(Method method) {
+        this.instructions = method.getInstructions();
+        this.successors = getSuccessors(method);
+
+        this.variables = new ArrayList<>();
+        this.indexes = new HashMap<>();
+        method.getVarTable().entrySet().stream()
+                .filter(entry -> entry.getValue().getScope() != VarScope.FIELD)
+                .map(Map.Entry::getKey)
+                .sorted()
+                .forEach(name -> {
+                    indexes.put(name, variables.size());
+                    variables.add(name);
+                });
+
+        int size = instructions.size();
+        this.uses = new int[size][];
+        this.defs = new int[size];
+
+        // Kept as arrays, a bit set per instruction would grow with the number of variables
+        for (int i = 0; i < size; i++) {
+            var instructionUses = new ArrayList<Integer>();
+            defs[i] = -1;
+            addInstructionUses(instructions.get(i), i, instructionUses);
+            uses[i] = instructionUses.stream().mapToInt(Integer::intValue).distinct().toArray();
+        }
+    }
+
+    /**
+     * Successors of each instruction, by index in the instruction list of the method.
+     *
+     * @param method
+     * @return
+     */
+    public static List<List<Integer>> getSuccessors(Method method) {
+        var instructions = method.getInstructions();
+
+        var positions = new IdentityHashMap<Instruction, Integer>();
+        for (int i = 0; i < instructions.size(); i++) {
+            positions.put(instructions.get(i), i);
+        }
+
+        var successors = new ArrayList<List<Integer>>();
+        for (int i = 0; i < instructions.size(); i++) {
+            var instruction = instructions.get(i);
+            var next = new ArrayList<Integer>();
+
+            if (instruction instanceof GotoInstruction gotoInstruction) {
+                next.add(positions.get(method.getLabels().get(gotoInstruction.getLabel())));
+            } else if (!(instruction instanceof ReturnInstruction)) {
+                if (instruction instanceof CondBranchInstruction branch) {
+                    next.add(positions.get(method.getLabels().get(branch.getLabel())));
+                }
+
+                if (i + 1 < instructions.size()) {
+                    next.add(i + 1);
+                }
+            }
+
+            successors.add(next);
+        }
+
+        return successors;
+    }
+
+    private void addInstructionUses(Instruction instruction, int index, List<Integer> uses) {
+        if (instruction instanceof AssignInstruction assign) {
+            // Storing in an array element reads the array, it does not redefine it
+            if (assign.getDest() instanceof ArrayOperand) {
+                addUses(assign.getDest(), uses);
+            } else {
+                defs[index] = getVariable(((Operand) assign.getDest()).getName());
+            }
+
+            addInstructionUses(assign.getRhs(), index, uses);
+        } else if (instruction instanceof CallInstruction call) {
+            // The caller of static calls and 'new' is a class, not a variable
+            if (call.getInvocationType() != CallType.invokestatic && call.getInvocationType() != CallType.NEW) {
+                addUses(call.getCaller(), uses);
+            }
+
+            call.getArguments().forEach(argument -> addUses(argument, uses));
+        } else if (instruction instanceof CondBranchInstruction branch) {
+            branch.getOperands().forEach(operand -> addUses(operand, uses));
+        } else if (instruction instanceof ReturnInstruction returnInstruction) {
+            if (returnInstruction.hasReturnValue()) {
+                addUses(returnInstruction.getOperand(), uses);
+            }
+        } else if (instruction instanceof PutFieldInstruction putField) {
+            addUses(putField.getObject(), uses);
+            addUses(putField.getValue(), uses);
+        } else if (instruction instanceof GetFieldInstruction getField) {
+            addUses(getField.getObject(), uses);
+        } else if (instruction instanceof UnaryOpInstruction unaryOp) {
+            addUses(unaryOp.getOperand(), uses);
+        } else if (instruction instanceof BinaryOpInstruction binaryOp) {
+            addUses(binaryOp.getLeftOperand(), uses);
+            addUses(binaryOp.getRightOperand(), uses);
+        } else if (instruction instanceof SingleOpInstruction singleOp) {
+            addUses(singleOp.getSingleOperand(), uses);
+        }
+    }
+
+    private void addUses(Element element, List<Integer> uses) {
+        if (!(element instanceof Operand operand)) {
+            return;
+        }
+
+        int variable = getVariable(operand.getName());
+        if (variable != -1) {
+            uses.add(variable);
+        }
+
+        if (operand instanceof ArrayOperand arrayOperand) {
+            arrayOperand.getIndexOperands().forEach(indexOperand -> addUses(indexOperand, uses));
+        }
+    }
+
+    /**
+     * Iterates live-in = uses + (live-out - defs) and live-out = union of the live-in of the successors until nothing
+     * changes, visiting the instructions backwards so that most values flow in a single pass.
+     */
+    private void solve() {
+        if (liveIn != null) {
+            return;
+        }
+
+        int size = instructions.size();
+        liveIn = new BitSet[size];
+        liveOut = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            liveIn[i] = new BitSet();
+            liveOut[i] = new BitSet();
+        }
+
+        boolean changed = true;
+
+        while (changed) {
+            changed = false;
+
+            for (int i = instructions.size() - 1; i >= 0; i--) {
+                var out = new BitSet();
+                for (int successor : successors.get(i)) {
+                    out.or(liveIn[successor]);
+                }
+
+                var in = (BitSet) out.clone();
+                if (defs[i] != -1) {
+                    in.clear(defs[i]);
+                }
+                for (int variable : uses[i]) {
+                    in.set(variable);
+                }
+
+                if (!in.equals(liveIn[i]) || !out.equals(liveOut[i])) {
+                    liveIn[i] = in;
+                    liveOut[i] = out;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the names of the variables, sorted
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * @param name
+     * @return the number of the variable, or -1 if it is not a local or a parameter
+     */
+    public int getVariable(String name) {
+        return indexes.getOrDefault(name, -1);
+    }
+
+    /**
+     * @param instruction index of the instruction in the method
+     * @return the variables read by the instruction
+     */
+    public int[] getUses(int instruction) {
+        return uses[instruction];
+    }
+
+    /**
+     * @param instruction index of the instruction in the method
+     * @return the variable written by the instruction, or -1 if it writes none
+     */
+    public int getDef(int instruction) {
+        return defs[instruction];
+    }
+
+    /**
+     * @param instruction index of the instruction in the method
+     * @return the variables that are live before the instruction
+     */
+    public BitSet getLiveIn(int instruction) {
+        solve();
+        return liveIn[instruction];
+    }
+
+    /**
+     * @param instruction index of the instruction in the method
+     * @return the variables that are live after the instruction
+     */
+    public BitSet getLiveOut(int instruction) {
+        solve();
+        return liveOut[instruction];
+    }
+
+    /**
+     * @return the variables that are live when the method starts
+     */
+    public BitSet getLiveAtEntry() {
+        return instructions.isEmpty() ? new BitSet() : getLiveIn(0);
+    }
+
+    /**
+     * @param instruction index of the instruction in the method
+     * @return the variable copied by the instruction, if it is a copy between variables such as 'a := b', or -1
+     */
+    public int getMoveSource(int instruction) {
+        if (defs[instruction] == -1
+                || !(instructions.get(instruction) instanceof AssignInstruction assign)
+                || !(assign.getRhs() instanceof SingleOpInstruction singleOp)
+                || !(singleOp.getSingleOperand() instanceof Operand operand)
+                || operand instanceof ArrayOperand) {
+            return -1;
+        }
+
+        return getVariable(operand.getName());
+    }
+}
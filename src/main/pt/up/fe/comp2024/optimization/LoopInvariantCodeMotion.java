@@ -0,0 +1,262 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves the assignments whose value does not change between the iterations of a loop to just before the loop.
+ * <p>
+ * Loops are the natural loops of the method, see {@link NaturalLoop}. The moved assignments are placed in a preheader,
+ * right before the header, which is only reached from outside the loop.
+ * <p>
+ * An assignment is moved if its variable is assigned nowhere else in the loop and is not live at the header, and its
+ * operands are not assigned in the loop. Array elements and fields are only read before the loop if nothing in it
+ * stores into an array or a field, or calls a method. The length of an array cannot change, so it is read before the
+ * loop even then. Assignments that may throw, such as array accesses and divisions, are only moved if they run in
+ * every iteration that leaves the loop, and nothing with a side effect runs before them in the loop.
+ */
+public class LoopInvariantCodeMotion {
+
+    private final Method method;
+
+    private int hoisted;
+
+    public LoopInvariantCodeMotion(Method method) {
+        this.method = method;
+    }
+
+    /**
+     * @return the number of assignments moved out of a loop by {@link #run()}, once for each loop they leave
+     */
+    public int getHoisted() {
+        return hoisted;
+    }
+
+    /**
+     * Moves the invariant assignments of each loop before it, starting with the innermost loops.
+     *
+     * @return true if the method changed
+     */
+    public boolean run() {
+        int before = hoisted;
+
+        // The graph changes with each loop, and what leaves an inner loop may then leave the outer one as well
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            var graph = new ControlFlowGraph(method);
+            var liveness = new Liveness(method);
+
+            for (var loop : NaturalLoop.find(graph)) {
+                if (hoist(loop, graph, liveness)) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+
+        return hoisted > before;
+    }
+
+    /**
+     * @return true if any assignment was moved out of the loop
+     */
+    private boolean hoist(NaturalLoop loop, ControlFlowGraph graph, Liveness liveness) {
+        var instructions = method.getInstructions();
+        if (loop.getEntries(graph).isEmpty()) {
+            return false;
+        }
+
+        var indexes = loop.getInstructions(graph);
+
+        // How many times each variable is assigned in the loop, and whether it may change arrays or fields
+        var assignments = new HashMap<String, Integer>();
+        boolean writesMemory = false;
+        for (int i : indexes) {
+            var instruction = instructions.get(i);
+            if (instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)) {
+                assignments.merge(((Operand) assign.getDest()).getName(), 1, Integer::sum);
+            }
+            writesMemory |= CommonSubexpressionElimination.writesMemory(instruction);
+        }
+
+        var exits = loop.getExits(graph);
+
+        // Moving an assignment can make the ones that read its variable invariant as well
+        var moved = new ArrayList<Integer>();
+        var isMoved = new boolean[instructions.size()];
+        boolean found = true;
+        while (found) {
+            found = false;
+
+            for (int i : indexes) {
+                if (!isMoved[i] && isInvariant(i, loop, graph, liveness, assignments, writesMemory, exits)) {
+                    isMoved[i] = true;
+                    moved.add(i);
+                    assignments.remove(((Operand) ((AssignInstruction) instructions.get(i)).getDest()).getName());
+                    found = true;
+                }
+            }
+        }
+
+        if (moved.isEmpty()) {
+            return false;
+        }
+
+        // An assignment that reads the variable of another one is dominated by it, and so is deeper in the tree
+        moved.sort(Comparator.comparingInt((Integer i) -> getDepth(graph, graph.getBlock(i))).thenComparingInt(i -> i));
+        loop.insertPreheader(method, graph, moved.stream().map(instructions::get).toList());
+        hoisted += moved.size();
+
+        return true;
+    }
+
+    private boolean isInvariant(int index, NaturalLoop loop, ControlFlowGraph graph, Liveness liveness,
+                                Map<String, Integer> assignments, boolean loopWritesMemory, List<Integer> exits) {
+        if (!(method.getInstructions().get(index) instanceof AssignInstruction assign)
+                || assign.getDest() instanceof ArrayOperand) {
+            return false;
+        }
+
+        // The variable must not hold a value from before the loop or from another assignment
+        var dest = ((Operand) assign.getDest()).getName();
+        int variable = liveness.getVariable(dest);
+        if (variable == -1 || assignments.getOrDefault(dest, 0) != 1
+                || liveness.getLiveIn(graph.getStart(loop.header())).get(variable)) {
+            return false;
+        }
+
+        var rhs = assign.getRhs();
+        boolean readsMemory;
+        boolean mayThrow;
+
+        if (rhs instanceof BinaryOpInstruction binaryOp) {
+            if (!isInvariant(binaryOp.getLeftOperand(), assignments)
+                    || !isInvariant(binaryOp.getRightOperand(), assignments)) {
+                return false;
+            }
+
+            readsMemory = false;
+            mayThrow = binaryOp.getOperation().getOpType() == OperationType.DIV
+                    && !(binaryOp.getRightOperand() instanceof LiteralElement literal
+                    && !literal.getLiteral().equals("0"));
+        } else if (rhs instanceof UnaryOpInstruction unaryOp) {
+            if (!isInvariant(unaryOp.getOperand(), assignments)) {
+                return false;
+            }
+
+            readsMemory = false;
+            mayThrow = false;
+        } else if (rhs instanceof SingleOpInstruction singleOp) {
+            if (!isInvariant(singleOp.getSingleOperand(), assignments)) {
+                return false;
+            }
+
+            readsMemory = singleOp.getSingleOperand() instanceof ArrayOperand;
+            mayThrow = readsMemory;
+        } else if (rhs instanceof CallInstruction call && call.getInvocationType() == CallType.arraylength) {
+            if (!isInvariant(call.getCaller(), assignments)) {
+                return false;
+            }
+
+            readsMemory = false;
+            mayThrow = true;
+        } else if (rhs instanceof GetFieldInstruction getField) {
+            if (!isInvariant(getField.getObject(), assignments)) {
+                return false;
+            }
+
+            readsMemory = true;
+            mayThrow = false;
+        } else {
+            return false;
+        }
+
+        if (readsMemory && loopWritesMemory) {
+            return false;
+        }
+
+        return !mayThrow || runsFirstInEveryExit(index, loop, graph, exits);
+    }
+
+    private static boolean isInvariant(Element element, Map<String, Integer> assignments) {
+        if (element instanceof LiteralElement) {
+            return true;
+        }
+
+        if (element instanceof ArrayOperand arrayOperand) {
+            return !assignments.containsKey(arrayOperand.getName())
+                    && arrayOperand.getIndexOperands().stream().allMatch(index -> isInvariant(index, assignments));
+        }
+
+        return !assignments.containsKey(((Operand) element).getName());
+    }
+
+    /**
+     * @return true if the instruction runs in every iteration that leaves the loop, and nothing with a side effect runs
+     * before it in the iteration, so that throwing before the loop throws the same exception at the same point
+     */
+    private boolean runsFirstInEveryExit(int index, NaturalLoop loop, ControlFlowGraph graph, List<Integer> exits) {
+        var instructions = method.getInstructions();
+        int block = graph.getBlock(index);
+
+        if (!exits.stream().allMatch(exit -> graph.dominates(block, exit))) {
+            return false;
+        }
+
+        for (int i = graph.getStart(block); i < index; i++) {
+            if (CommonSubexpressionElimination.writesMemory(instructions.get(i))) {
+                return false;
+            }
+        }
+
+        if (block == loop.header()) {
+            return true;
+        }
+
+        // The blocks from the header to this one
+        var before = new HashSet<>(Set.of(loop.header()));
+        var pending = new ArrayDeque<Integer>();
+        for (int predecessor : graph.getPredecessors(block)) {
+            if (before.add(predecessor)) {
+                pending.add(predecessor);
+            }
+        }
+        while (!pending.isEmpty()) {
+            for (int predecessor : graph.getPredecessors(pending.poll())) {
+                if (loop.blocks().contains(predecessor) && before.add(predecessor)) {
+                    pending.add(predecessor);
+                }
+            }
+        }
+
+        for (int previous : before) {
+            for (int i = graph.getStart(previous); i < graph.getEnd(previous); i++) {
+                if (CommonSubexpressionElimination.writesMemory(instructions.get(i))) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static int getDepth(ControlFlowGraph graph, int block) {
+        int depth = 0;
+        for (int dominator = graph.getImmediateDominator(block); dominator != -1;
+             dominator = graph.getImmediateDominator(dominator)) {
+            depth++;
+        }
+
+        return depth;
+    }
+}
@@ -0,0 +1,213 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.CondBranchInstruction;
+import org.specs.comp.ollir.GotoInstruction;
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.ReturnInstruction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A natural loop of an OLLIR method, with its header and all of its blocks.
+ * <p>
+ * The loop of a back edge, a jump from a block to a block that dominates it, has every block that reaches the jump
+ * without going through the header. Loops with the same header are merged.
+ */
+record NaturalLoop(int header, Set<Integer> blocks) {
+
+    /**
+     * @return the natural loops of the method, the ones with fewer blocks first, so that inner loops come before the
+     * loops around them
+     */
+    static List<NaturalLoop> find(ControlFlowGraph graph) {
+        var bodies = new TreeMap<Integer, Set<Integer>>();
+
+        for (int block = 0; block < graph.getBlocks(); block++) {
+            for (int header : graph.getSuccessors(block)) {
+                if (!graph.dominates(header, block)) {
+                    continue;
+                }
+
+                var body = bodies.computeIfAbsent(header, first -> new HashSet<>(Set.of(first)));
+                var pending = new ArrayDeque<Integer>();
+                if (body.add(block)) {
+                    pending.add(block);
+                }
+
+                while (!pending.isEmpty()) {
+                    for (int predecessor : graph.getPredecessors(pending.poll())) {
+                        if (graph.dominates(header, predecessor) && body.add(predecessor)) {
+                            pending.add(predecessor);
+                        }
+                    }
+                }
+            }
+        }
+
+        var loops = new ArrayList<NaturalLoop>();
+        bodies.forEach((header, blocks) -> loops.add(new NaturalLoop(header, blocks)));
+        loops.sort(Comparator.comparingInt(loop -> loop.blocks().size()));
+
+        return loops;
+    }
+
+    /**
+     * @return the blocks outside the loop that jump or fall through into its header
+     */
+    List<Integer> getEntries(ControlFlowGraph graph) {
+        return graph.getPredecessors(header).stream()
+                .filter(block -> !blocks.contains(block))
+                .toList();
+    }
+
+    /**
+     * @return the blocks of the loop that can leave it
+     */
+    List<Integer> getExits(ControlFlowGraph graph) {
+        return blocks.stream()
+                .filter(block -> graph.getSuccessors(block).stream().anyMatch(next -> !blocks.contains(next)))
+                .toList();
+    }
+
+    /**
+     * @return the indexes of the instructions of the loop, in the order of the method
+     */
+    List<Integer> getInstructions(ControlFlowGraph graph) {
+        var indexes = new ArrayList<Integer>();
+        for (int block : blocks) {
+            for (int i = graph.getStart(block); i < graph.getEnd(block); i++) {
+                indexes.add(i);
+            }
+        }
+        indexes.sort(null);
+
+        return indexes;
+    }
+
+    /**
+     * Places the given instructions, in that order, in a preheader right before the header, which is only reached
+     * from outside the loop. Instructions that are already in the loop are moved, and their labels go to the next
+     * instruction that stays, so there must be one after each of them.
+     * <p>
+     * The back edges jump to the labels of the header, a block of the loop that falls through into the header jumps
+     * to it instead, and the jumps into the loop from outside it are redirected to a new label on the preheader.
+     *
+     * @param method
+     * @param graph     the graph of the method before the instructions are placed
+     * @param preheader at least one instruction
+     */
+    void insertPreheader(Method method, ControlFlowGraph graph, List<Instruction> preheader) {
+        var instructions = method.getInstructions();
+        var labels = method.getLabels();
+        int headerStart = graph.getStart(header);
+
+        var positions = new IdentityHashMap<Instruction, Integer>();
+        for (int i = 0; i < instructions.size(); i++) {
+            positions.put(instructions.get(i), i);
+        }
+
+        var isMoved = new boolean[instructions.size()];
+        for (var instruction : preheader) {
+            var position = positions.get(instruction);
+            if (position != null) {
+                isMoved[position] = true;
+            }
+        }
+
+        for (int i = 0; i < instructions.size(); i++) {
+            if (!isMoved[i]) {
+                continue;
+            }
+
+            var instruction = instructions.get(i);
+            int next = i + 1;
+            while (isMoved[next]) {
+                next++;
+            }
+
+            var target = instructions.get(next);
+            labels.replaceAll((label, labelled) -> labelled == instruction ? target : labelled);
+        }
+
+        int firstKept = headerStart;
+        while (isMoved[firstKept]) {
+            firstKept++;
+        }
+        var first = instructions.get(firstKept);
+        String preheaderLabel = null;
+
+        for (int entry : getEntries(graph)) {
+            var last = instructions.get(graph.getEnd(entry) - 1);
+            String label = last instanceof GotoInstruction gotoInstruction ? gotoInstruction.getLabel()
+                    : last instanceof CondBranchInstruction branch ? branch.getLabel()
+                    : null;
+
+            if (label == null || labels.get(label) != first) {
+                continue;
+            }
+
+            if (preheaderLabel == null) {
+                preheaderLabel = newLabel(method, label + "Preheader");
+                labels.put(preheaderLabel, preheader.get(0));
+            }
+
+            if (last instanceof GotoInstruction gotoInstruction) {
+                gotoInstruction.setLabel(preheaderLabel);
+            } else {
+                ((CondBranchInstruction) last).setLabel(preheaderLabel);
+            }
+        }
+
+        // In loops with the condition at the end, the body can fall through into the header
+        var previous = headerStart > 0 ? instructions.get(headerStart - 1) : null;
+        boolean fallsIntoHeader = previous != null && blocks.contains(graph.getBlock(headerStart - 1))
+                && !(previous instanceof GotoInstruction) && !(previous instanceof ReturnInstruction);
+
+        var reordered = new ArrayList<Instruction>();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (i == headerStart) {
+                if (fallsIntoHeader) {
+                    reordered.add(new GotoInstruction(getLabel(method, first)));
+                }
+                reordered.addAll(preheader);
+            }
+            if (!isMoved[i]) {
+                reordered.add(instructions.get(i));
+            }
+        }
+
+        instructions.clear();
+        instructions.addAll(reordered);
+    }
+
+    /**
+     * @return a label of the given instruction, which is always a jump target when this is needed
+     */
+    private static String getLabel(Method method, Instruction instruction) {
+        return method.getLabels().entrySet().stream()
+                .filter(entry -> entry.getValue() == instruction)
+                .map(Map.Entry::getKey)
+                .sorted()
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("The header of a loop in method '"
+                        + method.getMethodName() + "' has no label"));
+    }
+
+    private static String newLabel(Method method, String base) {
+        var label = base;
+        for (int number = 1; method.getLabels().containsKey(label); number++) {
+            label = base + number;
+        }
+
+        return label;
+    }
+}
@@ -0,0 +1,866 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.AccessModifier;
+import org.specs.comp.ollir.ArrayOperand;
+import org.specs.comp.ollir.ArrayType;
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.BinaryOpInstruction;
+import org.specs.comp.ollir.CallInstruction;
+import org.specs.comp.ollir.CallType;
+import org.specs.comp.ollir.ClassType;
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.Element;
+import org.specs.comp.ollir.ElementType;
+import org.specs.comp.ollir.Field;
+import org.specs.comp.ollir.GetFieldInstruction;
+import org.specs.comp.ollir.GotoInstruction;
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.LiteralElement;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.OpCondInstruction;
+import org.specs.comp.ollir.OpInstruction;
+import org.specs.comp.ollir.Operand;
+import org.specs.comp.ollir.Operation;
+import org.specs.comp.ollir.OperationType;
+import org.specs.comp.ollir.PutFieldInstruction;
+import org.specs.comp.ollir.ReturnInstruction;
+import org.specs.comp.ollir.SingleOpCondInstruction;
+import org.specs.comp.ollir.SingleOpInstruction;
+import org.specs.comp.ollir.Type;
+import org.specs.comp.ollir.UnaryOpInstruction;
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.NodeUtils;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static pt.up.fe.comp2024.ast.Kind.*;
+
+/**
+ * Lowers the AST of a Java-- class directly into the OLLIR object model ({@link ClassUnit}, {@link Method},
+ * {@link Instruction}, ...), without generating OLLIR text and parsing it back.
+ * <p>
+ * Programs that use a construct the builder does not know give a {@link Lowering} without a class, so that the caller
+ * can decide to fall back to {@link OllirGeneratorVisitor}. Use {@link OllirPrinter} to see the result as OLLIR text.
+ */
+public class OllirBuilder {
+
+    /**
+     * An instruction that computes the value of an expression, before it is assigned to anything.
+     */
+    private record Value(Instruction instruction, Type type) {
+    }
+
+    /**
+     * The result of lowering a class.
+     *
+     * @param classUnit   the OLLIR class, without variable tables, or null if the class uses an unsupported construct
+     * @param unsupported the first construct the builder could not lower, or null if the class was lowered
+     */
+    public record Lowering(ClassUnit classUnit, String unsupported) {
+
+        public boolean isSupported() {
+            return classUnit != null;
+        }
+    }
+
+    /**
+     * Stops the lowering at a construct the builder does not know. Only {@link #build(JmmNode)} catches it, so any
+     * other exception thrown while lowering is still a bug.
+     */
+    private static class UnsupportedConstruct extends RuntimeException {
+
+        UnsupportedConstruct(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private final JmmSymbolTable table;
+    private final boolean rotateLoops;
+
+    private final Map<String, JmmNode> methodDecls = new HashMap<>();
+
+    private ClassUnit classUnit;
+    private Method method;
+    private String methodName;
+
+    // Labels waiting for the next instruction of the method
+    private final List<String> pendingLabels = new ArrayList<>();
+    private int labelNumber = 0;
+
+    public OllirBuilder(SymbolTable table) {
+        this(table, true);
+    }
+
+    /**
+     * @param table
+     * @param rotateLoops if false, while loops test their condition at the top instead of at the bottom
+     */
+    public OllirBuilder(SymbolTable table, boolean rotateLoops) {
+        this.table = JmmSymbolTable.of(table);
+        this.rotateLoops = rotateLoops;
+    }
+
+    /**
+     * @param root the root of the AST, after semantic analysis
+     * @return the OLLIR class of the program, or the construct that kept it from being lowered
+     */
+    public Lowering build(JmmNode root) {
+        try {
+            return new Lowering(buildClass(root), null);
+        } catch (UnsupportedConstruct e) {
+            return new Lowering(null, e.getMessage());
+        }
+    }
+
+    private ClassUnit buildClass(JmmNode root) {
+        var classDecl = root.getObject("cls", JmmNode.class);
+
+        classUnit = new ClassUnit();
+        table.getImports().forEach(classUnit::addImport);
+        classUnit.setClassName(table.getClassName());
+        if (table.getSuper() != null) {
+            classUnit.setSuperClass(table.getSuper());
+        }
+
+        for (var field : table.getFields()) {
+            var ollirField = new Field();
+            ollirField.setFieldName(field.getName());
+            ollirField.setFieldType(toOllirType(field));
+            ollirField.setFieldAccessModifier(AccessModifier.PUBLIC);
+            classUnit.addField(ollirField);
+        }
+
+        for (var methodDecl : classDecl.getChildren(METHOD_DECL)) {
+            methodDecls.put(methodDecl.get("name"), methodDecl);
+        }
+
+        for (var methodDecl : classDecl.getChildren(METHOD_DECL)) {
+            buildMethod(methodDecl);
+        }
+
+        buildConstructor();
+
+        return classUnit;
+    }
+
+    private void buildConstructor() {
+        var constructor = new Method(classUnit);
+        constructor.setConstructMethod();
+        constructor.setReturnType(new Type(ElementType.VOID));
+        constructor.setMethodName(table.getClassName());
+
+        constructor.addInstr(new CallInstruction(CallType.invokespecial, thisOperand(), methodNameLiteral("<init>"),
+                new ArrayList<>(), new Type(ElementType.VOID), true));
+
+        classUnit.addMethod(constructor);
+    }
+
+    private void buildMethod(JmmNode methodDecl) {
+        method = new Method(classUnit);
+        methodName = methodDecl.get("name");
+        pendingLabels.clear();
+
+        // main is always public
+        if (isMain(methodDecl) || NodeUtils.getBooleanAttribute(methodDecl, "isPublic", "false")) {
+            method.setMethodAccessModifier(AccessModifier.PUBLIC);
+        }
+
+        if (isMain(methodDecl)) {
+            // The parameter of main is not in the symbol table
+            method.setStaticMethod();
+
+            var args = new Operand(methodDecl.get("atribute"), toOllirType("String", true));
+            args.setParamId(0);
+            method.addParam(args);
+        } else {
+            int paramId = 1;
+            for (var param : methodDecl.getChildren(PARAM)) {
+                var operand = new Operand(param.get("name"), toOllirType(param.getChildren(TYPE).get(0)));
+                operand.setParamId(paramId++);
+                method.addParam(operand);
+
+                if (VARARG.check(param.getChildren(TYPE).get(0))) {
+                    method.setVarargs(true);
+                }
+            }
+        }
+
+        method.setReturnType(getReturnType(methodName));
+        method.setMethodName(methodName);
+        classUnit.addMethod(method);
+
+        for (var child : methodDecl.getChildren()) {
+            if (isStatement(child)) {
+                lowerStatement(child);
+            }
+        }
+
+        // Void methods may end without a return, and labels at the end of a method need an instruction
+        var instructions = method.getInstructions();
+        boolean endsInReturn = !instructions.isEmpty()
+                && instructions.get(instructions.size() - 1) instanceof ReturnInstruction;
+        if (!endsInReturn || !pendingLabels.isEmpty()) {
+            if (method.getReturnType().getTypeOfElement() != ElementType.VOID) {
+                throw unsupported(methodDecl, "method '" + methodName + "' does not end with a return");
+            }
+
+            var ret = new ReturnInstruction();
+            ret.setReturnType(new Type(ElementType.VOID));
+            emit(ret);
+        }
+    }
+
+    // Statements
+
+    private void lowerStatement(JmmNode stmt) {
+        switch (kindOf(stmt)) {
+            case EXPR_STMT -> lowerExprStatement(stmt.getJmmChild(0));
+            case SCOPE_STMT -> stmt.getChildren().stream()
+                    .filter(this::isStatement)
+                    .forEach(this::lowerStatement);
+            case IF_ELSE_STMT -> lowerIfElse(stmt);
+            case WHILE_STMT -> lowerWhile(stmt);
+            case RETURN_STMT -> lowerReturn(stmt);
+            default -> throw unsupported(stmt);
+        }
+    }
+
+    private void lowerExprStatement(JmmNode expr) {
+        switch (kindOf(expr)) {
+            case METHOD_CALL_EXPR -> lowerCall(expr, new Type(ElementType.VOID), true);
+            case ASSIGNMENT_EXPR -> lowerAssignment(expr);
+            // Only the side effects of the expression are kept
+            default -> lowerExpr(expr, null);
+        }
+    }
+
+    private void lowerIfElse(JmmNode stmt) {
+        int number = labelNumber++;
+        var thenLabel = "ifThen" + number;
+        var endLabel = "ifEnd" + number;
+
+        branchIfTrue(stmt.getJmmChild(0), thenLabel);
+        lowerStatement(stmt.getJmmChild(2));
+        emit(new GotoInstruction(endLabel));
+
+        placeLabel(thenLabel);
+        lowerStatement(stmt.getJmmChild(1));
+
+        placeLabel(endLabel);
+    }
+
+    /**
+     * Lowers a while loop with its condition at the bottom, so that each iteration only takes the branch back to the
+     * body. The condition is also tested once before the loop, to skip it when it does not run at all.
+     * <p>
+     * Without rotation, the condition is tested at the top and the body ends with a goto back to it.
+     */
+    private void lowerWhile(JmmNode stmt) {
+        int number = labelNumber++;
+        var bodyLabel = "whileBody" + number;
+        var endLabel = "whileEnd" + number;
+
+        if (!rotateLoops) {
+            var condLabel = "whileCond" + number;
+
+            placeLabel(condLabel);
+            branchIfFalse(stmt.getJmmChild(0), endLabel);
+            lowerStatement(stmt.getJmmChild(1));
+            emit(new GotoInstruction(condLabel));
+
+            placeLabel(endLabel);
+            return;
+        }
+
+        branchIfFalse(stmt.getJmmChild(0), endLabel);
+
+        placeLabel(bodyLabel);
+        lowerStatement(stmt.getJmmChild(1));
+        branchIfTrue(stmt.getJmmChild(0), bodyLabel);
+
+        placeLabel(endLabel);
+    }
+
+    private void lowerReturn(JmmNode stmt) {
+        var returnType = getReturnType(methodName);
+
+        var ret = stmt.getNumChildren() > 0
+                ? new ReturnInstruction(lowerExpr(stmt.getJmmChild(0), returnType))
+                : new ReturnInstruction();
+        ret.setReturnType(returnType);
+
+        emit(ret);
+    }
+
+    /**
+     * Jumps to the given label when the condition is true, and falls through otherwise.
+     * <p>
+     * The operands of '&amp;&amp;' and '||' jump straight to where their value decides the condition, so the right
+     * operand only runs when it is needed and no boolean is computed for it.
+     */
+    private void branchIfTrue(JmmNode condition, String label) {
+        switch (kindOf(condition)) {
+            case PAREN_EXPR -> {
+                if (condition.getNumChildren() != 1) {
+                    throw unsupported(condition);
+                }
+                branchIfTrue(condition.getJmmChild(0), label);
+            }
+            case UNARY_EXPR -> branchIfFalse(condition.getJmmChild(0), label);
+            case SHORT_C_AND_EXPR -> {
+                var endLabel = "andEnd" + labelNumber++;
+
+                branchIfFalse(condition.getJmmChild(0), endLabel);
+                branchIfTrue(condition.getJmmChild(1), label);
+
+                placeLabel(endLabel);
+            }
+            case SHORT_C_OR_EXPR -> {
+                branchIfTrue(condition.getJmmChild(0), label);
+                branchIfTrue(condition.getJmmChild(1), label);
+            }
+            default -> {
+                var value = lowerValue(condition, new Type(ElementType.BOOLEAN));
+
+                var branch = value.instruction() instanceof OpInstruction operation
+                        && operation.getOperation().getTypeInfo().getTypeOfElement() == ElementType.BOOLEAN
+                        ? new OpCondInstruction(operation)
+                        : new SingleOpCondInstruction(new SingleOpInstruction(toElement(value)));
+                branch.setLabel(label);
+
+                emit(branch);
+            }
+        }
+    }
+
+    /**
+     * Jumps to the given label when the condition is false, and falls through otherwise.
+     */
+    private void branchIfFalse(JmmNode condition, String label) {
+        switch (kindOf(condition)) {
+            case PAREN_EXPR -> {
+                if (condition.getNumChildren() != 1) {
+                    throw unsupported(condition);
+                }
+                branchIfFalse(condition.getJmmChild(0), label);
+            }
+            case UNARY_EXPR -> branchIfTrue(condition.getJmmChild(0), label);
+            case SHORT_C_AND_EXPR -> {
+                branchIfFalse(condition.getJmmChild(0), label);
+                branchIfFalse(condition.getJmmChild(1), label);
+            }
+            case SHORT_C_OR_EXPR -> {
+                var endLabel = "orEnd" + labelNumber++;
+
+                branchIfTrue(condition.getJmmChild(0), endLabel);
+                branchIfFalse(condition.getJmmChild(1), label);
+
+                placeLabel(endLabel);
+            }
+            case RELATIONAL_EXPR -> {
+                // The comparison is inverted, instead of negating its result
+                var comparison = (BinaryOpInstruction) lowerBinary(condition, ElementType.INT32, ElementType.BOOLEAN)
+                        .instruction();
+                var opType = switch (comparison.getOperation().getOpType()) {
+                    case LTH -> OperationType.GTE;
+                    case LTE -> OperationType.GTH;
+                    case GTH -> OperationType.LTE;
+                    case GTE -> OperationType.LTH;
+                    default -> throw unsupported(condition, "operator '" + condition.get("op") + "'");
+                };
+                comparison.getOperation().setOpType(opType);
+
+                var branch = new OpCondInstruction(comparison);
+                branch.setLabel(label);
+                emit(branch);
+            }
+            default -> {
+                var operand = lowerExpr(condition, new Type(ElementType.BOOLEAN));
+                var not = new UnaryOpInstruction(new Operation(OperationType.NOTB, new Type(ElementType.BOOLEAN)),
+                        operand);
+
+                var branch = new OpCondInstruction(not);
+                branch.setLabel(label);
+                emit(branch);
+            }
+        }
+    }
+
+    // Expressions
+
+    /**
+     * Lowers an expression to an element that holds its value, adding the instructions that compute it to the method.
+     *
+     * @param expr
+     * @param expected type the context expects, used for calls to methods of other classes; may be null
+     * @return a literal or an operand that is not an array access
+     */
+    private Element lowerExpr(JmmNode expr, Type expected) {
+        return switch (kindOf(expr)) {
+            case INTEGER_LITERAL_EXPR -> new LiteralElement(expr.get("value"), new Type(ElementType.INT32));
+            case BOOLEAN_LITERAL_EXPR ->
+                    new LiteralElement(expr.get("value").equals("true") ? "1" : "0", new Type(ElementType.BOOLEAN));
+            case THIS_LITERAL_EXPR -> thisOperand();
+            case PAREN_EXPR -> {
+                if (expr.getNumChildren() != 1) {
+                    throw unsupported(expr);
+                }
+                yield lowerExpr(expr.getJmmChild(0), expected);
+            }
+            case VAR_REF_EXPR -> lookupVariable(expr.get("name"))
+                    .map(variable -> (Element) variable)
+                    .orElseGet(() -> toElement(lowerValue(expr, expected)));
+            case NEW_CLASS_EXPR -> lowerNewClass(expr);
+            case ARRAY_INIT_EXPR -> newIntArray(expr.getChildren().stream()
+                    .map(value -> lowerExpr(value, new Type(ElementType.INT32)))
+                    .toList());
+            case SHORT_C_AND_EXPR -> lowerAnd(expr);
+            case SHORT_C_OR_EXPR -> lowerOr(expr);
+            case ASSIGNMENT_EXPR -> lowerAssignment(expr);
+            default -> toElement(lowerValue(expr, expected));
+        };
+    }
+
+    /**
+     * Lowers an expression to the instruction that computes its value, so that it can be assigned directly to a
+     * variable instead of going through a temporary.
+     */
+    private Value lowerValue(JmmNode expr, Type expected) {
+        return switch (kindOf(expr)) {
+            case ADDITIVE_EXPR, MULTIPLICATIVE_EXPR -> lowerBinary(expr, ElementType.INT32, ElementType.INT32);
+            case RELATIONAL_EXPR -> lowerBinary(expr, ElementType.INT32, ElementType.BOOLEAN);
+            case UNARY_EXPR -> {
+                var operand = lowerExpr(expr.getJmmChild(0), new Type(ElementType.BOOLEAN));
+                yield new Value(new UnaryOpInstruction(new Operation(OperationType.NOTB, new Type(ElementType.BOOLEAN)),
+                        operand), new Type(ElementType.BOOLEAN));
+            }
+            case VAR_REF_EXPR -> lookupVariable(expr.get("name"))
+                    .map(variable -> new Value(new SingleOpInstruction(variable), variable.getType()))
+                    .orElseGet(() -> lowerFieldAccess(expr));
+            case ARRAY_ACCESS_EXPR -> lowerArrayAccess(expr);
+            case LENGTH_EXPR -> lowerLength(expr);
+            case NEW_ARRAY_EXPR -> lowerNewArray(expr);
+            case METHOD_CALL_EXPR -> lowerCall(expr, expected, false);
+            default -> {
+                var element = lowerExpr(expr, expected);
+                yield new Value(new SingleOpInstruction(element), element.getType());
+            }
+        };
+    }
+
+    private Value lowerBinary(JmmNode expr, ElementType operandType, ElementType resultType) {
+        var left = lowerExpr(expr.getJmmChild(0), new Type(operandType));
+        var right = lowerExpr(expr.getJmmChild(1), new Type(operandType));
+
+        var opType = switch (expr.get("op")) {
+            case "+" -> OperationType.ADD;
+            case "-" -> OperationType.SUB;
+            case "*" -> OperationType.MUL;
+            case "/" -> OperationType.DIV;
+            case "<" -> OperationType.LTH;
+            case "<=" -> OperationType.LTE;
+            case ">" -> OperationType.GTH;
+            case ">=" -> OperationType.GTE;
+            default -> throw unsupported(expr, "operator '" + expr.get("op") + "'");
+        };
+
+        var operation = new Operation(opType, new Type(resultType));
+        return new Value(new BinaryOpInstruction(left, operation, right), new Type(resultType));
+    }
+
+    private Element lowerAnd(JmmNode expr) {
+        int number = labelNumber++;
+        var rightLabel = "andRight" + number;
+        var endLabel = "andEnd" + number;
+
+        // The right operand is only evaluated when the left one is true
+        var result = newTemp(new Type(ElementType.BOOLEAN));
+        assign(result, lowerValue(expr.getJmmChild(0), new Type(ElementType.BOOLEAN)));
+
+        var branch = new SingleOpCondInstruction(new SingleOpInstruction(result));
+        branch.setLabel(rightLabel);
+        emit(branch);
+        emit(new GotoInstruction(endLabel));
+
+        placeLabel(rightLabel);
+        assign(result, lowerValue(expr.getJmmChild(1), new Type(ElementType.BOOLEAN)));
+
+        placeLabel(endLabel);
+
+        return result;
+    }
+
+    private Element lowerOr(JmmNode expr) {
+        var endLabel = "orEnd" + labelNumber++;
+
+        // The right operand is only evaluated when the left one is false
+        var result = newTemp(new Type(ElementType.BOOLEAN));
+        assign(result, lowerValue(expr.getJmmChild(0), new Type(ElementType.BOOLEAN)));
+
+        var branch = new SingleOpCondInstruction(new SingleOpInstruction(result));
+        branch.setLabel(endLabel);
+        emit(branch);
+
+        assign(result, lowerValue(expr.getJmmChild(1), new Type(ElementType.BOOLEAN)));
+
+        placeLabel(endLabel);
+
+        return result;
+    }
+
+    private Value lowerFieldAccess(JmmNode expr) {
+        var name = expr.get("name");
+        var field = table.getField(name).orElseThrow(() -> unsupported(expr, "unknown variable '" + name + "'"));
+
+        var type = toOllirType(field);
+        return new Value(new GetFieldInstruction(thisOperand(), new Operand(name, type), type), type);
+    }
+
+    private Value lowerArrayAccess(JmmNode expr) {
+        var array = toArrayOperand(lowerExpr(expr.getJmmChild(0), null), expr);
+        var index = lowerExpr(expr.getJmmChild(1), new Type(ElementType.INT32));
+
+        var elementType = ((ArrayType) array.getType()).getElementType();
+        return new Value(new SingleOpInstruction(new ArrayOperand(array.getName(), elementType, List.of(index))),
+                elementType);
+    }
+
+    private Value lowerLength(JmmNode expr) {
+        if (!expr.get("name").equals("length")) {
+            throw unsupported(expr, "field access '" + expr.get("name") + "'");
+        }
+
+        var array = toArrayOperand(lowerExpr(expr.getJmmChild(0), null), expr);
+        var type = new Type(ElementType.INT32);
+
+        return new Value(new CallInstruction(CallType.arraylength, array, type), type);
+    }
+
+    private Value lowerNewArray(JmmNode expr) {
+        var typeNode = expr.getChildren(TYPE).get(0);
+        var type = toOllirType(typeNode.get("name"), true);
+        var size = lowerExpr(expr.getJmmChild(1), new Type(ElementType.INT32));
+
+        var arguments = new ArrayList<Element>();
+        arguments.add(size);
+
+        return new Value(new CallInstruction(CallType.NEW, new Operand("array", new ArrayType()), arguments, type),
+                type);
+    }
+
+    private Element lowerNewClass(JmmNode expr) {
+        var className = expr.get("name");
+        var type = toOllirType(className, false);
+
+        var object = newTemp(type);
+        assign(object, new Value(new CallInstruction(CallType.NEW,
+                new Operand(className, new ClassType(ElementType.OBJECTREF, className)), new ArrayList<>(), type), type));
+        emit(new CallInstruction(CallType.invokespecial, object, methodNameLiteral("<init>"), new ArrayList<>(),
+                new Type(ElementType.VOID), true));
+
+        return object;
+    }
+
+    /**
+     * Creates an int array holding the given values.
+     */
+    private Element newIntArray(List<Element> elements) {
+        var type = toOllirType("int", true);
+        var arguments = new ArrayList<Element>();
+        arguments.add(new LiteralElement(String.valueOf(elements.size()), new Type(ElementType.INT32)));
+
+        var array = newTemp(type);
+        assign(array, new Value(new CallInstruction(CallType.NEW, new Operand("array", new ArrayType()), arguments,
+                type), type));
+
+        for (int i = 0; i < elements.size(); i++) {
+            var index = new LiteralElement(String.valueOf(i), new Type(ElementType.INT32));
+            var element = new ArrayOperand(array.getName(), new Type(ElementType.INT32), List.of(index));
+            emit(new AssignInstruction(element, new Type(ElementType.INT32), new SingleOpInstruction(elements.get(i))));
+        }
+
+        return array;
+    }
+
+    private Element lowerAssignment(JmmNode expr) {
+        var lhs = expr.getJmmChild(0);
+        var rhs = expr.getJmmChild(1);
+
+        if (ARRAY_ACCESS_EXPR.check(lhs)) {
+            var array = toArrayOperand(lowerExpr(lhs.getJmmChild(0), null), lhs);
+            var index = lowerExpr(lhs.getJmmChild(1), new Type(ElementType.INT32));
+            var elementType = ((ArrayType) array.getType()).getElementType();
+
+            var value = toElement(lowerValue(rhs, elementType));
+            emit(new AssignInstruction(new ArrayOperand(array.getName(), elementType, List.of(index)), elementType,
+                    new SingleOpInstruction(value)));
+
+            return value;
+        }
+
+        if (!VAR_REF_EXPR.check(lhs)) {
+            throw unsupported(lhs);
+        }
+
+        var name = lhs.get("name");
+        var variable = lookupVariable(name);
+
+        // Locals and parameters
+        if (variable.isPresent()) {
+            var type = variable.get().getType();
+            var value = lowerValue(rhs, type);
+            emit(new AssignInstruction(variable.get(), type, value.instruction()));
+
+            return variable.get();
+        }
+
+        // Fields
+        var field = table.getField(name).orElseThrow(() -> unsupported(lhs, "unknown variable '" + name + "'"));
+        var type = toOllirType(field);
+        var value = lowerExpr(rhs, type);
+        emit(new PutFieldInstruction(thisOperand(), new Operand(name, type), value, new Type(ElementType.VOID)));
+
+        return value;
+    }
+
+    /**
+     * Lowers a method call. Calls to methods of this class use the declared types; calls to other classes use the type
+     * the context expects, or int when the context does not know it.
+     *
+     * @param isolated true if the value of the call is not used
+     */
+    private Value lowerCall(JmmNode expr, Type expected, boolean isolated) {
+        var calledName = expr.get("name");
+        var hasReceiver = expr.hasAttribute("obj");
+        var argumentNodes = hasReceiver ? expr.getChildren().subList(1, expr.getNumChildren()) : expr.getChildren();
+
+        Element caller;
+        CallType callType;
+        boolean isOwnClass;
+
+        var receiver = hasReceiver ? expr.getJmmChild(0) : null;
+        if (receiver == null) {
+            caller = thisOperand();
+            callType = CallType.invokevirtual;
+            isOwnClass = true;
+        } else if (VAR_REF_EXPR.check(receiver) && isClassName(receiver.get("name"))) {
+            var className = receiver.get("name");
+            caller = new Operand(className, new ClassType(ElementType.CLASS, table.getClassName()));
+            callType = CallType.invokestatic;
+            isOwnClass = className.equals(table.getClassName());
+        } else {
+            caller = lowerExpr(receiver, null);
+            if (!(caller.getType() instanceof ClassType classType)) {
+                throw unsupported(expr, "call on a value of type " + caller.getType());
+            }
+            callType = CallType.invokevirtual;
+            isOwnClass = classType.getTypeOfElement() == ElementType.THIS
+                    || classType.getName().equals(table.getClassName());
+        }
+
+        var methodDecl = isOwnClass ? methodDecls.get(calledName) : null;
+
+        List<Element> arguments;
+        Type returnType;
+        if (methodDecl != null) {
+            arguments = lowerArguments(argumentNodes, methodDecl);
+            returnType = getReturnType(calledName);
+        } else {
+            arguments = new ArrayList<>();
+            for (var argument : argumentNodes) {
+                arguments.add(lowerExpr(argument, null));
+            }
+            returnType = expected != null ? expected : new Type(ElementType.INT32);
+        }
+
+        var call = new CallInstruction(callType, caller, methodNameLiteral(calledName), arguments, returnType, isolated);
+        if (isolated) {
+            emit(call);
+        }
+
+        return new Value(call, returnType);
+    }
+
+    private List<Element> lowerArguments(List<JmmNode> argumentNodes, JmmNode methodDecl) {
+        var params = methodDecl.getChildren(PARAM);
+        boolean isVarargs = !params.isEmpty() && VARARG.check(params.get(params.size() - 1).getChildren(TYPE).get(0));
+        int fixedParams = isVarargs ? params.size() - 1 : params.size();
+
+        var arguments = new ArrayList<Element>();
+        for (int i = 0; i < Math.min(fixedParams, argumentNodes.size()); i++) {
+            arguments.add(lowerExpr(argumentNodes.get(i), toOllirType(params.get(i).getChildren(TYPE).get(0))));
+        }
+
+        if (!isVarargs) {
+            return arguments;
+        }
+
+        // An array given in the place of the varargs is passed as it is, otherwise the values are packed in one
+        var varargs = argumentNodes.subList(fixedParams, argumentNodes.size()).stream()
+                .map(argument -> lowerExpr(argument, new Type(ElementType.INT32)))
+                .toList();
+        if (varargs.size() == 1 && varargs.get(0).getType() instanceof ArrayType) {
+            arguments.add(varargs.get(0));
+        } else {
+            arguments.add(newIntArray(varargs));
+        }
+
+        return arguments;
+    }
+
+    // Helpers
+
+    /**
+     * @return the operand of a local variable or parameter of the current method, if the name is one
+     */
+    private Optional<Operand> lookupVariable(String name) {
+        var methodDecl = methodDecls.get(methodName);
+        if (isMain(methodDecl) && name.equals(methodDecl.get("atribute"))) {
+            return Optional.of(new Operand(name, toOllirType("String", true)));
+        }
+
+        return table.getLocalVariable(methodName, name)
+                .or(() -> table.getParameter(methodName, name))
+                .map(symbol -> new Operand(name, toOllirType(symbol)));
+    }
+
+    private boolean isClassName(String name) {
+        return lookupVariable(name).isEmpty()
+                && table.getField(name).isEmpty()
+                && (classUnit.isImportedClass(name) || name.equals(table.getClassName()));
+    }
+
+    private Operand toArrayOperand(Element element, JmmNode expr) {
+        if (!(element instanceof Operand operand) || !(element.getType() instanceof ArrayType)) {
+            throw unsupported(expr, "expected an array");
+        }
+
+        return operand;
+    }
+
+    private Element toElement(Value value) {
+        if (value.instruction() instanceof SingleOpInstruction singleOp
+                && !(singleOp.getSingleOperand() instanceof ArrayOperand)) {
+            return singleOp.getSingleOperand();
+        }
+
+        if (value.type().getTypeOfElement() == ElementType.VOID) {
+            throw new UnsupportedConstruct("Direct OLLIR lowering does not support using the value of a void call"
+                    + " (method '" + methodName + "')");
+        }
+
+        var temp = newTemp(value.type());
+        assign(temp, value);
+
+        return temp;
+    }
+
+    private Operand newTemp(Type type) {
+        return new Operand(OptUtils.getTemp(), type);
+    }
+
+    private void assign(Operand dest, Value value) {
+        emit(new AssignInstruction(dest, value.type(), value.instruction()));
+    }
+
+    private void emit(Instruction instruction) {
+        for (var label : pendingLabels) {
+            method.addLabel(label, instruction);
+        }
+        pendingLabels.clear();
+
+        method.addInstr(instruction);
+    }
+
+    private void placeLabel(String label) {
+        pendingLabels.add(label);
+    }
+
+    private Operand thisOperand() {
+        return new Operand("this", new ClassType(ElementType.THIS, table.getClassName()));
+    }
+
+    private static LiteralElement methodNameLiteral(String name) {
+        return new LiteralElement("\"" + name + "\"", new Type(ElementType.STRING));
+    }
+
+    private Type getReturnType(String name) {
+        var methodDecl = methodDecls.get(name);
+        if (isMain(methodDecl)) {
+            return new Type(ElementType.VOID);
+        }
+
+        return toOllirType(methodDecl.getChildren(TYPE).get(0));
+    }
+
+    private static boolean isMain(JmmNode methodDecl) {
+        return methodDecl.hasAttribute("atribute");
+    }
+
+    private boolean isStatement(JmmNode node) {
+        return EXPR_STMT.check(node) || SCOPE_STMT.check(node) || IF_ELSE_STMT.check(node)
+                || WHILE_STMT.check(node) || RETURN_STMT.check(node);
+    }
+
+    private Type toOllirType(Symbol symbol) {
+        return toOllirType(symbol.getType().getName(), symbol.getType().isArray());
+    }
+
+    private Type toOllirType(JmmNode typeNode) {
+        if (ARRAY_TYPE.check(typeNode) || VARARG.check(typeNode)) {
+            return toOllirType(typeNode.getJmmChild(0).get("name"), true);
+        }
+
+        return toOllirType(typeNode.get("name"), false);
+    }
+
+    private Type toOllirType(String name, boolean isArray) {
+        if (isArray) {
+            var type = new ArrayType();
+            type.setNumDimensions(1);
+
+            var elementType = toOllirType(name, false);
+            type.setTypeOfElements(elementType.getTypeOfElement());
+            if (elementType instanceof ClassType classType) {
+                type.setElementClass(classType.getName());
+            } else if (elementType.getTypeOfElement() == ElementType.STRING) {
+                type.setElementClass("String");
+            }
+
+            return type;
+        }
+
+        return switch (name) {
+            case "int" -> new Type(ElementType.INT32);
+            case "boolean" -> new Type(ElementType.BOOLEAN);
+            case "String" -> new Type(ElementType.STRING);
+            case "void" -> new Type(ElementType.VOID);
+            default -> new ClassType(ElementType.OBJECTREF, name);
+        };
+    }
+
+    private static Kind kindOf(JmmNode node) {
+        try {
+            return Kind.fromString(node.getKind());
+        } catch (RuntimeException e) {
+            throw unsupported(node);
+        }
+    }
+
+    private static UnsupportedConstruct unsupported(JmmNode node) {
+        return unsupported(node, "node '" + node.getKind() + "'");
+    }
+
+    private static UnsupportedConstruct unsupported(JmmNode node, String what) {
+        return new UnsupportedConstruct("Direct OLLIR lowering does not support " + what + " (line "
+                + NodeUtils.getLine(node) + ")");
+    }
+}
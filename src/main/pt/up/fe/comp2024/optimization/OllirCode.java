@@ -0,0 +1,56 @@
+package pt.up.fe.comp2024.optimization;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * OLLIR code made of pieces of text and of other OLLIR code, which are only joined when the code is turned into a
+ * string.
+ * <p>
+ * The computation of an expression starts with the computations of its operands. Appending them here keeps a
+ * reference instead of copying their text, so the code of a deeply nested expression is copied once, and not once for
+ * each level above it.
+ */
+public class OllirCode {
+
+    // Each part is either a String or another OllirCode
+    private final List<Object> parts = new ArrayList<>();
+
+    /**
+     * @param part other OLLIR code, which is kept as it is, or any other value, which is appended as its string
+     * @return this code
+     */
+    public OllirCode append(Object part) {
+        parts.add(part instanceof OllirCode ? part : String.valueOf(part));
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        var text = new StringBuilder();
+
+        // Iterative, so that long chains of expressions do not overflow the stack
+        var pending = new ArrayDeque<Iterator<Object>>();
+        pending.push(parts.iterator());
+
+        while (!pending.isEmpty()) {
+            var iterator = pending.peek();
+
+            if (!iterator.hasNext()) {
+                pending.pop();
+                continue;
+            }
+
+            var part = iterator.next();
+            if (part instanceof OllirCode code) {
+                pending.push(code.parts.iterator());
+            } else {
+                text.append((String) part);
+            }
+        }
+
+        return text.toString();
+    }
+}
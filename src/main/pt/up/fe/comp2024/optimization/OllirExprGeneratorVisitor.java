@@ -5,14 +5,20 @@ import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.AJmmVisitor;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static pt.up.fe.comp2024.ast.Kind.*;
 
 /**
  * Generates OLLIR code from JmmNodes that are expressions.
+ * <p>
+ * Each node is lowered only once, later visits of the same node return the cached result. Lowering a node again would
+ * allocate new temporaries, and nested calls would be lowered an exponential number of times.
  */
 public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult> {
 
@@ -20,12 +26,12 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
     private static final String ASSIGN = ":=";
     private final String END_STMT = ";\n";
 
-    private final SymbolTable table;
+    private final JmmSymbolTable table;
     private List<JmmNode> importedNodes = new ArrayList<>();
-
+    private final Map<JmmNode, OllirExprResult> results = new IdentityHashMap<>();
 
     public OllirExprGeneratorVisitor(SymbolTable table) {
-        this.table = table;
+        this.table = JmmSymbolTable.of(table);
     }
 
     public void appendImportNode(JmmNode node) {
@@ -41,6 +47,25 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         }
     }
 
+    @Override
+    public OllirExprResult visit(JmmNode node, Void data) {
+        var result = results.get(node);
+
+        if (result == null) {
+            result = super.visit(node, data);
+            results.put(node, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the number of nodes lowered so far
+     */
+    int getLoweredCount() {
+        return results.size();
+    }
+
     @Override
     protected void buildVisitor() {
         addVisit(VAR_REF_EXPR, this::visitVarRef);
@@ -58,6 +83,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         addVisit(LENGTH_EXPR, this::visitLengthExpr);
         addVisit(RELATIONAL_EXPR, this::visitRelationalExpr);
         addVisit(SHORT_C_AND_EXPR, this::visitShortCAndExpr);
+        addVisit(SHORT_C_OR_EXPR, this::visitShortCOrExpr);
         addVisit(PAREN_EXPR, this::visitParenExpr);
         addVisit(THIS_LITERAL_EXPR, this::visitThisExpr);
         addVisit(ARRAY_INIT_EXPR, this::visitArrayInitExpr);
@@ -69,7 +95,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
         // Array initialization
         StringBuilder code = new StringBuilder();
-        StringBuilder computation = new StringBuilder();
+        OllirCode computation = new OllirCode();
 
         String tempVar = OptUtils.getTemp() + ".array.i32";
         computation.append(tempVar).append(" :=.array.i32 new(array, ").append(node.getNumChildren()).append(".i32).array.i32;\n");
@@ -94,20 +120,42 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
     private OllirExprResult visitShortCAndExpr(JmmNode node, Void unused) {
 
-        // Short-circuit AND expression
+        // Short-circuit AND expression, the right operand is only evaluated when the left one is true
+        int number = OptUtils.getNextTempNum();
         String tempVar = OptUtils.getTemp() + ".bool";
-        String code = "";
-        if (METHOD_CALL_EXPR.check(node.getJmmChild(0)) || METHOD_CALL_EXPR.check(node.getJmmChild(1))) {
-            String tempVar1 = OptUtils.getTemp() + ".bool";
-            String tempVar2 = OptUtils.getTemp() + ".bool";
-            code += tempVar1 + " :=.bool " + visit(node.getJmmChild(0)).getCode() + END_STMT;
-            code += tempVar2 + " :=.bool " + visit(node.getJmmChild(1)).getCode() + END_STMT;
-            code += tempVar + " :=.bool " + tempVar1 + " &&.bool " + tempVar2 + END_STMT;
-        } else {
-            code = tempVar + " :=.bool " + visit(node.getJmmChild(0)).getCode() + " &&.bool " + visit(node.getJmmChild(1)).getCode() + END_STMT;
-        }
+        var lhs = visit(node.getJmmChild(0));
+        var rhs = visit(node.getJmmChild(1));
 
-        return new OllirExprResult(tempVar, new StringBuilder(code));
+        OllirCode computation = new OllirCode();
+        computation.append(lhs.getComputation());
+        computation.append(tempVar).append(" :=.bool ").append(lhs.getCode()).append(END_STMT);
+        computation.append("if (").append(tempVar).append(") goto andRight").append(number).append(END_STMT);
+        computation.append("goto andEnd").append(number).append(END_STMT);
+        computation.append("andRight").append(number).append(":\n");
+        computation.append(rhs.getComputation());
+        computation.append(tempVar).append(" :=.bool ").append(rhs.getCode()).append(END_STMT);
+        computation.append("andEnd").append(number).append(":\n");
+
+        return new OllirExprResult(tempVar, computation);
+    }
+
+    private OllirExprResult visitShortCOrExpr(JmmNode node, Void unused) {
+
+        // Short-circuit OR expression, the right operand is only evaluated when the left one is false
+        int number = OptUtils.getNextTempNum();
+        String tempVar = OptUtils.getTemp() + ".bool";
+        var lhs = visit(node.getJmmChild(0));
+        var rhs = visit(node.getJmmChild(1));
+
+        OllirCode computation = new OllirCode();
+        computation.append(lhs.getComputation());
+        computation.append(tempVar).append(" :=.bool ").append(lhs.getCode()).append(END_STMT);
+        computation.append("if (").append(tempVar).append(") goto orEnd").append(number).append(END_STMT);
+        computation.append(rhs.getComputation());
+        computation.append(tempVar).append(" :=.bool ").append(rhs.getCode()).append(END_STMT);
+        computation.append("orEnd").append(number).append(":\n");
+
+        return new OllirExprResult(tempVar, computation);
     }
 
     private OllirExprResult visitRelationalExpr(JmmNode node, Void unused) {
@@ -136,7 +184,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         var type = TypeUtils.getExprType(node, table);
         String ollirType = OptUtils.toOllirType(type);
 
-        StringBuilder computation = new StringBuilder();
+        OllirCode computation = new OllirCode();
 
         computation.append(size.getComputation());
 
@@ -167,7 +215,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         var arrayName = visit(node.getJmmChild(0));
         var index = visit(node.getJmmChild(1));
 
-        StringBuilder computation = new StringBuilder();
+        OllirCode computation = new OllirCode();
 
         computation.append(arrayName.getComputation());
         computation.append(index.getComputation());
@@ -192,10 +240,10 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
     private OllirExprResult visitBoolean(JmmNode node, Void unused) {
 
-        // boolean literal
+        // boolean literal, OLLIR writes them as 1 and 0
         var boolType = new Type(TypeUtils.getBooleanTypeName(), false);
         String ollirBoolType = OptUtils.toOllirType(boolType);
-        String code = node.get("value") + ollirBoolType;
+        String code = (node.get("value").equals("true") ? "1" : "0") + ollirBoolType;
         return new OllirExprResult(code);
     }
 
@@ -206,7 +254,8 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         var rhs = visit(node.getJmmChild(1));
 
         // check if lhs is a field
-        if (table.getFields().stream().anyMatch(param -> param.getName().equals(node.getJmmChild(0).get("name")))) {
+        var lhsNode = node.getJmmChild(0);
+        if (lhsNode.hasAttribute("name") && table.getField(lhsNode.get("name")).isPresent()) {
             Type type = TypeUtils.getExprType(node.getJmmChild(0), table);
             Type type2 = TypeUtils.getExprType(node.getJmmChild(1), table);
             String ollirType = OptUtils.toOllirType(type);
@@ -256,7 +305,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
         var child = visit(node.getJmmChild(0));
 
-        StringBuilder computation = new StringBuilder();
+        OllirCode computation = new OllirCode();
 
         // code to compute the child
         computation.append(child.getComputation());
@@ -281,7 +330,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         var lhs = visit(node.getJmmChild(0));
         var rhs = visit(node.getJmmChild(1));
 
-        StringBuilder computation = new StringBuilder();
+        OllirCode computation = new OllirCode();
 
         // code to compute the children
         computation.append(lhs.getComputation());
@@ -321,7 +370,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
     private OllirExprResult visitVarRef(JmmNode node, Void unused) {
 
         // check if the variable is a field
-        if (table.getFields().stream().anyMatch(param -> param.getName().equals(node.get("name")))) {
+        if (table.getField(node.get("name")).isPresent()) {
             Type type = TypeUtils.getExprType(node, table);
             String ollirType = OptUtils.toOllirType(type);
             String className = table.getClassName();
@@ -345,12 +394,12 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
         // method call expression
         StringBuilder code = new StringBuilder();
-        StringBuilder computation = new StringBuilder();
+        OllirCode computation = new OllirCode();
 
         String id = node.get("name");
 
         // Check if the method is in the methods list -> virtual method
-        if (this.table.getMethods().contains(id)) {
+        if (this.table.hasMethod(id)) {
             StringBuilder ivCode = new StringBuilder();
 
             code.append("invokevirtual(");
@@ -358,7 +407,9 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
             // Handle object type and class name
             var objOllirType = "";
             if (node.getNumChildren() == 1) {
-                objOllirType = OptUtils.toOllirType(TypeUtils.getExprType(node.getJmmChild(0), table));
+                // 'this' has the type of the class, but OLLIR writes it as this.Class
+                objOllirType = THIS_LITERAL_EXPR.check(node.getJmmChild(0)) ? ".this"
+                        : OptUtils.toOllirType(TypeUtils.getExprType(node.getJmmChild(0), table));
                 code.append(objOllirType.split("\\.")[1]).append(".").append(this.table.getClassName());
                 code.append(", \"").append(id).append("\"");
             }
@@ -370,13 +421,16 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
                     computation.append(tempVar1).append(" :=.array.i32 new(array, ").append(node.getNumChildren()-1).append(".i32).array.i32;\n");
 
                     for (int i = 0; i < node.getNumChildren(); i++) {
+                        var child = visit(node.getJmmChild(i));
+                        computation.append(child.getComputation());
+
                         if(i == 0) {
-                            code.append(visit(node.getJmmChild(i)).getCode()).append(", ");
+                            code.append(child.getCode()).append(", ");
                             code.append("\"").append(id).append("\"").append(", ");
                         }
                         else {
                             String tempVar = OptUtils.getTemp() + ".i32";
-                            computation.append(tempVar).append(" :=.i32 ").append(visit(node.getJmmChild(i)).getCode()).append(";\n");
+                            computation.append(tempVar).append(" :=.i32 ").append(child.getCode()).append(";\n");
                         }
                     }
                     code.append(tempVar1);
@@ -388,8 +442,9 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
                             code.append("\"").append(id).append("\"");
                             code.append(", ");
                         }
-                        computation.append(visit(node.getJmmChild(i)).getComputation());
-                        code.append(visit(node.getJmmChild(i)).getCode());
+                        var child = visit(node.getJmmChild(i));
+                        computation.append(child.getComputation());
+                        code.append(child.getCode());
                         code.append(", ");
                     }
                     // Remove trailing comma and space
@@ -402,7 +457,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
             code.append(")").append(OptUtils.toOllirType(this.table.getReturnType(id)));
 
             //if the parent is not a binary expression, we need to add a semicolon
-            if (!SHORT_C_AND_EXPR.check(node.getParent()) && !ASSIGNMENT_EXPR.check(node.getParent()) && !ADDITIVE_EXPR.check(node.getParent()) && !MULTIPLICATIVE_EXPR.check(node.getParent()) && !METHOD_CALL_EXPR.check(node.getParent())) {
+            if (!SHORT_C_AND_EXPR.check(node.getParent()) && !SHORT_C_OR_EXPR.check(node.getParent()) && !ASSIGNMENT_EXPR.check(node.getParent()) && !ADDITIVE_EXPR.check(node.getParent()) && !MULTIPLICATIVE_EXPR.check(node.getParent()) && !METHOD_CALL_EXPR.check(node.getParent())) {
                 code.append(END_STMT);
             }
 
@@ -413,8 +468,9 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
             StringBuilder attributes = new StringBuilder();
             for (int i = 1; i < node.getNumChildren(); i++) {
                 if(LENGTH_EXPR.check(node.getJmmChild(i))) {
-                    code.append(visit(node.getJmmChild(i)).getComputation());
-                    attributes.append(", ").append(visit(node.getJmmChild(i)).getCode());
+                    var child = visit(node.getJmmChild(i));
+                    code.append(child.getComputation());
+                    attributes.append(", ").append(child.getCode());
                 }
                 else if(METHOD_CALL_EXPR.check(node.getJmmChild(i))) {
                     String tempVar = OptUtils.getTemp() + ".i32";
@@ -3,14 +3,18 @@ package pt.up.fe.comp2024.optimization;
 public class OllirExprResult {
 
     public static final OllirExprResult EMPTY = new OllirExprResult("", "");
-    private final String computation;
+    private final OllirCode computation;
     private final String code;
 
-    public OllirExprResult(String code, String computation) {
+    public OllirExprResult(String code, OllirCode computation) {
         this.code = code;
         this.computation = computation;
     }
 
+    public OllirExprResult(String code, String computation) {
+        this(code, new OllirCode().append(computation));
+    }
+
     public OllirExprResult(String code) {
         this(code, "");
     }
@@ -19,7 +23,7 @@ public class OllirExprResult {
         this(code, computation.toString());
     }
 
-    public String getComputation() {
+    public OllirCode getComputation() {
         return computation;
     }
 
@@ -31,8 +31,19 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
     private final OllirExprGeneratorVisitor exprVisitor;
 
+    private final boolean rotateLoops;
+
     public OllirGeneratorVisitor(SymbolTable table) {
+        this(table, true);
+    }
+
+    /**
+     * @param table
+     * @param rotateLoops if true, while loops test their condition at the bottom, otherwise at the top
+     */
+    public OllirGeneratorVisitor(SymbolTable table, boolean rotateLoops) {
         this.table = table;
+        this.rotateLoops = rotateLoops;
         exprVisitor = new OllirExprGeneratorVisitor(table);
     }
 
@@ -62,17 +73,32 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
         //get the condition and the statement
         var condition = exprVisitor.visit(node.getJmmChild(0));
         var stmt = visit(node.getJmmChild(1));
+        int number = OptUtils.getNextTempNum();
+
+        if (!rotateLoops) {
+            //loop structure, with the condition at the top and a goto back to it at the end of the body
+            code.append("whileCond").append(number).append(":\n");
+            code.append(condition.getComputation());
+            code.append("if(").append(condition.getCode()).append(") goto whileBody").append(number);
+            code.append(END_STMT);
+            code.append("goto whileEnd").append(number).append(END_STMT);
+            code.append("whileBody").append(number).append(":\n");
+            code.append(stmt);
+            code.append("goto whileCond").append(number).append(END_STMT);
+            code.append("whileEnd").append(number).append(":\n");
+
+            return code.toString();
+        }
 
-        //loop structure
-        code.append("whileCond1:\n");
-        code.append(condition.getComputation());
-        code.append("if(").append(condition.getCode()).append(") goto whileEnd1");
-        code.append(END_STMT);
-        code.append("whileLoop1:\n");
+        //loop structure, with the condition at the bottom so that each iteration only takes the branch back
+        //expressions are lowered once, so the loop is entered by jumping to the condition instead of repeating it
+        code.append("goto whileCond").append(number).append(END_STMT);
+        code.append("whileBody").append(number).append(":\n");
         code.append(stmt);
-        code.append("goto whileCond1");
+        code.append("whileCond").append(number).append(":\n");
+        code.append(condition.getComputation());
+        code.append("if(").append(condition.getCode()).append(") goto whileBody").append(number);
         code.append(END_STMT);
-        code.append("whileEnd1:\n");
 
         return code.toString();
     }
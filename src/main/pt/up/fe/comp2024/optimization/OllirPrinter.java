@@ -0,0 +1,266 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.AccessModifier;
+import org.specs.comp.ollir.ArrayOperand;
+import org.specs.comp.ollir.ArrayType;
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.BinaryOpInstruction;
+import org.specs.comp.ollir.CallInstruction;
+import org.specs.comp.ollir.CallType;
+import org.specs.comp.ollir.ClassType;
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.CondBranchInstruction;
+import org.specs.comp.ollir.Element;
+import org.specs.comp.ollir.Field;
+import org.specs.comp.ollir.GetFieldInstruction;
+import org.specs.comp.ollir.GotoInstruction;
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.LiteralElement;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.Operand;
+import org.specs.comp.ollir.Operation;
+import org.specs.comp.ollir.PutFieldInstruction;
+import org.specs.comp.ollir.ReturnInstruction;
+import org.specs.comp.ollir.SingleOpInstruction;
+import org.specs.comp.ollir.Type;
+import org.specs.comp.ollir.UnaryOpInstruction;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
+
+import java.util.stream.Collectors;
+
+/**
+ * Prints an OLLIR {@link ClassUnit} as OLLIR code, which can be parsed back into an equivalent class.
+ * <p>
+ * Used to inspect the classes built by {@link OllirBuilder}, which never go through OLLIR text.
+ */
+public class OllirPrinter {
+
+    private static final String END_STMT = ";\n";
+    private static final String NL = "\n";
+
+    private final StringBuilder code = new StringBuilder();
+
+    /**
+     * @param ollirResult
+     * @return the OLLIR code of the result, printed from its class if the result was built without OLLIR text
+     */
+    public static String getOllirCode(OllirResult ollirResult) {
+        var ollirCode = ollirResult.getOllirCode();
+
+        if (ollirCode != null && !ollirCode.isEmpty()) {
+            return ollirCode;
+        }
+
+        return print(ollirResult.getOllirClass());
+    }
+
+    public static String print(ClassUnit classUnit) {
+        var printer = new OllirPrinter();
+        printer.printClass(classUnit);
+
+        return printer.code.toString();
+    }
+
+    private void printClass(ClassUnit classUnit) {
+        for (var imported : classUnit.getImports()) {
+            code.append("import ").append(imported).append(END_STMT);
+        }
+        if (!classUnit.getImports().isEmpty()) {
+            code.append(NL);
+        }
+
+        code.append(classUnit.getClassName());
+        if (classUnit.getSuperClass() != null) {
+            code.append(" extends ").append(classUnit.getSuperClass());
+        }
+        code.append(" {").append(NL);
+
+        for (var field : classUnit.getFields()) {
+            printField(field);
+        }
+
+        for (var method : classUnit.getMethods()) {
+            code.append(NL);
+            printMethod(method);
+        }
+
+        code.append("}").append(NL);
+    }
+
+    private void printField(Field field) {
+        code.append(".field ").append(accessModifier(field.getFieldAccessModifier()));
+        if (field.isStaticField()) {
+            code.append("static ");
+        }
+        if (field.isFinalField()) {
+            code.append("final ");
+        }
+
+        code.append(field.getFieldName()).append(type(field.getFieldType()));
+        if (field.isInitialized()) {
+            code.append(" := ").append(field.getInitialValue());
+        }
+        code.append(END_STMT);
+    }
+
+    private void printMethod(Method method) {
+        code.append(method.isConstructMethod() ? ".construct " : ".method ");
+        code.append(accessModifier(method.getMethodAccessModifier()));
+        if (method.isStaticMethod()) {
+            code.append("static ");
+        }
+        if (method.isFinalMethod()) {
+            code.append("final ");
+        }
+        if (method.isVarargs()) {
+            code.append("varargs ");
+        }
+
+        var params = method.getParams().stream()
+                .map(this::element)
+                .collect(Collectors.joining(", "));
+        code.append(method.getMethodName()).append("(").append(params).append(")");
+        code.append(type(method.getReturnType())).append(" {").append(NL);
+
+        for (var instruction : method.getInstructions()) {
+            for (var label : method.getLabels(instruction)) {
+                code.append(label).append(":").append(NL);
+            }
+
+            code.append(instruction(instruction)).append(END_STMT);
+        }
+
+        code.append("}").append(NL);
+    }
+
+    private String instruction(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign) {
+            return element(assign.getDest()) + " :=" + type(assign.getTypeOfAssign()) + " " + instruction(assign.getRhs());
+        }
+
+        if (instruction instanceof CallInstruction call) {
+            return call(call);
+        }
+
+        if (instruction instanceof GotoInstruction gotoInstruction) {
+            return "goto " + gotoInstruction.getLabel();
+        }
+
+        if (instruction instanceof CondBranchInstruction branch) {
+            return "if (" + instruction(branch.getCondition()) + ") goto " + branch.getLabel();
+        }
+
+        if (instruction instanceof ReturnInstruction ret) {
+            var operand = ret.hasReturnValue() ? " " + element(ret.getOperand()) : "";
+            return "ret" + type(ret.getReturnType()) + operand;
+        }
+
+        if (instruction instanceof PutFieldInstruction putField) {
+            return "putfield(" + element(putField.getObject()) + ", " + element(putField.getField()) + ", "
+                    + element(putField.getValue()) + ").V";
+        }
+
+        if (instruction instanceof GetFieldInstruction getField) {
+            return "getfield(" + element(getField.getObject()) + ", " + element(getField.getField()) + ")"
+                    + type(getField.getField().getType());
+        }
+
+        if (instruction instanceof SingleOpInstruction singleOp) {
+            return element(singleOp.getSingleOperand());
+        }
+
+        if (instruction instanceof BinaryOpInstruction binaryOp) {
+            return element(binaryOp.getLeftOperand()) + " " + operation(binaryOp.getOperation()) + " "
+                    + element(binaryOp.getRightOperand());
+        }
+
+        if (instruction instanceof UnaryOpInstruction unaryOp) {
+            return operation(unaryOp.getOperation()) + " " + element(unaryOp.getOperand());
+        }
+
+        throw new NotImplementedException(instruction.getClass());
+    }
+
+    private String call(CallInstruction call) {
+        var args = new StringBuilder();
+
+        // The first argument of 'new' and 'invokestatic' is a class name, or 'array'
+        var caller = call.getCaller();
+        if (call.getInvocationType() == CallType.NEW || call.getInvocationType() == CallType.invokestatic) {
+            args.append(((Operand) caller).getName());
+        } else {
+            args.append(element(caller));
+        }
+
+        call.getMethodNameTry().ifPresent(name -> args.append(", ").append(((LiteralElement) name).getLiteral()));
+
+        for (var argument : call.getArguments()) {
+            args.append(", ").append(element(argument));
+        }
+
+        var invocation = call.getInvocationType() == CallType.NEW ? "new" : call.getInvocationType().name();
+
+        return invocation + "(" + args + ")" + type(call.getReturnType());
+    }
+
+    private String operation(Operation operation) {
+        var symbol = switch (operation.getOpType()) {
+            case ADD -> "+";
+            case SUB -> "-";
+            case MUL -> "*";
+            case DIV -> "/";
+            case SHR -> ">>";
+            case SHL -> "<<";
+            case SHRR -> ">>>";
+            case XOR -> "^";
+            case AND -> "&";
+            case OR -> "|";
+            case LTH -> "<";
+            case GTH -> ">";
+            case EQ -> "==";
+            case NEQ -> "!=";
+            case LTE -> "<=";
+            case GTE -> ">=";
+            case ANDB -> "&&";
+            case ORB -> "||";
+            case NOTB, NOT -> "!";
+        };
+
+        return symbol + type(operation.getTypeInfo());
+    }
+
+    private String element(Element element) {
+        if (element instanceof LiteralElement literal) {
+            return literal.getLiteral() + type(literal.getType());
+        }
+
+        if (element instanceof ArrayOperand arrayOperand) {
+            var indexes = arrayOperand.getIndexOperands().stream()
+                    .map(index -> "[" + element(index) + "]")
+                    .collect(Collectors.joining());
+            return arrayOperand.getName() + indexes + type(arrayOperand.getType());
+        }
+
+        var operand = (Operand) element;
+        return operand.getName() + type(operand.getType());
+    }
+
+    private static String type(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case INT32 -> ".i32";
+            case BOOLEAN -> ".bool";
+            case STRING -> ".String";
+            case VOID -> ".V";
+            case OBJECTREF, CLASS, THIS -> "." + ((ClassType) type).getName();
+            case ARRAYREF -> {
+                var arrayType = (ArrayType) type;
+                yield ".array".repeat(arrayType.getNumDimensions()) + type(arrayType.getElementType());
+            }
+        };
+    }
+
+    private static String accessModifier(AccessModifier accessModifier) {
+        return accessModifier == AccessModifier.DEFAULT ? "" : accessModifier.name().toLowerCase() + " ";
+    }
+}
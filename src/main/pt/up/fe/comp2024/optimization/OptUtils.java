@@ -7,7 +7,16 @@ import pt.up.fe.specs.util.exceptions.NotImplementedException;
 import static pt.up.fe.comp2024.ast.Kind.*;
 
 public class OptUtils {
-    private static int tempNumber = -1;
+    // Each worker thread numbers its own temporaries, so batch compilations do not share a counter
+    private static final ThreadLocal<int[]> tempNumber = ThreadLocal.withInitial(() -> new int[]{-1});
+
+    /**
+     * Restarts the numbering of temporaries, so that each compilation unit gets the same names every time it is
+     * compiled.
+     */
+    public static void resetTemps() {
+        tempNumber.get()[0] = -1;
+    }
 
     public static String getTemp() {
 
@@ -21,8 +30,7 @@ public class OptUtils {
 
     public static int getNextTempNum() {
 
-        tempNumber += 1;
-        return tempNumber;
+        return ++tempNumber.get()[0];
     }
 
     public static String toOllirType(JmmNode typeNode) {
@@ -0,0 +1,52 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.Method;
+
+import java.util.Optional;
+
+/**
+ * Assigns the variables of an OLLIR method to JVM local variable slots. 'this' and the parameters keep the slots where
+ * the JVM places them.
+ */
+public interface RegisterAllocator {
+
+    /**
+     * Methods with more instructions than this use linear scan when the allocator is 'auto', since the interference
+     * graph of the graph colouring allocator grows with the square of the number of variables.
+     */
+    int LINEAR_SCAN_THRESHOLD = 1000;
+
+    /**
+     * @param method
+     * @param allocator 'coloring', 'linear', or 'auto' to choose by the size of the method
+     * @return the allocator for the method
+     */
+    static RegisterAllocator of(Method method, String allocator) {
+        boolean linear = switch (allocator) {
+            case "linear" -> true;
+            case "coloring" -> false;
+            default -> method.getInstructions().size() > LINEAR_SCAN_THRESHOLD;
+        };
+
+        return linear ? new LinearScanAllocator(method) : new GraphColoringAllocator(method);
+    }
+
+    /**
+     * @return the smallest number of slots for which {@link #allocate(int)} finds an allocation
+     */
+    int getMinimumRegisters();
+
+    /**
+     * @param registers the number of slots available
+     * @return the slot of each variable, in the order of {@link Liveness#getVariables()}, or empty if the variables do
+     * not fit in the given number of slots
+     */
+    Optional<int[]> allocate(int registers);
+
+    /**
+     * Moves each variable of the method to its slot.
+     *
+     * @param slots the slot of each variable, as returned by {@link #allocate(int)}
+     */
+    void apply(int[] slots);
+}
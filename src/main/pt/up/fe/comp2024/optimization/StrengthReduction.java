@@ -0,0 +1,504 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the operations of an OLLIR method by cheaper ones that compute the same value.
+ * <p>
+ * Operations on literals are folded with the overflow of Java ints, and identities such as 'x * 1', 'x + 0' and
+ * 'x * 0' become copies. Multiplications by a power of two become left shifts, which overflow in the same way. Signed
+ * divisions round towards zero and right shifts round down, so a negative dividend is first increased by the divisor
+ * minus one. The negation of a variable that the same block assigned with a negation or a comparison, in an assignment
+ * or a branch, becomes the original value or the opposite comparison.
+ * <p>
+ * In loops, the product of an induction variable, which the loop only changes by adding a constant, and a constant is
+ * kept in a new variable. It is computed in the preheader and increased by the constant times the step right after
+ * each change of the induction variable, so the multiplication becomes an addition.
+ */
+public class StrengthReduction {
+
+    private static final Type INT = new Type(ElementType.INT32);
+
+    private final Method method;
+
+    private int rewritten;
+
+    public StrengthReduction(Method method) {
+        this.method = method;
+    }
+
+    /**
+     * @return the number of operations replaced by {@link #run()}
+     */
+    public int getRewritten() {
+        return rewritten;
+    }
+
+    /**
+     * Reduces the multiplications of induction variables, and then simplifies every operation.
+     *
+     * @return true if the method changed
+     */
+    public boolean run() {
+        int before = rewritten;
+
+        // Each reduction moves a multiplication out of a loop, so this ends
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            var graph = new ControlFlowGraph(method);
+            for (var loop : NaturalLoop.find(graph)) {
+                if (reduceInductionVariable(loop, graph)) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+
+        simplify();
+
+        return rewritten > before;
+    }
+
+    /**
+     * Reduces the multiplications of the first induction variable of the loop that has any.
+     *
+     * @return true if the method changed
+     */
+    private boolean reduceInductionVariable(NaturalLoop loop, ControlFlowGraph graph) {
+        if (loop.getEntries(graph).isEmpty()) {
+            return false;
+        }
+
+        var instructions = method.getInstructions();
+        var indexes = loop.getInstructions(graph);
+
+        var assignments = new HashMap<String, List<Integer>>();
+        for (int i : indexes) {
+            if (instructions.get(i) instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)) {
+                assignments.computeIfAbsent(((Operand) assign.getDest()).getName(), name -> new ArrayList<>()).add(i);
+            }
+        }
+
+        for (int i : indexes) {
+            var product = getProduct(instructions.get(i));
+            if (product == null) {
+                continue;
+            }
+
+            var variable = (Operand) product.getKey();
+            int factor = product.getValue();
+
+            var definitions = assignments.get(variable.getName());
+            if (definitions == null || definitions.size() != 1) {
+                continue;
+            }
+
+            var step = getStep((AssignInstruction) instructions.get(definitions.get(0)), variable.getName());
+            if (step == null) {
+                continue;
+            }
+
+            var reduced = newVariable("iv", INT);
+
+            // Every product of the variable and the factor in the loop reads the new variable instead
+            for (int j : indexes) {
+                var other = getProduct(instructions.get(j));
+                if (other == null || !((Operand) other.getKey()).getName().equals(variable.getName())
+                        || other.getValue() != factor) {
+                    continue;
+                }
+
+                var assign = (AssignInstruction) instructions.get(j);
+                replace(j, new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                        new SingleOpInstruction(reduced)));
+                rewritten++;
+            }
+
+            var update = new AssignInstruction(reduced, INT, new BinaryOpInstruction(reduced,
+                    new Operation(OperationType.ADD, INT), newInt(factor * step)));
+            var definition = instructions.get(definitions.get(0));
+
+            loop.insertPreheader(method, graph, List.of(new AssignInstruction(reduced, INT,
+                    new BinaryOpInstruction(variable, new Operation(OperationType.MUL, INT), newInt(factor)))));
+            instructions.add(instructions.indexOf(definition) + 1, update);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the variable and the constant of an assignment such as 'x := i * 3', or null
+     */
+    private static Map.Entry<Element, Integer> getProduct(Instruction instruction) {
+        if (!(instruction instanceof AssignInstruction assign) || assign.getDest() instanceof ArrayOperand
+                || !(assign.getRhs() instanceof BinaryOpInstruction binaryOp)
+                || binaryOp.getOperation().getOpType() != OperationType.MUL) {
+            return null;
+        }
+
+        var left = binaryOp.getLeftOperand();
+        var right = binaryOp.getRightOperand();
+
+        if (isVariable(left) && DeadCodeElimination.getValue(right) != null) {
+            return Map.entry(left, DeadCodeElimination.getValue(right));
+        }
+        if (isVariable(right) && DeadCodeElimination.getValue(left) != null) {
+            return Map.entry(right, DeadCodeElimination.getValue(left));
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the constant added to the variable by an assignment such as 'i := i + 1', or null
+     */
+    private static Integer getStep(AssignInstruction assign, String variable) {
+        if (!(assign.getRhs() instanceof BinaryOpInstruction binaryOp)) {
+            return null;
+        }
+
+        var opType = binaryOp.getOperation().getOpType();
+        var left = binaryOp.getLeftOperand();
+        var right = binaryOp.getRightOperand();
+
+        if (opType == OperationType.ADD && isVariable(left, variable)) {
+            return DeadCodeElimination.getValue(right);
+        }
+        if (opType == OperationType.ADD && isVariable(right, variable)) {
+            return DeadCodeElimination.getValue(left);
+        }
+        if (opType == OperationType.SUB && isVariable(left, variable) && DeadCodeElimination.getValue(right) != null) {
+            return -DeadCodeElimination.getValue(right);
+        }
+
+        return null;
+    }
+
+    /**
+     * Rewrites each operation, with the negations and comparisons assigned earlier in the same block.
+     */
+    private void simplify() {
+        var instructions = method.getInstructions();
+        var graph = new ControlFlowGraph(method);
+
+        var known = new HashMap<String, Instruction>();
+        var rewrittenInstructions = new ArrayList<Instruction>();
+
+        for (int i = 0; i < instructions.size(); i++) {
+            if (i == 0 || graph.getBlock(i) != graph.getBlock(i - 1)) {
+                known.clear();
+            }
+
+            var instruction = instructions.get(i);
+            var replacement = rewrite(instruction, known);
+
+            if (replacement != null) {
+                method.getLabels().replaceAll((label, target) -> target == instruction ? replacement.get(0) : target);
+                rewrittenInstructions.addAll(replacement);
+                rewritten++;
+            } else {
+                rewrittenInstructions.add(instruction);
+            }
+
+            var last = rewrittenInstructions.get(rewrittenInstructions.size() - 1);
+            if (last instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)) {
+                var dest = ((Operand) assign.getDest()).getName();
+                assigned(dest, known);
+
+                // After 't := !t', the negation of 't' is not its value before
+                var rhs = assign.getRhs();
+                if ((isNegation(rhs) || rhs instanceof BinaryOpInstruction binaryOp && isComparison(binaryOp))
+                        && getOperands(rhs).stream().noneMatch(operand -> isVariable(operand, dest))) {
+                    known.put(dest, rhs);
+                }
+            }
+        }
+
+        instructions.clear();
+        instructions.addAll(rewrittenInstructions);
+    }
+
+    /**
+     * Forgets the values that read or are held by the variable.
+     */
+    private static void assigned(String variable, Map<String, Instruction> known) {
+        known.remove(variable);
+        known.values().removeIf(rhs -> getOperands(rhs).stream().anyMatch(operand -> isVariable(operand, variable)));
+    }
+
+    /**
+     * @return the instructions that replace the given one, the first one taking its labels, or null to keep it
+     */
+    private List<Instruction> rewrite(Instruction instruction, Map<String, Instruction> known) {
+        if (instruction instanceof OpCondInstruction branch && isNegation(branch.getCondition())) {
+            var condition = negate((UnaryOpInstruction) branch.getCondition(), known);
+            if (condition == null) {
+                return null;
+            }
+
+            CondBranchInstruction rewrittenBranch = condition instanceof OpInstruction operation
+                    ? new OpCondInstruction(operation)
+                    : new SingleOpCondInstruction((SingleOpInstruction) condition);
+            rewrittenBranch.setLabel(branch.getLabel());
+
+            return List.of(rewrittenBranch);
+        }
+
+        if (!(instruction instanceof AssignInstruction assign) || assign.getDest() instanceof ArrayOperand) {
+            return null;
+        }
+
+        var dest = assign.getDest();
+        var type = assign.getTypeOfAssign();
+
+        if (assign.getRhs() instanceof UnaryOpInstruction unaryOp && isNegation(unaryOp)) {
+            var rhs = negate(unaryOp, known);
+            return rhs == null ? null : List.of(new AssignInstruction(dest, type, rhs));
+        }
+
+        if (!(assign.getRhs() instanceof BinaryOpInstruction binaryOp)) {
+            return null;
+        }
+
+        var left = binaryOp.getLeftOperand();
+        var right = binaryOp.getRightOperand();
+        var leftValue = DeadCodeElimination.getValue(left);
+        var rightValue = DeadCodeElimination.getValue(right);
+        var opType = binaryOp.getOperation().getOpType();
+        var resultType = binaryOp.getOperation().getTypeInfo();
+
+        if (leftValue != null && rightValue != null) {
+            var value = fold(opType, leftValue, rightValue);
+            return value == null ? null : copy(assign, new LiteralElement(String.valueOf(value), resultType));
+        }
+
+        if (isVariable(left) && isVariable(right) && ((Operand) left).getName().equals(((Operand) right).getName())) {
+            // The same variable on both sides
+            return switch (opType) {
+                case SUB, XOR, LTH, GTH, NEQ -> copy(assign, new LiteralElement("0", resultType));
+                case LTE, GTE, EQ -> copy(assign, new LiteralElement("1", resultType));
+                case AND, OR, ANDB, ORB -> copy(assign, left);
+                default -> null;
+            };
+        }
+
+        return switch (opType) {
+            case ADD -> rightValue != null && rightValue == 0 ? copy(assign, left)
+                    : leftValue != null && leftValue == 0 ? copy(assign, right)
+                    : null;
+            case SUB -> rightValue != null && rightValue == 0 ? copy(assign, left) : null;
+            case MUL -> rightValue != null ? multiply(assign, left, rightValue)
+                    : leftValue != null ? multiply(assign, right, leftValue)
+                    : null;
+            case DIV -> rightValue != null ? divide(assign, left, rightValue) : null;
+            case ANDB -> leftValue != null ? (leftValue != 0 ? copy(assign, right) : copy(assign, left))
+                    : rightValue != null ? (rightValue != 0 ? copy(assign, left) : copy(assign, right))
+                    : null;
+            case ORB -> leftValue != null ? (leftValue != 0 ? copy(assign, left) : copy(assign, right))
+                    : rightValue != null ? (rightValue != 0 ? copy(assign, right) : copy(assign, left))
+                    : null;
+            default -> null;
+        };
+    }
+
+    private List<Instruction> multiply(AssignInstruction assign, Element operand, int factor) {
+        if (factor == 0) {
+            return copy(assign, newInt(0));
+        }
+        if (factor == 1) {
+            return copy(assign, operand);
+        }
+        if (factor == -1) {
+            return List.of(new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                    new BinaryOpInstruction(newInt(0), new Operation(OperationType.SUB, INT), operand)));
+        }
+
+        // Shifting left by k multiplies by 2^k, also when it overflows
+        if (factor > 0 && Integer.bitCount(factor) == 1) {
+            return List.of(new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                    new BinaryOpInstruction(operand, new Operation(OperationType.SHL, INT),
+                            newInt(Integer.numberOfTrailingZeros(factor)))));
+        }
+
+        return null;
+    }
+
+    private List<Instruction> divide(AssignInstruction assign, Element dividend, int divisor) {
+        if (divisor == 1) {
+            return copy(assign, dividend);
+        }
+
+        // Integer.MIN_VALUE / -1 overflows to Integer.MIN_VALUE, and so does 0 - Integer.MIN_VALUE
+        if (divisor == -1) {
+            return List.of(new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                    new BinaryOpInstruction(newInt(0), new Operation(OperationType.SUB, INT), dividend)));
+        }
+
+        if (divisor <= 0 || Integer.bitCount(divisor) != 1) {
+            return null;
+        }
+
+        // The shift rounds down, so negative dividends are first increased by 2^k - 1 to round towards zero: the sign
+        // shifted right is 0 or -1, and shifted right again without the sign it is 0 or 2^k - 1
+        int shift = Integer.numberOfTrailingZeros(divisor);
+        var instructions = new ArrayList<Instruction>();
+
+        var adjustment = newVariable("tmp", INT);
+        if (shift == 1) {
+            instructions.add(new AssignInstruction(adjustment, INT, new BinaryOpInstruction(dividend,
+                    new Operation(OperationType.SHRR, INT), newInt(31))));
+        } else {
+            var sign = newVariable("tmp", INT);
+            instructions.add(new AssignInstruction(sign, INT, new BinaryOpInstruction(dividend,
+                    new Operation(OperationType.SHR, INT), newInt(31))));
+            instructions.add(new AssignInstruction(adjustment, INT, new BinaryOpInstruction(sign,
+                    new Operation(OperationType.SHRR, INT), newInt(32 - shift))));
+        }
+
+        var adjusted = newVariable("tmp", INT);
+        instructions.add(new AssignInstruction(adjusted, INT, new BinaryOpInstruction(dividend,
+                new Operation(OperationType.ADD, INT), adjustment)));
+        instructions.add(new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                new BinaryOpInstruction(adjusted, new Operation(OperationType.SHR, INT), newInt(shift))));
+
+        return instructions;
+    }
+
+    /**
+     * @return the value of the negation, without it, or null if it cannot be simplified
+     */
+    private static Instruction negate(UnaryOpInstruction negation, Map<String, Instruction> known) {
+        var operand = negation.getOperand();
+
+        var value = DeadCodeElimination.getValue(operand);
+        if (value != null) {
+            return new SingleOpInstruction(new LiteralElement(value == 0 ? "1" : "0", operand.getType()));
+        }
+
+        if (!isVariable(operand)) {
+            return null;
+        }
+
+        var negated = known.get(((Operand) operand).getName());
+        if (negated instanceof UnaryOpInstruction unaryOp) {
+            return new SingleOpInstruction(unaryOp.getOperand());
+        }
+        if (negated instanceof BinaryOpInstruction comparison) {
+            var opposite = switch (comparison.getOperation().getOpType()) {
+                case LTH -> OperationType.GTE;
+                case GTE -> OperationType.LTH;
+                case GTH -> OperationType.LTE;
+                case LTE -> OperationType.GTH;
+                case EQ -> OperationType.NEQ;
+                case NEQ -> OperationType.EQ;
+                default -> throw new IllegalStateException("Not a comparison: " + comparison);
+            };
+
+            return new BinaryOpInstruction(comparison.getLeftOperand(),
+                    new Operation(opposite, comparison.getOperation().getTypeInfo()), comparison.getRightOperand());
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the value of an operation on two literals, with the overflow of Java ints, or null if it cannot be folded
+     */
+    private static Integer fold(OperationType opType, int left, int right) {
+        return switch (opType) {
+            case ADD -> left + right;
+            case SUB -> left - right;
+            case MUL -> left * right;
+            // Division by zero is left to throw when the program runs
+            case DIV -> right == 0 ? null : left / right;
+            case SHL -> left << right;
+            case SHR -> left >> right;
+            case SHRR -> left >>> right;
+            case AND -> left & right;
+            case OR -> left | right;
+            case XOR -> left ^ right;
+            case LTH -> left < right ? 1 : 0;
+            case GTH -> left > right ? 1 : 0;
+            case LTE -> left <= right ? 1 : 0;
+            case GTE -> left >= right ? 1 : 0;
+            case EQ -> left == right ? 1 : 0;
+            case NEQ -> left != right ? 1 : 0;
+            case ANDB -> left != 0 && right != 0 ? 1 : 0;
+            case ORB -> left != 0 || right != 0 ? 1 : 0;
+            default -> null;
+        };
+    }
+
+    private static List<Instruction> copy(AssignInstruction assign, Element element) {
+        return List.of(new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                new SingleOpInstruction(element)));
+    }
+
+    private void replace(int index, Instruction replacement) {
+        var instruction = method.getInstructions().set(index, replacement);
+        method.getLabels().replaceAll((label, target) -> target == instruction ? replacement : target);
+    }
+
+    /**
+     * Adds a local variable to the method, in the slot after all the others.
+     */
+    private Operand newVariable(String prefix, Type type) {
+        var varTable = method.getVarTable();
+
+        var name = prefix;
+        for (int number = 0; varTable.containsKey(name); number++) {
+            name = prefix + number;
+        }
+
+        int slot = varTable.values().stream().mapToInt(Descriptor::getVirtualReg).max().orElse(-1) + 1;
+        varTable.put(name, new Descriptor(VarScope.LOCAL, slot, type));
+
+        return new Operand(name, type);
+    }
+
+    private static LiteralElement newInt(int value) {
+        return new LiteralElement(String.valueOf(value), INT);
+    }
+
+    private static boolean isNegation(Instruction instruction) {
+        return instruction instanceof UnaryOpInstruction unaryOp
+                && (unaryOp.getOperation().getOpType() == OperationType.NOTB
+                || unaryOp.getOperation().getOpType() == OperationType.NOT);
+    }
+
+    private static boolean isComparison(BinaryOpInstruction binaryOp) {
+        return switch (binaryOp.getOperation().getOpType()) {
+            case LTH, GTH, LTE, GTE, EQ, NEQ -> true;
+            default -> false;
+        };
+    }
+
+    private static List<Element> getOperands(Instruction rhs) {
+        if (rhs instanceof UnaryOpInstruction unaryOp) {
+            return List.of(unaryOp.getOperand());
+        }
+        if (rhs instanceof BinaryOpInstruction binaryOp) {
+            return List.of(binaryOp.getLeftOperand(), binaryOp.getRightOperand());
+        }
+
+        return List.of();
+    }
+
+    private static boolean isVariable(Element element) {
+        return element instanceof Operand operand && !(operand instanceof ArrayOperand)
+                && operand.getType().getTypeOfElement() != ElementType.THIS;
+    }
+
+    private static boolean isVariable(Element element, String name) {
+        return isVariable(element) && ((Operand) element).getName().equals(name);
+    }
+}
@@ -3,6 +3,8 @@ package pt.up.fe.comp2024.optimization_jasmin;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.ast2jasmin.AstToJasmin;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.optimization.ConstantPropagation;
 
 import java.util.Collections;
 
@@ -18,7 +20,13 @@ public class AstToJasminImpl implements AstToJasmin {
 
     @Override
     public JmmSemanticsResult optimize(JmmSemanticsResult semanticsResult) {
-        // TODO: To implement for CP3
-        return AstToJasmin.super.optimize(semanticsResult);
+        var config = semanticsResult.getConfig();
+        if (config == null || !CompilerConfig.getOptimize(config)) {
+            return semanticsResult;
+        }
+
+        new ConstantPropagation(semanticsResult.getSymbolTable()).optimize(semanticsResult.getRootNode());
+
+        return semanticsResult;
     }
 }
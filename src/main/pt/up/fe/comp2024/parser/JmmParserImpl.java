@@ -7,9 +7,12 @@ import pt.up.fe.comp.jmm.parser.JmmParser;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.specs.util.SpecsSystem;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Copyright 2022 SPeCS.
@@ -26,6 +29,9 @@ import java.util.Map;
 
 public class JmmParserImpl implements JmmParser {
 
+    // Grammar rules whose method is already in the (unsynchronized) method cache of SpecsSystem
+    private static final Set<String> RESOLVED_RULES = ConcurrentHashMap.newKeySet();
+
     @Override
     public String getDefaultRule() {
         return "program";
@@ -45,10 +51,12 @@ public class JmmParserImpl implements JmmParser {
             var parser = new pt.up.fe.comp2024.JavammParser(tokens);
 
 
+            resolveRule(startingRule);
+
             // Convert ANTLR CST to JmmNode AST
             var r = AntlrParser.parse(lex, parser, startingRule, config);
 
-            System.out.println(r.getRootNode().toTree());
+            //System.out.println(r.getRootNode().toTree());
 
             return r;
         } catch (Exception e) {
@@ -56,4 +64,25 @@ public class JmmParserImpl implements JmmParser {
             return JmmParserResult.newError(Report.newError(Stage.SYNTATIC, -1, -1, "Exception during parsing", e), config);
         }
     }
+
+    /**
+     * AntlrParser calls the rule through SpecsSystem.invoke, which caches methods in a plain HashMap. Filling that cache
+     * under a lock, once per rule, keeps parsers running on different threads from modifying it concurrently.
+     *
+     * @param ruleName
+     */
+    private static void resolveRule(String ruleName) {
+        if (RESOLVED_RULES.contains(ruleName)) {
+            return;
+        }
+
+        synchronized (RESOLVED_RULES) {
+            if (RESOLVED_RULES.contains(ruleName)) {
+                return;
+            }
+
+            SpecsSystem.getMethod(pt.up.fe.comp2024.JavammParser.class, ruleName);
+            RESOLVED_RULES.add(ruleName);
+        }
+    }
 }
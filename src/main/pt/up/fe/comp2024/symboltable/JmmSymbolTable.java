@@ -4,23 +4,54 @@ import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp2024.ast.TypeUtils;
-import pt.up.fe.specs.util.exceptions.NotImplementedException;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Symbol table of a Java-- class.
+ * <p>
+ * Besides the lists of the {@link SymbolTable} interface, the table keeps hash indexes from names to symbols, for
+ * the fields, for the parameters and locals of each method, and for the locals of the class as a whole, so that
+ * looking up a name does not depend on the number of declared symbols. Every collection is immutable once the table
+ * is built, which makes the table safe to share between threads.
+ */
 public class JmmSymbolTable implements SymbolTable {
 
+    /**
+     * Parameters and locals of a method, with their indexes.
+     */
+    private record MethodScope(List<Symbol> params, List<Symbol> locals,
+                               Map<String, Symbol> paramsByName, Map<String, Symbol> localsByName,
+                               Map<String, Optional<Symbol>> resolved) {
+
+        static MethodScope of(List<Symbol> params, List<Symbol> locals) {
+            return new MethodScope(params, locals, indexByName(params), indexByName(locals), new ConcurrentHashMap<>());
+        }
+    }
+
     private final String className;
     private final List<String> methods;
     private final List<Symbol> fields;
     private final Map<String, Type> returnTypes;
-    private final Map<String, List<Symbol>> params;
-    private final Map<String, List<Symbol>> locals;
     private final List<String> imports;
     private final String superclassName;
 
+    private final Map<String, MethodScope> scopes;
+    private final Map<String, Symbol> fieldsByName;
+    private final Set<String> methodNames;
+    private final Set<String> importNames;
+
+    // Locals of every method, by name and by type, for the checks that look at the whole class
+    private final Map<String, List<Symbol>> classLocalsByName;
+    private final Set<String> classLocalTypes;
+
     public JmmSymbolTable(String className,
                           List<String> methods,
                           List<Symbol> fields,
@@ -29,13 +60,49 @@ public class JmmSymbolTable implements SymbolTable {
                           Map<String, List<Symbol>> locals,
                           List<String> imports, String superclassName) {
         this.className = className;
-        this.methods = methods;
-        this.fields = fields;
-        this.returnTypes = returnTypes;
-        this.params = params;
-        this.locals = locals;
-        this.imports = imports;
+        this.methods = List.copyOf(methods);
+        this.fields = List.copyOf(fields);
+        this.returnTypes = Map.copyOf(returnTypes);
+        this.imports = List.copyOf(imports);
         this.superclassName = superclassName;
+
+        var scopes = new HashMap<String, MethodScope>();
+        for (var method : params.keySet()) {
+            scopes.put(method, MethodScope.of(List.copyOf(params.get(method)),
+                    List.copyOf(locals.getOrDefault(method, List.of()))));
+        }
+        this.scopes = Map.copyOf(scopes);
+
+        this.fieldsByName = indexByName(this.fields);
+        this.methodNames = Set.copyOf(this.methods);
+        this.importNames = Set.copyOf(this.imports);
+
+        var classLocalsByName = new HashMap<String, List<Symbol>>();
+        var classLocalTypes = new HashSet<String>();
+        for (var method : this.methods) {
+            for (var local : getLocalVariables(method)) {
+                classLocalsByName.computeIfAbsent(local.getName(), name -> new ArrayList<>()).add(local);
+                classLocalTypes.add(local.getType().getName());
+            }
+        }
+        classLocalsByName.replaceAll((name, symbols) -> List.copyOf(symbols));
+        this.classLocalsByName = Map.copyOf(classLocalsByName);
+        this.classLocalTypes = Set.copyOf(classLocalTypes);
+    }
+
+    /**
+     * Gives access to the indexed lookups of a table given through the {@link SymbolTable} interface.
+     *
+     * @param table a table built by {@link JmmSymbolTableBuilder}
+     * @return the same table
+     */
+    public static JmmSymbolTable of(SymbolTable table) {
+        if (table instanceof JmmSymbolTable jmmTable) {
+            return jmmTable;
+        }
+
+        throw new IllegalArgumentException("Expected a " + JmmSymbolTable.class.getSimpleName() + ", got "
+                + table.getClass().getName());
     }
 
     @Override
@@ -76,12 +143,114 @@ public class JmmSymbolTable implements SymbolTable {
 
     @Override
     public List<Symbol> getParameters(String methodSignature) {
-        return Collections.unmodifiableList(params.get(methodSignature));
+        return getScope(methodSignature).params();
     }
 
     @Override
     public List<Symbol> getLocalVariables(String methodSignature) {
-        return Collections.unmodifiableList(locals.get(methodSignature));
+        return getScope(methodSignature).locals();
+    }
+
+    /**
+     * @param methodName
+     * @return true if the class declares a method with the given name
+     */
+    public boolean hasMethod(String methodName) {
+        return methodNames.contains(methodName);
+    }
+
+    /**
+     * @param name
+     * @return true if there is an import whose name is exactly the given name
+     */
+    public boolean hasImport(String name) {
+        return importNames.contains(name);
+    }
+
+    /**
+     * @param name
+     * @return the field with the given name, if there is one
+     */
+    public Optional<Symbol> getField(String name) {
+        return Optional.ofNullable(fieldsByName.get(name));
     }
 
+    /**
+     * @param methodSignature
+     * @param name
+     * @return the parameter of the method with the given name, if there is one
+     */
+    public Optional<Symbol> getParameter(String methodSignature, String name) {
+        return Optional.ofNullable(getScope(methodSignature).paramsByName().get(name));
+    }
+
+    /**
+     * @param methodSignature
+     * @param name
+     * @return the local variable of the method with the given name, if there is one
+     */
+    public Optional<Symbol> getLocalVariable(String methodSignature, String name) {
+        return Optional.ofNullable(getScope(methodSignature).localsByName().get(name));
+    }
+
+    /**
+     * Finds the symbol a name refers to inside a method: locals hide parameters, which hide fields. Results are cached
+     * per method.
+     *
+     * @param methodSignature
+     * @param name
+     * @return the symbol, if the name is declared
+     */
+    public Optional<Symbol> resolve(String methodSignature, String name) {
+        var scope = getScope(methodSignature);
+
+        return scope.resolved().computeIfAbsent(name, key -> {
+            var symbol = scope.localsByName().get(key);
+            if (symbol == null) {
+                symbol = scope.paramsByName().get(key);
+            }
+            if (symbol == null) {
+                symbol = fieldsByName.get(key);
+            }
+
+            return Optional.ofNullable(symbol);
+        });
+    }
+
+    /**
+     * @param name
+     * @return the local variables with the given name, across every method, in the order the methods are declared
+     */
+    public List<Symbol> getLocalVariablesInAnyMethod(String name) {
+        return classLocalsByName.getOrDefault(name, List.of());
+    }
+
+    /**
+     * @param typeName
+     * @return true if any method declares a local variable whose type has the given name
+     */
+    public boolean hasLocalOfType(String typeName) {
+        return classLocalTypes.contains(typeName);
+    }
+
+    private MethodScope getScope(String methodSignature) {
+        var scope = scopes.get(methodSignature);
+
+        if (scope == null) {
+            throw new NullPointerException("Method '" + methodSignature + "' is not declared in class " + className);
+        }
+
+        return scope;
+    }
+
+    private static Map<String, Symbol> indexByName(List<Symbol> symbols) {
+        var index = new HashMap<String, Symbol>();
+
+        // When a name is declared twice, the first declaration is kept
+        for (var symbol : symbols) {
+            index.putIfAbsent(symbol.getName(), symbol);
+        }
+
+        return Map.copyOf(index);
+    }
 }
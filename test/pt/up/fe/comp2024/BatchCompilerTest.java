@@ -0,0 +1,78 @@
+package pt.up.fe.comp2024;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchCompilerTest {
+
+    private static final String CODE = """
+            class Batch {
+                public int foo() {
+                    int a;
+                    a = 2;
+                    return a + 1;
+                }
+
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BatchCompiler.BatchResult compileFolder(File inputs) {
+        var config = CompilerConfig.parseArgs(new String[]{"-i=" + inputs.getAbsolutePath(), "-j=2"});
+        return new BatchCompiler(config).compile(CompilerConfig.getInputFiles(config));
+    }
+
+    @Test
+    public void failureDoesNotStopTheOtherFiles() throws IOException {
+        var inputs = folder.newFolder("inputs");
+        SpecsIo.write(new File(inputs, "Batch0.jmm"), CODE.replace("Batch", "Batch0"));
+        SpecsIo.write(new File(inputs, "Batch1.jmm"), CODE.replace("Batch", "Batch1"));
+        var broken = new File(inputs, "Broken.jmm");
+        SpecsIo.write(broken, CODE.replace("Batch", "Broken").replace("return a + 1", "return b + 1"));
+
+        var result = compileFolder(inputs);
+
+        assertEquals(3, result.getOutcomes().size());
+        assertEquals(1, result.getNumFailed());
+
+        // Files are compiled in the order they were found, and only the broken one failed
+        var outcomes = result.getOutcomes();
+        assertTrue(outcomes.get(0).isSuccess());
+        assertTrue(outcomes.get(1).isSuccess());
+        assertFalse(outcomes.get(2).isSuccess());
+        assertEquals(broken.getAbsoluteFile(), outcomes.get(2).file());
+
+        var summary = result.getSummary();
+        assertTrue(summary, summary.startsWith("Compiled 3 file(s) in "));
+        assertTrue(summary, summary.contains("using 2 thread(s): 2 succeeded, 1 failed"));
+
+        var failedLines = summary.lines().filter(line -> line.startsWith("  FAILED ")).toList();
+        assertEquals(summary, 1, failedLines.size());
+        assertTrue(summary, failedLines.get(0).startsWith("  FAILED " + broken.getAbsolutePath() + ": "));
+    }
+
+    @Test
+    public void summaryWithoutFailures() throws IOException {
+        var inputs = folder.newFolder("inputs");
+        SpecsIo.write(new File(inputs, "Batch.jmm"), CODE);
+
+        var result = compileFolder(inputs);
+
+        assertEquals(0, result.getNumFailed());
+        assertTrue(result.getSummary(), result.getSummary().contains("1 succeeded, 0 failed"));
+        assertFalse(result.getSummary(), result.getSummary().contains("FAILED"));
+    }
+}
@@ -0,0 +1,93 @@
+package pt.up.fe.comp2024;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompilationCacheTest {
+
+    private static final String CODE = """
+            class Cached {
+                public int foo() {
+                    int a;
+                    int b;
+                    a = 2;
+                    b = a + 1;
+                    return b;
+                }
+
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Map<String, String> getConfig(String... args) throws IOException {
+        var input = new File(folder.getRoot(), "Cached.jmm");
+        SpecsIo.write(input, CODE);
+
+        var cacheDir = new File(folder.getRoot(), "cache");
+
+        return CompilerConfig.parseArgs(concat("-i=" + input.getAbsolutePath(), "-k=" + cacheDir.getAbsolutePath(), args));
+    }
+
+    @Test
+    public void secondCompilationIsAHit() throws IOException {
+        var config = getConfig();
+        var cache = CompilationCache.fromConfig(config).orElseThrow();
+
+        var first = Launcher.compile(CODE, config);
+        long hits = cache.getHits();
+        var second = Launcher.compile(CODE, config);
+
+        assertEquals(hits + 1, cache.getHits());
+        assertEquals(first.getClassName(), second.getClassName());
+        assertEquals(first.getJasminCode(), second.getJasminCode());
+    }
+
+    @Test
+    public void keyDependsOnCodegenOptions() throws IOException {
+        var cache = CompilationCache.fromConfig(getConfig()).orElseThrow();
+
+        var plain = cache.getKey(CODE, getConfig());
+        var optimized = cache.getKey(CODE, getConfig("-o"));
+        var registers = cache.getKey(CODE, getConfig("-r=2"));
+
+        assertNotEquals(plain, optimized);
+        assertNotEquals(plain, registers);
+        assertEquals(plain, cache.getKey(CODE, getConfig()));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntries() throws IOException {
+        // Cache of 1 MB receiving entries of 400 KB
+        var cache = CompilationCache.fromConfig(getConfig("-z=1")).orElseThrow();
+        var payload = "x".repeat(400 * 1024);
+
+        for (int i = 0; i < 4; i++) {
+            cache.put("entry" + i, new CompilationCache.Entry("Cached", "", "", payload));
+        }
+
+        assertTrue(cache.getEvictions() > 0);
+        assertTrue(cache.get("entry3").isPresent());
+    }
+
+    private static String[] concat(String first, String second, String... rest) {
+        var args = new String[rest.length + 2];
+        args[0] = first;
+        args[1] = second;
+        System.arraycopy(rest, 0, args, 2, rest.length);
+        return args;
+    }
+}
@@ -0,0 +1,119 @@
+package pt.up.fe.comp2024;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pt.up.fe.comp2024.workload.ProgramGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompilerDaemonTest {
+
+    private static CompilerDaemon daemon;
+    private static Thread server;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Thread serveInBackground(CompilerDaemon daemon) {
+        var thread = new Thread(() -> {
+            try {
+                daemon.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+
+        return thread;
+    }
+
+    @BeforeClass
+    public static void startDaemon() throws IOException {
+        // Port 0 lets the system choose a free port
+        daemon = new CompilerDaemon(CompilerConfig.parseArgs(new String[]{"-d=0", "-j=2"}));
+        server = serveInBackground(daemon);
+    }
+
+    @AfterClass
+    public static void stopDaemon() throws IOException, InterruptedException {
+        daemon.close();
+        server.join(5000);
+    }
+
+    @Test
+    public void compilesValidCode() throws IOException {
+        var response = CompilerDaemon.request(daemon.getPort(), "class Simple { public static void main(String[] args) { } }",
+                Map.of());
+
+        assertEquals(response.getMessage(), CompilerDaemon.Status.OK, response.getStatus());
+        assertNotNull(response.getJasminCode());
+        assertTrue(response.getJasminCode().contains(".class Simple"));
+    }
+
+    @Test
+    public void returnsStatisticsWhenAsked() throws IOException {
+        var code = "class Simple { public static void main(String[] args) { } }";
+
+        assertNull(CompilerDaemon.request(daemon.getPort(), code, Map.of()).getStats());
+
+        var response = CompilerDaemon.request(daemon.getPort(), code, Map.of("stats", "true"));
+        assertEquals(response.getMessage(), CompilerDaemon.Status.OK, response.getStatus());
+        assertNotNull(response.getStats());
+        assertTrue(response.getStats(), response.getStats().contains("parse"));
+    }
+
+    @Test
+    public void reportsSemanticErrors() throws IOException {
+        var response = CompilerDaemon.request(daemon.getPort(),
+                "class Simple { public int foo() { return a; } public static void main(String[] args) { } }", Map.of());
+
+        assertEquals(CompilerDaemon.Status.ERROR, response.getStatus());
+        assertNotNull(response.getMessage());
+    }
+
+    @Test
+    public void servesSeveralRequests() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            var response = CompilerDaemon.request(daemon.getPort(),
+                    "class Simple" + i + " { public static void main(String[] args) { } }", Map.of());
+
+            assertEquals(CompilerDaemon.Status.OK, response.getStatus());
+        }
+    }
+
+    @Test
+    public void timedOutCompilationFreesItsWorker() throws IOException {
+        try (var slowDaemon = new CompilerDaemon(CompilerConfig.parseArgs(new String[]{"-d=0", "-j=1", "-t=1"}))) {
+            serveInBackground(slowDaemon);
+
+            // Written at the end of the compilation, only if it was not stopped
+            var classFileDir = folder.newFolder();
+            var response = CompilerDaemon.request(slowDaemon.getPort(), new ProgramGenerator().methods(800).generate("Big"),
+                    Map.of("classFile", classFileDir.getPath()));
+            Assume.assumeTrue("Compiled within the timeout", response.getStatus() == CompilerDaemon.Status.TIMEOUT);
+
+            // The only worker answers again once the compilation stops at the end of its current stage
+            var deadline = System.nanoTime() + 60_000_000_000L;
+            do {
+                response = CompilerDaemon.request(slowDaemon.getPort(),
+                        "class Simple { public static void main(String[] args) { } }", Map.of());
+            } while (response.getStatus() != CompilerDaemon.Status.OK && System.nanoTime() < deadline);
+
+            assertEquals(response.getMessage(), CompilerDaemon.Status.OK, response.getStatus());
+            assertFalse(new File(classFileDir, "Big.class").exists());
+        }
+    }
+}
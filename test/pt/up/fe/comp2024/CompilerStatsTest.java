@@ -0,0 +1,174 @@
+package pt.up.fe.comp2024;
+
+import com.google.gson.JsonParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompilerStatsTest {
+
+    private static final String CODE = """
+            import io;
+
+            class Measured {
+                int field;
+
+                public int foo() {
+                    int a;
+                    int b;
+                    a = 2;
+                    b = a + 1;
+                    io.println(b);
+                    return b;
+                }
+
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> getStageNames(CompilerStats stats) {
+        return stats.getStages().stream().map(CompilerStats.Stage::name).toList();
+    }
+
+    private static CompilerStats.Stage getStage(CompilerStats stats, String name) {
+        return stats.getStages().stream().filter(stage -> stage.name().equals(name)).findFirst().orElseThrow();
+    }
+
+    @Test
+    public void recordsEveryStage() {
+        var stats = new CompilerStats();
+        Launcher.compile(CODE, Map.of(), stats);
+
+        var names = getStageNames(stats);
+        for (var stage : List.of("parse", "symbol table", "analysis: UndeclaredVariable",
+                "analysis: CheckFieldInStatic", "type attribution", "ollir", "optimize", "jasmin")) {
+            assertTrue(stage + " in " + names, names.contains(stage));
+        }
+
+        assertTrue(getStage(stats, "parse").counts().get("nodes") > 10);
+        assertEquals(2L, (long) getStage(stats, "symbol table").counts().get("methods"));
+        assertTrue(getStage(stats, "analysis: UndeclaredVariable").counts().get("nodes") > 0);
+        assertTrue(getStage(stats, "ollir").counts().get("instructions") > 0);
+        assertTrue(getStage(stats, "jasmin").counts().get("bytes") > 0);
+        assertTrue(getStage(stats, "parse").usage().wallNanos() > 0);
+    }
+
+    @Test
+    public void parallelAnalysisAddsUpPasses() {
+        var sequential = new CompilerStats();
+        Launcher.compile(CODE, Map.of(), sequential);
+
+        var parallel = new CompilerStats();
+        Launcher.compile(CODE, Map.of("parallelAnalysis", "true"), parallel);
+
+        assertEquals(getStageNames(sequential), getStageNames(parallel));
+        assertEquals(getStage(sequential, "analysis: UndeclaredVariable").counts(),
+                getStage(parallel, "analysis: UndeclaredVariable").counts());
+    }
+
+    @Test
+    public void disabledRecordsNothing() {
+        Launcher.compile(CODE, Map.of(), CompilerStats.NONE);
+
+        assertFalse(CompilerStats.NONE.isEnabled());
+        assertTrue(CompilerStats.NONE.getStages().isEmpty());
+    }
+
+    @Test
+    public void jsonOutput() {
+        var stats = new CompilerStats();
+        Launcher.compile(CODE, Map.of(), stats);
+
+        var stages = JsonParser.parseString(stats.format(true)).getAsJsonObject().getAsJsonArray("stages");
+        assertEquals(stats.getStages().size(), stages.size());
+        assertEquals("parse", stages.get(0).getAsJsonObject().get("stage").getAsString());
+    }
+
+    @Test
+    public void recordsCacheLookups() throws Exception {
+        var input = folder.newFile("Measured.jmm");
+        var cacheDir = new File(folder.getRoot(), "cache");
+        var config = CompilerConfig.parseArgs(new String[]{"-i=" + input.getAbsolutePath(),
+                "-k=" + cacheDir.getAbsolutePath(), "-s"});
+
+        var miss = new CompilerStats();
+        Launcher.compile(CODE, config, miss);
+        assertEquals(Map.of("hits", 0L, "misses", 1L), getStage(miss, "cache lookup").counts());
+        assertEquals(0L, (long) getStage(miss, "cache store").counts().get("evictions"));
+
+        // Served from the cache, without running the other stages
+        var hit = new CompilerStats();
+        Launcher.compile(CODE, config, hit);
+        assertEquals(List.of("cache lookup"), getStageNames(hit));
+        assertEquals(Map.of("hits", 1L, "misses", 0L), getStage(hit, "cache lookup").counts());
+    }
+
+    @Test
+    public void percentiles() {
+        var usages = new ArrayList<CompilerStats.Usage>();
+        for (int i = 100; i >= 1; i--) {
+            usages.add(new CompilerStats.Usage(i, 0, 0));
+        }
+
+        assertArrayEquals(new long[]{50, 95, 100}, CompilerStats.percentiles(usages, CompilerStats.Usage::wallNanos));
+    }
+
+    @Test
+    public void batchAggregatesFiles() throws Exception {
+        var inputs = folder.newFolder("inputs");
+        for (int i = 0; i < 3; i++) {
+            SpecsIo.write(new File(inputs, "Measured" + i + ".jmm"), CODE.replace("Measured", "Measured" + i));
+        }
+
+        var config = CompilerConfig.parseArgs(new String[]{"-i=" + inputs.getAbsolutePath(), "-s=json", "-j=2"});
+        var result = new BatchCompiler(config).compile(CompilerConfig.getInputFiles(config));
+
+        var json = JsonParser.parseString(result.getStats(true)).getAsJsonObject();
+        assertEquals(3, json.get("files").getAsInt());
+
+        var parse = json.getAsJsonArray("stages").get(0).getAsJsonObject();
+        assertEquals(3, parse.get("runs").getAsInt());
+        assertTrue(parse.getAsJsonObject("wallNanos").get("max").getAsLong()
+                >= parse.getAsJsonObject("wallNanos").get("p50").getAsLong());
+        assertTrue(parse.getAsJsonObject("counts").get("nodes").getAsLong() > 30);
+    }
+
+    @Test
+    public void batchAddsUpCacheCounts() throws Exception {
+        var inputs = folder.newFolder("inputs");
+        for (int i = 0; i < 3; i++) {
+            SpecsIo.write(new File(inputs, "Measured" + i + ".jmm"), CODE.replace("Measured", "Measured" + i));
+        }
+        var cacheDir = new File(folder.getRoot(), "cache");
+
+        var config = CompilerConfig.parseArgs(new String[]{"-i=" + inputs.getAbsolutePath(),
+                "-k=" + cacheDir.getAbsolutePath(), "-s", "-j=2"});
+        new BatchCompiler(config).compile(CompilerConfig.getInputFiles(config));
+        var result = new BatchCompiler(config).compile(CompilerConfig.getInputFiles(config));
+
+        var table = result.getStats(false);
+        assertTrue(table, table.contains("hits=3"));
+        assertTrue(table, table.contains("misses=0"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void unknownFormat() throws Exception {
+        var input = folder.newFile("Measured.jmm");
+        CompilerConfig.parseArgs(new String[]{"-i=" + input.getAbsolutePath(), "-s=xml"});
+    }
+}
@@ -0,0 +1,73 @@
+package pt.up.fe.comp2024.analysis;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.analysis.passes.*;
+import pt.up.fe.comp2024.ast.TypeAttribution;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class FusedAnalysisTest {
+
+    private static List<AnalysisPass> newPasses() {
+        return List.of(new UndeclaredVariable(), new BoolTimesInt(),
+                new ArrayInitWrong(), new ArrayIndexNotInt(), new IntInIfCondition(), new AssignIntToBool(),
+                new ObjectAssignmentFail(), new ArrayInWhileCondition(), new CallToUndeclaredMethod(),
+                new IncompatibleArguments(), new Varargs(), new Duplicates(), new Returns(), new ThisInMain(),
+                new CheckFieldInStatic());
+    }
+
+    private static String describe(Report report) {
+        return report.getType() + "@" + report.getLine() + ":" + report.getColumn() + " " + report.getMessage();
+    }
+
+    @Test
+    public void sameReportsAsSeparatePasses() throws IOException {
+        List<Path> inputs;
+        try (Stream<Path> paths = Files.walk(Path.of("test/pt/up/fe/comp/cpf"))) {
+            inputs = paths.filter(path -> path.toString().endsWith(".jmm")).sorted().toList();
+        }
+
+        assertFalse(inputs.isEmpty());
+
+        for (var input : inputs) {
+            var parserResult = new JmmParserImpl().parse(SpecsIo.read(input.toFile()), new HashMap<>());
+            if (parserResult.getRootNode() == null) {
+                continue;
+            }
+
+            var root = parserResult.getRootNode();
+
+            // Each pass walking the whole tree on its own
+            var expected = new ArrayList<String>();
+            var table = JmmSymbolTableBuilder.build(root);
+            TypeAttribution.annotate(root, table);
+            for (var pass : newPasses()) {
+                try {
+                    pass.analyze(root, table).forEach(report -> expected.add(describe(report)));
+                } catch (Exception e) {
+                    expected.add("Problem while executing analysis pass '" + pass.getClass() + "'");
+                }
+            }
+
+            var actual = new ArrayList<String>();
+            for (var report : new FusedAnalysis(newPasses()).analyze(root, JmmSymbolTableBuilder.build(root))) {
+                actual.add(report.getException().isPresent() ? report.getMessage() : describe(report));
+            }
+
+            assertEquals(input.toString(), expected, actual);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package pt.up.fe.comp2024.analysis;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.analysis.passes.*;
+import pt.up.fe.comp2024.ast.TypeAttribution;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ParallelAnalysisTest {
+
+    private static final List<Supplier<AnalysisPass>> PASSES = List.of(UndeclaredVariable::new,
+            BoolTimesInt::new, ArrayInitWrong::new, ArrayIndexNotInt::new, IntInIfCondition::new,
+            AssignIntToBool::new, ObjectAssignmentFail::new, ArrayInWhileCondition::new, CallToUndeclaredMethod::new,
+            IncompatibleArguments::new, Varargs::new, Duplicates::new, Returns::new, ThisInMain::new,
+            CheckFieldInStatic::new);
+
+    private static List<String> describe(List<Report> reports) {
+        return reports.stream()
+                .map(report -> report.getType() + "@" + report.getLine() + ":" + report.getColumn() + " "
+                        + report.getMessage())
+                .toList();
+    }
+
+    private static void assertSameReports(String name, String code) {
+        assertSameReports(name, code, new ParallelAnalysis(PASSES));
+    }
+
+    private static void assertSameReports(String name, String code, ParallelAnalysis parallelAnalysis) {
+        var parserResult = new JmmParserImpl().parse(code, new HashMap<>());
+        if (parserResult.getRootNode() == null) {
+            return;
+        }
+
+        var root = parserResult.getRootNode();
+        var sequentialPasses = PASSES.stream().map(Supplier::get).toList();
+        TypeAttribution.annotate(root, JmmSymbolTableBuilder.build(root));
+
+        var expected = new FusedAnalysis(sequentialPasses).analyze(root, JmmSymbolTableBuilder.build(root));
+        var actual = parallelAnalysis.analyze(root, JmmSymbolTableBuilder.build(root));
+
+        assertEquals(name, describe(expected), describe(actual));
+    }
+
+    @Test
+    public void sameReportsAsSequentialAnalysis() throws IOException {
+        List<Path> inputs;
+        try (Stream<Path> paths = Files.walk(Path.of("test/pt/up/fe/comp/cpf"))) {
+            inputs = paths.filter(path -> path.toString().endsWith(".jmm")).sorted().toList();
+        }
+
+        assertFalse(inputs.isEmpty());
+
+        for (var input : inputs) {
+            assertSameReports(input.toString(), SpecsIo.read(input.toFile()));
+        }
+    }
+
+    @Test
+    public void passesSplitWhenThereAreFewMethods() throws IOException {
+        // More threads than parts of the tree, so that each pass runs in its own task
+        var pool = new ForkJoinPool(64);
+
+        try (Stream<Path> paths = Files.walk(Path.of("test/pt/up/fe/comp/cpf/2_semantic_analysis"))) {
+            for (var input : paths.filter(path -> path.toString().endsWith(".jmm")).sorted().toList()) {
+                assertSameReports(input.toString(), SpecsIo.read(input.toFile()), new ParallelAnalysis(PASSES, pool));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void manyMethodsWithErrors() {
+        var code = new StringBuilder("import io;\nclass Many {\n int a;\n");
+
+        for (int i = 0; i < 200; i++) {
+            code.append(" public int m").append(i % 150).append("(int p) {\n")
+                    .append("  int x;\n")
+                    .append("  x = ").append(i % 3 == 0 ? "undeclared" + i : "p").append(";\n")
+                    .append("  return x;\n")
+                    .append(" }\n");
+
+            // fields between methods are analysed outside the methods
+            if (i % 50 == 0) {
+                code.append(" int f").append(i).append(";\n");
+            }
+        }
+
+        code.append(" public static void main(String[] args) { }\n}\n");
+
+        assertSameReports("Many", code.toString());
+    }
+}
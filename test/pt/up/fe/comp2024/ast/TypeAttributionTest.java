@@ -0,0 +1,166 @@
+package pt.up.fe.comp2024.ast;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
+
+import java.util.HashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class TypeAttributionTest {
+
+    private static JmmNode parse(String code) {
+        var parserResult = new JmmParserImpl().parse(code, new HashMap<>());
+        assertNotNull(parserResult.getRootNode());
+        return parserResult.getRootNode();
+    }
+
+    @Test
+    public void storesTypes() {
+        var root = parse("""
+                class Types {
+                    public boolean foo(int a) {
+                        int b;
+                        int[] c;
+                        boolean d;
+                        b = a * 2 + 1;
+                        c = new int[b];
+                        d = b < c.length;
+                        return d;
+                    }
+
+                    public static void main(String[] args) {
+                    }
+                }
+                """);
+        var table = JmmSymbolTableBuilder.build(root);
+
+        TypeAttribution.annotate(root, table);
+
+        var relational = root.getDescendants(Kind.RELATIONAL_EXPR).get(0);
+        assertEquals(new Type("boolean", false), relational.getObject(TypeUtils.TYPE_ATTRIBUTE));
+
+        var newArray = root.getDescendants(Kind.NEW_ARRAY_EXPR).get(0);
+        assertEquals(new Type("int", true), TypeUtils.getExprType(newArray, table));
+
+        // Stored types are the same as the computed ones
+        for (var node : root.getDescendants()) {
+            if (node.hasAttribute(TypeUtils.TYPE_ATTRIBUTE)) {
+                assertEquals(TypeUtils.computeExprType(node, table), TypeUtils.getExprType(node, table));
+            }
+        }
+
+        // Nodes without a type are left alone
+        assertFalse(root.getDescendants(Kind.METHOD_DECL).get(0).hasAttribute(TypeUtils.TYPE_ATTRIBUTE));
+    }
+
+    @Test
+    public void longChain() {
+        var sum = IntStream.range(0, 500).mapToObj(Integer::toString).collect(Collectors.joining(" + "));
+        var root = parse("""
+                class Chain {
+                    public int foo() {
+                        int a;
+                        a = %s;
+                        return a;
+                    }
+
+                    public static void main(String[] args) {
+                    }
+                }
+                """.formatted(sum));
+        var table = JmmSymbolTableBuilder.build(root);
+
+        TypeAttribution.annotate(root, table);
+
+        var additions = root.getDescendants(Kind.ADDITIVE_EXPR);
+        assertEquals(499, additions.size());
+        assertTrue(additions.stream().allMatch(node -> node.hasAttribute(TypeUtils.TYPE_ATTRIBUTE)));
+    }
+
+    @Test
+    public void typesCallsArraysAndThis() {
+        var root = parse("""
+                class Calls {
+                    boolean[] f;
+
+                    public boolean[] bar(int a) {
+                        return f;
+                    }
+
+                    public boolean foo(int a) {
+                        Calls c;
+                        c = this;
+                        return this.bar(a)[0] && c.bar(a + 1)[a];
+                    }
+
+                    public static void main(String[] args) {
+                        int n;
+                        n = args.length;
+                    }
+                }
+                """);
+        var table = JmmSymbolTableBuilder.build(root);
+
+        TypeAttribution.annotate(root, table);
+
+        var classType = new Type("Calls", false);
+        assertEquals(classType, root.getDescendants(Kind.THIS_LITERAL_EXPR).get(0).getObject(TypeUtils.TYPE_ATTRIBUTE));
+
+        // Calls on this class have the declared return type, and array accesses the type of the elements
+        for (var call : root.getDescendants(Kind.METHOD_CALL_EXPR)) {
+            assertEquals(new Type("boolean", true), call.getObject(TypeUtils.TYPE_ATTRIBUTE));
+        }
+        for (var access : root.getDescendants(Kind.ARRAY_ACCESS_EXPR)) {
+            assertEquals(new Type("boolean", false), access.getObject(TypeUtils.TYPE_ATTRIBUTE));
+        }
+
+        // Parameters, fields and the parameter of main are resolved
+        var varRefs = root.getDescendants(Kind.VAR_REF_EXPR);
+        assertEquals(new Type("boolean", true), varRefs.get(0).getObject(TypeUtils.TYPE_ATTRIBUTE));
+        assertEquals(new Type("int", false), varRefs.get(2).getObject(TypeUtils.TYPE_ATTRIBUTE));
+        assertEquals(new Type("String", true), varRefs.get(varRefs.size() - 1).getObject(TypeUtils.TYPE_ATTRIBUTE));
+    }
+
+    @Test
+    public void leavesUnknownExpressionsWithoutType() {
+        var root = parse("""
+                import io;
+
+                class Unknown {
+                    public int foo(int a) {
+                        int c;
+                        c = io.read() + a;
+                        c = d;
+                        return c;
+                    }
+
+                    public static void main(String[] args) {
+                    }
+                }
+                """);
+        var table = JmmSymbolTableBuilder.build(root);
+
+        var untyped = TypeAttribution.annotate(root, table);
+
+        // The methods of imported classes and undeclared variables have no type, the expressions that do not depend on
+        // them are still typed
+        var call = root.getDescendants(Kind.METHOD_CALL_EXPR).get(0);
+        assertFalse(call.hasAttribute(TypeUtils.TYPE_ATTRIBUTE));
+        assertEquals(new Type("io", false), call.getJmmChild(0).getObject(TypeUtils.TYPE_ATTRIBUTE));
+        assertEquals(new Type("int", false),
+                root.getDescendants(Kind.ADDITIVE_EXPR).get(0).getObject(TypeUtils.TYPE_ATTRIBUTE));
+
+        var undeclared = root.getDescendants(Kind.VAR_REF_EXPR).stream()
+                .filter(varRef -> varRef.get("name").equals("d"))
+                .findFirst().orElseThrow();
+        assertFalse(undeclared.hasAttribute(TypeUtils.TYPE_ATTRIBUTE));
+
+        assertEquals(2, untyped);
+    }
+}
@@ -0,0 +1,179 @@
+package pt.up.fe.comp2024.backend;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.Launcher;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ClassFileBackendTest {
+
+    private static final String RESOURCES = "pt/up/fe/comp/cpf/4_jasmin/";
+
+    private static final List<String> PROGRAMS = List.of(
+            "arithmetic/Arithmetic_and",
+            "arithmetic/Arithmetic_less",
+            "arithmetic/Arithmetic_not",
+            "arithmetic/ByteCodeIndexes1",
+            "arithmetic/ByteCodeIndexes2",
+            "arrays/ArrayAccess",
+            "arrays/ArrayAsArg",
+            "arrays/ArrayAsArgCode",
+            "arrays/ArrayInit",
+            "arrays/ArrayInitialization",
+            "arrays/ArrayNew",
+            "arrays/ArrayVarArgs",
+            "arrays/ComplexArrayAccess",
+            "arrays/VarargsAndArrayInit",
+            "basic/BasicMethodsArray",
+            "calls/ConditionArgsFuncCall",
+            "control_flow/IfElseInMain",
+            "control_flow/IfWhileNested",
+            "control_flow/SimpleControlFlow",
+            "control_flow/SimpleIfElseNot",
+            "control_flow/SimpleIfElseStat",
+            "control_flow/SimpleWhileStat",
+            "control_flow/SwitchStat",
+            "limits/LocalLimits");
+
+    private static OllirResult parseOllir(String program) {
+        return new OllirResult(SpecsIo.getResource(RESOURCES + program + ".ollir"), Collections.emptyMap());
+    }
+
+    private static boolean hasMain(OllirResult ollirResult) {
+        return ollirResult.getOllirClass().getMethods().stream()
+                .anyMatch(method -> method.getMethodName().equals("main"));
+    }
+
+    private static byte[] emptyClass(String name) {
+        var ollirResult = new OllirResult("""
+                %s {
+                    .construct %s().V {
+                        invokespecial(this, "<init>").V;
+                    }
+                }
+                """.formatted(name, name), Collections.emptyMap());
+
+        return new ClassFileBackend().toClassFile(ollirResult).getBytes();
+    }
+
+    /**
+     * Loads and initializes the class in this JVM, which verifies it.
+     */
+    private static Class<?> load(ClassFileResult classFile) {
+        try {
+            var libs = new URLClassLoader(new URL[]{new File(TestUtils.getLibsClasspath()).toURI().toURL()});
+            var loader = new ClassLoader(libs) {
+                @Override
+                protected Class<?> findClass(String name) {
+                    // super classes that are not in the libraries are replaced by empty classes
+                    var bytes = name.equals(classFile.getClassName()) ? classFile.getBytes() : emptyClass(name);
+                    return defineClass(name, bytes, 0, bytes.length);
+                }
+            };
+
+            var loaded = Class.forName(classFile.getClassName(), true, loader);
+            loaded.getDeclaredMethods();
+
+            return loaded;
+        } catch (ReflectiveOperationException | MalformedURLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void runsLikeJasmin() {
+        for (var program : PROGRAMS) {
+            var ollirResult = parseOllir(program);
+            var classFile = new ClassFileBackend().toClassFile(ollirResult);
+
+            // every class must pass the verifier, even when it cannot be run
+            load(classFile);
+
+            if (!hasMain(ollirResult)) {
+                continue;
+            }
+
+            var output = classFile.run();
+            assertFalse(program + ": " + output, output.contains("Error") || output.contains("Exception"));
+
+            var expected = new JasminBackendImpl().toJasmin(ollirResult).run();
+            if (!expected.contains("Error") && !expected.contains("Exception")) {
+                assertEquals(program, expected, output);
+            }
+        }
+    }
+
+    @Test
+    public void compilesToFolder() {
+        var outputDir = SpecsIo.getTempFolder("classfile_test");
+        SpecsIo.deleteFolderContents(outputDir);
+
+        var config = new HashMap<String, String>();
+        config.put("classFile", outputDir.getAbsolutePath());
+        config.put("directLowering", "true");
+
+        for (var program : List.of("control_flow/IfWhileNested", "control_flow/SimpleWhileStat", "arrays/ArrayInit")) {
+            var classFile = Launcher.compileToClassFile(SpecsIo.getResource(RESOURCES + program + ".jmm"), config);
+            assertTrue(program, new File(outputDir, classFile.getClassName() + ".class").isFile());
+
+            var expected = new JasminBackendImpl().toJasmin(parseOllir(program)).run();
+            assertEquals(program, expected, classFile.run());
+        }
+    }
+
+    @Test
+    public void modernClassFile() {
+        var bytes = new ClassFileBackend().toClassFile(parseOllir("control_flow/SimpleWhileStat")).getBytes();
+        var buffer = ByteBuffer.wrap(bytes);
+
+        assertEquals(0xCAFEBABE, buffer.getInt());
+        assertEquals(0, buffer.getShort());
+        assertEquals(61, buffer.getShort());
+
+        // loops need frames for the type-checking verifier
+        assertTrue(new String(bytes).contains("StackMapTable"));
+    }
+
+    @Test
+    public void constantsAreShared() {
+        var calls = "invokestatic(io, \"println\", 1.i32).V;\n".repeat(100);
+        var ollirResult = new OllirResult("""
+                import io;
+                Repeated {
+                    .construct Repeated().V {
+                        invokespecial(this, "<init>").V;
+                    }
+
+                    .method public static main(args.array.String).V {
+                        %s
+                        ret.V;
+                    }
+                }
+                """.formatted(calls), Collections.emptyMap());
+
+        var classFile = new ClassFileBackend().toClassFile(ollirResult);
+        int constantPoolCount = ByteBuffer.wrap(classFile.getBytes()).getShort(8);
+
+        assertTrue("constant pool has " + constantPoolCount + " entries", constantPoolCount < 30);
+        assertEquals("1\n".repeat(100), classFile.run().replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void jasminDump() {
+        var classFile = new ClassFileBackend().toClassFile(parseOllir("arithmetic/Arithmetic_and"));
+
+        assertTrue(classFile.getJasminCode().startsWith(".class Arithmetic_and"));
+    }
+}
@@ -0,0 +1,110 @@
+package pt.up.fe.comp2024.backend;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class JasminGeneratorTest {
+
+    private static final String COMPARISONS = """
+            import io;
+            Comparisons {
+                .construct Comparisons().V {
+                    invokespecial(this, "<init>").V;
+                }
+
+                .method public static main(args.array.String).V {
+                    big.i32 :=.i32 2000000000.i32;
+                    small.i32 :=.i32 0.i32 -.i32 big.i32;
+                    lower.bool :=.bool small.i32 <.bool big.i32;
+                    invokestatic(io, "println", lower.bool).V;
+                    higher.bool :=.bool big.i32 <=.bool small.i32;
+                    invokestatic(io, "println", higher.bool).V;
+                    if (small.i32 <.bool big.i32) goto Less;
+                    invokestatic(io, "println", 0.i32).V;
+                    Less:
+                    if (0.i32 <.bool small.i32) goto Positive;
+                    invokestatic(io, "println", 2.i32).V;
+                    Positive:
+                    if (!.bool lower.bool) goto NotLower;
+                    invokestatic(io, "println", 3.i32).V;
+                    NotLower:
+                    ret.V;
+                }
+            }
+            """;
+
+    private static String getMethodCode(String methodBody) {
+        var ollirCode = """
+                Branches {
+                    .construct Branches().V {
+                        invokespecial(this, "<init>").V;
+                    }
+
+                    .method public foo(i.i32, n.i32, b.bool).i32 {
+                %s
+                    }
+                }
+                """.formatted(methodBody);
+
+        var jasminCode = new JasminBackendImpl().toJasmin(new OllirResult(ollirCode, Collections.emptyMap()))
+                .getJasminCode();
+
+        return jasminCode.substring(jasminCode.indexOf(".method public foo"));
+    }
+
+    @Test
+    public void comparisonsJumpDirectly() {
+        var code = getMethodCode("""
+                Loop:
+                i.i32 :=.i32 i.i32 +.i32 1.i32;
+                if (i.i32 <.bool n.i32) goto Loop;
+                ret.i32 i.i32;
+                """);
+
+        assertTrue(code, code.contains("if_icmplt Loop"));
+        assertFalse(code, code.contains("isub"));
+        assertFalse(code, code.contains("ifne"));
+        assertFalse(code, code.contains("iconst_0"));
+    }
+
+    @Test
+    public void comparisonsWithZeroJumpOnTheOtherOperand() {
+        var code = getMethodCode("""
+                if (i.i32 >=.bool 0.i32) goto Positive;
+                if (0.i32 <.bool n.i32) goto Positive;
+                ret.i32 0.i32;
+                Positive:
+                ret.i32 1.i32;
+                """);
+
+        assertTrue(code, code.contains("ifge Positive"));
+        assertTrue(code, code.contains("ifgt Positive"));
+        assertFalse(code, code.contains("if_icmp"));
+    }
+
+    @Test
+    public void negatedConditionsFlipTheBranch() {
+        var code = getMethodCode("""
+                if (!.bool b.bool) goto False;
+                ret.i32 1.i32;
+                False:
+                ret.i32 0.i32;
+                """);
+
+        assertTrue(code, code.contains("ifeq False"));
+        assertFalse(code, code.contains("ixor"));
+    }
+
+    @Test
+    public void comparisonsDoNotOverflow() {
+        var ollirResult = new OllirResult(COMPARISONS, Collections.emptyMap());
+        var expected = "true\nfalse\n2\n3";
+
+        assertEquals(expected, new JasminBackendImpl().toJasmin(ollirResult).run().trim().replace("\r\n", "\n"));
+        assertEquals(expected, new ClassFileBackend().toClassFile(ollirResult).run().trim().replace("\r\n", "\n"));
+    }
+}
@@ -0,0 +1,116 @@
+package pt.up.fe.comp2024.backend;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class StackAnalyzerTest {
+
+    @Test
+    public void maxStackOfNestedExpression() {
+        var result = StackAnalyzer.analyzeMethod("""
+                    .limit stack 99
+                    iload_1
+                    iload_2
+                    iload_3
+                    imul
+                    iadd
+                    istore_1
+                    return
+                """);
+
+        assertTrue(result.getErrors().toString(), result.getErrors().isEmpty());
+        assertEquals(3, result.getMaxStack());
+        assertEquals(-1, result.getExitDepth());
+    }
+
+    @Test
+    public void followsBothSidesOfBranches() {
+        // A comparison leaves one value on the stack, whichever side is taken
+        var result = StackAnalyzer.analyzeMethod("""
+                    iload_1
+                    iload_2
+                    isub
+                    iflt less_0
+                    iconst_0
+                    goto end_0
+                less_0:
+                    iconst_1
+                end_0:
+                    ireturn
+                """);
+
+        assertTrue(result.getErrors().toString(), result.getErrors().isEmpty());
+        assertEquals(2, result.getMaxStack());
+    }
+
+    @Test
+    public void countsCallArgumentsAndResult() {
+        var result = StackAnalyzer.analyzeFragment("""
+                aload_0
+                iload_1
+                aload_2
+                aload_3
+                invokevirtual Foo/bar(I[ILjava/lang/String;)I
+                """);
+
+        assertTrue(result.getErrors().toString(), result.getErrors().isEmpty());
+        assertEquals(4, result.getMaxStack());
+        assertEquals(1, result.getExitDepth());
+
+        var staticCall = StackAnalyzer.analyzeFragment("""
+                iload_1
+                invokestatic io/println(I)V
+                """);
+
+        assertEquals(0, staticCall.getExitDepth());
+    }
+
+    @Test
+    public void reportsInconsistentDepthAtLabel() {
+        var result = StackAnalyzer.analyzeMethod("""
+                    iload_1
+                    ifeq skip
+                    iconst_1
+                skip:
+                    return
+                """);
+
+        assertEquals(1, result.getErrors().size());
+        assertTrue(result.getErrors().get(0), result.getErrors().get(0).contains("'skip'"));
+    }
+
+    @Test
+    public void reportsUnderflowAndUndefinedLabels() {
+        var result = StackAnalyzer.analyzeMethod("""
+                    iconst_1
+                    iadd
+                    goto nowhere
+                """);
+
+        assertEquals(1, result.getErrors().size());
+        assertTrue(result.getErrors().get(0), result.getErrors().get(0).contains("iadd"));
+
+        var missingLabel = StackAnalyzer.analyzeMethod("goto nowhere");
+        assertTrue(missingLabel.getErrors().get(0).contains("nowhere"));
+
+        // Fragments may branch to labels of the rest of the method
+        assertTrue(StackAnalyzer.analyzeFragment("goto nowhere").getErrors().isEmpty());
+    }
+
+    @Test
+    public void generatorUsesExactStackLimitWithoutPops() {
+        var ollirResult = new OllirResult(SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/limits/LocalLimits.ollir"),
+                Collections.emptyMap());
+        var generator = new JasminGenerator(ollirResult);
+        var code = generator.build();
+
+        assertTrue(generator.getReports().stream().noneMatch(report -> report.getType() == ReportType.ERROR));
+        assertTrue(code, code.contains(".limit stack 3"));
+    }
+}
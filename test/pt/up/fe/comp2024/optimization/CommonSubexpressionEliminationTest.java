@@ -0,0 +1,186 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import org.specs.comp.ollir.ArrayOperand;
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.BinaryOpInstruction;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.Operand;
+import org.specs.comp.ollir.SingleOpInstruction;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.backend.ClassFileBackend;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CommonSubexpressionEliminationTest {
+
+    private static Method getFoo(String methodBody) {
+        var method = OptimizationTestUtils.getFoo("Reuse", "i.i32, j.i32, w.i32, n.i32, a.array.i32", methodBody);
+        new CommonSubexpressionElimination(method).run();
+
+        return method;
+    }
+
+    private static AssignInstruction getAssign(Method method, String dest) {
+        return method.getInstructions().stream()
+                .filter(instruction -> instruction instanceof AssignInstruction assign
+                        && ((Operand) assign.getDest()).getName().equals(dest))
+                .map(AssignInstruction.class::cast)
+                .findFirst().orElseThrow();
+    }
+
+    private static void assertCopyOf(String source, AssignInstruction assign) {
+        assertTrue(assign.toString(), assign.getRhs() instanceof SingleOpInstruction singleOp
+                && singleOp.getSingleOperand() instanceof Operand operand
+                && operand.getName().equals(source));
+    }
+
+    private static void assertComputed(AssignInstruction assign) {
+        assertFalse(assign.toString(), assign.getRhs() instanceof SingleOpInstruction singleOp
+                && singleOp.getSingleOperand() instanceof Operand
+                && !(singleOp.getSingleOperand() instanceof ArrayOperand));
+    }
+
+    @Test
+    public void reusesWithinBlock() {
+        var foo = getFoo("""
+                t1.i32 :=.i32 i.i32 *.i32 w.i32;
+                t2.i32 :=.i32 t1.i32 +.i32 j.i32;
+                t3.i32 :=.i32 w.i32 *.i32 i.i32;
+                t4.i32 :=.i32 t3.i32 +.i32 j.i32;
+                ret.i32 t4.i32;
+                """);
+
+        assertCopyOf("t1", getAssign(foo, "t3"));
+
+        // 't3' is a copy of 't1', so 't3 + j' is 't1 + j'
+        assertCopyOf("t2", getAssign(foo, "t4"));
+    }
+
+    @Test
+    public void assignedOperandsAreNotReused() {
+        var foo = getFoo("""
+                t1.i32 :=.i32 i.i32 +.i32 1.i32;
+                i.i32 :=.i32 5.i32;
+                t2.i32 :=.i32 i.i32 +.i32 1.i32;
+                t3.i32 :=.i32 t2.i32 +.i32 t1.i32;
+                ret.i32 t3.i32;
+                """);
+
+        assertComputed(getAssign(foo, "t2"));
+    }
+
+    @Test
+    public void reusesThroughDominators() {
+        var foo = getFoo("""
+                t1.i32 :=.i32 i.i32 *.i32 w.i32;
+                if (i.i32 <.bool n.i32) goto Else;
+                t2.i32 :=.i32 i.i32 *.i32 w.i32;
+                j.i32 :=.i32 1.i32;
+                goto End;
+                Else:
+                t2.i32 :=.i32 w.i32 *.i32 i.i32;
+                End:
+                t3.i32 :=.i32 i.i32 *.i32 w.i32;
+                t4.i32 :=.i32 i.i32 +.i32 j.i32;
+                ret.i32 t4.i32;
+                """);
+
+        assertEquals(3, foo.getInstructions().stream()
+                .filter(instruction -> instruction instanceof AssignInstruction assign
+                        && assign.getRhs() instanceof SingleOpInstruction singleOp
+                        && singleOp.getSingleOperand() instanceof Operand operand
+                        && operand.getName().equals("t1"))
+                .count());
+
+        // The label moves to the copy that replaced the instruction
+        assertCopyOf("t1", (AssignInstruction) foo.getLabels().get("Else"));
+    }
+
+    @Test
+    public void variablesAssignedInLoopsAreNotReused() {
+        var foo = getFoo("""
+                t0.i32 :=.i32 i.i32 *.i32 2.i32;
+                t1.i32 :=.i32 n.i32 *.i32 2.i32;
+                Loop:
+                t2.i32 :=.i32 n.i32 *.i32 2.i32;
+                t3.i32 :=.i32 i.i32 *.i32 2.i32;
+                i.i32 :=.i32 i.i32 +.i32 1.i32;
+                if (i.i32 <.bool t2.i32) goto Loop;
+                t4.i32 :=.i32 t3.i32 +.i32 t0.i32;
+                ret.i32 t4.i32;
+                """);
+
+        assertCopyOf("t1", getAssign(foo, "t2"));
+        assertTrue(getAssign(foo, "t3").getRhs() instanceof BinaryOpInstruction);
+    }
+
+    @Test
+    public void storesAndCallsInvalidateArrayLoads() {
+        var reused = getFoo("""
+                t1.i32 :=.i32 a[i.i32].i32;
+                t2.i32 :=.i32 arraylength(a.array.i32).i32;
+                t3.i32 :=.i32 a[i.i32].i32;
+                t4.i32 :=.i32 arraylength(a.array.i32).i32;
+                ret.i32 t4.i32;
+                """);
+
+        assertCopyOf("t1", getAssign(reused, "t3"));
+        assertCopyOf("t2", getAssign(reused, "t4"));
+
+        var stored = getFoo("""
+                t1.i32 :=.i32 a[i.i32].i32;
+                a[j.i32].i32 :=.i32 3.i32;
+                t2.i32 :=.i32 a[i.i32].i32;
+                t3.i32 :=.i32 invokevirtual(this, "bar").i32;
+                t4.i32 :=.i32 a[i.i32].i32;
+                ret.i32 t4.i32;
+                """);
+
+        assertComputed(getAssign(stored, "t2"));
+        assertComputed(getAssign(stored, "t4"));
+    }
+
+    @Test
+    public void optimizedProgramRuns() {
+        var ollirCode = """
+                import io;
+                Sums {
+                    .construct Sums().V {
+                        invokespecial(this, "<init>").V;
+                    }
+
+                    .method public static main(args.array.String).V {
+                        a.array.i32 :=.array.i32 new(array, 4.i32).array.i32;
+                        i.i32 :=.i32 0.i32;
+                        s.i32 :=.i32 0.i32;
+                        Loop:
+                        t1.i32 :=.i32 i.i32 *.i32 3.i32;
+                        a[i.i32].i32 :=.i32 t1.i32;
+                        t2.i32 :=.i32 a[i.i32].i32;
+                        t3.i32 :=.i32 3.i32 *.i32 i.i32;
+                        a[i.i32].i32 :=.i32 t3.i32 +.i32 1.i32;
+                        t4.i32 :=.i32 a[i.i32].i32;
+                        t5.i32 :=.i32 t2.i32 +.i32 t4.i32;
+                        s.i32 :=.i32 s.i32 +.i32 t5.i32;
+                        i.i32 :=.i32 i.i32 +.i32 1.i32;
+                        t6.i32 :=.i32 arraylength(a.array.i32).i32;
+                        if (i.i32 <.bool t6.i32) goto Loop;
+                        invokestatic(io, "println", s.i32).V;
+                        ret.V;
+                    }
+                }
+                """;
+
+        var expected = new JasminBackendImpl().toJasmin(new OllirResult(ollirCode, Collections.emptyMap())).run();
+        var optimized = new JmmOptimizationImpl().optimize(new OllirResult(ollirCode, Map.of("optimize", "true")));
+
+        assertEquals("40", expected.trim());
+        assertEquals(expected, new JasminBackendImpl().toJasmin(optimized).run());
+        assertEquals(expected, new ClassFileBackend().toClassFile(optimized).run());
+    }
+}
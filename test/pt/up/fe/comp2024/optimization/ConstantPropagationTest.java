@@ -0,0 +1,137 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static pt.up.fe.comp2024.optimization.OptimizationTestUtils.PROGRAMS;
+import static pt.up.fe.comp2024.optimization.OptimizationTestUtils.RESOURCES;
+
+public class ConstantPropagationTest {
+
+    private static JmmSemanticsResult optimize(String methodBody) {
+        var code = """
+                class Prop {
+                    public int foo(int n) {
+                        int a;
+                        int b;
+                        int i;
+                        boolean c;
+                %s
+                    }
+                    public static void main(String[] args) {
+                    }
+                }
+                """.formatted(methodBody);
+
+        var config = new HashMap<String, String>();
+        config.put("optimize", "true");
+
+        var semanticsResult = new JmmAnalysisImpl().semanticAnalysis(new JmmParserImpl().parse(code, config));
+        return new JmmOptimizationImpl().optimize(semanticsResult);
+    }
+
+    private static JmmNode getReturned(JmmSemanticsResult semanticsResult) {
+        return semanticsResult.getRootNode().getDescendants(Kind.RETURN_STMT).get(0).getJmmChild(0);
+    }
+
+    private static void assertLiteral(String value, JmmNode expr) {
+        assertTrue(expr.toTree(), Kind.check(expr, Kind.INTEGER_LITERAL_EXPR, Kind.BOOLEAN_LITERAL_EXPR));
+        assertEquals(value, expr.get("value"));
+    }
+
+    @Test
+    public void propagatesIntoReturn() {
+        var returned = getReturned(optimize("a = 10; return a;"));
+
+        assertLiteral("10", returned);
+    }
+
+    @Test
+    public void foldsArithmetic() {
+        var returned = getReturned(optimize("a = 2; b = a * 3 + (a - 8) / 2; return b;"));
+
+        assertLiteral("3", returned);
+    }
+
+    @Test
+    public void keepsDivisionByZero() {
+        var returned = getReturned(optimize("a = 0; return 1 / a;"));
+
+        assertTrue(returned.toTree(), Kind.MULTIPLICATIVE_EXPR.check(returned));
+        assertLiteral("0", returned.getJmmChild(1));
+    }
+
+    @Test
+    public void joinsIfBranches() {
+        var different = getReturned(optimize("if (n < 1) { a = 1; } else { a = 2; } return a;"));
+        assertTrue(different.toTree(), Kind.VAR_REF_EXPR.check(different));
+
+        var same = getReturned(optimize("if (n < 1) { a = 3; } else { a = 3; } return a;"));
+        assertLiteral("3", same);
+    }
+
+    @Test
+    public void variablesChangedInLoopsAreNotConstant() {
+        var semanticsResult = optimize("a = 10; i = 0; while (i < a) { i = i + 1; } return i * a;");
+
+        var condition = semanticsResult.getRootNode().getDescendants(Kind.WHILE_STMT).get(0).getJmmChild(0);
+        assertTrue(Kind.VAR_REF_EXPR.check(condition.getJmmChild(0)));
+        assertLiteral("10", condition.getJmmChild(1));
+
+        var returned = getReturned(semanticsResult);
+        assertTrue(Kind.VAR_REF_EXPR.check(returned.getJmmChild(0)));
+        assertLiteral("10", returned.getJmmChild(1));
+    }
+
+    @Test
+    public void valuesAssignedLaterInLoopsAreNotPropagatedBack() {
+        var semanticsResult = optimize("a = 1; i = 0; while (i < n) { b = a; a = 2; i = i + 1; } return b;");
+
+        var copy = semanticsResult.getRootNode().getDescendants(Kind.ASSIGNMENT_EXPR).get(2);
+        assertTrue(copy.toTree(), Kind.VAR_REF_EXPR.check(copy.getJmmChild(1)));
+    }
+
+    @Test
+    public void foldsBooleans() {
+        var returned = getReturned(optimize("c = 1 < 2 && !(3 < 2); if (c) { a = 1; } else { a = 1; } return a;"));
+        assertLiteral("1", returned);
+
+        var condition = optimize("c = 2 < 1; if (c && n < 2) { a = 1; } else { a = 2; } return a;").getRootNode()
+                .getDescendants(Kind.IF_ELSE_STMT).get(0).getJmmChild(0);
+        assertLiteral("false", condition);
+    }
+
+    @Test
+    public void onlyRunsWithOptimizeFlag() {
+        var config = Map.of("optimize", "false");
+        var semanticsResult = new JmmAnalysisImpl().semanticAnalysis(new JmmParserImpl().parse(
+                "class A { public int foo() { int a; a = 1; return a; } }", config));
+
+        var returned = getReturned(new JmmOptimizationImpl().optimize(semanticsResult));
+        assertTrue(Kind.VAR_REF_EXPR.check(returned));
+    }
+
+    @Test
+    public void optimizedProgramsRun() {
+        // The AST is lowered straight to OLLIR, which covers every one of these programs
+        for (var program : PROGRAMS) {
+            var code = SpecsIo.getResource(RESOURCES + program + ".jmm");
+
+            var expected = TestUtils.backend(code, Map.of("directLowering", "true")).run();
+            var optimized = TestUtils.backend(code, Map.of("directLowering", "true", "optimize", "true")).run();
+
+            assertFalse(program, expected.isBlank());
+            assertEquals(program, expected, optimized);
+        }
+    }
+}
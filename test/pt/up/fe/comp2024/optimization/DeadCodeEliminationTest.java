@@ -0,0 +1,157 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.CallInstruction;
+import org.specs.comp.ollir.GotoInstruction;
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.backend.ClassFileBackend;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static pt.up.fe.comp2024.optimization.OptimizationTestUtils.PROGRAMS;
+import static pt.up.fe.comp2024.optimization.OptimizationTestUtils.RESOURCES;
+
+public class DeadCodeEliminationTest {
+
+    private static OllirResult optimize(String methodBody) {
+        var ollirCode = """
+                Dead {
+                    .construct Dead().V {
+                        invokespecial(this, "<init>").V;
+                    }
+
+                    .method public foo(n.i32).i32 {
+                %s
+                    }
+
+                    .method public bar().i32 {
+                        ret.i32 1.i32;
+                    }
+                }
+                """.formatted(methodBody);
+
+        return new JmmOptimizationImpl().optimize(new OllirResult(ollirCode, Map.of("optimize", "true")));
+    }
+
+    private static Method getFoo(OllirResult ollirResult) {
+        return ollirResult.getOllirClass().getMethods().stream()
+                .filter(method -> method.getMethodName().equals("foo"))
+                .findFirst().orElseThrow();
+    }
+
+    @Test
+    public void removesUnusedTemporaries() {
+        var ollirResult = optimize("""
+                t1.i32 :=.i32 n.i32 +.i32 1.i32;
+                t2.i32 :=.i32 t1.i32 *.i32 2.i32;
+                t3.i32 :=.i32 t2.i32;
+                a.i32 :=.i32 n.i32;
+                ret.i32 a.i32;
+                """);
+
+        // The code the class was parsed from is stale, the printed class is the optimized one
+        assertEquals("", ollirResult.getOllirCode());
+        assertFalse(OllirPrinter.getOllirCode(ollirResult).contains("t1.i32"));
+
+        var foo = getFoo(ollirResult);
+        assertEquals(2, foo.getInstructions().size());
+        assertFalse(foo.getVarTable().containsKey("t1"));
+        assertFalse(foo.getVarTable().containsKey("t3"));
+
+        // 'a' takes the slot after 'n'
+        assertEquals(2, foo.getVarTable().get("a").getVirtualReg());
+
+        // 't1 * 2' is also turned into a shift
+        var logs = ollirResult.getReports().stream()
+                .filter(report -> report.getType() == ReportType.LOG && report.getMessage().contains("removed"))
+                .toList();
+        assertEquals(1, logs.size());
+        assertEquals("Method 'foo': removed 3 instructions and 3 locals", logs.get(0).getMessage());
+    }
+
+    @Test
+    public void keepsCallsAndDivisions() {
+        var foo = getFoo(optimize("""
+                t1.i32 :=.i32 invokevirtual(this, "bar").i32;
+                t2.i32 :=.i32 n.i32 /.i32 0.i32;
+                ret.i32 n.i32;
+                """));
+
+        assertEquals(3, foo.getInstructions().size());
+        assertTrue(((AssignInstruction) foo.getInstructions().get(0)).getRhs() instanceof CallInstruction);
+    }
+
+    @Test
+    public void removesCodeAfterConstantBranches() {
+        var foo = getFoo(optimize("""
+                if (0.bool) goto Else;
+                a.i32 :=.i32 1.i32;
+                goto End;
+                Else:
+                a.i32 :=.i32 2.i32;
+                End:
+                ret.i32 a.i32;
+                """));
+
+        // Only 'a := 1' and the return are left
+        assertEquals(2, foo.getInstructions().size());
+        assertSame(foo.getInstructions().get(1), foo.getLabels().get("End"));
+        assertFalse(foo.getLabels().containsKey("Else"));
+
+        var taken = getFoo(optimize("""
+                if (1.bool) goto Else;
+                a.i32 :=.i32 1.i32;
+                goto End;
+                Else:
+                a.i32 :=.i32 2.i32;
+                End:
+                ret.i32 a.i32;
+                """));
+
+        assertEquals(2, taken.getInstructions().size());
+        assertFalse(taken.getInstructions().get(0) instanceof GotoInstruction);
+    }
+
+    @Test
+    public void movesLabelsOfRemovedStores() {
+        var foo = getFoo(optimize("""
+                i.i32 :=.i32 0.i32;
+                Loop:
+                t.i32 :=.i32 i.i32 +.i32 5.i32;
+                i.i32 :=.i32 i.i32 +.i32 1.i32;
+                if (i.i32 <.bool n.i32) goto Loop;
+                ret.i32 i.i32;
+                """));
+
+        assertEquals(4, foo.getInstructions().size());
+        assertSame(foo.getInstructions().get(1), foo.getLabels().get("Loop"));
+    }
+
+    @Test
+    public void onlyRunsWithOptimizeFlag() {
+        var ollirResult = new JmmOptimizationImpl().optimize(new OllirResult(SpecsIo.getResource(RESOURCES
+                + "arrays/ArrayInit.ollir"), Collections.emptyMap()));
+
+        assertTrue(ollirResult.getReports().isEmpty());
+    }
+
+    @Test
+    public void optimizedProgramsRun() {
+        for (var program : PROGRAMS) {
+            var ollirCode = SpecsIo.getResource(RESOURCES + program + ".ollir");
+
+            var expected = new JasminBackendImpl().toJasmin(new OllirResult(ollirCode, Collections.emptyMap())).run();
+            var optimized = new JmmOptimizationImpl().optimize(new OllirResult(ollirCode, Map.of("optimize", "true")));
+
+            assertEquals(program, expected, new JasminBackendImpl().toJasmin(optimized).run());
+            assertEquals(program, expected, new ClassFileBackend().toClassFile(optimized).run());
+        }
+    }
+}
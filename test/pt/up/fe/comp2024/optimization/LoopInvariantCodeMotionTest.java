@@ -0,0 +1,225 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.CallInstruction;
+import org.specs.comp.ollir.CallType;
+import org.specs.comp.ollir.GotoInstruction;
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.Operand;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp2024.backend.ClassFileBackend;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static pt.up.fe.comp2024.optimization.OptimizationTestUtils.getMethod;
+
+public class LoopInvariantCodeMotionTest {
+
+    private static final String SCAN = """
+            import io;
+            class Scan {
+                public static void main(String[] args) {
+                    int[] a;
+                    int i;
+                    int s;
+                    a = new int[5];
+                    i = 0;
+                    s = 0;
+                    while (i < a.length) {
+                        a[i] = a[i] + i * 2;
+                        s = s + a[i];
+                        i = i + 1;
+                    }
+                    io.println(s);
+                }
+            }
+            """;
+
+    private static Method getFoo(String methodBody) {
+        var method = OptimizationTestUtils.getFoo("Hoist", "i.i32, n.i32, w.i32, a.array.i32", methodBody);
+        new LoopInvariantCodeMotion(method).run();
+
+        return method;
+    }
+
+    private static int indexOf(Method method, String dest) {
+        var instructions = method.getInstructions();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i) instanceof AssignInstruction assign
+                    && ((Operand) assign.getDest()).getName().equals(dest)) {
+                return i;
+            }
+        }
+
+        throw new AssertionError("No assignment to " + dest);
+    }
+
+    private static int indexOfLabel(Method method, String label) {
+        return method.getInstructions().indexOf(method.getLabels().get(label));
+    }
+
+    @Test
+    public void hoistsInvariantArithmetic() {
+        var foo = getFoo("""
+                s.i32 :=.i32 0.i32;
+                Loop:
+                t1.i32 :=.i32 w.i32 *.i32 2.i32;
+                t2.i32 :=.i32 t1.i32 +.i32 n.i32;
+                s.i32 :=.i32 s.i32 +.i32 t2.i32;
+                i.i32 :=.i32 i.i32 +.i32 1.i32;
+                if (i.i32 <.bool n.i32) goto Loop;
+                ret.i32 s.i32;
+                """);
+
+        int loop = indexOfLabel(foo, "Loop");
+        assertTrue(indexOf(foo, "t1") < loop);
+        assertTrue(indexOf(foo, "t2") < loop);
+        assertTrue(indexOf(foo, "t1") < indexOf(foo, "t2"));
+        assertTrue(indexOf(foo, "s") < indexOf(foo, "t1"));
+        assertEquals(loop, indexOf(foo, "s") + 3);
+    }
+
+    @Test
+    public void keepsVariantAssignments() {
+        var foo = getFoo("""
+                s.i32 :=.i32 0.i32;
+                Loop:
+                t1.i32 :=.i32 i.i32 *.i32 2.i32;
+                t2.i32 :=.i32 w.i32 *.i32 2.i32;
+                s.i32 :=.i32 s.i32 +.i32 t2.i32;
+                t2.i32 :=.i32 s.i32 +.i32 t1.i32;
+                i.i32 :=.i32 i.i32 +.i32 1.i32;
+                if (i.i32 <.bool n.i32) goto Loop;
+                ret.i32 t2.i32;
+                """);
+
+        // 't1' reads 'i', and 't2' is assigned twice in the loop
+        assertEquals(1, foo.getInstructions().indexOf(foo.getLabels().get("Loop")));
+        assertEquals(1, indexOf(foo, "t1"));
+    }
+
+    @Test
+    public void keepsValuesThatLeaveLoopsThatDoNotRun() {
+        var foo = getFoo("""
+                t1.i32 :=.i32 0.i32;
+                Loop:
+                if (n.i32 <.bool i.i32) goto End;
+                t1.i32 :=.i32 w.i32 *.i32 2.i32;
+                i.i32 :=.i32 i.i32 +.i32 1.i32;
+                goto Loop;
+                End:
+                ret.i32 t1.i32;
+                """);
+
+        // 't1' is still 0 when the loop ends before its first iteration
+        assertEquals(1, indexOfLabel(foo, "Loop"));
+        assertEquals(6, foo.getInstructions().size());
+    }
+
+    @Test
+    public void storesAndCallsKeepLoadsInTheLoop() {
+        var stored = getFoo("""
+                s.i32 :=.i32 0.i32;
+                Loop:
+                t1.i32 :=.i32 a[w.i32].i32;
+                t2.i32 :=.i32 getfield(this, f.i32).i32;
+                a[i.i32].i32 :=.i32 t1.i32;
+                s.i32 :=.i32 s.i32 +.i32 t2.i32;
+                i.i32 :=.i32 i.i32 +.i32 1.i32;
+                if (i.i32 <.bool n.i32) goto Loop;
+                ret.i32 s.i32;
+                """);
+
+        assertTrue(indexOf(stored, "t1") >= indexOfLabel(stored, "Loop"));
+        assertTrue(indexOf(stored, "t2") >= indexOfLabel(stored, "Loop"));
+
+        var called = getFoo("""
+                s.i32 :=.i32 0.i32;
+                Loop:
+                t1.i32 :=.i32 invokevirtual(this, "bar").i32;
+                t2.i32 :=.i32 getfield(this, f.i32).i32;
+                s.i32 :=.i32 s.i32 +.i32 t2.i32;
+                i.i32 :=.i32 i.i32 +.i32 t1.i32;
+                if (i.i32 <.bool n.i32) goto Loop;
+                ret.i32 s.i32;
+                """);
+
+        assertTrue(indexOf(called, "t2") >= indexOfLabel(called, "Loop"));
+
+        var read = getFoo("""
+                s.i32 :=.i32 0.i32;
+                Loop:
+                t1.i32 :=.i32 a[w.i32].i32;
+                t2.i32 :=.i32 getfield(this, f.i32).i32;
+                s.i32 :=.i32 s.i32 +.i32 t2.i32;
+                s.i32 :=.i32 s.i32 +.i32 t1.i32;
+                i.i32 :=.i32 i.i32 +.i32 1.i32;
+                if (i.i32 <.bool n.i32) goto Loop;
+                ret.i32 s.i32;
+                """);
+
+        assertTrue(indexOf(read, "t1") < indexOfLabel(read, "Loop"));
+        assertTrue(indexOf(read, "t2") < indexOfLabel(read, "Loop"));
+    }
+
+    @Test
+    public void redirectsJumpsIntoTheLoop() {
+        var foo = getFoo("""
+                s.i32 :=.i32 0.i32;
+                goto Cond;
+                Body:
+                s.i32 :=.i32 s.i32 +.i32 i.i32;
+                i.i32 :=.i32 i.i32 +.i32 1.i32;
+                Cond:
+                t1.i32 :=.i32 arraylength(a.array.i32).i32;
+                if (i.i32 <.bool t1.i32) goto Body;
+                ret.i32 s.i32;
+                """);
+
+        // The entry jumps over the body, so the length is read in a preheader with a label of its own
+        var entry = (GotoInstruction) foo.getInstructions().get(1);
+        assertNotEquals("Cond", entry.getLabel());
+        assertSame(foo.getInstructions().get(indexOf(foo, "t1")), foo.getLabels().get(entry.getLabel()));
+        assertTrue(indexOf(foo, "t1") > indexOfLabel(foo, "Body"));
+
+        // The body jumps over the preheader to the condition
+        var back = (GotoInstruction) foo.getInstructions().get(indexOf(foo, "t1") - 1);
+        assertSame(foo.getInstructions().get(indexOf(foo, "t1") + 1), foo.getLabels().get(back.getLabel()));
+    }
+
+    @Test
+    public void scanLoopsReadTheLengthOnce() {
+        var config = Map.of("directLowering", "true", "optimize", "true");
+        var ollirResult = TestUtils.optimize(SCAN, config);
+        var sum = getMethod(ollirResult, "main");
+
+        var instructions = sum.getInstructions();
+        int length = -1;
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i) instanceof AssignInstruction assign
+                    && assign.getRhs() instanceof CallInstruction call
+                    && call.getInvocationType() == CallType.arraylength) {
+                length = i;
+            }
+        }
+
+        // Nothing before the arraylength call jumps back to it
+        int lengthIndex = length;
+        assertTrue(OllirPrinter.getOllirCode(ollirResult), lengthIndex >= 0);
+        for (Instruction instruction : instructions.subList(lengthIndex, instructions.size())) {
+            if (instruction instanceof GotoInstruction gotoInstruction) {
+                assertTrue(OllirPrinter.getOllirCode(ollirResult),
+                        instructions.indexOf(sum.getLabels().get(gotoInstruction.getLabel())) > lengthIndex);
+            }
+        }
+
+        var expected = TestUtils.backend(SCAN, Map.of("directLowering", "true")).run();
+        assertEquals("20", expected.trim());
+        assertEquals(expected, new JasminBackendImpl().toJasmin(ollirResult).run());
+        assertEquals(expected, new ClassFileBackend().toClassFile(ollirResult).run());
+    }
+}
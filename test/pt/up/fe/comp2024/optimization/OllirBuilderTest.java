@@ -0,0 +1,318 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.BinaryOpInstruction;
+import org.specs.comp.ollir.CondBranchInstruction;
+import org.specs.comp.ollir.GotoInstruction;
+import org.specs.comp.ollir.OperationType;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static pt.up.fe.comp2024.optimization.OptimizationTestUtils.PROGRAMS;
+import static pt.up.fe.comp2024.optimization.OptimizationTestUtils.RESOURCES;
+
+public class OllirBuilderTest {
+
+    private static JmmSemanticsResult analyse(String code) {
+        return analyse(code, new HashMap<>());
+    }
+
+    private static JmmSemanticsResult analyse(String code, Map<String, String> config) {
+        config.put("directLowering", "true");
+
+        var parserResult = new JmmParserImpl().parse(code, config);
+        return new JmmAnalysisImpl().semanticAnalysis(parserResult);
+    }
+
+    private static OllirResult parseOllir(String ollirCode) {
+        return new OllirResult(ollirCode, Collections.emptyMap());
+    }
+
+    private static String toJasmin(OllirResult ollirResult) {
+        return new JasminBackendImpl().toJasmin(ollirResult).getJasminCode();
+    }
+
+    private static String run(OllirResult ollirResult) {
+        return new JasminBackendImpl().toJasmin(ollirResult).run();
+    }
+
+    @Test
+    public void directLoweringRunsLikeReference() {
+        for (var program : PROGRAMS) {
+            var semanticsResult = analyse(SpecsIo.getResource(RESOURCES + program + ".jmm"));
+            var direct = new JmmOptimizationImpl().toOllir(semanticsResult);
+
+            // Empty code means the class was built without going through OLLIR text
+            assertEquals(program, "", direct.getOllirCode());
+
+            var reference = parseOllir(SpecsIo.getResource(RESOURCES + program + ".ollir"));
+            var expected = run(reference);
+            assertFalse(program, expected.isBlank());
+            assertEquals(program, expected, run(direct));
+        }
+    }
+
+    @Test
+    public void printedClassParsesBack() {
+        for (var program : PROGRAMS) {
+            var direct = new JmmOptimizationImpl().toOllir(analyse(SpecsIo.getResource(RESOURCES + program + ".jmm")));
+
+            var printed = OllirPrinter.getOllirCode(direct);
+            assertTrue(program, printed.contains(".method public static main"));
+
+            assertEquals(program, toJasmin(direct), toJasmin(parseOllir(printed)));
+        }
+    }
+
+    @Test
+    public void printerRoundTrip() {
+        for (var program : PROGRAMS) {
+            var reference = parseOllir(SpecsIo.getResource(RESOURCES + program + ".ollir"));
+            var printed = parseOllir(OllirPrinter.print(reference.getOllirClass()));
+
+            assertEquals(program, toJasmin(reference), toJasmin(printed));
+        }
+    }
+
+    @Test
+    public void shortCircuitAnd() {
+        var semanticsResult = analyse("""
+                import io;
+                class Lazy {
+                    public boolean fail() {
+                        io.println(0);
+                        return false;
+                    }
+
+                    public static void main(String[] args) {
+                        Lazy lazy;
+                        boolean b;
+                        lazy = new Lazy();
+                        b = false && lazy.fail();
+                        io.println(1);
+                    }
+                }
+                """);
+        var direct = new JmmOptimizationImpl().toOllir(semanticsResult);
+
+        assertEquals("1", run(direct).trim());
+    }
+
+    @Test
+    public void shortCircuitConditions() {
+        var semanticsResult = analyse("""
+                import io;
+                class Guard {
+                    public boolean check(int x) {
+                        io.println(x);
+                        return x < 3;
+                    }
+
+                    public static void main(String[] args) {
+                        Guard g;
+                        int i;
+                        boolean b;
+                        g = new Guard();
+                        i = 0;
+                        while (i < 5 && g.check(i)) {
+                            i = i + 1;
+                        }
+                        b = i < 3 || g.check(10);
+                        if (b || g.check(20)) {
+                            io.println(0);
+                        } else {
+                            io.println(1);
+                        }
+                        if (!(i < 3) || g.check(30)) {
+                            io.println(2);
+                        } else {
+                            io.println(0);
+                        }
+                        if (i < 3 && g.check(40)) {
+                            io.println(0);
+                        } else {
+                            io.println(3);
+                        }
+                    }
+                }
+                """);
+        var direct = new JmmOptimizationImpl().toOllir(semanticsResult);
+
+        assertEquals("0\n1\n2\n3\n10\n20\n1\n2\n3", run(direct).trim().replace("\r\n", "\n"));
+
+        // Conditions jump on their comparisons, only the one stored in 'b' computes a boolean
+        var main = direct.getOllirClass().getMethods().stream()
+                .filter(method -> method.getMethodName().equals("main"))
+                .findFirst().orElseThrow();
+        var comparisons = main.getInstructions().stream()
+                .filter(instruction -> instruction instanceof AssignInstruction assign
+                        && assign.getRhs() instanceof BinaryOpInstruction binaryOp
+                        && binaryOp.getOperation().getOpType() != OperationType.ADD)
+                .count();
+        assertEquals(OllirPrinter.getOllirCode(direct), 1, comparisons);
+    }
+
+    @Test
+    public void whileLoopsTestTheConditionAtTheBottom() {
+        var semanticsResult = analyse("""
+                import io;
+                class Loops {
+                    public static void main(String[] args) {
+                        int i;
+                        int s;
+                        i = 0;
+                        s = 0;
+                        while (i < 10) {
+                            s = s + i;
+                            i = i + 1;
+                        }
+                        io.println(s);
+                        while (i < 5) {
+                            io.println(0);
+                        }
+                        io.println(i);
+                    }
+                }
+                """);
+        var direct = new JmmOptimizationImpl().toOllir(semanticsResult);
+
+        assertEquals("45\n10", run(direct).trim().replace("\r\n", "\n"));
+
+        // A guard skips each loop, and the body branches back to itself without any goto
+        var main = direct.getOllirClass().getMethods().stream()
+                .filter(method -> method.getMethodName().equals("main"))
+                .findFirst().orElseThrow();
+        var printed = OllirPrinter.getOllirCode(direct);
+        assertTrue(printed, main.getInstructions().stream().noneMatch(GotoInstruction.class::isInstance));
+        assertEquals(printed, 4, main.getInstructions().stream().filter(CondBranchInstruction.class::isInstance).count());
+    }
+
+    @Test
+    public void whileLoopsKeepTheConditionAtTheTopWithoutRotation() {
+        var config = new HashMap<String, String>();
+        config.put("rotateLoops", "false");
+        var semanticsResult = analyse("""
+                import io;
+                class Loops {
+                    public static void main(String[] args) {
+                        int i;
+                        int s;
+                        i = 0;
+                        s = 0;
+                        while (i < 10) {
+                            s = s + i;
+                            i = i + 1;
+                        }
+                        io.println(s);
+                    }
+                }
+                """, config);
+        var direct = new JmmOptimizationImpl().toOllir(semanticsResult);
+
+        assertEquals("45", run(direct).trim());
+
+        // The condition leaves the loop, and the body ends with a goto back to it
+        var main = direct.getOllirClass().getMethods().stream()
+                .filter(method -> method.getMethodName().equals("main"))
+                .findFirst().orElseThrow();
+        var printed = OllirPrinter.getOllirCode(direct);
+        assertEquals(printed, 1, main.getInstructions().stream().filter(GotoInstruction.class::isInstance).count());
+        assertEquals(printed, 1, main.getInstructions().stream().filter(CondBranchInstruction.class::isInstance).count());
+    }
+
+    @Test
+    public void textGeneratorHonorsLoopRotation() {
+        var config = new HashMap<String, String>();
+        config.put("rotateLoops", "false");
+        var semanticsResult = analyse("""
+                import io;
+                class TextLoops {
+                    public static void main(String[] args) {
+                        int i;
+                        int s;
+                        i = 0;
+                        s = 0;
+                        while (i < 10) {
+                            s = s + i;
+                            i = i + 1;
+                        }
+                        io.println(s);
+                    }
+                }
+                """, config);
+
+        for (var rotateLoops : new boolean[]{true, false}) {
+            OptUtils.resetTemps();
+            var ollirCode = new OllirGeneratorVisitor(semanticsResult.getSymbolTable(), rotateLoops)
+                    .visit(semanticsResult.getRootNode());
+            var ollirResult = parseOllir(ollirCode);
+
+            assertEquals(ollirCode, "45", run(ollirResult).trim());
+
+            // Rotated, the loop is entered with a goto to the condition at the bottom. Otherwise, the condition is at
+            // the top, with a goto out of the loop and another back to the condition at the end of the body.
+            var main = ollirResult.getOllirClass().getMethods().stream()
+                    .filter(method -> method.getMethodName().equals("main"))
+                    .findFirst().orElseThrow();
+            var gotos = main.getInstructions().stream().filter(GotoInstruction.class::isInstance).count();
+            assertEquals(ollirCode, rotateLoops ? 1 : 2, gotos);
+            assertEquals(ollirCode, rotateLoops, ollirCode.startsWith("goto whileCond", ollirCode.indexOf("goto")));
+        }
+    }
+
+    @Test
+    public void fallbackIsReported() {
+        var semanticsResult = analyse("""
+                import io;
+                class Fallback {
+                    public static void main(String[] args) {
+                        int[] a;
+                        int n;
+                        a = new int[3];
+                        n = a.size;
+                        io.println(n);
+                    }
+                }
+                """);
+        var ollirResult = new JmmOptimizationImpl().toOllir(semanticsResult);
+
+        // Generated through OLLIR text, with a warning that names what direct lowering does not support
+        assertFalse(ollirResult.getOllirCode().isEmpty());
+        var warnings = ollirResult.getReports().stream()
+                .filter(report -> report.getType() == ReportType.WARNING)
+                .toList();
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0).getMessage(), warnings.get(0).getMessage().contains("field access 'size' (line 7)"));
+    }
+
+    @Test
+    public void unsupportedConstruct() {
+        var semanticsResult = analyse("""
+                import io;
+                class Chained {
+                    public static void main(String[] args) {
+                        io a;
+                        a = new io();
+                        a.foo().bar();
+                    }
+                }
+                """);
+
+        var lowering = new OllirBuilder(semanticsResult.getSymbolTable()).build(semanticsResult.getRootNode());
+
+        assertFalse(lowering.isSupported());
+        assertNull(lowering.classUnit());
+        assertTrue(lowering.unsupported(), lowering.unsupported().startsWith("Direct OLLIR lowering does not support"));
+    }
+}
@@ -0,0 +1,86 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class OllirExprGeneratorVisitorTest {
+
+    private static JmmSemanticsResult analyse(String code) {
+        var parserResult = new JmmParserImpl().parse(code, new HashMap<>());
+        return new JmmAnalysisImpl().semanticAnalysis(parserResult);
+    }
+
+    /**
+     * A call to 'f' nested 'depth' times, e.g. this.f(this.f(a)) for depth 2.
+     */
+    private static JmmSemanticsResult nestedCalls(int depth) {
+        var call = "a";
+        for (int i = 0; i < depth; i++) {
+            call = "this.f(" + call + ")";
+        }
+
+        return analyse("""
+                class Nested {
+                    public int f(int a) {
+                        return a;
+                    }
+
+                    public int g(int a) {
+                        return %s;
+                    }
+
+                    public static void main(String[] args) {
+                    }
+                }
+                """.formatted(call));
+    }
+
+    /**
+     * Lowers the outermost call of {@link #nestedCalls(int)}.
+     *
+     * @return the number of nodes lowered
+     */
+    private static int lowerNestedCalls(int depth) {
+        var semanticsResult = nestedCalls(depth);
+        var outer = semanticsResult.getRootNode().getDescendants(Kind.METHOD_CALL_EXPR).get(0);
+
+        OptUtils.resetTemps();
+        var visitor = new OllirExprGeneratorVisitor(semanticsResult.getSymbolTable());
+        var result = visitor.visit(outer);
+        assertTrue(result.getCode().startsWith("invokevirtual("));
+
+        return visitor.getLoweredCount();
+    }
+
+    @Test(timeout = 30000)
+    public void nestedCallsScaleLinearly() {
+        // Lowering every argument twice would take 2^depth visits
+        var lowered50 = lowerNestedCalls(50);
+        var lowered100 = lowerNestedCalls(100);
+        var lowered200 = lowerNestedCalls(200);
+
+        assertTrue(lowered50 > 50);
+        assertEquals(lowered100 - lowered50, (lowered200 - lowered100) / 2);
+    }
+
+    @Test
+    public void sameNodeLoweredOnce() {
+        var semanticsResult = nestedCalls(3);
+        var outer = semanticsResult.getRootNode().getDescendants(Kind.METHOD_CALL_EXPR).get(0);
+
+        OptUtils.resetTemps();
+        var visitor = new OllirExprGeneratorVisitor(semanticsResult.getSymbolTable());
+        var first = visitor.visit(outer);
+        var lowered = visitor.getLoweredCount();
+
+        assertSame(first, visitor.visit(outer));
+        assertEquals(lowered, visitor.getLoweredCount());
+    }
+}
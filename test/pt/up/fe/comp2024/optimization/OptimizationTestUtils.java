@@ -0,0 +1,66 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Programs and OLLIR classes shared by the tests of the optimizations.
+ */
+class OptimizationTestUtils {
+
+    static final String RESOURCES = "pt/up/fe/comp/cpf/4_jasmin/";
+
+    // Programs with a reference OLLIR file that prints something when run
+    static final List<String> PROGRAMS = List.of(
+            "arithmetic/Arithmetic_and",
+            "arithmetic/Arithmetic_not",
+            "arrays/ArrayInit",
+            "arrays/ComplexArrayAccess",
+            "arrays/VarargsAndArrayInit",
+            "control_flow/IfWhileNested",
+            "control_flow/SimpleIfElseNot",
+            "control_flow/SimpleWhileStat",
+            "control_flow/SwitchStat");
+
+    private OptimizationTestUtils() {
+    }
+
+    /**
+     * Parses a class with a method 'foo' that returns an int, a method 'bar' that returns 1, and an int field 'f'.
+     *
+     * @param className
+     * @param parameters the parameters of 'foo', in OLLIR
+     * @param methodBody the instructions of 'foo', in OLLIR
+     * @return the method 'foo'
+     */
+    static Method getFoo(String className, String parameters, String methodBody) {
+        var ollirCode = """
+                %1$s {
+                    .field public f.i32;
+
+                    .construct %1$s().V {
+                        invokespecial(this, "<init>").V;
+                    }
+
+                    .method public foo(%2$s).i32 {
+                %3$s
+                    }
+
+                    .method public bar().i32 {
+                        ret.i32 1.i32;
+                    }
+                }
+                """.formatted(className, parameters, methodBody);
+
+        return getMethod(new OllirResult(ollirCode, Collections.emptyMap()), "foo");
+    }
+
+    static Method getMethod(OllirResult ollirResult, String name) {
+        return ollirResult.getOllirClass().getMethods().stream()
+                .filter(method -> method.getMethodName().equals(name))
+                .findFirst().orElseThrow();
+    }
+}
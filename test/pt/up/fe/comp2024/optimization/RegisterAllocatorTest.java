@@ -0,0 +1,175 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.backend.ClassFileBackend;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+import static pt.up.fe.comp2024.optimization.OptimizationTestUtils.PROGRAMS;
+import static pt.up.fe.comp2024.optimization.OptimizationTestUtils.RESOURCES;
+
+public class RegisterAllocatorTest {
+
+    private static final String SWAP = """
+            Swap {
+                .construct Swap().V {
+                    invokespecial(this, "<init>").V;
+                }
+
+                .method public sum(n.i32).i32 {
+                    a.i32 :=.i32 n.i32;
+                    b.i32 :=.i32 a.i32;
+                    c.i32 :=.i32 b.i32 +.i32 1.i32;
+                    d.i32 :=.i32 c.i32 *.i32 c.i32;
+                    x.i32 :=.i32 1.i32;
+                    y.i32 :=.i32 2.i32;
+                    z.i32 :=.i32 x.i32 +.i32 y.i32;
+                    e.i32 :=.i32 z.i32 +.i32 d.i32;
+                    f.i32 :=.i32 e.i32 +.i32 x.i32;
+                    ret.i32 f.i32;
+                }
+            }
+            """;
+
+    private static OllirResult allocate(String ollirCode, int registers) {
+        return allocate(ollirCode, registers, "auto");
+    }
+
+    private static OllirResult allocate(String ollirCode, int registers, String allocator) {
+        var config = Map.of("registerAllocation", String.valueOf(registers), "allocator", allocator);
+        return new JmmOptimizationImpl().optimize(new OllirResult(ollirCode, config));
+    }
+
+    /**
+     * A method that adds one to its parameter through the given number of temporaries.
+     */
+    private static String chain(int temporaries) {
+        var body = new StringBuilder("t0.i32 :=.i32 n.i32;\n");
+        for (int i = 1; i < temporaries; i++) {
+            body.append("t").append(i).append(".i32 :=.i32 t").append(i - 1).append(".i32 +.i32 1.i32;\n");
+        }
+        body.append("ret.i32 t").append(temporaries - 1).append(".i32;\n");
+
+        return """
+                Chain {
+                    .construct Chain().V {
+                        invokespecial(this, "<init>").V;
+                    }
+
+                    .method public chain(n.i32).i32 {
+                %s
+                    }
+                }
+                """.formatted(body);
+    }
+
+    private static int getLocals(OllirResult ollirResult, String methodName) {
+        var method = ollirResult.getOllirClass().getMethods().stream()
+                .filter(m -> m.getMethodName().equals(methodName))
+                .findFirst().orElseThrow();
+
+        return method.getVarTable().values().stream().mapToInt(descriptor -> descriptor.getVirtualReg()).max()
+                .orElse(-1) + 1;
+    }
+
+    @Test
+    public void minimizesSlots() {
+        var ollirResult = allocate(SWAP, 0);
+
+        assertTrue(ollirResult.getReports().isEmpty());
+
+        // At most three values are live at the same time, 'd', 'x' and 'y', and 'this' and 'n' are not used by then
+        assertEquals(3, getLocals(ollirResult, "sum"));
+    }
+
+    @Test
+    public void coalescesCopies() {
+        var ollirResult = allocate(SWAP, 0);
+        var varTable = ollirResult.getOllirClass().getMethods().get(1).getVarTable();
+
+        assertEquals(varTable.get("n").getVirtualReg(), varTable.get("a").getVirtualReg());
+        assertEquals(varTable.get("a").getVirtualReg(), varTable.get("b").getVirtualReg());
+    }
+
+    @Test
+    public void copiesInTheSameRegisterGenerateNoCode() {
+        var jasminCode = new JasminBackendImpl().toJasmin(allocate(SWAP, 0)).getJasminCode();
+        var sum = jasminCode.substring(jasminCode.indexOf(".method public sum"));
+
+        // 'a := n' and 'b := a' are gone, the method starts by computing 'c' from 'n'
+        assertTrue(sum, Pattern.compile("\\.limit locals 3\\s+iload_1\\s+iconst_1\\s+iadd").matcher(sum).find());
+    }
+
+    @Test
+    public void reportsMinimumWhenLimitIsTooLow() {
+        var ollirResult = allocate(SWAP, 2);
+
+        var errors = ollirResult.getReports().stream().filter(report -> report.getType() == ReportType.ERROR).toList();
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getMessage(), errors.get(0).getMessage().contains("at least 3"));
+    }
+
+    @Test
+    public void allocatedProgramsRun() {
+        for (var allocator : List.of("coloring", "linear")) {
+            for (var program : PROGRAMS) {
+                var ollirCode = SpecsIo.getResource(RESOURCES + program + ".ollir");
+
+                var expected = new JasminBackendImpl().toJasmin(new OllirResult(ollirCode, Collections.emptyMap()))
+                        .run();
+                var allocated = allocate(ollirCode, 0, allocator);
+
+                assertEquals(allocator + " " + program, expected, new JasminBackendImpl().toJasmin(allocated).run());
+                assertEquals(allocator + " " + program, expected,
+                        new ClassFileBackend().toClassFile(allocated).run());
+            }
+        }
+    }
+
+    @Test
+    public void linearScanMinimizesSlots() {
+        var ollirResult = allocate(SWAP, 0, "linear");
+
+        assertTrue(ollirResult.getReports().isEmpty());
+        assertEquals(3, getLocals(ollirResult, "sum"));
+
+        // Copies take the slot of the variable they copy, when it is no longer live
+        var varTable = ollirResult.getOllirClass().getMethods().get(1).getVarTable();
+        assertEquals(varTable.get("n").getVirtualReg(), varTable.get("b").getVirtualReg());
+    }
+
+    @Test
+    public void linearScanReportsMinimum() {
+        var ollirResult = allocate(SWAP, 2, "linear");
+
+        assertEquals(1, ollirResult.getReports().size());
+        assertTrue(ollirResult.getReports().get(0).getMessage().contains("at least 3"));
+    }
+
+    @Test
+    public void autoUsesLinearScanForLargeMethods() {
+        var small = new OllirResult(chain(10), Collections.emptyMap()).getOllirClass().getMethod(1);
+        var large = new OllirResult(chain(RegisterAllocator.LINEAR_SCAN_THRESHOLD + 1), Collections.emptyMap())
+                .getOllirClass().getMethod(1);
+
+        assertTrue(RegisterAllocator.of(small, "auto") instanceof GraphColoringAllocator);
+        assertTrue(RegisterAllocator.of(large, "auto") instanceof LinearScanAllocator);
+        assertTrue(RegisterAllocator.of(large, "coloring") instanceof GraphColoringAllocator);
+    }
+
+    @Test
+    public void linearScanHandlesManyTemporaries() {
+        var ollirResult = allocate(chain(20_000), 0, "linear");
+
+        // 'this' is not used, so every temporary fits in the slots of 'this' and 'n'
+        assertEquals(2, getLocals(ollirResult, "chain"));
+    }
+}
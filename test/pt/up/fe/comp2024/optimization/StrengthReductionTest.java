@@ -0,0 +1,290 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.BinaryOpInstruction;
+import org.specs.comp.ollir.LiteralElement;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.OpCondInstruction;
+import org.specs.comp.ollir.Operand;
+import org.specs.comp.ollir.OperationType;
+import org.specs.comp.ollir.SingleOpInstruction;
+import org.specs.comp.ollir.UnaryOpInstruction;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.backend.ClassFileBackend;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class StrengthReductionTest {
+
+    private static final List<Integer> VALUES = List.of(0, 1, -1, 7, -7, 8, -8, 1 << 30, Integer.MAX_VALUE,
+            Integer.MIN_VALUE, Integer.MIN_VALUE + 1);
+
+    // Each is printed by the 'check' method below, in this order
+    private static final List<IntUnaryOperator> OPERATIONS = List.of(
+            x -> x * 8,
+            x -> 4 * x,
+            x -> x * 1073741824,
+            x -> x * -1,
+            x -> x * 1 + 0,
+            x -> x * 0,
+            x -> x - x,
+            x -> x / 2,
+            x -> x / 8,
+            x -> x / 1073741824,
+            x -> x / -1,
+            x -> x / 3);
+
+    private static final String CHECKS = """
+            import io;
+            Checks {
+                .construct Checks().V {
+                    invokespecial(this, "<init>").V;
+                }
+
+                .method public static check(x.i32).V {
+                    a.i32 :=.i32 x.i32 *.i32 8.i32;
+                    invokestatic(io, "println", a.i32).V;
+                    a.i32 :=.i32 4.i32 *.i32 x.i32;
+                    invokestatic(io, "println", a.i32).V;
+                    a.i32 :=.i32 x.i32 *.i32 1073741824.i32;
+                    invokestatic(io, "println", a.i32).V;
+                    a.i32 :=.i32 x.i32 *.i32 -1.i32;
+                    invokestatic(io, "println", a.i32).V;
+                    t.i32 :=.i32 x.i32 *.i32 1.i32;
+                    a.i32 :=.i32 t.i32 +.i32 0.i32;
+                    invokestatic(io, "println", a.i32).V;
+                    a.i32 :=.i32 x.i32 *.i32 0.i32;
+                    invokestatic(io, "println", a.i32).V;
+                    a.i32 :=.i32 x.i32 -.i32 x.i32;
+                    invokestatic(io, "println", a.i32).V;
+                    a.i32 :=.i32 x.i32 /.i32 2.i32;
+                    invokestatic(io, "println", a.i32).V;
+                    a.i32 :=.i32 x.i32 /.i32 8.i32;
+                    invokestatic(io, "println", a.i32).V;
+                    a.i32 :=.i32 x.i32 /.i32 1073741824.i32;
+                    invokestatic(io, "println", a.i32).V;
+                    a.i32 :=.i32 x.i32 /.i32 -1.i32;
+                    invokestatic(io, "println", a.i32).V;
+                    a.i32 :=.i32 x.i32 /.i32 3.i32;
+                    invokestatic(io, "println", a.i32).V;
+                    ret.V;
+                }
+
+                .method public static main(args.array.String).V {
+            %s
+                    ret.V;
+                }
+            }
+            """;
+
+    private static Method getFoo(String methodBody) {
+        var method = OptimizationTestUtils.getFoo("Reduce", "i.i32, n.i32, x.i32, b.bool", methodBody);
+        new StrengthReduction(method).run();
+
+        return method;
+    }
+
+    private static AssignInstruction getAssign(Method method, String dest) {
+        return method.getInstructions().stream()
+                .filter(instruction -> instruction instanceof AssignInstruction assign
+                        && ((Operand) assign.getDest()).getName().equals(dest))
+                .map(AssignInstruction.class::cast)
+                .reduce((first, second) -> second).orElseThrow();
+    }
+
+    private static void assertOperation(OperationType opType, String right, AssignInstruction assign) {
+        assertTrue(assign.toString(), assign.getRhs() instanceof BinaryOpInstruction binaryOp
+                && binaryOp.getOperation().getOpType() == opType
+                && binaryOp.getRightOperand() instanceof LiteralElement literal
+                && literal.getLiteral().equals(right));
+    }
+
+    private static void assertCopyOf(String source, AssignInstruction assign) {
+        assertTrue(assign.toString(), assign.getRhs() instanceof SingleOpInstruction singleOp
+                && (singleOp.getSingleOperand() instanceof Operand operand && operand.getName().equals(source)
+                || singleOp.getSingleOperand() instanceof LiteralElement literal
+                && literal.getLiteral().equals(source)));
+    }
+
+    @Test
+    public void multipliesByShifting() {
+        var foo = getFoo("""
+                a.i32 :=.i32 x.i32 *.i32 8.i32;
+                p.i32 :=.i32 4.i32 *.i32 x.i32;
+                c.i32 :=.i32 x.i32 *.i32 6.i32;
+                d.i32 :=.i32 a.i32 +.i32 p.i32;
+                e.i32 :=.i32 d.i32 +.i32 c.i32;
+                ret.i32 e.i32;
+                """);
+
+        assertOperation(OperationType.SHL, "3", getAssign(foo, "a"));
+        assertOperation(OperationType.SHL, "2", getAssign(foo, "p"));
+        assertOperation(OperationType.MUL, "6", getAssign(foo, "c"));
+    }
+
+    @Test
+    public void appliesIdentities() {
+        var foo = getFoo("""
+                a.i32 :=.i32 x.i32 *.i32 1.i32;
+                p.i32 :=.i32 0.i32 +.i32 x.i32;
+                c.i32 :=.i32 x.i32 *.i32 0.i32;
+                d.i32 :=.i32 x.i32 -.i32 x.i32;
+                e.i32 :=.i32 x.i32 /.i32 1.i32;
+                f.i32 :=.i32 3.i32 *.i32 5.i32;
+                g.bool :=.bool b.bool &&.bool 1.bool;
+                h.i32 :=.i32 a.i32 +.i32 p.i32;
+                ret.i32 h.i32;
+                """);
+
+        assertCopyOf("x", getAssign(foo, "a"));
+        assertCopyOf("x", getAssign(foo, "p"));
+        assertCopyOf("0", getAssign(foo, "c"));
+        assertCopyOf("0", getAssign(foo, "d"));
+        assertCopyOf("x", getAssign(foo, "e"));
+        assertCopyOf("15", getAssign(foo, "f"));
+        assertCopyOf("b", getAssign(foo, "g"));
+    }
+
+    @Test
+    public void dividesByShiftingRoundingTowardsZero() {
+        var foo = getFoo("""
+                a.i32 :=.i32 x.i32 /.i32 8.i32;
+                q.i32 :=.i32 x.i32 /.i32 3.i32;
+                c.i32 :=.i32 a.i32 +.i32 q.i32;
+                ret.i32 c.i32;
+                """);
+
+        // The sign, the adjustment, the adjusted dividend and the shift
+        assertOperation(OperationType.SHR, "3", getAssign(foo, "a"));
+        assertEquals(7, foo.getInstructions().size());
+        assertOperation(OperationType.DIV, "3", getAssign(foo, "q"));
+    }
+
+    @Test
+    public void removesNegations() {
+        var foo = getFoo("""
+                t1.bool :=.bool i.i32 <.bool n.i32;
+                t2.bool :=.bool !.bool t1.bool;
+                t3.bool :=.bool !.bool b.bool;
+                t4.bool :=.bool !.bool t3.bool;
+                if (!.bool t1.bool) goto End;
+                n.i32 :=.i32 0.i32;
+                t5.bool :=.bool !.bool t1.bool;
+                End:
+                ret.i32 n.i32;
+                """);
+
+        var t2 = (BinaryOpInstruction) getAssign(foo, "t2").getRhs();
+        assertEquals(OperationType.GTE, t2.getOperation().getOpType());
+        assertEquals("n", ((Operand) t2.getRightOperand()).getName());
+        assertCopyOf("b", getAssign(foo, "t4"));
+
+        var branch = (OpCondInstruction) foo.getInstructions().get(4);
+        assertEquals(OperationType.GTE, ((BinaryOpInstruction) branch.getCondition()).getOperation().getOpType());
+        assertEquals("End", branch.getLabel());
+
+        // Comparisons are only followed within a block
+        assertTrue(getAssign(foo, "t5").getRhs() instanceof UnaryOpInstruction);
+    }
+
+    @Test
+    public void reducesInductionVariables() {
+        var foo = getFoo("""
+                s.i32 :=.i32 0.i32;
+                Loop:
+                j.i32 :=.i32 i.i32 *.i32 12.i32;
+                s.i32 :=.i32 s.i32 +.i32 j.i32;
+                i.i32 :=.i32 i.i32 -.i32 3.i32;
+                if (i.i32 >.bool n.i32) goto Loop;
+                ret.i32 s.i32;
+                """);
+
+        int loop = foo.getInstructions().indexOf(foo.getLabels().get("Loop"));
+        var instructions = foo.getInstructions();
+
+        // The product starts before the loop and follows 'i' in it
+        assertOperation(OperationType.MUL, "12", (AssignInstruction) instructions.get(loop - 1));
+        var reduced = ((Operand) ((AssignInstruction) instructions.get(loop - 1)).getDest()).getName();
+        assertCopyOf(reduced, getAssign(foo, "j"));
+        assertOperation(OperationType.ADD, "-36", (AssignInstruction) instructions.get(getIndex(foo, "i") + 1));
+        assertTrue(foo.getVarTable().containsKey(reduced));
+    }
+
+    private static int getIndex(Method method, String dest) {
+        return method.getInstructions().indexOf(getAssign(method, dest));
+    }
+
+    @Test
+    public void reducedProgramsComputeTheSameValues() {
+        var main = VALUES.stream()
+                .map(value -> value < 0
+                        ? """
+                                x.i32 :=.i32 0.i32 -.i32 %d.i32;
+                                x.i32 :=.i32 x.i32 -.i32 %d.i32;
+                                invokestatic(Checks, "check", x.i32).V;
+                        """.formatted(-(value + 1), 1)
+                        : """
+                                invokestatic(Checks, "check", %d.i32).V;
+                        """.formatted(value))
+                .collect(Collectors.joining());
+        var ollirCode = CHECKS.formatted(main);
+
+        var expected = VALUES.stream()
+                .flatMap(value -> OPERATIONS.stream().map(operation -> String.valueOf(operation.applyAsInt(value))))
+                .collect(Collectors.joining("\n"));
+
+        var optimized = new JmmOptimizationImpl().optimize(new OllirResult(ollirCode, Map.of("optimize", "true")));
+
+        assertEquals(expected, new JasminBackendImpl().toJasmin(new OllirResult(ollirCode,
+                Collections.emptyMap())).run().trim().replace("\r\n", "\n"));
+        assertEquals(expected, new JasminBackendImpl().toJasmin(optimized).run().trim().replace("\r\n", "\n"));
+        assertEquals(expected, new ClassFileBackend().toClassFile(optimized).run().trim().replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void reducedLoopsComputeTheSameValues() {
+        var ollirCode = """
+                import io;
+                Sums {
+                    .construct Sums().V {
+                        invokespecial(this, "<init>").V;
+                    }
+
+                    .method public static main(args.array.String).V {
+                        i.i32 :=.i32 100.i32;
+                        s.i32 :=.i32 0.i32;
+                        Loop:
+                        j.i32 :=.i32 i.i32 *.i32 12.i32;
+                        k.i32 :=.i32 i.i32 *.i32 1073741824.i32;
+                        s.i32 :=.i32 s.i32 +.i32 j.i32;
+                        s.i32 :=.i32 s.i32 +.i32 k.i32;
+                        i.i32 :=.i32 i.i32 -.i32 3.i32;
+                        if (i.i32 >.bool 0.i32) goto Loop;
+                        invokestatic(io, "println", s.i32).V;
+                        ret.V;
+                    }
+                }
+                """;
+
+        int expected = 0;
+        for (int i = 100; i > 0; i -= 3) {
+            expected += i * 12;
+            expected += i * 1073741824;
+        }
+
+        var optimized = new JmmOptimizationImpl().optimize(new OllirResult(ollirCode, Map.of("optimize", "true")));
+
+        assertEquals(String.valueOf(expected), new JasminBackendImpl().toJasmin(new OllirResult(ollirCode,
+                Collections.emptyMap())).run().trim());
+        assertEquals(String.valueOf(expected), new JasminBackendImpl().toJasmin(optimized).run().trim());
+        assertEquals(String.valueOf(expected), new ClassFileBackend().toClassFile(optimized).run().trim());
+    }
+}
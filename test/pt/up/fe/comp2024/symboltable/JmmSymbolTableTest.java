@@ -0,0 +1,102 @@
+package pt.up.fe.comp2024.symboltable;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class JmmSymbolTableTest {
+
+    private static final String CODE = """
+            import io;
+
+            class Scopes {
+                int a;
+                boolean b;
+
+                public int foo(int b, int c) {
+                    int c;
+                    int[] d;
+                    return 0;
+                }
+
+                public boolean bar(boolean d) {
+                    Scopes d;
+                    io e;
+                    return true;
+                }
+
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    private static JmmSymbolTable build() {
+        var parserResult = new JmmParserImpl().parse(CODE, new HashMap<>());
+        return JmmSymbolTableBuilder.build(parserResult.getRootNode());
+    }
+
+    private static Optional<String> typeOf(Optional<Symbol> symbol) {
+        return symbol.map(s -> s.getType().getName() + (s.getType().isArray() ? "[]" : ""));
+    }
+
+    @Test
+    public void resolvePrecedence() {
+        var table = build();
+
+        // Locals hide parameters, which hide fields
+        assertEquals(Optional.of("int"), typeOf(table.resolve("foo", "c")));
+        assertEquals(Optional.of("int"), typeOf(table.resolve("foo", "b")));
+        assertEquals(Optional.of("int"), typeOf(table.resolve("foo", "a")));
+        assertEquals(Optional.of("boolean"), typeOf(table.resolve("bar", "b")));
+        assertEquals(Optional.of("Scopes"), typeOf(table.resolve("bar", "d")));
+        assertEquals(Optional.empty(), table.resolve("main", "c"));
+
+        // Cached results are the same
+        assertEquals(table.resolve("foo", "c"), table.resolve("foo", "c"));
+    }
+
+    @Test
+    public void scopedLookups() {
+        var table = build();
+
+        assertEquals(Optional.of("boolean"), typeOf(table.getField("b")));
+        assertEquals(Optional.empty(), table.getField("c"));
+        assertEquals(Optional.of("int"), typeOf(table.getParameter("foo", "c")));
+        assertEquals(Optional.empty(), table.getParameter("foo", "d"));
+        assertEquals(Optional.of("int[]"), typeOf(table.getLocalVariable("foo", "d")));
+        assertEquals(Optional.empty(), table.getLocalVariable("bar", "c"));
+
+        assertTrue(table.hasMethod("bar"));
+        assertFalse(table.hasMethod("baz"));
+        assertTrue(table.hasImport("io"));
+        assertFalse(table.hasImport("Scopes"));
+    }
+
+    @Test
+    public void classWideLookups() {
+        var table = build();
+
+        var locals = table.getLocalVariablesInAnyMethod("d");
+        assertEquals(List.of("int", "Scopes"), locals.stream().map(local -> local.getType().getName()).toList());
+        assertTrue(table.getLocalVariablesInAnyMethod("a").isEmpty());
+
+        assertTrue(table.hasLocalOfType("io"));
+        assertFalse(table.hasLocalOfType("boolean"));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void unknownMethod() {
+        build().getLocalVariables("baz");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutable() {
+        build().getFields().add(new Symbol(null, "x"));
+    }
+}
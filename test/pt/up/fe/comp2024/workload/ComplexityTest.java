@@ -0,0 +1,129 @@
+package pt.up.fe.comp2024.workload;
+
+import org.junit.Test;
+import pt.up.fe.comp2024.CompilerStats;
+import pt.up.fe.comp2024.Launcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Guards against stages whose cost grows faster than n log n with the size of the program.
+ * <p>
+ * For each axis of {@link ProgramGenerator}, programs of doubling sizes are compiled, and the CPU time of each stage
+ * is fitted to c * n^b, where n is the number of AST nodes. The test fails if the exponent b of any stage is above the
+ * one of n log n over the same sizes, with some tolerance for noise. Stages too fast to fit are listed in the output as
+ * not fitted.
+ * <p>
+ * It takes a while, and is not part of 'gradle test'. Run it with 'gradle complexityTest'. The fitting itself is tested
+ * by {@link GrowthTest}, which is.
+ */
+public class ComplexityTest {
+
+    private static final int SIZES = 5;
+    private static final int REPETITIONS = 5;
+
+    // Stages that take less than this on the largest program are too noisy to fit
+    private static final long MIN_FITTED_NANOS = 5_000_000;
+
+    private static final Map<String, Axis> AXES = new LinkedHashMap<>();
+
+    static {
+        AXES.put("methods", new Axis(25, n -> new ProgramGenerator().methods(n)));
+        AXES.put("locals", new Axis(50, n -> new ProgramGenerator().methods(8).locals(n)));
+        AXES.put("statements", new Axis(25, n -> new ProgramGenerator().statements(n)));
+        AXES.put("expressionDepth", new Axis(25, n -> new ProgramGenerator().statements(8).expressionDepth(n)));
+        AXES.put("nestingDepth", new Axis(8, n -> new ProgramGenerator().statements(8).nestingDepth(n)));
+        AXES.put("fanOut", new Axis(25, n -> new ProgramGenerator().methods(8).fanOut(n)));
+    }
+
+    /**
+     * @param start size of the smallest program
+     * @param shape the generator of a program of the given size
+     */
+    private record Axis(int start, IntFunction<ProgramGenerator> shape) {
+    }
+
+    /**
+     * CPU time of each stage when compiling the program, the minimum over several compilations.
+     */
+    private static Map<String, Long> measure(String code, long[] nodes) {
+        var times = new LinkedHashMap<String, Long>();
+
+        for (int i = 0; i < REPETITIONS; i++) {
+            var stats = new CompilerStats();
+            Launcher.compile(code, new HashMap<>(), stats);
+
+            for (var stage : stats.getStages()) {
+                times.merge(stage.name(), stage.usage().cpuNanos(), Math::min);
+
+                if (stage.name().equals("parse")) {
+                    nodes[0] = stage.counts().get("nodes");
+                }
+            }
+        }
+
+        return times;
+    }
+
+    @Test
+    public void stagesGrowAtMostNLogN() {
+        // Warm up the JIT, so that the smallest programs are not measured in the interpreter
+        for (var axis : AXES.values()) {
+            measure(axis.shape().apply(axis.start() * 4).generate("WarmUp"), new long[1]);
+        }
+
+        var violations = new ArrayList<String>();
+        var report = new StringBuilder();
+
+        for (var entry : AXES.entrySet()) {
+            var axis = entry.getValue();
+
+            var nodes = new double[SIZES];
+            var stageTimes = new LinkedHashMap<String, double[]>();
+
+            for (int i = 0; i < SIZES; i++) {
+                int size = axis.start() << i;
+                var code = axis.shape().apply(size).generate("Workload" + size);
+
+                var programNodes = new long[1];
+                var times = measure(code, programNodes);
+                nodes[i] = programNodes[0];
+
+                for (var time : times.entrySet()) {
+                    // at least a nanosecond, for the logarithm
+                    stageTimes.computeIfAbsent(time.getKey(), key -> new double[SIZES])[i] = Math.max(1, time.getValue());
+                }
+            }
+
+            double nLogNAllowed = Growth.allowedExponent(nodes[0], nodes[SIZES - 1]);
+
+            for (var stage : stageTimes.entrySet()) {
+                var times = stage.getValue();
+                if (times[SIZES - 1] < MIN_FITTED_NANOS) {
+                    report.append(String.format("%-16s %-36s not fitted (%.1f ms at %d nodes)%n", entry.getKey(),
+                            stage.getKey(), times[SIZES - 1] / 1e6, (long) nodes[SIZES - 1]));
+                    continue;
+                }
+
+                double exponent = Growth.fitExponent(nodes, times);
+                report.append(String.format("%-16s %-36s n^%.2f  (%.1f ms at %d nodes)%n", entry.getKey(),
+                        stage.getKey(), exponent, times[SIZES - 1] / 1e6, (long) nodes[SIZES - 1]));
+
+                if (exponent > nLogNAllowed) {
+                    violations.add(String.format("%s grows as n^%.2f along '%s', more than n^%.2f", stage.getKey(),
+                            exponent, entry.getKey(), nLogNAllowed));
+                }
+            }
+        }
+
+        System.out.println(report);
+
+        assertTrue(String.join("\n", violations) + "\n\n" + report, violations.isEmpty());
+    }
+}
@@ -0,0 +1,49 @@
+package pt.up.fe.comp2024.workload;
+
+/**
+ * Fits how a cost grows with the size of its input, for {@link ComplexityTest}.
+ */
+class Growth {
+
+    // Extra exponent allowed over n log n, a quadratic stage has an exponent close to 2
+    private static final double TOLERANCE = 0.3;
+
+    private Growth() {
+    }
+
+    /**
+     * @return the slope of the least squares line through the points (log x, log y)
+     */
+    static double fitExponent(double[] x, double[] y) {
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < x.length; i++) {
+            meanX += Math.log(x[i]) / x.length;
+            meanY += Math.log(y[i]) / y.length;
+        }
+
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < x.length; i++) {
+            double dx = Math.log(x[i]) - meanX;
+            covariance += dx * (Math.log(y[i]) - meanY);
+            variance += dx * dx;
+        }
+
+        return covariance / variance;
+    }
+
+    /**
+     * @return the exponent b such that n^b grows like n log n between the given sizes
+     */
+    static double nLogNExponent(double smallest, double largest) {
+        return Math.log(largest * Math.log(largest) / (smallest * Math.log(smallest))) / Math.log(largest / smallest);
+    }
+
+    /**
+     * @return the largest exponent accepted between the given sizes, the one of n log n with some tolerance for noise
+     */
+    static double allowedExponent(double smallest, double largest) {
+        return nLogNExponent(smallest, largest) + TOLERANCE;
+    }
+}
@@ -0,0 +1,48 @@
+package pt.up.fe.comp2024.workload;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class GrowthTest {
+
+    @Test
+    public void fitsKnownGrowth() {
+        var x = new double[]{100, 200, 400, 800};
+        var linear = new double[]{3, 6, 12, 24};
+        var quadratic = new double[]{1, 4, 16, 64};
+
+        assertTrue(Math.abs(Growth.fitExponent(x, linear) - 1) < 1e-9);
+        assertTrue(Math.abs(Growth.fitExponent(x, quadratic) - 2) < 1e-9);
+
+        double nLogN = Growth.nLogNExponent(100, 800);
+        assertTrue(nLogN > 1 && nLogN < 1.2);
+    }
+
+    /**
+     * Guards the guard: a stage that is quadratic on purpose must be caught.
+     */
+    @Test
+    public void detectsQuadraticStage() {
+        var x = new double[5];
+        var y = new double[5];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = 1000 << i;
+            y[i] = x[i] * x[i];
+        }
+
+        assertTrue(Growth.fitExponent(x, y) > Growth.allowedExponent(x[0], x[x.length - 1]));
+    }
+
+    @Test
+    public void acceptsNLogNStage() {
+        var x = new double[5];
+        var y = new double[5];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = 1000 << i;
+            y[i] = x[i] * Math.log(x[i]);
+        }
+
+        assertTrue(Growth.fitExponent(x, y) <= Growth.allowedExponent(x[0], x[x.length - 1]));
+    }
+}
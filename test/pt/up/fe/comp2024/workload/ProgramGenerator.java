@@ -0,0 +1,176 @@
+package pt.up.fe.comp2024.workload;
+
+/**
+ * Generates valid Java-- classes, scalable along independent axes.
+ * <p>
+ * Each method declares its locals, assigns them, and then runs a number of statements. Every statement assigns an
+ * arithmetic expression to one of the locals, inside nested while and if statements, and each method ends with calls
+ * to other methods of the class. Every axis only grows its own part of the program, so that the cost of each part
+ * can be measured on its own.
+ */
+public class ProgramGenerator {
+
+    private int methods = 4;
+    private int locals = 4;
+    private int statements = 4;
+    private int expressionDepth = 2;
+    private int nestingDepth = 1;
+    private int fanOut = 1;
+
+    /**
+     * @param methods number of methods of the class, besides main
+     * @return this generator
+     */
+    public ProgramGenerator methods(int methods) {
+        this.methods = atLeast(1, methods);
+        return this;
+    }
+
+    /**
+     * @param locals number of int locals of each method
+     * @return this generator
+     */
+    public ProgramGenerator locals(int locals) {
+        this.locals = atLeast(1, locals);
+        return this;
+    }
+
+    /**
+     * @param statements number of assignments of each method
+     * @return this generator
+     */
+    public ProgramGenerator statements(int statements) {
+        this.statements = atLeast(0, statements);
+        return this;
+    }
+
+    /**
+     * @param expressionDepth number of binary operations of each assigned expression
+     * @return this generator
+     */
+    public ProgramGenerator expressionDepth(int expressionDepth) {
+        this.expressionDepth = atLeast(0, expressionDepth);
+        return this;
+    }
+
+    /**
+     * @param nestingDepth number of while and if statements around each assignment
+     * @return this generator
+     */
+    public ProgramGenerator nestingDepth(int nestingDepth) {
+        this.nestingDepth = atLeast(0, nestingDepth);
+        return this;
+    }
+
+    /**
+     * @param fanOut number of calls to other methods at the end of each method
+     * @return this generator
+     */
+    public ProgramGenerator fanOut(int fanOut) {
+        this.fanOut = atLeast(0, fanOut);
+        return this;
+    }
+
+    private static int atLeast(int minimum, int value) {
+        if (value < minimum) {
+            throw new IllegalArgumentException("Expected a value of at least " + minimum + ", got " + value);
+        }
+
+        return value;
+    }
+
+    /**
+     * @param className name of the generated class
+     * @return the code of the class
+     */
+    public String generate(String className) {
+        var code = new StringBuilder();
+
+        code.append("import io;\n\n");
+        code.append("class ").append(className).append(" {\n");
+
+        for (int method = 0; method < methods; method++) {
+            code.append('\n');
+            generateMethod(method, code);
+        }
+
+        code.append('\n');
+        code.append("    public static void main(String[] args) {\n");
+        code.append("        ").append(className).append(" instance;\n");
+        code.append("        instance = new ").append(className).append("();\n");
+        code.append("        io.println(instance.m0(1));\n");
+        code.append("    }\n");
+        code.append("}\n");
+
+        return code.toString();
+    }
+
+    private void generateMethod(int method, StringBuilder code) {
+        code.append("    public int m").append(method).append("(int p) {\n");
+
+        for (int local = 0; local < locals; local++) {
+            code.append("        int v").append(local).append(";\n");
+        }
+        code.append("        boolean flag;\n");
+
+        code.append("        v0 = p;\n");
+        for (int local = 1; local < locals; local++) {
+            code.append("        v").append(local).append(" = ").append(local).append(";\n");
+        }
+        code.append("        flag = true;\n");
+
+        for (int statement = 0; statement < statements; statement++) {
+            generateStatement(statement, 0, "        ", code);
+        }
+
+        // Calls always go to later methods, so that running the program terminates
+        for (int call = 0; call < fanOut && method + 1 < methods; call++) {
+            int callee = method + 1 + call % (methods - method - 1);
+            code.append("        v0 = this.m").append(callee).append("(v").append(call % locals).append(");\n");
+        }
+
+        code.append("        return v0;\n");
+        code.append("    }\n");
+    }
+
+    /**
+     * Generates an assignment inside the while and if statements of the levels from the given depth to the nesting
+     * depth. Even levels are loops that run once, odd levels are if statements.
+     */
+    private void generateStatement(int statement, int depth, String indent, StringBuilder code) {
+        if (depth == nestingDepth) {
+            code.append(indent).append('v').append(statement % locals).append(" = ");
+            generateExpression(statement, code);
+            code.append(";\n");
+            return;
+        }
+
+        if (depth % 2 == 0) {
+            code.append(indent).append("while (flag) {\n");
+            generateStatement(statement, depth + 1, indent + "    ", code);
+            code.append(indent).append("    flag = false;\n");
+            code.append(indent).append("}\n");
+            code.append(indent).append("flag = true;\n");
+            return;
+        }
+
+        code.append(indent).append("if (v0 < v").append(depth % locals).append(") {\n");
+        generateStatement(statement, depth + 1, indent + "    ", code);
+        code.append(indent).append("} else {\n");
+        code.append(indent).append("    flag = !flag;\n");
+        code.append(indent).append("}\n");
+    }
+
+    /**
+     * An expression with the given number of operations, nested to the right, e.g. 'v1 + (v2 * (v3 - 1))'.
+     */
+    private void generateExpression(int statement, StringBuilder code) {
+        for (int operation = 0; operation < expressionDepth; operation++) {
+            code.append('v').append((statement + operation) % locals).append(' ');
+            code.append("+*-".charAt(operation % 3)).append(" (");
+        }
+
+        code.append(statement % 10);
+        code.append(")".repeat(expressionDepth));
+    }
+}
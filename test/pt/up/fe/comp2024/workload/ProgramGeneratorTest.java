@@ -0,0 +1,53 @@
+package pt.up.fe.comp2024.workload;
+
+import org.junit.Test;
+import pt.up.fe.comp2024.Launcher;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProgramGeneratorTest {
+
+    @Test
+    public void everyAxisCompiles() {
+        var generators = List.of(
+                new ProgramGenerator(),
+                new ProgramGenerator().methods(20),
+                new ProgramGenerator().locals(20),
+                new ProgramGenerator().statements(20),
+                new ProgramGenerator().expressionDepth(20),
+                new ProgramGenerator().nestingDepth(9),
+                new ProgramGenerator().fanOut(6),
+                new ProgramGenerator().methods(1).locals(1).statements(0).expressionDepth(0).nestingDepth(0).fanOut(0));
+
+        for (var generator : generators) {
+            var code = generator.generate("Generated");
+            Launcher.compile(code, new HashMap<>());
+        }
+    }
+
+    @Test
+    public void generatedProgramRuns() {
+        // A single loop in each method, the labels of several loops in the same method are not unique yet
+        var code = new ProgramGenerator().methods(6).statements(1).nestingDepth(2).fanOut(3).generate("Generated");
+
+        var config = new HashMap<String, String>();
+        config.put("directLowering", "true");
+        var output = Launcher.compile(code, config).run();
+
+        assertTrue(output, output.trim().matches("-?[0-9]+"));
+    }
+
+    @Test
+    public void axesAreIndependent() {
+        var base = new ProgramGenerator().generate("Generated").length();
+        var twiceTheMethods = new ProgramGenerator().methods(8).generate("Generated").length();
+        var twiceTheStatements = new ProgramGenerator().statements(8).generate("Generated").length();
+
+        assertTrue(twiceTheMethods > base && twiceTheStatements > base);
+        assertEquals(new ProgramGenerator().generate("Generated"), new ProgramGenerator().generate("Generated"));
+    }
+}